@@ -3,8 +3,12 @@ package com.github.knokko.boiler.samples;
 import com.github.knokko.boiler.builder.BoilerBuilder;
 import com.github.knokko.boiler.builder.BoilerSwapchainBuilder;
 import com.github.knokko.boiler.builder.instance.ValidationFeatures;
+import com.github.knokko.boiler.commands.CommandBufferManager;
+import com.github.knokko.boiler.commands.CommandBundle;
 import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.commands.ParallelRecorder;
 import com.github.knokko.boiler.cull.FrustumCuller;
+import com.github.knokko.boiler.images.TransientAttachments;
 import com.github.knokko.boiler.images.VmaImage;
 import com.github.knokko.boiler.instance.BoilerInstance;
 import com.github.knokko.boiler.pipelines.GraphicsPipelineBuilder;
@@ -23,18 +27,19 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static java.lang.Math.*;
 import static java.lang.Thread.sleep;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.system.MemoryStack.stackPush;
-import static org.lwjgl.system.MemoryUtil.memByteBuffer;
-import static org.lwjgl.system.MemoryUtil.memShortBuffer;
+import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.util.vma.Vma.vmaDestroyBuffer;
 import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
@@ -119,8 +124,9 @@ public class TerrainPlayground {
         var depthDependency = dependencies.get(1);
         depthDependency.srcSubpass(VK_SUBPASS_EXTERNAL);
         depthDependency.dstSubpass(0);
-        depthDependency.srcStageMask(VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT);
-        depthDependency.srcAccessMask(0);
+        // The depth image is shared by all frames in flight, so the previous frame must be done with it
+        depthDependency.srcStageMask(VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT);
+        depthDependency.srcAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
         depthDependency.dstStageMask(VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT);
         depthDependency.dstAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
 
@@ -230,19 +236,11 @@ public class TerrainPlayground {
                     VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT, VK_IMAGE_ASPECT_COLOR_BIT, "HeightImage"
             );
 
-            var normalImage = boiler.images.createSimple(
-                    stack, gridSize, gridSize, VK_FORMAT_R8G8B8A8_SNORM,
-                    VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT, VK_IMAGE_ASPECT_COLOR_BIT, "DeltaHeightImage"
-            );
-
             var stagingBuffer = boiler.buffers.createMapped(
                     content.length, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, "HeightImageStagingBuffer"
             );
-            var normalStagingBuffer = boiler.buffers.createMapped(
-                    4L * normalImage.width() * normalImage.height(), VK_BUFFER_USAGE_TRANSFER_SRC_BIT, "DeltaHeightImageStagingBuffer"
-            );
             var stagingHostBuffer = memShortBuffer(stagingBuffer.hostAddress(), numValues);
-            var normalHostBuffer = memByteBuffer(normalStagingBuffer.hostAddress(), (int) normalStagingBuffer.size());
+            var normalHostBuffer = memAlloc(4 * numValues);
             var commandPool = boiler.commands.createPool(
                     VK_COMMAND_POOL_CREATE_TRANSIENT_BIT,
                     boiler.queueFamilies().graphics().index(),
@@ -293,6 +291,12 @@ public class TerrainPlayground {
 
             coarseDeltaHeightLookup = new HeightLookup(600, HEIGHT_IMAGE_NUM_PIXELS, deltaHeightBuffer);
 
+            // The normal map is sampled with linear filtering, so it benefits from mipmaps in the distance
+            var normalImage = boiler.images.createTexture(
+                    stack, gridSize, gridSize, VK_FORMAT_R8G8B8A8_SNORM, 0, normalHostBuffer, true, "DeltaHeightImage"
+            );
+            memFree(normalHostBuffer);
+
             var recorder = CommandRecorder.begin(
                     commandBuffer, boiler, stack,
                     VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT,
@@ -302,30 +306,16 @@ public class TerrainPlayground {
                     image.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
                     null, new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
             );
-            recorder.transitionColorLayout(
-                    normalImage.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
-                    null, new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
-            );
             recorder.copyBufferToImage(
                     VK_IMAGE_ASPECT_COLOR_BIT, image.vkImage(),
                     gridSize, gridSize, stagingBuffer.vkBuffer()
             );
-            recorder.copyBufferToImage(
-                    VK_IMAGE_ASPECT_COLOR_BIT, normalImage.vkImage(),
-                    normalImage.width(), normalImage.height(), normalStagingBuffer.vkBuffer()
-            );
             recorder.transitionColorLayout(
                     image.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
                     VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
                     new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT),
                     new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_VERTEX_SHADER_BIT)
             );
-            recorder.transitionColorLayout(
-                    normalImage.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
-                    VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
-                    new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT),
-                    new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT)
-            );
             recorder.end();
 
             boiler.queueFamilies().graphics().queues().get(0).submit(
@@ -338,7 +328,6 @@ public class TerrainPlayground {
             vkDestroyFence(boiler.vkDevice(), fence, null);
             vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
             vmaDestroyBuffer(boiler.vmaAllocator(), stagingBuffer.vkBuffer(), stagingBuffer.vmaAllocation());
-            vmaDestroyBuffer(boiler.vmaAllocator(), normalStagingBuffer.vkBuffer(), normalStagingBuffer.vmaAllocation());
             return new VmaImage[] { image, normalImage };
         } catch (IOException shouldNotHappen) {
             throw new RuntimeException(shouldNotHappen);
@@ -353,6 +342,8 @@ public class TerrainPlayground {
                 .window(0L, 1000, 800, new BoilerSwapchainBuilder(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT), i -> windowIndex = i)
                 .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
                 .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .pipelineCache(Path.of("terrain-pipeline-cache.bin"))
+                .startupReport(System.out::print)
                 .build();
 
         long debugMessenger;
@@ -420,8 +411,9 @@ public class TerrainPlayground {
                     stack, VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST,
                     VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE, 0f, 0f, false, "HeightSampler"
             );
-            normalSampler = boiler.images.simpleSampler(
-                    stack, VK_FILTER_LINEAR, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE, "NormalSampler"
+            normalSampler = boiler.images.createSampler(
+                    stack, VK_FILTER_LINEAR, VK_SAMPLER_MIPMAP_MODE_LINEAR, VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE,
+                    0f, VK_LOD_CLAMP_NONE, true, "NormalSampler"
             );
 
             var heightMapInfo = VkDescriptorImageInfo.calloc(1, stack);
@@ -463,16 +455,18 @@ public class TerrainPlayground {
         }
 
         int numFramesInFlight = 3;
-        var commandPool = boiler.commands.createPool(
-                VK_COMMAND_POOL_CREATE_TRANSIENT_BIT | VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT,
-                boiler.queueFamilies().graphics().index(), "TerrainPool"
-        );
-        var commandBuffers = boiler.commands.createPrimaryBuffers(
-                commandPool, numFramesInFlight, "TerrainCommands"
+        var commandManager = new CommandBufferManager(
+                boiler, boiler.queueFamilies().graphics().index(), numFramesInFlight, "TerrainCommands"
         );
         var timeline = boiler.sync.createTimelineSemaphore(numFramesInFlight - 1, "TerrainTimeline");
+        int numRecordingThreads = Runtime.getRuntime().availableProcessors();
+        var terrainBundle = new CommandBundle(
+                boiler, boiler.queueFamilies().graphics().index(), numRecordingThreads, "TerrainBundle"
+        );
+        TerrainDrawList drawList = null;
 
         long frameCounter = 0;
+        var transientAttachments = new TransientAttachments(boiler, true, "TerrainDepth");
         var swapchainResources = new SwapchainResourceManager<>(swapchainImage -> {
             try (var stack = stackPush()) {
                 long imageView = boiler.images.createSimpleView(
@@ -480,9 +474,9 @@ public class TerrainPlayground {
                         VK_IMAGE_ASPECT_COLOR_BIT, "SwapchainView" + swapchainImage.imageIndex()
                 );
 
-                var depthImage = boiler.images.createSimple(
+                var depthImage = transientAttachments.acquire(
                         stack, swapchainImage.width(), swapchainImage.height(), depthFormat,
-                        VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT, VK_IMAGE_ASPECT_DEPTH_BIT, "Depth"
+                        VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT
                 );
 
                 long framebuffer = boiler.images.createFramebuffer(
@@ -495,8 +489,7 @@ public class TerrainPlayground {
         }, resources -> {
             vkDestroyFramebuffer(boiler.vkDevice(), resources.framebuffer, null);
             vkDestroyImageView(boiler.vkDevice(), resources.imageView, null);
-            vkDestroyImageView(boiler.vkDevice(), resources.depthImage.vkImageView(), null);
-            vmaDestroyImage(boiler.vmaAllocator(), resources.depthImage.vkImage(), resources.depthImage.vmaAllocation());
+            transientAttachments.release(resources.depthImage);
         });
 
         long referenceTime = System.currentTimeMillis();
@@ -559,6 +552,7 @@ public class TerrainPlayground {
             long currentTime = System.currentTimeMillis();
             if (currentTime > 1000 + referenceTime) {
                 System.out.println("FPS is " + (frameCounter - referenceFrames));
+                System.out.println("Sharing the depth buffer saves " + transientAttachments.getSavedBytes() + " bytes");
                 referenceTime = currentTime;
                 referenceFrames = frameCounter;
             }
@@ -576,9 +570,10 @@ public class TerrainPlayground {
                         swapchainImage.acquireSemaphore(), VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT
                 )};
 
-                int frameIndex = (int) (frameCounter % numFramesInFlight);
-                var commandBuffer = commandBuffers[frameIndex];
-                boiler.sync.awaitTimelineSemaphore(stack, timeline, frameCounter, "Commands");
+                var timelineFinished = new TimelineInstant(timeline, frameCounter + numFramesInFlight);
+                // This waits until the timeline reaches frameCounter
+                commandManager.beginFrame(frameCounter, timelineFinished);
+                var commandBuffer = commandManager.nextPrimary();
 
                 var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "TerrainDraw");
 
@@ -597,14 +592,6 @@ public class TerrainPlayground {
                 biRenderPass.clearValueCount(2);
                 biRenderPass.pClearValues(clearValues);
 
-                vkCmdBeginRenderPass(commandBuffer, biRenderPass, VK_SUBPASS_CONTENTS_INLINE);
-                vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, groundPipeline);
-                recorder.dynamicViewportAndScissor(swapchainImage.width(), swapchainImage.height());
-                vkCmdBindDescriptorSets(
-                        commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout,
-                        0, stack.longs(descriptorSet), null
-                );
-
                 float fieldOfView = 45f;
                 float aspectRatio = (float) swapchainImage.width() / (float) swapchainImage.height();
 
@@ -621,64 +608,93 @@ public class TerrainPlayground {
                         ;
                 cameraMatrix.getToAddress(uniformBuffer.hostAddress());
 
-                var frustumCuller = new FrustumCuller(
-                        new Vector3f(), camera.yaw, camera.pitch, aspectRatio, fieldOfView, nearPlane, farPlane
+                // The draw commands only depend on the camera and swapchain size, so they don't need to be recorded
+                // again while the camera stands still
+                long bundleVersion = Objects.hash(
+                        camera.x, camera.y, camera.z, camera.yaw, camera.pitch,
+                        swapchainImage.width(), swapchainImage.height()
                 );
-                var fragmentsToRender = new ArrayList<TerrainFragment>();
-                float cameraU = 2f * camera.x / HEIGHT_IMAGE_SIZE + 0.5f;
-                float cameraV = 2f * camera.z / HEIGHT_IMAGE_SIZE + 0.5f;
-                partitionTerrainSpace(cameraU, cameraV, 0.0002f, 1.5f, 13, fragmentsToRender);
-
-                int quadCount = 0;
-                int fragmentCount = 0;
-                fragmentsToRender.removeIf(fragment -> {
-                    float minX = (fragment.minU - cameraU) * HEIGHT_IMAGE_SIZE;
-                    float minZ = (fragment.minV - cameraV) * HEIGHT_IMAGE_SIZE;
-                    float maxX = (fragment.maxU - cameraU) * HEIGHT_IMAGE_SIZE;
-                    float maxZ = (fragment.maxV - cameraV) * HEIGHT_IMAGE_SIZE;
-                    float threshold = 0.05f;
-
-                    float fragmentSize = max(fragment.maxU - fragment.minU, fragment.maxV - fragment.minV);
-                    var heightLookup = fragmentSize > threshold ? coarseHeightLookup : fineHeightLookup;
-                    short[] heightBounds = heightLookup.getHeights(fragment.minU, fragment.minV, fragment.maxU, fragment.maxV);
-
-                    var aabb = new FrustumCuller.AABB(minX, heightBounds[0] - camera.y, minZ, maxX, heightBounds[1] - camera.y, maxZ);
-                    return frustumCuller.shouldCullAABB(aabb);
-                });
-
-                var pushConstants = stack.calloc(28);
-
-                var divisorMap = new HashMap<Integer, Integer>();
-                for (var fragment : fragmentsToRender) {
-                    short maxDelta = coarseDeltaHeightLookup.getHeights(fragment.minU, fragment.minV, fragment.maxU, fragment.maxV)[1];
-                    int divisor = 1;
-                    if (maxDelta > 80) divisor = 2;
-                    if (maxDelta > 110) divisor = 3;
-                    if (maxDelta > 150) divisor = 4;
-                    divisorMap.put(divisor, divisorMap.getOrDefault(divisor, 0) + 1);
-
-                    pushConstants.putFloat(0, fragment.minX(cameraU));
-                    pushConstants.putFloat(4, 0f - camera.y);
-                    pushConstants.putFloat(8, fragment.minZ(cameraV));
-                    pushConstants.putFloat(12, fragment.quadSize / divisor);
-                    pushConstants.putFloat(16, fragment.minU);
-                    pushConstants.putFloat(20, fragment.minV);
-                    pushConstants.putInt(24, fragment.numColumns() * divisor);
-
-                    vkCmdPushConstants(commandBuffer, pipelineLayout, VK_SHADER_STAGE_VERTEX_BIT, 0, pushConstants);
-                    int numQuads = fragment.numRows() * fragment.numColumns() * divisor * divisor;
-                    vkCmdDraw(commandBuffer, 6 * numQuads, 1, 0, 0);
-                    quadCount += numQuads;
-                    fragmentCount += 1;
+                if (!terrainBundle.isUpToDate(bundleVersion)) {
+                    var frustumCuller = new FrustumCuller(
+                            new Vector3f(), camera.yaw, camera.pitch, aspectRatio, fieldOfView, nearPlane, farPlane
+                    );
+                    var fragmentsToRender = new ArrayList<TerrainFragment>();
+                    float cameraU = 2f * camera.x / HEIGHT_IMAGE_SIZE + 0.5f;
+                    float cameraV = 2f * camera.z / HEIGHT_IMAGE_SIZE + 0.5f;
+                    partitionTerrainSpace(cameraU, cameraV, 0.0002f, 1.5f, 13, fragmentsToRender);
+
+                    fragmentsToRender.removeIf(fragment -> {
+                        float minX = (fragment.minU - cameraU) * HEIGHT_IMAGE_SIZE;
+                        float minZ = (fragment.minV - cameraV) * HEIGHT_IMAGE_SIZE;
+                        float maxX = (fragment.maxU - cameraU) * HEIGHT_IMAGE_SIZE;
+                        float maxZ = (fragment.maxV - cameraV) * HEIGHT_IMAGE_SIZE;
+                        float threshold = 0.05f;
+
+                        float fragmentSize = max(fragment.maxU - fragment.minU, fragment.maxV - fragment.minV);
+                        var heightLookup = fragmentSize > threshold ? coarseHeightLookup : fineHeightLookup;
+                        short[] heightBounds = heightLookup.getHeights(fragment.minU, fragment.minV, fragment.maxU, fragment.maxV);
+
+                        var aabb = new FrustumCuller.AABB(minX, heightBounds[0] - camera.y, minZ, maxX, heightBounds[1] - camera.y, maxZ);
+                        return frustumCuller.shouldCullAABB(aabb);
+                    });
+
+                    int fragmentCount = fragmentsToRender.size();
+                    int[] divisors = new int[fragmentCount];
+                    int quadCount = 0;
+                    for (int index = 0; index < fragmentCount; index++) {
+                        var fragment = fragmentsToRender.get(index);
+                        short maxDelta = coarseDeltaHeightLookup.getHeights(fragment.minU, fragment.minV, fragment.maxU, fragment.maxV)[1];
+                        int divisor = 1;
+                        if (maxDelta > 80) divisor = 2;
+                        if (maxDelta > 110) divisor = 3;
+                        if (maxDelta > 150) divisor = 4;
+                        divisors[index] = divisor;
+                        quadCount += fragment.numRows() * fragment.numColumns() * divisor * divisor;
+                    }
+                    drawList = new TerrainDrawList(fragmentsToRender, divisors, quadCount, cameraU, cameraV);
                 }
+
+                var currentDrawList = drawList;
+                int fragmentCount = currentDrawList.fragments.size();
+                vkCmdBeginRenderPass(commandBuffer, biRenderPass, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
+                terrainBundle.execute(
+                        recorder, timelineFinished, bundleVersion,
+                        inheritanceStack -> ParallelRecorder.renderPassInheritance(inheritanceStack, renderPass, 0, 0L),
+                        (secondary, secondaryRecorder, taskStack, taskIndex) -> {
+                    vkCmdBindPipeline(secondary, VK_PIPELINE_BIND_POINT_GRAPHICS, groundPipeline);
+                    secondaryRecorder.dynamicViewportAndScissor(swapchainImage.width(), swapchainImage.height());
+                    vkCmdBindDescriptorSets(
+                            secondary, VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout,
+                            0, taskStack.longs(descriptorSet), null
+                    );
+
+                    var pushConstants = taskStack.calloc(28);
+                    int minIndex = taskIndex * fragmentCount / numRecordingThreads;
+                    int boundIndex = (taskIndex + 1) * fragmentCount / numRecordingThreads;
+                    for (int index = minIndex; index < boundIndex; index++) {
+                        var fragment = currentDrawList.fragments.get(index);
+                        int divisor = currentDrawList.divisors[index];
+
+                        pushConstants.putFloat(0, fragment.minX(currentDrawList.cameraU));
+                        pushConstants.putFloat(4, 0f - camera.y);
+                        pushConstants.putFloat(8, fragment.minZ(currentDrawList.cameraV));
+                        pushConstants.putFloat(12, fragment.quadSize / divisor);
+                        pushConstants.putFloat(16, fragment.minU);
+                        pushConstants.putFloat(20, fragment.minV);
+                        pushConstants.putInt(24, fragment.numColumns() * divisor);
+
+                        vkCmdPushConstants(secondary, pipelineLayout, VK_SHADER_STAGE_VERTEX_BIT, 0, pushConstants);
+                        int numQuads = fragment.numRows() * fragment.numColumns() * divisor * divisor;
+                        vkCmdDraw(secondary, 6 * numQuads, 1, 0, 0);
+                    }
+                });
                 vkCmdEndRenderPass(commandBuffer);
                 if (Math.random() < 0.002) {
-                    System.out.println("Drew " + quadCount + " quads in " + fragmentCount + " fragment with camera yaw " + camera.yaw);
+                    System.out.println("Drew " + currentDrawList.quadCount + " quads in " + fragmentCount + " fragment with camera yaw " + camera.yaw);
                 }
 
                 recorder.end();
 
-                var timelineFinished = new TimelineInstant(timeline, frameCounter + numFramesInFlight);
                 boiler.queueFamilies().graphics().queues().get(0).submit(
                         commandBuffer, "TerrainDraw", waitSemaphores, VK_NULL_HANDLE,
                         new long[] { swapchainImage.presentSemaphore() },
@@ -691,8 +707,12 @@ public class TerrainPlayground {
         }
 
         assertVkSuccess(vkDeviceWaitIdle(boiler.vkDevice()), "DeviceWaitIdle", "FinishTerrainPlayground");
+        // Destroy the swapchain early, so that its resources release the depth image before it is destroyed
+        boiler.swapchains(windowIndex).destroy();
+        transientAttachments.destroy();
         vkDestroySemaphore(boiler.vkDevice(), timeline, null);
-        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        commandManager.destroy();
+        terrainBundle.destroy();
 
         vkDestroyDescriptorPool(boiler.vkDevice(), descriptorPool, null);
         vkDestroyPipeline(boiler.vkDevice(), groundPipeline, null);
@@ -717,6 +737,14 @@ public class TerrainPlayground {
             VmaImage depthImage
     ) {}
 
+    private record TerrainDrawList(
+            List<TerrainFragment> fragments,
+            int[] divisors,
+            int quadCount,
+            float cameraU,
+            float cameraV
+    ) {}
+
     private record TerrainFragment(
             float minU,
             float minV,
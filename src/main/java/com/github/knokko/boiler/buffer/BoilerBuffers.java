@@ -20,6 +20,14 @@ public class BoilerBuffers {
     }
 
     public DeviceOnlyVmaBuffer create(long size, int usage, String name) {
+        return create(size, usage, 0L, name);
+    }
+
+    /**
+     * Creates a device-local buffer in the given pool (see <i>BoilerMemoryPools</i>)
+     * @param vmaPool The <i>VmaPool</i>, or 0 to use the default pools
+     */
+    public DeviceOnlyVmaBuffer create(long size, int usage, long vmaPool, String name) {
         try (var stack = stackPush()) {
             var ciBuffer = VkBufferCreateInfo.calloc(stack);
             ciBuffer.sType$Default();
@@ -30,6 +38,7 @@ public class BoilerBuffers {
 
             var ciAllocation = VmaAllocationCreateInfo.calloc(stack);
             ciAllocation.usage(VMA_MEMORY_USAGE_AUTO);
+            ciAllocation.pool(vmaPool);
 
             var pBuffer = stack.callocLong(1);
             var pAllocation = stack.callocPointer(1);
@@ -43,6 +52,15 @@ public class BoilerBuffers {
     }
 
     public MappedVmaBuffer createMapped(long size, int usage, String name) {
+        return createMapped(size, usage, 0L, name);
+    }
+
+    /**
+     * Creates a persistently mapped buffer in the given pool, which must be host-visible (see
+     * <i>BoilerMemoryPools.createBufferPool</i>)
+     * @param vmaPool The <i>VmaPool</i>, or 0 to use the default pools
+     */
+    public MappedVmaBuffer createMapped(long size, int usage, long vmaPool, String name) {
         try (var stack = stackPush()) {
             var ciBuffer = VkBufferCreateInfo.calloc(stack);
             ciBuffer.sType$Default();
@@ -56,6 +74,7 @@ public class BoilerBuffers {
                     VMA_ALLOCATION_CREATE_HOST_ACCESS_RANDOM_BIT | VMA_ALLOCATION_CREATE_MAPPED_BIT
             );
             ciAllocation.usage(VMA_MEMORY_USAGE_AUTO);
+            ciAllocation.pool(vmaPool);
 
             var pBuffer = stack.callocLong(1);
             var pAllocation = stack.callocPointer(1);
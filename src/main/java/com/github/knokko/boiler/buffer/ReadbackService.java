@@ -0,0 +1,242 @@
+package com.github.knokko.boiler.buffer;
+
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.GpuCompletionService;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.TimelineInstant;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.util.vma.Vma.vmaInvalidateAllocation;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Reads buffer and image contents back to the host without blocking the thread that records or submits. Each read
+ * records a copy into a region of a rotating pool of persistently mapped (<i>HOST_ACCESS_RANDOM</i>) buffers, and
+ * delivers the bytes once the given timeline instant has been reached (see <i>GpuCompletionService</i>).
+ * <p>
+ * The caller must submit the recorded command buffer such that it signals the <i>completion</i> instant of each read
+ * that it contains. The source must already be synchronized for transfer reads, and images must be in
+ * <i>VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL</i>.
+ * <p>
+ * The pool starts with <i>numBuffers</i> buffers. When the next buffer is still in use by reads that haven't been
+ * delivered yet, a new buffer is added to the pool rather than waiting. The methods of this class are thread-safe.
+ */
+public class ReadbackService {
+
+    /**
+     * The alignment of the slots of buffer reads. Image reads need an alignment that depends on their texel size, see
+     * <i>imageAlignment</i>.
+     */
+    private static final long BUFFER_ALIGNMENT = 16;
+
+    private final BoilerInstance instance;
+    private final GpuCompletionService completions;
+    private final long bufferSize;
+    private final String name;
+
+    private final List<Arena> arenas = new ArrayList<>();
+    private final Set<CompletableFuture<ByteBuffer>> pendingFutures = new HashSet<>();
+    private int currentArena;
+    private boolean destroyed;
+
+    /**
+     * @param bufferSize The size of each host buffer, which is also the maximum size of a single read
+     * @param numBuffers The initial number of host buffers. 2 or 3 is typically enough when reads are delivered
+     *                   within a couple of frames.
+     */
+    public ReadbackService(
+            BoilerInstance instance, GpuCompletionService completions, long bufferSize, int numBuffers, String name
+    ) {
+        if (numBuffers < 1) throw new IllegalArgumentException("numBuffers must be positive, but is " + numBuffers);
+        this.instance = instance;
+        this.completions = completions;
+        this.bufferSize = bufferSize;
+        this.name = name;
+        for (int counter = 0; counter < numBuffers; counter++) arenas.add(createArena());
+    }
+
+    private Arena createArena() {
+        return new Arena(instance.buffers.createMapped(
+                bufferSize, VK_BUFFER_USAGE_TRANSFER_DST_BIT, name + "-Readback" + arenas.size()
+        ));
+    }
+
+    /**
+     * The buffer offset of <i>vkCmdCopyImageToBuffer</i> must be a multiple of the texel block size, and a multiple of
+     * 4 for depth/stencil images. A fixed alignment wouldn't work for 3-, 6-, or 12-byte texels, so image slots are
+     * aligned to the least common multiple of <i>bytesPerPixel</i> and 4.
+     */
+    static long imageAlignment(int bytesPerPixel) {
+        if (bytesPerPixel <= 0) {
+            throw new IllegalArgumentException("bytesPerPixel must be positive, but is " + bytesPerPixel);
+        }
+        long a = bytesPerPixel;
+        long b = 4;
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return bytesPerPixel * 4L / a;
+    }
+
+    private synchronized Slot allocate(long size, long alignment) {
+        if (destroyed) throw new IllegalStateException("This service has already been destroyed");
+        if (size <= 0 || size > bufferSize) {
+            throw new IllegalArgumentException("Size " + size + " must be positive and at most " + bufferSize);
+        }
+
+        var arena = arenas.get(currentArena);
+        long offset = (arena.offset + alignment - 1) / alignment * alignment;
+        if (offset + size > bufferSize) {
+            int nextIndex = (currentArena + 1) % arenas.size();
+            if (arenas.get(nextIndex).pendingReads > 0) {
+                nextIndex = currentArena + 1;
+                arenas.add(nextIndex, createArena());
+            }
+            currentArena = nextIndex;
+            arena = arenas.get(currentArena);
+            offset = 0;
+        }
+
+        arena.offset = offset + size;
+        arena.pendingReads += 1;
+        return new Slot(arena, offset, size);
+    }
+
+    private synchronized void release(Slot slot) {
+        slot.arena.pendingReads -= 1;
+    }
+
+    private void finish(CommandRecorder recorder, Slot slot, TimelineInstant completion, Consumer<ByteBuffer> callback) {
+        recorder.bufferBarrier(
+                slot.arena.buffer.vkBuffer(), slot.offset, slot.size,
+                new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT),
+                new ResourceUsage(VK_ACCESS_HOST_READ_BIT, VK_PIPELINE_STAGE_HOST_BIT)
+        );
+        completions.onCompletion(completion, () -> {
+            try {
+                // The memory may be host-cached, but not host-coherent
+                vmaInvalidateAllocation(
+                        instance.vmaAllocator(), slot.arena.buffer.vmaAllocation(), slot.offset, slot.size
+                );
+                callback.accept(memByteBuffer(slot.arena.buffer.hostAddress() + slot.offset, (int) slot.size));
+            } finally {
+                release(slot);
+            }
+        });
+    }
+
+    /**
+     * Records a copy of <i>size</i> bytes of the given buffer, and calls <i>callback</i> with those bytes once
+     * <i>completion</i> has been reached. The <i>ByteBuffer</i> points directly to the mapped memory, so it must
+     * not be used after the callback returns.
+     */
+    public void readBuffer(
+            CommandRecorder recorder, long vkBuffer, long offset, long size,
+            TimelineInstant completion, Consumer<ByteBuffer> callback
+    ) {
+        var slot = allocate(size, BUFFER_ALIGNMENT);
+        recorder.copyBuffer(size, vkBuffer, offset, slot.arena.buffer.vkBuffer(), slot.offset);
+        finish(recorder, slot, completion, callback);
+    }
+
+    /**
+     * Like <i>readBuffer(..., callback)</i>, but copies the bytes to a heap buffer (in native byte order), which
+     * completes the returned future. The future is cancelled when this service is destroyed before then.
+     */
+    public CompletableFuture<ByteBuffer> readBuffer(
+            CommandRecorder recorder, long vkBuffer, long offset, long size, TimelineInstant completion
+    ) {
+        var future = new CompletableFuture<ByteBuffer>();
+        readBuffer(recorder, vkBuffer, offset, size, completion, copyInto(future));
+        return future;
+    }
+
+    /**
+     * Records a copy of the first mip level and array layer of the given image, and calls <i>callback</i> with the
+     * tightly packed pixels once <i>completion</i> has been reached. The <i>ByteBuffer</i> points directly to the
+     * mapped memory, so it must not be used after the callback returns.
+     * @param bytesPerPixel The size of a pixel (or block) of the image format
+     */
+    public void readImage(
+            CommandRecorder recorder, long vkImage, int aspectMask, int width, int height, int bytesPerPixel,
+            TimelineInstant completion, Consumer<ByteBuffer> callback
+    ) {
+        var slot = allocate((long) width * height * bytesPerPixel, imageAlignment(bytesPerPixel));
+        recorder.copyImageToBuffer(aspectMask, vkImage, width, height, slot.arena.buffer.vkBuffer(), slot.offset);
+        finish(recorder, slot, completion, callback);
+    }
+
+    /**
+     * Like <i>readImage(..., callback)</i>, but copies the pixels to a heap buffer (in native byte order), which
+     * completes the returned future. The future is cancelled when this service is destroyed before then.
+     */
+    public CompletableFuture<ByteBuffer> readImage(
+            CommandRecorder recorder, long vkImage, int aspectMask, int width, int height, int bytesPerPixel,
+            TimelineInstant completion
+    ) {
+        var future = new CompletableFuture<ByteBuffer>();
+        readImage(recorder, vkImage, aspectMask, width, height, bytesPerPixel, completion, copyInto(future));
+        return future;
+    }
+
+    private Consumer<ByteBuffer> copyInto(CompletableFuture<ByteBuffer> future) {
+        synchronized (this) {
+            pendingFutures.add(future);
+        }
+        return mapped -> {
+            var copy = ByteBuffer.allocate(mapped.remaining()).order(ByteOrder.nativeOrder());
+            copy.put(mapped).flip();
+            synchronized (this) {
+                pendingFutures.remove(future);
+            }
+            future.complete(copy);
+        };
+    }
+
+    /**
+     * @return The current number of host buffers in the pool
+     */
+    public synchronized int getNumBuffers() {
+        return arenas.size();
+    }
+
+    /**
+     * Destroys all host buffers, and cancels the futures that haven't been completed yet. The GPU must have finished
+     * all copies, and the completion service must not run any more callbacks of this service (e.g. because it has
+     * been destroyed first).
+     */
+    public void destroy() {
+        synchronized (this) {
+            destroyed = true;
+            for (var future : pendingFutures) future.cancel(false);
+            pendingFutures.clear();
+        }
+        for (var arena : arenas) arena.buffer.destroy(instance.vmaAllocator());
+        arenas.clear();
+    }
+
+    private static class Arena {
+
+        final MappedVmaBuffer buffer;
+        long offset;
+        int pendingReads;
+
+        Arena(MappedVmaBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private record Slot(Arena arena, long offset, long size) {}
+}
@@ -16,7 +16,7 @@ import static org.lwjgl.vulkan.VK10.VK_QUEUE_GRAPHICS_BIT;
 
 class BasicDeviceFilter {
 
-    private static Set<String> getSupportedDeviceExtensions(VkPhysicalDevice vkPhysicalDevice) {
+    static Set<String> getSupportedDeviceExtensions(VkPhysicalDevice vkPhysicalDevice) {
         try (var stack = stackPush()) {
             var pNumExtensions = stack.callocInt(1);
             assertVkSuccess(vkEnumerateDeviceExtensionProperties(
@@ -40,13 +40,9 @@ class BasicDeviceFilter {
         }
     }
 
-    private static boolean supportsRequiredFeatures(VkPhysicalDevice device, BoilerBuilder builder) {
+    private static boolean supportsRequiredFeatures(DeviceCapabilities.Device capabilities, BoilerBuilder builder) {
         try (var stack = stackPush()) {
-            var supportedFeatures = SupportedFeatures.query(
-                    stack, device, builder.apiVersion,
-                    !builder.vkRequiredFeatures10.isEmpty(), !builder.vkRequiredFeatures11.isEmpty(),
-                    !builder.vkRequiredFeatures12.isEmpty(), !builder.vkRequiredFeatures13.isEmpty()
-            );
+            var supportedFeatures = capabilities.features(stack);
             if (!builder.vkRequiredFeatures10.stream().allMatch(required -> required.supportsRequiredFeatures(supportedFeatures.features10()))) {
                 return false;
             }
@@ -61,7 +57,7 @@ class BasicDeviceFilter {
     }
 
     static VkPhysicalDevice[] getCandidates(
-            BoilerBuilder builder, VkInstance vkInstance,
+            BoilerBuilder builder, VkInstance vkInstance, DeviceCapabilities deviceCapabilities,
             long[] windowSurfaces, boolean printRejectionInfo
     ) {
         try (var stack = stackPush()) {
@@ -102,7 +98,8 @@ class BasicDeviceFilter {
                     continue;
                 }
 
-                if (!supportsRequiredFeatures(device, builder)) {
+                var capabilities = deviceCapabilities.get(stack, device, properties);
+                if (!supportsRequiredFeatures(capabilities, builder)) {
                     if (printRejectionInfo) {
                         System.out.println("BasicDeviceFilter: rejected " + properties.deviceNameString() +
                                 " because it doesn't support the required features");
@@ -110,7 +107,7 @@ class BasicDeviceFilter {
                     continue;
                 }
 
-                var supportedExtensions = getSupportedDeviceExtensions(device);
+                var supportedExtensions = capabilities.extensions();
                 for (String extension : builder.requiredVulkanDeviceExtensions) {
                     if (!supportedExtensions.contains(extension)) {
                         if (printRejectionInfo) {
@@ -124,11 +121,8 @@ class BasicDeviceFilter {
                 boolean hasPresentQueueFamily = false;
                 boolean hasGraphicsQueueFamily = false;
 
-                var pNumQueueFamilies = stack.callocInt(1);
-                vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, null);
-                int numQueueFamilies = pNumQueueFamilies.get(0);
-                var pQueueFamilies = VkQueueFamilyProperties.calloc(numQueueFamilies, stack);
-                vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, pQueueFamilies);
+                var pQueueFamilies = capabilities.queueFamilies(stack);
+                int numQueueFamilies = pQueueFamilies.capacity();
 
                 var pPresentSupport = stack.callocInt(1);
                 for (int queueFamilyIndex = 0; queueFamilyIndex < numQueueFamilies; queueFamilyIndex++) {
@@ -10,34 +10,48 @@ import com.github.knokko.boiler.builder.xr.BoilerXrBuilder;
 import com.github.knokko.boiler.debug.ValidationException;
 import com.github.knokko.boiler.exceptions.*;
 import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.pipelines.PersistentPipelineCache;
 import com.github.knokko.boiler.surface.WindowSurface;
 import com.github.knokko.boiler.swapchain.SwapchainSettings;
 import com.github.knokko.boiler.util.CollectionHelper;
 import com.github.knokko.boiler.xr.XrBoiler;
 import org.lwjgl.vulkan.*;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 
 import static com.github.knokko.boiler.builder.BoilerSwapchainBuilder.createSurface;
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static com.github.knokko.boiler.util.CollectionHelper.decodeStringSet;
+import static com.github.knokko.boiler.util.CollectionHelper.encodeStringSet;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.glfw.GLFWVulkan.*;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.memUTF8;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState.VK_EXT_EXTENDED_DYNAMIC_STATE_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState2.VK_EXT_EXTENDED_DYNAMIC_STATE_2_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState3.VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTMemoryBudget.VK_EXT_MEMORY_BUDGET_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTSurfaceMaintenance1.VK_EXT_SURFACE_MAINTENANCE_1_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTSwapchainMaintenance1.VK_EXT_SWAPCHAIN_MAINTENANCE_1_EXTENSION_NAME;
 import static org.lwjgl.vulkan.EXTValidationFeatures.*;
+import static org.lwjgl.vulkan.GOOGLEDisplayTiming.VK_GOOGLE_DISPLAY_TIMING_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRBindMemory2.VK_KHR_BIND_MEMORY_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRDedicatedAllocation.VK_KHR_DEDICATED_ALLOCATION_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRDynamicRendering.VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRGetMemoryRequirements2.VK_KHR_GET_MEMORY_REQUIREMENTS_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.vkGetPhysicalDeviceFeatures2KHR;
 import static org.lwjgl.vulkan.KHRGetSurfaceCapabilities2.VK_KHR_GET_SURFACE_CAPABILITIES_2_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRPipelineLibrary.VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRPortabilityEnumeration.VK_KHR_PORTABILITY_ENUMERATION_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRPresentId.VK_KHR_PRESENT_ID_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRPresentWait.VK_KHR_PRESENT_WAIT_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
 import static org.lwjgl.vulkan.VK11.VK_API_VERSION_1_1;
@@ -96,6 +110,7 @@ public class BoilerBuilder {
     );
     VkDeviceCreator vkDeviceCreator = DEFAULT_VK_DEVICE_CREATOR;
     Collection<PreVkDeviceCreator> preDeviceCreators = new ArrayList<>();
+    Collection<PreVmaAllocatorCreator> preVmaAllocatorCreators = new ArrayList<>();
 
     Collection<FeaturePicker10> vkDeviceFeaturePicker10 = new ArrayList<>();
     Collection<FeaturePicker11> vkDeviceFeaturePicker11 = new ArrayList<>();
@@ -113,6 +128,12 @@ public class BoilerBuilder {
 
     QueueFamilyMapper queueFamilyMapper = new MinimalQueueFamilyMapper();
 
+    Path pipelineCacheFile;
+    Path deviceCapabilityCacheFile;
+
+    final Collection<Consumer<StartupReport>> startupReportListeners = new ArrayList<>();
+    StartupTimer startupTimer;
+
     private boolean didBuild = false;
 
     public BoilerBuilder(int apiVersion, String applicationName, int applicationVersion) {
@@ -277,6 +298,26 @@ public class BoilerBuilder {
         return this;
     }
 
+    /**
+     * Registers a callback that can modify the <i>VmaAllocatorCreateInfo</i> right before the VMA allocator is
+     * created, for instance to change its flags or <i>pHeapSizeLimit</i>. The flags for the enabled
+     * dedicated allocation, bind memory 2, memory budget, and buffer device address functionality are already set.
+     */
+    public BoilerBuilder beforeVmaAllocatorCreation(PreVmaAllocatorCreator preCreator) {
+        this.preVmaAllocatorCreators.add(preCreator);
+        return this;
+    }
+
+    /**
+     * Sets the <i>preferredLargeHeapBlockSize</i> of the VMA allocator, which is the size of the
+     * <i>VkDeviceMemory</i> blocks that VMA allocates from large heaps (256 MiB by default)
+     */
+    public BoilerBuilder vmaPreferredLargeHeapBlockSize(long blockSize) {
+        return beforeVmaAllocatorCreation(
+                (ciAllocator, deviceExtensions, physicalDevice, stack) -> ciAllocator.preferredLargeHeapBlockSize(blockSize)
+        );
+    }
+
     public BoilerBuilder queueFamilyMapper(QueueFamilyMapper mapper) {
         this.queueFamilyMapper = mapper;
         return this;
@@ -348,51 +389,192 @@ public class BoilerBuilder {
         return this;
     }
 
+    /**
+     * Requires support for dynamic rendering (<i>vkCmdBeginRendering</i>), and enables it. On Vulkan 1.3, this uses
+     * the <i>dynamicRendering</i> feature, otherwise the VK_KHR_dynamic_rendering extension. This requires at least
+     * Vulkan 1.2.
+     */
+    public BoilerBuilder dynamicRendering() {
+        checkApiVersion(VK_API_VERSION_1_2);
+        if (VK_API_VERSION_MINOR(apiVersion) >= 3 || VK_API_VERSION_MAJOR(apiVersion) > 1) {
+            this.requiredFeatures13(VkPhysicalDeviceVulkan13Features::dynamicRendering);
+            this.featurePicker13((stack, supported, toEnable) -> toEnable.dynamicRendering(true));
+        } else {
+            this.requiredVulkanDeviceExtensions.add(VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME);
+            this.beforeDeviceCreation((ciDevice, instanceExtensions, physicalDevice, stack) -> {
+                var dynamicRendering = VkPhysicalDeviceDynamicRenderingFeaturesKHR.calloc(stack);
+                dynamicRendering.sType$Default();
+                dynamicRendering.dynamicRendering(true);
+                ciDevice.pNext(dynamicRendering);
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Enables VK_EXT_graphics_pipeline_library (and VK_KHR_pipeline_library) when the physical device supports its
+     * <i>graphicsPipelineLibrary</i> feature, see <i>GraphicsPipelineLibraries</i>. When the feature is not supported,
+     * both extensions stay disabled, and <i>BoilerPipelines.hasGraphicsPipelineLibrary</i> will be false.
+     */
+    public BoilerBuilder graphicsPipelineLibrary() {
+        // Querying the feature requires vkGetPhysicalDeviceFeatures2
+        if (apiVersion == VK_API_VERSION_1_0) {
+            this.desiredVulkanInstanceExtensions.add(VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME);
+        }
+        this.desiredVulkanDeviceExtensions.add(VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME);
+        this.desiredVulkanDeviceExtensions.add(VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME);
+        this.beforeDeviceCreation((ciDevice, instanceExtensions, physicalDevice, stack) -> {
+            Set<String> deviceExtensions = decodeStringSet(ciDevice.ppEnabledExtensionNames());
+            if (!deviceExtensions.contains(VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME)) return;
+
+            var libraryFeatures = VkPhysicalDeviceGraphicsPipelineLibraryFeaturesEXT.calloc(stack);
+            libraryFeatures.sType$Default();
+
+            var features = VkPhysicalDeviceFeatures2.calloc(stack);
+            features.sType$Default();
+            features.pNext(libraryFeatures);
+
+            if (apiVersion != VK_API_VERSION_1_0) {
+                vkGetPhysicalDeviceFeatures2(physicalDevice, features);
+            } else if (instanceExtensions.contains(VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME)) {
+                vkGetPhysicalDeviceFeatures2KHR(physicalDevice, features);
+            }
+
+            if (libraryFeatures.graphicsPipelineLibrary()) {
+                ciDevice.pNext(libraryFeatures);
+            } else {
+                deviceExtensions.remove(VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME);
+                if (!requiredVulkanDeviceExtensions.contains(VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME)) {
+                    deviceExtensions.remove(VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME);
+                }
+                ciDevice.ppEnabledExtensionNames(encodeStringSet(deviceExtensions, stack));
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Enables VK_EXT_extended_dynamic_state, VK_EXT_extended_dynamic_state2, and VK_EXT_extended_dynamic_state3
+     * (when supported by the physical device), along with all their features that are supported. Note that most
+     * functionality of the first 2 extensions is core in Vulkan 1.3. The dynamic states can be set using
+     * <i>CommandRecorder</i>. This requires at least Vulkan 1.1.
+     */
+    public BoilerBuilder extendedDynamicState() {
+        checkApiVersion(VK_API_VERSION_1_1);
+        this.desiredVulkanDeviceExtensions.add(VK_EXT_EXTENDED_DYNAMIC_STATE_EXTENSION_NAME);
+        this.desiredVulkanDeviceExtensions.add(VK_EXT_EXTENDED_DYNAMIC_STATE_2_EXTENSION_NAME);
+        this.desiredVulkanDeviceExtensions.add(VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME);
+        this.beforeDeviceCreation((ciDevice, instanceExtensions, physicalDevice, stack) -> {
+            Set<String> deviceExtensions = decodeStringSet(ciDevice.ppEnabledExtensionNames());
+
+            var dynamicState1 = VkPhysicalDeviceExtendedDynamicStateFeaturesEXT.calloc(stack);
+            dynamicState1.sType$Default();
+            var dynamicState2 = VkPhysicalDeviceExtendedDynamicState2FeaturesEXT.calloc(stack);
+            dynamicState2.sType$Default();
+            var dynamicState3 = VkPhysicalDeviceExtendedDynamicState3FeaturesEXT.calloc(stack);
+            dynamicState3.sType$Default();
+
+            var features = VkPhysicalDeviceFeatures2.calloc(stack);
+            features.sType$Default();
+            features.pNext(dynamicState1);
+            features.pNext(dynamicState2);
+            features.pNext(dynamicState3);
+            vkGetPhysicalDeviceFeatures2(physicalDevice, features);
+
+            // The queried structs contain exactly the supported features, so they can be chained directly
+            if (deviceExtensions.contains(VK_EXT_EXTENDED_DYNAMIC_STATE_EXTENSION_NAME)) {
+                ciDevice.pNext(dynamicState1);
+            }
+            if (deviceExtensions.contains(VK_EXT_EXTENDED_DYNAMIC_STATE_2_EXTENSION_NAME)) {
+                ciDevice.pNext(dynamicState2);
+            }
+            if (deviceExtensions.contains(VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME)) {
+                ciDevice.pNext(dynamicState3);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Stores the supported extensions, features, and queue families of the physical devices in <i>file</i>, and uses
+     * them during the device selection of later launches, rather than querying them again. The capabilities of a
+     * physical device are only queried again when its driver version or pipeline cache UUID changes (or when a
+     * different API version is requested). A corrupted or unreadable file is treated like a missing file, and a failure
+     * to write the file is printed, but never prevents <i>build()</i> from succeeding.
+     */
+    public BoilerBuilder deviceCapabilityCache(Path file) {
+        this.deviceCapabilityCacheFile = file;
+        return this;
+    }
+
+    /**
+     * Registers a listener that will receive the timing of the phases of <i>build()</i>, after it has finished.
+     */
+    public BoilerBuilder startupReport(Consumer<StartupReport> listener) {
+        this.startupReportListeners.add(listener);
+        return this;
+    }
+
+    private static void runOnStartupThread(Runnable task) {
+        var thread = new Thread(task, "BoilerBuilder-Startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Loads the pipeline cache of <i>boiler.pipelines</i> from the given file (when it exists and was created by the
+     * same driver and device), and saves it to that file during <i>destroyInitialObjects()</i>.
+     */
+    public BoilerBuilder pipelineCache(Path file) {
+        this.pipelineCacheFile = file;
+        return this;
+    }
+
+    /**
+     * Creates the <i>BoilerInstance</i>. Note that this creates the <i>VkInstance</i> on a background thread while it
+     * creates the windows, so the <i>PreVkInstanceCreator</i>s and the <i>VkInstanceCreator</i> will be called on that
+     * thread.
+     */
     public BoilerInstance build() throws GLFWFailureException, VulkanFailureException, MissingVulkanLayerException,
             MissingVulkanExtensionException, NoVkPhysicalDeviceException {
         if (didBuild) throw new IllegalStateException("This builder has been used already");
         didBuild = true;
 
-        var windowCount = windowsRegistrations.size();
-        windows = new long[windowCount];
-        for (int i = 0; i < windowCount; i++) {
-            var windowRegistration = windowsRegistrations.get(i);
-            var window = windowRegistration.window();
-            var windowWidth = windowRegistration.width();
-            var windowHeight = windowRegistration.height();
-
-            if (window == 0L && windowWidth != 0 && windowHeight != 0) {
-                if (initGLFW && !glfwInit()) {
-                    throw new GLFWFailureException("glfwInit() returned false");
-                }
-                initGLFW = false;
-                glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
-                window = glfwCreateWindow(windowWidth, windowHeight, applicationName, 0L, 0L);
-                if (window == 0) {
-                    try (var stack = stackPush()) {
-                        var pError = stack.callocPointer(1);
-                        int errorCode = glfwGetError(pError);
-                        if (errorCode == GLFW_NO_ERROR) {
-                            throw new GLFWFailureException("glfwCreateWindow() returned 0");
-                        } else {
-                            throw new GLFWFailureException("glfwCreateWindow() returned 0 and glfwGetError() returned " + errorCode + " because: " + memUTF8(pError.get()));
-                        }
-                    }
+        startupTimer = new StartupTimer();
+        CompletableFuture<byte[]> pipelineCacheContent = null;
+        if (pipelineCacheFile != null) {
+            // Reading the pipeline cache file is independent of everything else, so start it right away
+            pipelineCacheContent = CompletableFuture.supplyAsync(() -> {
+                long beginTime = startupTimer.begin();
+                try {
+                    return PersistentPipelineCache.readFile(pipelineCacheFile);
+                } finally {
+                    startupTimer.end("Read pipeline cache file", beginTime);
                 }
-            }
-            windows[i] = window;
+            }, BoilerBuilder::runOnStartupThread);
         }
 
-        boolean[] pHasSwapchainMaintenance = { false };
+        var windowCount = windowsRegistrations.size();
+        windows = new long[windowCount];
 
         boolean hasNonEmptyWindow = false;
-        for (int i = 0; i < windowCount; i++) {
-            if (windows[i] != 0L) {
-                hasNonEmptyWindow = true;
-                break;
-            }
+        boolean createsWindows = false;
+        for (var registration : windowsRegistrations) {
+            boolean createsWindow = registration.window() == 0L && registration.width() != 0 && registration.height() != 0;
+            if (createsWindow) createsWindows = true;
+            if (registration.window() != 0L || createsWindow) hasNonEmptyWindow = true;
+        }
+
+        if (createsWindows && initGLFW) {
+            long beginTime = startupTimer.begin();
+            if (!glfwInit()) throw new GLFWFailureException("glfwInit() returned false");
+            initGLFW = false;
+            startupTimer.end("glfwInit", beginTime);
         }
 
+        boolean[] pHasSwapchainMaintenance = { false };
+        boolean[] pHasPresentWait = { false };
+
         if (hasNonEmptyWindow) {
             if (!glfwVulkanSupported()) throw new GLFWFailureException("glfwVulkanSupported() returned false");
             var glfwExtensions = glfwGetRequiredInstanceExtensions();
@@ -402,6 +584,9 @@ public class BoilerBuilder {
             }
             this.requiredVulkanDeviceExtensions.add(VK_KHR_SWAPCHAIN_EXTENSION_NAME);
             this.desiredVulkanDeviceExtensions.add(VK_EXT_SWAPCHAIN_MAINTENANCE_1_EXTENSION_NAME);
+            this.desiredVulkanDeviceExtensions.add(VK_GOOGLE_DISPLAY_TIMING_EXTENSION_NAME);
+            this.desiredVulkanDeviceExtensions.add(VK_KHR_PRESENT_ID_EXTENSION_NAME);
+            this.desiredVulkanDeviceExtensions.add(VK_KHR_PRESENT_WAIT_EXTENSION_NAME);
             this.desiredVulkanInstanceExtensions.add(VK_EXT_SURFACE_MAINTENANCE_1_EXTENSION_NAME);
             this.desiredVulkanInstanceExtensions.add(VK_KHR_GET_SURFACE_CAPABILITIES_2_EXTENSION_NAME);
             if (apiVersion == VK_API_VERSION_1_0) {
@@ -431,15 +616,46 @@ public class BoilerBuilder {
                     }
                 }
             });
+
+            this.beforeDeviceCreation((ciDevice, instanceExtensions, physicalDevice, stack) -> {
+                Set<String> deviceExtensions = decodeStringSet(ciDevice.ppEnabledExtensionNames());
+                if (deviceExtensions.contains(VK_KHR_PRESENT_ID_EXTENSION_NAME) && deviceExtensions.contains(VK_KHR_PRESENT_WAIT_EXTENSION_NAME)) {
+                    var presentIdFeatures = VkPhysicalDevicePresentIdFeaturesKHR.calloc(stack);
+                    presentIdFeatures.sType$Default();
+
+                    var presentWaitFeatures = VkPhysicalDevicePresentWaitFeaturesKHR.calloc(stack);
+                    presentWaitFeatures.sType$Default();
+
+                    var features = VkPhysicalDeviceFeatures2.calloc(stack);
+                    features.sType$Default();
+                    features.pNext(presentIdFeatures);
+                    features.pNext(presentWaitFeatures);
+
+                    if (apiVersion != VK_API_VERSION_1_0) {
+                        vkGetPhysicalDeviceFeatures2(physicalDevice, features);
+                    }
+                    if (instanceExtensions.contains(VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME)) {
+                        vkGetPhysicalDeviceFeatures2KHR(physicalDevice, features);
+                    }
+
+                    if (presentIdFeatures.presentId() && presentWaitFeatures.presentWait()) {
+                        ciDevice.pNext(presentIdFeatures);
+                        ciDevice.pNext(presentWaitFeatures);
+                        pHasPresentWait[0] = true;
+                    }
+                }
+            });
         }
 
         XrBoiler xr = null;
 
         if (xrBuilder != null) {
+            long beginTime = startupTimer.begin();
             xr = xrBuilder.build(
                     this, validationFeatures != null, apiVersion,
                     applicationName, applicationVersion, engineName, engineVersion
             );
+            startupTimer.end("OpenXR initialization", beginTime);
         }
 
         // Nice for VMA
@@ -457,9 +673,56 @@ public class BoilerBuilder {
             this.requiredVulkanLayers.add("VK_LAYER_KHRONOS_validation");
         }
 
-        var instanceResult = BoilerInstanceBuilder.createInstance(this);
+        // The VkInstance doesn't depend on the windows, so create it while the windows are being created
+        var instanceFuture = CompletableFuture.supplyAsync(() -> {
+            long beginTime = startupTimer.begin();
+            var result = BoilerInstanceBuilder.createInstance(this);
+            startupTimer.end("Instance creation", beginTime);
+            return result;
+        }, BoilerBuilder::runOnStartupThread);
+
+        long windowsBeginTime = startupTimer.begin();
+        try {
+            for (int i = 0; i < windowCount; i++) {
+                var windowRegistration = windowsRegistrations.get(i);
+                var window = windowRegistration.window();
+                var windowWidth = windowRegistration.width();
+                var windowHeight = windowRegistration.height();
+
+                if (window == 0L && windowWidth != 0 && windowHeight != 0) {
+                    glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
+                    window = glfwCreateWindow(windowWidth, windowHeight, applicationName, 0L, 0L);
+                    if (window == 0) {
+                        try (var stack = stackPush()) {
+                            var pError = stack.callocPointer(1);
+                            int errorCode = glfwGetError(pError);
+                            if (errorCode == GLFW_NO_ERROR) {
+                                throw new GLFWFailureException("glfwCreateWindow() returned 0");
+                            } else {
+                                throw new GLFWFailureException("glfwCreateWindow() returned 0 and glfwGetError() returned " + errorCode + " because: " + memUTF8(pError.get()));
+                            }
+                        }
+                    }
+                }
+                windows[i] = window;
+            }
+        } catch (RuntimeException failedToCreateWindow) {
+            instanceFuture.thenAccept(result -> vkDestroyInstance(result.vkInstance(), null));
+            throw failedToCreateWindow;
+        }
+        if (createsWindows) startupTimer.end("Window creation", windowsBeginTime);
+
+        BoilerInstanceBuilder.Result instanceResult;
+        try {
+            instanceResult = instanceFuture.join();
+        } catch (CompletionException failedToCreateInstance) {
+            if (failedToCreateInstance.getCause() instanceof RuntimeException cause) throw cause;
+            if (failedToCreateInstance.getCause() instanceof Error cause) throw cause;
+            throw failedToCreateInstance;
+        }
         var deviceResult = BoilerDeviceBuilder.createDevice(this, instanceResult);
 
+        long swapchainSettingsBeginTime = startupTimer.begin();
         var windowSurfaces = new WindowSurface[windowCount];
         for (int i = 0; i < windowCount; i++) {
             var deviceSurface = deviceResult.windowSurfaces()[i];
@@ -470,9 +733,11 @@ public class BoilerBuilder {
         for (int i = 0; i < windowCount; i++) {
             swapchainSettingsArr[i] = windowSurfaces[i] != null ? windowsRegistrations.get(i).swapchainBuilder().chooseSwapchainSettings(windowSurfaces[i]) : null;
         }
+        if (windowCount > 0) startupTimer.end("Surface capabilities and swapchain settings", swapchainSettingsBeginTime);
 
         long validationErrorThrower = 0;
         if (forbidValidationErrors) {
+            long beginTime = startupTimer.begin();
             if (!instanceResult.enabledExtensions().contains(VK_EXT_DEBUG_UTILS_EXTENSION_NAME)) {
                 throw new ValidationException("Debug utils extension is not enabled");
             }
@@ -496,15 +761,29 @@ public class BoilerBuilder {
                 ), "CreateDebugUtilsMessengerEXT", "Validation error thrower");
                 validationErrorThrower = pReporter.get(0);
             }
+            startupTimer.end("Validation error thrower creation", beginTime);
         }
 
+        long instanceBeginTime = startupTimer.begin();
         var instance = new BoilerInstance(
-                windows, windowSurfaces, swapchainSettingsArr, pHasSwapchainMaintenance[0], xr, defaultTimeout,
+                windows, windowSurfaces, swapchainSettingsArr, pHasSwapchainMaintenance[0], pHasPresentWait[0],
+                xr, defaultTimeout,
                 instanceResult.vkInstance(), deviceResult.vkPhysicalDevice(), deviceResult.vkDevice(),
                 instanceResult.enabledExtensions(), deviceResult.enabledExtensions(),
                 deviceResult.queueFamilies(), deviceResult.vmaAllocator(), validationErrorThrower
         );
         if (xr != null) xr.boiler = instance;
+        startupTimer.end("BoilerInstance construction", instanceBeginTime);
+
+        if (pipelineCacheContent != null) {
+            long beginTime = startupTimer.begin();
+            instance.pipelines.setPipelineCacheFile(pipelineCacheFile, pipelineCacheContent.join());
+            instance.pipelines.pipelineCache();
+            startupTimer.end("Pipeline cache creation", beginTime);
+        }
+
+        var report = startupTimer.finish();
+        for (var listener : startupReportListeners) listener.accept(report);
         return instance;
     }
 }
@@ -10,7 +10,6 @@ import org.lwjgl.util.vma.VmaAllocatorCreateInfo;
 import org.lwjgl.util.vma.VmaVulkanFunctions;
 import org.lwjgl.vulkan.*;
 
-import java.nio.ByteBuffer;
 import java.util.*;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
@@ -36,6 +35,10 @@ class BoilerDeviceBuilder {
         QueueFamilies queueFamilies;
         long vmaAllocator;
 
+        var deviceCapabilities = DeviceCapabilities.load(builder.deviceCapabilityCacheFile, builder.apiVersion);
+        DeviceCapabilities.Device capabilities;
+
+        long selectionBeginTime = builder.startupTimer.begin();
         try (var stack = stackPush()) {
             var pSurface = stack.callocLong(1);
             for (int i = 0; i < windowCount; i++) {
@@ -48,7 +51,8 @@ class BoilerDeviceBuilder {
             }
 
             VkPhysicalDevice[] candidateDevices = BasicDeviceFilter.getCandidates(
-                    builder, instanceResult.vkInstance(), windowSurfaces, builder.printDeviceRejectionInfo
+                    builder, instanceResult.vkInstance(), deviceCapabilities,
+                    windowSurfaces, builder.printDeviceRejectionInfo
             );
             if (candidateDevices.length == 0) throw new NoVkPhysicalDeviceException();
 
@@ -56,36 +60,25 @@ class BoilerDeviceBuilder {
                     stack, candidateDevices, instanceResult.vkInstance()
             );
             if (vkPhysicalDevice == null) throw new NoVkPhysicalDeviceException();
+            capabilities = deviceCapabilities.get(stack, vkPhysicalDevice);
         }
-
-        try (var stack = stackPush()) {
-            var pNumSupportedExtensions = stack.callocInt(1);
-            assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-                    vkPhysicalDevice, (ByteBuffer) null, pNumSupportedExtensions, null
-            ), "EnumerateDeviceExtensionProperties", "BoilerDeviceBuilder count");
-            int numSupportedExtensions = pNumSupportedExtensions.get(0);
-
-            var pSupportedExtensions = VkExtensionProperties.calloc(numSupportedExtensions, stack);
-            assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-                    vkPhysicalDevice, (ByteBuffer) null, pNumSupportedExtensions, pSupportedExtensions
-            ), "EnumerateDeviceExtensionProperties", "BoilerDeviceBuilder extensions");
-
-            Set<String> supportedExtensions = new HashSet<>(numSupportedExtensions);
-            for (int index = 0; index < numSupportedExtensions; index++) {
-                supportedExtensions.add(pSupportedExtensions.get(index).extensionNameString());
-            }
-            for (var extension : builder.requiredVulkanDeviceExtensions) {
-                if (!supportedExtensions.contains(extension)) {
-                    // This is a programming error because the physical device selector must not choose physical
-                    // devices that don't support all required extensions
-                    throw new Error("Chosen device doesn't support required extension " + extension);
-                }
+        if (builder.deviceCapabilityCacheFile != null) {
+            deviceCapabilities.saveIfChanged(builder.deviceCapabilityCacheFile);
+        }
+        builder.startupTimer.end("Surface creation and physical device selection", selectionBeginTime);
+
+        var supportedExtensions = capabilities.extensions();
+        for (var extension : builder.requiredVulkanDeviceExtensions) {
+            if (!supportedExtensions.contains(extension)) {
+                // This is a programming error because the physical device selector must not choose physical
+                // devices that don't support all required extensions
+                throw new Error("Chosen device doesn't support required extension " + extension);
             }
+        }
 
-            enabledExtensions = new HashSet<>(builder.requiredVulkanDeviceExtensions);
-            for (var extension : builder.desiredVulkanDeviceExtensions) {
-                if (supportedExtensions.contains(extension)) enabledExtensions.add(extension);
-            }
+        enabledExtensions = new HashSet<>(builder.requiredVulkanDeviceExtensions);
+        for (var extension : builder.desiredVulkanDeviceExtensions) {
+            if (supportedExtensions.contains(extension)) enabledExtensions.add(extension);
         }
 
         try (var stack = stackPush()) {
@@ -93,15 +86,12 @@ class BoilerDeviceBuilder {
                 throw new UnsupportedOperationException("Unknown api major version: " + VK_API_VERSION_MAJOR(builder.apiVersion));
             }
 
-            var supportedFeatures = SupportedFeatures.query(
-                    stack, vkPhysicalDevice, builder.apiVersion,
-                    !builder.vkDeviceFeaturePicker10.isEmpty(), !builder.vkDeviceFeaturePicker11.isEmpty(),
-                    !builder.vkDeviceFeaturePicker12.isEmpty(), !builder.vkDeviceFeaturePicker13.isEmpty()
-            );
+            var supportedFeatures = capabilities.features(stack);
 
             int minorVersion = VK_API_VERSION_MINOR(builder.apiVersion);
             VkPhysicalDeviceFeatures enabledFeatures10;
             VkPhysicalDeviceFeatures2 enabledFeatures2 = null;
+            boolean enabledBufferDeviceAddress = false;
             if (minorVersion == 0) {
                 enabledFeatures10 = VkPhysicalDeviceFeatures.calloc(stack);
                 for (var featurePicker : builder.vkDeviceFeaturePicker10) {
@@ -130,6 +120,7 @@ class BoilerDeviceBuilder {
                         picker.enableFeatures(stack, supportedFeatures.features12(), enabledFeatures12);
                     }
                     enabledFeatures2.pNext(enabledFeatures12);
+                    enabledBufferDeviceAddress = enabledFeatures12.bufferDeviceAddress();
                 }
                 if (!builder.vkDeviceFeaturePicker13.isEmpty()) {
                     var enabledFeatures13 = VkPhysicalDeviceVulkan13Features.calloc(stack);
@@ -141,11 +132,8 @@ class BoilerDeviceBuilder {
                 }
             }
 
-            var pNumQueueFamilies = stack.callocInt(1);
-            vkGetPhysicalDeviceQueueFamilyProperties(vkPhysicalDevice, pNumQueueFamilies, null);
-            int numQueueFamilies = pNumQueueFamilies.get(0);
-            var pQueueFamilies = VkQueueFamilyProperties.calloc(numQueueFamilies, stack);
-            vkGetPhysicalDeviceQueueFamilyProperties(vkPhysicalDevice, pNumQueueFamilies, pQueueFamilies);
+            var pQueueFamilies = capabilities.queueFamilies(stack);
+            int numQueueFamilies = pQueueFamilies.capacity();
 
             boolean[] queueFamilyPresentSupport = new boolean[numQueueFamilies];
             var pPresentSupport = stack.callocInt(1);
@@ -208,9 +196,14 @@ class BoilerDeviceBuilder {
                 preCreator.beforeDeviceCreation(ciDevice, instanceResult.enabledExtensions(), vkPhysicalDevice, stack);
             }
 
+            // The pre-device creators may have disabled some extensions
+            enabledExtensions = CollectionHelper.decodeStringSet(ciDevice.ppEnabledExtensionNames());
+
+            long deviceBeginTime = builder.startupTimer.begin();
             vkDevice = builder.vkDeviceCreator.vkCreateDevice(
                     ciDevice, instanceResult.enabledExtensions(), vkPhysicalDevice, stack
             );
+            builder.startupTimer.end("Device creation", deviceBeginTime);
 
             var queueFamilyMap = new HashMap<Integer, QueueFamily>();
             for (var entry : uniqueQueueFamilies.entrySet()) {
@@ -232,6 +225,7 @@ class BoilerDeviceBuilder {
             vmaVulkanFunctions.set(instanceResult.vkInstance(), vkDevice);
 
             int vmaFlags = getVmaFlags(enabledExtensions);
+            if (enabledBufferDeviceAddress) vmaFlags |= VMA_ALLOCATOR_CREATE_BUFFER_DEVICE_ADDRESS_BIT;
 
             var ciAllocator = VmaAllocatorCreateInfo.calloc(stack);
             ciAllocator.flags(vmaFlags);
@@ -241,12 +235,18 @@ class BoilerDeviceBuilder {
             ciAllocator.pVulkanFunctions(vmaVulkanFunctions);
             ciAllocator.vulkanApiVersion(builder.apiVersion);
 
+            for (var preCreator : builder.preVmaAllocatorCreators) {
+                preCreator.beforeAllocatorCreation(ciAllocator, enabledExtensions, vkPhysicalDevice, stack);
+            }
+
             var pAllocator = stack.callocPointer(1);
 
+            long allocatorBeginTime = builder.startupTimer.begin();
             assertVmaSuccess(vmaCreateAllocator(
                     ciAllocator, pAllocator
             ), "CreateAllocator", "BoilerDeviceBuilder");
             vmaAllocator = pAllocator.get(0);
+            builder.startupTimer.end("VMA allocator creation", allocatorBeginTime);
         }
 
         return new Result(vkPhysicalDevice, vkDevice, enabledExtensions, windowSurfaces, queueFamilies, vmaAllocator);
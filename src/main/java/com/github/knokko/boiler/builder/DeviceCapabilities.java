@@ -0,0 +1,308 @@
+package com.github.knokko.boiler.builder;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.Pointer;
+import org.lwjgl.vulkan.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A snapshot of the capabilities of the physical devices that matter for the device selection of
+ * <i>BoilerBuilder</i>: the supported extensions, features, and queue families. Every device is keyed by its vendor
+ * ID, device ID, driver version, and pipeline cache UUID, so its capabilities are probed again whenever its driver
+ * changes. The snapshot can be saved to a small binary file (see <i>BoilerBuilder.deviceCapabilityCache</i>), such
+ * that later launches don't need to probe devices that were seen before.
+ * <p>
+ * Surface support and <i>ExtraDeviceRequirements</i> are never cached, since they depend on the current windows and
+ * on the application.
+ */
+class DeviceCapabilities {
+
+    private static final int MAGIC = 0x564B4243;
+    private static final int FORMAT_VERSION = 1;
+
+    // Upper bounds that no real snapshot comes close to, to reject corrupted counts and lengths before allocating
+    private static final int MAX_DEVICES = 256;
+    private static final int MAX_EXTENSIONS = 10_000;
+    private static final int MAX_BYTES = 1 << 20;
+
+    /**
+     * @param pipelineCacheUUID The pipeline cache UUID in hexadecimal form
+     */
+    record Key(int vendorID, int deviceID, int driverVersion, String pipelineCacheUUID) {
+
+        static Key of(VkPhysicalDeviceProperties properties) {
+            byte[] uuid = new byte[VK_UUID_SIZE];
+            properties.pipelineCacheUUID().get(properties.pipelineCacheUUID().position(), uuid);
+            return new Key(
+                    properties.vendorID(), properties.deviceID(),
+                    properties.driverVersion(), HexFormat.of().formatHex(uuid)
+            );
+        }
+    }
+
+    /**
+     * The capabilities of a single physical device. The features and queue families are stored as the raw bytes of
+     * their structs. The feature structs are null when they were not queried (because the requested API version is
+     * too low).
+     */
+    record Device(
+            Key key, Set<String> extensions, byte[] features10, byte[] features11,
+            byte[] features12, byte[] features13, byte[] queueFamilies
+    ) {
+
+        static Device probe(MemoryStack stack, VkPhysicalDevice device, Key key, int apiVersion) {
+            var features = SupportedFeatures.query(stack, device, apiVersion, true, true, true, true);
+
+            var pNumQueueFamilies = stack.callocInt(1);
+            vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, null);
+            var pQueueFamilies = VkQueueFamilyProperties.calloc(pNumQueueFamilies.get(0), stack);
+            vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, pQueueFamilies);
+
+            return new Device(
+                    key, Collections.unmodifiableSet(BasicDeviceFilter.getSupportedDeviceExtensions(device)),
+                    toBytes(features.features10(), VkPhysicalDeviceFeatures.SIZEOF),
+                    toBytes(features.features11(), VkPhysicalDeviceVulkan11Features.SIZEOF),
+                    toBytes(features.features12(), VkPhysicalDeviceVulkan12Features.SIZEOF),
+                    toBytes(features.features13(), VkPhysicalDeviceVulkan13Features.SIZEOF),
+                    toBytes(pQueueFamilies, pQueueFamilies.capacity() * VkQueueFamilyProperties.SIZEOF)
+            );
+        }
+
+        /**
+         * Restores the supported features on the stack. The <i>pNext</i> chains of the returned structs are empty.
+         */
+        SupportedFeatures features(MemoryStack stack) {
+            VkPhysicalDeviceFeatures features10 = null;
+            if (this.features10 != null) {
+                features10 = VkPhysicalDeviceFeatures.calloc(stack);
+                fromBytes(features10, this.features10);
+            }
+            VkPhysicalDeviceVulkan11Features features11 = null;
+            if (this.features11 != null) {
+                features11 = VkPhysicalDeviceVulkan11Features.calloc(stack);
+                fromBytes(features11, this.features11);
+                features11.pNext(0L);
+            }
+            VkPhysicalDeviceVulkan12Features features12 = null;
+            if (this.features12 != null) {
+                features12 = VkPhysicalDeviceVulkan12Features.calloc(stack);
+                fromBytes(features12, this.features12);
+                features12.pNext(0L);
+            }
+            VkPhysicalDeviceVulkan13Features features13 = null;
+            if (this.features13 != null) {
+                features13 = VkPhysicalDeviceVulkan13Features.calloc(stack);
+                fromBytes(features13, this.features13);
+                features13.pNext(0L);
+            }
+            return new SupportedFeatures(features10, features11, features12, features13);
+        }
+
+        VkQueueFamilyProperties.Buffer queueFamilies(MemoryStack stack) {
+            var queueFamilies = VkQueueFamilyProperties.calloc(
+                    this.queueFamilies.length / VkQueueFamilyProperties.SIZEOF, stack
+            );
+            memByteBuffer(queueFamilies.address(), this.queueFamilies.length).put(0, this.queueFamilies);
+            return queueFamilies;
+        }
+    }
+
+    private static byte[] toBytes(Pointer struct, int size) {
+        if (struct == null) return null;
+        byte[] bytes = new byte[size];
+        memByteBuffer(struct.address(), size).get(0, bytes);
+        return bytes;
+    }
+
+    private static void fromBytes(Pointer struct, byte[] bytes) {
+        memByteBuffer(struct.address(), bytes.length).put(0, bytes);
+    }
+
+    /**
+     * Loads the snapshot from <i>file</i>. An empty snapshot is returned when <i>file</i> is null, doesn't exist, can't
+     * be read, is corrupted, or was created for a different API version. In all these cases, the capabilities will
+     * simply be probed again, and the file will be overwritten by <i>saveIfChanged</i>.
+     */
+    static DeviceCapabilities load(Path file, int apiVersion) {
+        if (file != null && Files.isRegularFile(file)) {
+            try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                var capabilities = read(input);
+                if (capabilities != null && capabilities.apiVersion == apiVersion) return capabilities;
+            } catch (IOException failedToRead) {
+                // An unreadable snapshot should never prevent the application from starting, so treat it as missing
+            }
+        }
+        return new DeviceCapabilities(apiVersion);
+    }
+
+    /**
+     * @return The snapshot that was written by <i>write</i>, or null if it was written by an incompatible version or
+     * is corrupted (e.g. truncated)
+     */
+    static DeviceCapabilities read(DataInputStream input) throws IOException {
+        try {
+            return readSnapshot(input);
+        } catch (EOFException | StreamCorruptedException | UTFDataFormatException corrupted) {
+            return null;
+        }
+    }
+
+    private static DeviceCapabilities readSnapshot(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return null;
+        var capabilities = new DeviceCapabilities(input.readInt());
+
+        int numDevices = input.readInt();
+        if (numDevices < 0 || numDevices > MAX_DEVICES) return null;
+        for (int deviceIndex = 0; deviceIndex < numDevices; deviceIndex++) {
+            var key = new Key(input.readInt(), input.readInt(), input.readInt(), input.readUTF());
+
+            int numExtensions = input.readInt();
+            if (numExtensions < 0 || numExtensions > MAX_EXTENSIONS) return null;
+            var extensions = new HashSet<String>(numExtensions);
+            for (int index = 0; index < numExtensions; index++) extensions.add(input.readUTF());
+
+            var features10 = readBytes(input);
+            var features11 = readBytes(input);
+            var features12 = readBytes(input);
+            var features13 = readBytes(input);
+            var queueFamilies = readBytes(input);
+
+            // The struct layouts depend on the platform, so a snapshot from another platform must not be used
+            if (!hasSize(features10, VkPhysicalDeviceFeatures.SIZEOF) ||
+                    !hasSize(features11, VkPhysicalDeviceVulkan11Features.SIZEOF) ||
+                    !hasSize(features12, VkPhysicalDeviceVulkan12Features.SIZEOF) ||
+                    !hasSize(features13, VkPhysicalDeviceVulkan13Features.SIZEOF) ||
+                    queueFamilies == null || queueFamilies.length % VkQueueFamilyProperties.SIZEOF != 0
+            ) return null;
+
+            capabilities.devices.put(key, new Device(
+                    key, Collections.unmodifiableSet(extensions),
+                    features10, features11, features12, features13, queueFamilies
+            ));
+        }
+        return capabilities;
+    }
+
+    private static boolean hasSize(byte[] bytes, int size) {
+        return bytes == null || bytes.length == size;
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1) return null;
+        if (length < 0 || length > MAX_BYTES) throw new StreamCorruptedException("Invalid length " + length);
+        byte[] bytes = input.readNBytes(length);
+        if (bytes.length != length) throw new EOFException("Expected " + length + " bytes, but got " + bytes.length);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    final int apiVersion;
+    private final Map<Key, Device> devices = new HashMap<>();
+    private boolean changed;
+
+    /**
+     * @param apiVersion The Vulkan API version that was requested by the <i>BoilerBuilder</i>, which determines which
+     *                   feature structs are queried
+     */
+    DeviceCapabilities(int apiVersion) {
+        this.apiVersion = apiVersion;
+    }
+
+    /**
+     * @return The capabilities of <i>device</i>, which will be probed when the snapshot doesn't contain a device
+     * with the same key
+     */
+    Device get(MemoryStack stack, VkPhysicalDevice device, VkPhysicalDeviceProperties properties) {
+        var key = Key.of(properties);
+        var capabilities = devices.get(key);
+        if (capabilities == null) {
+            capabilities = Device.probe(stack, device, key, apiVersion);
+            devices.put(key, capabilities);
+            changed = true;
+        }
+        return capabilities;
+    }
+
+    Device get(MemoryStack stack, VkPhysicalDevice device) {
+        var properties = VkPhysicalDeviceProperties.calloc(stack);
+        vkGetPhysicalDeviceProperties(device, properties);
+        return get(stack, device, properties);
+    }
+
+    void put(Device device) {
+        devices.put(device.key, device);
+        changed = true;
+    }
+
+    Collection<Device> devices() {
+        return Collections.unmodifiableCollection(devices.values());
+    }
+
+    void write(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(apiVersion);
+        output.writeInt(devices.size());
+        for (var device : devices.values()) {
+            output.writeInt(device.key.vendorID);
+            output.writeInt(device.key.deviceID);
+            output.writeInt(device.key.driverVersion);
+            output.writeUTF(device.key.pipelineCacheUUID);
+
+            output.writeInt(device.extensions.size());
+            for (String extension : device.extensions) output.writeUTF(extension);
+
+            writeBytes(output, device.features10);
+            writeBytes(output, device.features11);
+            writeBytes(output, device.features12);
+            writeBytes(output, device.features13);
+            writeBytes(output, device.queueFamilies);
+        }
+    }
+
+    /**
+     * Writes the snapshot atomically to <i>file</i>, if a device was probed since it was loaded. Like loading, this is
+     * best-effort: when the file can't be written (e.g. because its directory is read-only or the disk is full), the
+     * failure is printed and ignored, since the snapshot will simply be probed again during the next launch.
+     * @return false if the file couldn't be written
+     */
+    boolean saveIfChanged(Path file) {
+        if (!changed) return true;
+        try {
+            var directory = file.toAbsolutePath().getParent();
+            if (directory != null) Files.createDirectories(directory);
+            var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    write(output);
+                }
+                Files.move(tempFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            changed = false;
+            return true;
+        } catch (IOException failedToWrite) {
+            System.out.println("BoilerBuilder: failed to save device capabilities to " + file + ": " + failedToWrite);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.knokko.boiler.builder;
+
+import java.util.List;
+
+/**
+ * The timing of the phases of <i>BoilerBuilder.build()</i>, see <i>BoilerBuilder.startupReport(...)</i>. Some phases
+ * run concurrently on different threads, so the sum of the phase durations can exceed <i>totalNanos</i>.
+ * @param phases The phases, ordered by their start time
+ * @param totalNanos The total duration of <i>build()</i>, in nanoseconds
+ */
+public record StartupReport(List<Phase> phases, long totalNanos) {
+
+    /**
+     * @return The phase with the given name, or null if there is no such phase
+     */
+    public Phase phase(String name) {
+        for (var phase : phases) {
+            if (phase.name.equals(name)) return phase;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        var result = new StringBuilder(String.format("BoilerBuilder.build() took %.2f ms:%n", totalNanos / 1e6));
+        for (var phase : phases) {
+            result.append(String.format(
+                    "  %-45s start %8.2f ms  duration %8.2f ms  [%s]%n", phase.name,
+                    phase.startNanos / 1e6, phase.durationNanos / 1e6, phase.threadName
+            ));
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param startNanos The start time of the phase, relative to the start of <i>build()</i>
+     * @param threadName The name of the thread on which the phase ran
+     */
+    public record Phase(String name, long startNanos, long durationNanos, String threadName) {}
+}
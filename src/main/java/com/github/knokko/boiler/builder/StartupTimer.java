@@ -0,0 +1,33 @@
+package com.github.knokko.boiler.builder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+class StartupTimer {
+
+    private final long startTime = System.nanoTime();
+    private final List<StartupReport.Phase> phases = new ArrayList<>();
+
+    long begin() {
+        return System.nanoTime();
+    }
+
+    void end(String phaseName, long beginTime) {
+        long endTime = System.nanoTime();
+        synchronized (phases) {
+            phases.add(new StartupReport.Phase(
+                    phaseName, beginTime - startTime, endTime - beginTime, Thread.currentThread().getName()
+            ));
+        }
+    }
+
+    StartupReport finish() {
+        long totalNanos = System.nanoTime() - startTime;
+        synchronized (phases) {
+            var sortedPhases = new ArrayList<>(phases);
+            sortedPhases.sort(Comparator.comparingLong(StartupReport.Phase::startNanos));
+            return new StartupReport(List.copyOf(sortedPhases), totalNanos);
+        }
+    }
+}
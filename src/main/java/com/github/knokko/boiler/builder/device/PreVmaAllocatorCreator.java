@@ -0,0 +1,18 @@
+package com.github.knokko.boiler.builder.device;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.VmaAllocatorCreateInfo;
+import org.lwjgl.vulkan.VkPhysicalDevice;
+
+import java.util.Set;
+
+@FunctionalInterface
+public interface PreVmaAllocatorCreator {
+
+    void beforeAllocatorCreation(
+            VmaAllocatorCreateInfo ciAllocator,
+            Set<String> enabledDeviceExtensions,
+            VkPhysicalDevice physicalDevice,
+            MemoryStack stack
+    );
+}
@@ -7,14 +7,44 @@ import org.lwjgl.vulkan.*;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState.VK_EXT_EXTENDED_DYNAMIC_STATE_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState2.VK_EXT_EXTENDED_DYNAMIC_STATE_2_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState3.VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRDynamicRendering.VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class BoilerCommands {
 
     private final BoilerInstance instance;
 
+    /**
+     * Whether <i>CommandRecorder</i> should use the functions of VK_KHR_dynamic_rendering rather than the core
+     * Vulkan 1.3 functions
+     */
+    final boolean usesDynamicRenderingExtension;
+    /**
+     * Whether <i>CommandRecorder</i> should use the functions of VK_EXT_extended_dynamic_state(2) rather than the
+     * core Vulkan 1.3 functions
+     */
+    final boolean usesExtendedDynamicStateExtension, usesExtendedDynamicState2Extension;
+    /**
+     * Whether VK_EXT_extended_dynamic_state3 is enabled. Its functions are not core in any Vulkan version, so the
+     * corresponding <i>CommandRecorder</i> methods can't be used without it.
+     */
+    final boolean hasExtendedDynamicState3;
+
     public BoilerCommands(BoilerInstance instance) {
         this.instance = instance;
+        this.usesDynamicRenderingExtension = instance.deviceExtensions.contains(VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME);
+        this.usesExtendedDynamicStateExtension = instance.deviceExtensions.contains(
+                VK_EXT_EXTENDED_DYNAMIC_STATE_EXTENSION_NAME
+        );
+        this.usesExtendedDynamicState2Extension = instance.deviceExtensions.contains(
+                VK_EXT_EXTENDED_DYNAMIC_STATE_2_EXTENSION_NAME
+        );
+        this.hasExtendedDynamicState3 = instance.deviceExtensions.contains(
+                VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME
+        );
     }
 
     public long createPool(int flags, int queueFamilyIndex, String name) {
@@ -34,11 +64,19 @@ public class BoilerCommands {
     }
 
     public VkCommandBuffer[] createPrimaryBuffers(long commandPool, int amount, String name) {
+        return createBuffers(commandPool, VK_COMMAND_BUFFER_LEVEL_PRIMARY, amount, name);
+    }
+
+    public VkCommandBuffer[] createSecondaryBuffers(long commandPool, int amount, String name) {
+        return createBuffers(commandPool, VK_COMMAND_BUFFER_LEVEL_SECONDARY, amount, name);
+    }
+
+    private VkCommandBuffer[] createBuffers(long commandPool, int level, int amount, String name) {
         try (var stack = stackPush()) {
             var aiCommandBuffer = VkCommandBufferAllocateInfo.calloc(stack);
             aiCommandBuffer.sType$Default();
             aiCommandBuffer.commandPool(commandPool);
-            aiCommandBuffer.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+            aiCommandBuffer.level(level);
             aiCommandBuffer.commandBufferCount(amount);
 
             var pCommandBuffer = stack.callocPointer(amount);
@@ -0,0 +1,174 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Manages transient command pools for frames in flight: every thread that allocates command buffers gets its own
+ * command pool for each frame in flight. Allocating command buffers therefore doesn't need any synchronization, and
+ * all command buffers of a frame can be recycled at once using <i>vkResetCommandPool</i>.
+ * <p>
+ * Call <i>beginFrame</i> at the start of each frame (on the thread that submits the frame), and then use
+ * <i>nextPrimary</i> and <i>nextSecondary</i> (on any thread) to obtain command buffers for that frame. The command
+ * buffers are only valid until the same frame slot is reused, <i>numFramesInFlight</i> frames later. The pools of a
+ * thread are reset lazily, when the thread allocates its first command buffer for a frame.
+ * <p>
+ * Threads must not allocate or record command buffers of the current frame while <i>beginFrame</i> is being called.
+ */
+public class CommandBufferManager {
+
+    private final BoilerInstance instance;
+    private final int queueFamilyIndex;
+    private final String name;
+    private final int numFramesInFlight;
+
+    private final ThreadLocal<ThreadPools> threadPools = new ThreadLocal<>();
+    private final List<ThreadPools> allThreadPools = new ArrayList<>();
+    private final TimelineInstant[] lastSlotUses;
+
+    private volatile long currentFrame = -1;
+    private volatile int currentSlot;
+    private volatile boolean destroyed;
+
+    public CommandBufferManager(BoilerInstance instance, int queueFamilyIndex, int numFramesInFlight, String name) {
+        if (numFramesInFlight < 1) throw new IllegalArgumentException("numFramesInFlight must be positive");
+        this.instance = instance;
+        this.queueFamilyIndex = queueFamilyIndex;
+        this.numFramesInFlight = numFramesInFlight;
+        this.name = name;
+        this.lastSlotUses = new TimelineInstant[numFramesInFlight];
+    }
+
+    /**
+     * Starts a new frame. This waits until the previous frame that used the same frame slot has finished.
+     * @param frameCounter The index of the frame, which must be larger than the previous frame counter
+     * @param frameFinished The timeline instant that will be signalled once the command buffers of this frame have
+     *                      finished executing
+     */
+    public void beginFrame(long frameCounter, TimelineInstant frameFinished) {
+        if (frameCounter <= currentFrame) {
+            throw new IllegalArgumentException("Frame counter " + frameCounter + " is not larger than " + currentFrame);
+        }
+        int slot = (int) (frameCounter % numFramesInFlight);
+        var lastUse = lastSlotUses[slot];
+        if (lastUse != null) {
+            try (var stack = stackPush()) {
+                instance.sync.awaitTimelineSemaphore(stack, lastUse.timelineSemaphore(), lastUse.value(), name);
+            }
+        }
+        lastSlotUses[slot] = frameFinished;
+        currentSlot = slot;
+        currentFrame = frameCounter;
+    }
+
+    /**
+     * @return A primary command buffer for the current frame, which is in the initial state
+     */
+    public VkCommandBuffer nextPrimary() {
+        return getThreadPools().next(false);
+    }
+
+    /**
+     * @return A secondary command buffer for the current frame, which is in the initial state
+     */
+    public VkCommandBuffer nextSecondary() {
+        return getThreadPools().next(true);
+    }
+
+    private ThreadPools getThreadPools() {
+        if (destroyed) throw new IllegalStateException("This manager has already been destroyed");
+        if (currentFrame == -1) throw new IllegalStateException("beginFrame() hasn't been called yet");
+        var pools = threadPools.get();
+        if (pools == null) {
+            pools = new ThreadPools(Thread.currentThread().getName());
+            threadPools.set(pools);
+            synchronized (allThreadPools) {
+                allThreadPools.add(pools);
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * @return The number of threads that have allocated command buffers from this manager
+     */
+    public int getNumThreads() {
+        synchronized (allThreadPools) {
+            return allThreadPools.size();
+        }
+    }
+
+    /**
+     * Destroys all command pools. All command buffers must have finished executing.
+     */
+    public void destroy() {
+        destroyed = true;
+        synchronized (allThreadPools) {
+            for (var pools : allThreadPools) {
+                for (long pool : pools.commandPools) vkDestroyCommandPool(instance.vkDevice(), pool, null);
+            }
+            allThreadPools.clear();
+        }
+    }
+
+    private class ThreadPools {
+
+        final long[] commandPools = new long[numFramesInFlight];
+        final long[] resetFrames = new long[numFramesInFlight];
+        final List<List<VkCommandBuffer>> primaryBuffers = new ArrayList<>(numFramesInFlight);
+        final List<List<VkCommandBuffer>> secondaryBuffers = new ArrayList<>(numFramesInFlight);
+        final int[] nextPrimaryIndices = new int[numFramesInFlight];
+        final int[] nextSecondaryIndices = new int[numFramesInFlight];
+        final String threadName;
+
+        ThreadPools(String threadName) {
+            this.threadName = threadName;
+            for (int slot = 0; slot < numFramesInFlight; slot++) {
+                commandPools[slot] = instance.commands.createPool(
+                        VK_COMMAND_POOL_CREATE_TRANSIENT_BIT, queueFamilyIndex,
+                        name + "-" + threadName + "-" + slot
+                );
+                resetFrames[slot] = -1;
+                primaryBuffers.add(new ArrayList<>());
+                secondaryBuffers.add(new ArrayList<>());
+            }
+        }
+
+        VkCommandBuffer next(boolean secondary) {
+            int slot = currentSlot;
+            long frame = currentFrame;
+            if (resetFrames[slot] != frame) {
+                // A pool that is used for the first time doesn't need to be reset
+                if (resetFrames[slot] != -1) {
+                    assertVkSuccess(vkResetCommandPool(
+                            instance.vkDevice(), commandPools[slot], 0
+                    ), "ResetCommandPool", name);
+                }
+                resetFrames[slot] = frame;
+                nextPrimaryIndices[slot] = 0;
+                nextSecondaryIndices[slot] = 0;
+            }
+
+            var buffers = secondary ? secondaryBuffers.get(slot) : primaryBuffers.get(slot);
+            var nextIndices = secondary ? nextSecondaryIndices : nextPrimaryIndices;
+            if (nextIndices[slot] == buffers.size()) {
+                String bufferName = name + "-" + threadName + "-" + slot;
+                buffers.add(secondary ?
+                        instance.commands.createSecondaryBuffers(commandPools[slot], 1, bufferName)[0] :
+                        instance.commands.createPrimaryBuffers(commandPools[slot], 1, bufferName)[0]
+                );
+            }
+            var commandBuffer = buffers.get(nextIndices[slot]);
+            nextIndices[slot] += 1;
+            return commandBuffer;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A sequence of commands (typically the draw calls of static geometry) that is recorded once into secondary command
+ * buffers, and replayed using <i>vkCmdExecuteCommands</i> every frame. The commands are only recorded again when
+ * their <i>version</i> changes. The version can be a counter that is incremented whenever the inputs change, or a
+ * hash of the inputs. Since the bundle is replayed using its inheritance info, the render pass (or attachment
+ * formats) must be part of the version as well.
+ * <p>
+ * The commands are split over <i>numTasks</i> secondary command buffers, which are recorded in parallel (see
+ * <i>ParallelRecorder</i>). The command buffers are recorded with
+ * <i>VK_COMMAND_BUFFER_USAGE_SIMULTANEOUS_USE_BIT</i>, so multiple frames in flight can execute them concurrently.
+ * When the version changes, the previous command buffers are retired until the last frame that executed them has
+ * finished, after which they are recycled.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class CommandBundle {
+
+    private final BoilerInstance instance;
+    private final int numTasks;
+    private final Executor executor;
+    private final String name;
+    private final long[] commandPools;
+
+    private Recording current;
+    private final List<Recording> retired = new ArrayList<>();
+    private int numRecordings;
+
+    /**
+     * Uses the common <i>ForkJoinPool</i> to record the command buffers
+     */
+    public CommandBundle(BoilerInstance instance, int queueFamilyIndex, int numTasks, String name) {
+        this(instance, queueFamilyIndex, numTasks, ForkJoinPool.commonPool(), name);
+    }
+
+    public CommandBundle(BoilerInstance instance, int queueFamilyIndex, int numTasks, Executor executor, String name) {
+        if (numTasks < 1) throw new IllegalArgumentException("numTasks must be positive, but is " + numTasks);
+        this.instance = instance;
+        this.numTasks = numTasks;
+        this.executor = executor;
+        this.name = name;
+
+        // Every task gets its own pool, since command buffers from the same pool can't be recorded concurrently
+        this.commandPools = new long[numTasks];
+        for (int taskIndex = 0; taskIndex < numTasks; taskIndex++) {
+            commandPools[taskIndex] = instance.commands.createPool(
+                    VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT, queueFamilyIndex, name + "-" + taskIndex
+            );
+        }
+    }
+
+    /**
+     * @return True if the commands were last recorded with the given version, so <i>execute</i> won't record them
+     * again
+     */
+    public boolean isUpToDate(long version) {
+        return current != null && current.version == version;
+    }
+
+    /**
+     * Forces the commands to be recorded again during the next <i>execute</i>
+     */
+    public void invalidate() {
+        if (current != null) {
+            retired.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Executes the bundled commands in <i>primary</i>, after recording them (again) if <i>version</i> differs from
+     * the version of the last recording.
+     * @param frameFinished The timeline instant that will be signalled once <i>primary</i> has finished executing
+     * @param inheritance Creates the inheritance info of the secondary command buffers (see
+     *                    <i>ParallelRecorder.renderPassInheritance</i>). It is called on the recording threads.
+     * @param task Records the commands of each task. It is only called when the commands need to be recorded.
+     */
+    public void execute(
+            CommandRecorder primary, TimelineInstant frameFinished, long version,
+            Function<MemoryStack, VkCommandBufferInheritanceInfo> inheritance, ParallelRecorder.SecondaryTask task
+    ) {
+        if (!isUpToDate(version)) {
+            invalidate();
+            var recording = reuseOrAllocateRecording();
+            ParallelRecorder.recordInParallel(executor, numTasks, taskIndex -> {
+                var commandBuffer = recording.commandBuffers[taskIndex];
+                try (var stack = stackPush()) {
+                    String context = name + "-" + taskIndex;
+                    var recorder = CommandRecorder.beginSecondary(
+                            commandBuffer, instance, stack, VK_COMMAND_BUFFER_USAGE_SIMULTANEOUS_USE_BIT,
+                            inheritance.apply(stack), context
+                    );
+                    task.record(commandBuffer, recorder, stack, taskIndex);
+                    recorder.end();
+                }
+                return commandBuffer;
+            });
+            recording.version = version;
+            current = recording;
+            numRecordings += 1;
+        }
+
+        current.lastUse = frameFinished;
+        primary.executeCommands(current.commandBuffers);
+    }
+
+    private Recording reuseOrAllocateRecording() {
+        try (var stack = stackPush()) {
+            for (int index = 0; index < retired.size(); index++) {
+                var candidate = retired.get(index);
+                var lastUse = candidate.lastUse;
+                if (lastUse == null || instance.sync.getTimelineSemaphoreValue(
+                        stack, lastUse.timelineSemaphore(), name
+                ) >= lastUse.value()) {
+                    retired.remove(index);
+                    return candidate;
+                }
+            }
+        }
+
+        var commandBuffers = new VkCommandBuffer[numTasks];
+        for (int taskIndex = 0; taskIndex < numTasks; taskIndex++) {
+            commandBuffers[taskIndex] = instance.commands.createSecondaryBuffers(
+                    commandPools[taskIndex], 1, name + "-" + taskIndex
+            )[0];
+        }
+        return new Recording(commandBuffers);
+    }
+
+    /**
+     * @return The number of times the commands have been recorded
+     */
+    public int getNumRecordings() {
+        return numRecordings;
+    }
+
+    /**
+     * Destroys the command pools of this bundle. All primary command buffers that execute this bundle must have
+     * finished.
+     */
+    public void destroy() {
+        for (long commandPool : commandPools) vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+    }
+
+    private static class Recording {
+
+        final VkCommandBuffer[] commandBuffers;
+        long version;
+        TimelineInstant lastUse;
+
+        Recording(VkCommandBuffer[] commandBuffers) {
+            this.commandBuffers = commandBuffers;
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.github.knokko.boiler.commands;
 
+import com.github.knokko.boiler.buffer.VmaBuffer;
+import com.github.knokko.boiler.cull.FrustumCuller;
+import com.github.knokko.boiler.cull.GpuCullBatch;
+import com.github.knokko.boiler.cull.GpuCuller;
 import com.github.knokko.boiler.instance.BoilerInstance;
 import com.github.knokko.boiler.sync.ResourceUsage;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static java.lang.Math.max;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState.*;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState2.*;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState3.*;
+import static org.lwjgl.vulkan.KHRDynamicRendering.vkCmdBeginRenderingKHR;
+import static org.lwjgl.vulkan.KHRDynamicRendering.vkCmdEndRenderingKHR;
 import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_RESOLVE_MODE_NONE;
+import static org.lwjgl.vulkan.VK12.vkCmdDrawIndirectCount;
+import static org.lwjgl.vulkan.VK13.*;
 
 public class CommandRecorder {
 
@@ -23,6 +36,41 @@ public class CommandRecorder {
         return new CommandRecorder(commandBuffer, boiler, stack, context);
     }
 
+    /**
+     * Begins recording a secondary command buffer that will be executed inside a render pass or dynamic rendering
+     * instance of a primary command buffer. The command buffer is begun with
+     * <i>VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT</i> and <i>VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT</i>.
+     * @param inheritance The inheritance info, which can be created using
+     *                    <i>ParallelRecorder.renderPassInheritance</i> or
+     *                    <i>ParallelRecorder.dynamicRenderingInheritance</i>
+     */
+    public static CommandRecorder beginSecondary(
+            VkCommandBuffer commandBuffer, BoilerInstance boiler, MemoryStack stack,
+            VkCommandBufferInheritanceInfo inheritance, String context
+    ) {
+        return beginSecondary(
+                commandBuffer, boiler, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, inheritance, context
+        );
+    }
+
+    /**
+     * Like the other <i>beginSecondary</i>, but with the given usage flags instead of
+     * <i>VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT</i> (<i>VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT</i> is
+     * always added)
+     */
+    public static CommandRecorder beginSecondary(
+            VkCommandBuffer commandBuffer, BoilerInstance boiler, MemoryStack stack, int flags,
+            VkCommandBufferInheritanceInfo inheritance, String context
+    ) {
+        var biCommands = VkCommandBufferBeginInfo.calloc(stack);
+        biCommands.sType$Default();
+        biCommands.flags(flags | VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT);
+        biCommands.pInheritanceInfo(inheritance);
+
+        assertVkSuccess(vkBeginCommandBuffer(commandBuffer, biCommands), "BeginCommandBuffer", context);
+        return new CommandRecorder(commandBuffer, boiler, stack, context);
+    }
+
     public static CommandRecorder alreadyRecording(
             VkCommandBuffer commandBuffer, BoilerInstance boiler, MemoryStack stack
     ) {
@@ -73,13 +121,27 @@ public class CommandRecorder {
     public void blitImage(
             int aspectMask, int filter, long vkSourceImage, int sourceWidth, int sourceHeight,
             long vkDestImage, int destWidth, int destHeight
+    ) {
+        blitImage(aspectMask, filter, vkSourceImage, 0, sourceWidth, sourceHeight, vkDestImage, 0, destWidth, destHeight);
+    }
+
+    /**
+     * Blits the whole extent of the given mip level of the source image to the given mip level of the destination
+     * image. The source must be in <i>VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL</i>, and the destination in
+     * <i>VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL</i>.
+     */
+    public void blitImage(
+            int aspectMask, int filter, long vkSourceImage, int sourceMipLevel, int sourceWidth, int sourceHeight,
+            long vkDestImage, int destMipLevel, int destWidth, int destHeight
     ) {
         var imageBlitRegions = VkImageBlit.calloc(1, stack);
         var blitRegion = imageBlitRegions.get(0);
         boiler.images.subresourceLayers(stack, blitRegion.srcSubresource(), aspectMask);
+        blitRegion.srcSubresource().mipLevel(sourceMipLevel);
         blitRegion.srcOffsets().get(0).set(0, 0, 0);
         blitRegion.srcOffsets().get(1).set(sourceWidth, sourceHeight, 1);
         boiler.images.subresourceLayers(stack, blitRegion.dstSubresource(), aspectMask);
+        blitRegion.dstSubresource().mipLevel(destMipLevel);
         blitRegion.dstOffsets().get(0).set(0, 0, 0);
         blitRegion.dstOffsets().get(1).set(destWidth, destHeight, 1);
 
@@ -89,12 +151,67 @@ public class CommandRecorder {
         );
     }
 
+    /**
+     * Generates mip levels 1 to <i>mipLevels - 1</i> of a color image from mip level 0, using a chain of linear
+     * blits (each level is blitted from the previous level). Mip level 0 must be in
+     * <i>VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL</i> (typically right after it was copied from a staging buffer), and
+     * the format must support <i>VK_FORMAT_FEATURE_SAMPLED_IMAGE_FILTER_LINEAR_BIT</i> (see
+     * <i>BoilerImages.supportsLinearBlit</i>). The image needs both transfer usages. The old content of the other
+     * mip levels is discarded.
+     * @param finalLayout The layout that all mip levels will have afterward
+     * @param finalUsage The first usage of the mip levels afterward
+     */
+    public void generateMipmaps(
+            long vkImage, int width, int height, int mipLevels, int finalLayout, ResourceUsage finalUsage
+    ) {
+        var transferRead = new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        int aspectMask = VK_IMAGE_ASPECT_COLOR_BIT;
+
+        if (mipLevels > 1) {
+            transitionLayout(
+                    vkImage, 1, mipLevels - 1, VK_IMAGE_LAYOUT_UNDEFINED,
+                    VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, null, transferWrite, aspectMask
+            );
+        }
+
+        for (int level = 1; level < mipLevels; level++) {
+            int sourceWidth = max(1, width >> (level - 1));
+            int sourceHeight = max(1, height >> (level - 1));
+            transitionLayout(
+                    vkImage, level - 1, 1, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                    VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, transferWrite, transferRead, aspectMask
+            );
+            blitImage(
+                    aspectMask, VK_FILTER_LINEAR, vkImage, level - 1, sourceWidth, sourceHeight,
+                    vkImage, level, max(1, sourceWidth / 2), max(1, sourceHeight / 2)
+            );
+
+            // The previous level is no longer needed by the blits, so it can transition to its final layout already
+            transitionLayout(
+                    vkImage, level - 1, 1, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                    finalLayout, transferRead, finalUsage, aspectMask
+            );
+        }
+
+        transitionLayout(
+                vkImage, mipLevels - 1, 1, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                finalLayout, transferWrite, finalUsage, aspectMask
+        );
+    }
+
     public void copyImageToBuffer(
             int aspectMask, long vkImage, int width, int height, long vkBuffer
+    ) {
+        copyImageToBuffer(aspectMask, vkImage, width, height, vkBuffer, 0L);
+    }
+
+    public void copyImageToBuffer(
+            int aspectMask, long vkImage, int width, int height, long vkBuffer, long bufferOffset
     ) {
         var bufferCopyRegions = VkBufferImageCopy.calloc(1, stack);
         var copyRegion = bufferCopyRegions.get(0);
-        copyRegion.bufferOffset(0);
+        copyRegion.bufferOffset(bufferOffset);
         copyRegion.bufferRowLength(width);
         copyRegion.bufferImageHeight(height);
         boiler.images.subresourceLayers(stack, copyRegion.imageSubresource(), aspectMask);
@@ -158,6 +275,16 @@ public class CommandRecorder {
     public void transitionLayout(
             long vkImage, int oldLayout, int newLayout,
             ResourceUsage oldUsage, ResourceUsage newUsage, int aspectMask
+    ) {
+        transitionLayout(vkImage, 0, 1, oldLayout, newLayout, oldUsage, newUsage, aspectMask);
+    }
+
+    /**
+     * Transitions the mip levels <i>baseMipLevel</i> to <i>baseMipLevel + levelCount - 1</i> (of array layer 0)
+     */
+    public void transitionLayout(
+            long vkImage, int baseMipLevel, int levelCount, int oldLayout, int newLayout,
+            ResourceUsage oldUsage, ResourceUsage newUsage, int aspectMask
     ) {
         var pImageBarrier = VkImageMemoryBarrier.calloc(1, stack);
         pImageBarrier.sType$Default();
@@ -169,6 +296,8 @@ public class CommandRecorder {
         pImageBarrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
         pImageBarrier.image(vkImage);
         boiler.images.subresourceRange(stack, pImageBarrier.subresourceRange(), aspectMask);
+        pImageBarrier.subresourceRange().baseMipLevel(baseMipLevel);
+        pImageBarrier.subresourceRange().levelCount(levelCount);
 
         vkCmdPipelineBarrier(
                 commandBuffer, oldUsage != null ? oldUsage.stageMask() : VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT,
@@ -194,6 +323,278 @@ public class CommandRecorder {
         vkCmdSetScissor(commandBuffer, 0, pScissor);
     }
 
+    /**
+     * Begins dynamic rendering (VK_KHR_dynamic_rendering or Vulkan 1.3) to the given attachments. See
+     * <i>BoilerBuilder.dynamicRendering()</i>.
+     * @param colorAttachments The color attachments, which can be created using <i>simpleColorRenderingAttachments</i>
+     * @param depthAttachment The depth attachment, or null
+     * @param stencilAttachment The stencil attachment, or null
+     */
+    public void beginSimpleDynamicRendering(
+            int width, int height,
+            VkRenderingAttachmentInfo.Buffer colorAttachments,
+            VkRenderingAttachmentInfo depthAttachment,
+            VkRenderingAttachmentInfo stencilAttachment
+    ) {
+        beginSimpleDynamicRendering(width, height, 0, colorAttachments, depthAttachment, stencilAttachment);
+    }
+
+    /**
+     * Like the other <i>beginSimpleDynamicRendering</i>, but with the given <i>VkRenderingFlags</i>. Use
+     * <i>VK_RENDERING_CONTENTS_SECONDARY_COMMAND_BUFFERS_BIT</i> when the rendering commands are recorded in
+     * secondary command buffers (see <i>ParallelRecorder</i>).
+     */
+    public void beginSimpleDynamicRendering(
+            int width, int height, int flags,
+            VkRenderingAttachmentInfo.Buffer colorAttachments,
+            VkRenderingAttachmentInfo depthAttachment,
+            VkRenderingAttachmentInfo stencilAttachment
+    ) {
+        var renderingInfo = VkRenderingInfo.calloc(stack);
+        renderingInfo.sType$Default();
+        renderingInfo.flags(flags);
+        renderingInfo.renderArea().offset().set(0, 0);
+        renderingInfo.renderArea().extent().set(width, height);
+        renderingInfo.layerCount(1);
+        renderingInfo.pColorAttachments(colorAttachments);
+        renderingInfo.pDepthAttachment(depthAttachment);
+        renderingInfo.pStencilAttachment(stencilAttachment);
+
+        if (boiler.commands.usesDynamicRenderingExtension) vkCmdBeginRenderingKHR(commandBuffer, renderingInfo);
+        else vkCmdBeginRendering(commandBuffer, renderingInfo);
+    }
+
+    public void endDynamicRendering() {
+        if (boiler.commands.usesDynamicRenderingExtension) vkCmdEndRenderingKHR(commandBuffer);
+        else vkCmdEndRendering(commandBuffer);
+    }
+
+    /**
+     * Creates attachment infos for <i>beginSimpleDynamicRendering</i>, where each image view is in the
+     * <i>VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL</i> layout
+     * @param clearColor The clear color (RGBA), which is only used when <i>loadOp</i> is
+     *                   <i>VK_ATTACHMENT_LOAD_OP_CLEAR</i>
+     */
+    public VkRenderingAttachmentInfo.Buffer simpleColorRenderingAttachments(
+            int loadOp, int storeOp, float[] clearColor, long... imageViews
+    ) {
+        var attachments = VkRenderingAttachmentInfo.calloc(imageViews.length, stack);
+        for (int index = 0; index < imageViews.length; index++) {
+            var attachment = attachments.get(index);
+            attachment.sType$Default();
+            attachment.imageView(imageViews[index]);
+            attachment.imageLayout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+            attachment.resolveMode(VK_RESOLVE_MODE_NONE);
+            attachment.loadOp(loadOp);
+            attachment.storeOp(storeOp);
+            if (clearColor != null) attachment.clearValue().color().float32(stack.floats(clearColor));
+        }
+        return attachments;
+    }
+
+    /**
+     * Creates an attachment info for <i>beginSimpleDynamicRendering</i>, where the image view is in the
+     * <i>VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL</i> layout
+     */
+    public VkRenderingAttachmentInfo simpleDepthRenderingAttachment(
+            long imageView, int loadOp, int storeOp, float clearDepth
+    ) {
+        var attachment = VkRenderingAttachmentInfo.calloc(stack);
+        attachment.sType$Default();
+        attachment.imageView(imageView);
+        attachment.imageLayout(VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL);
+        attachment.resolveMode(VK_RESOLVE_MODE_NONE);
+        attachment.loadOp(loadOp);
+        attachment.storeOp(storeOp);
+        attachment.clearValue().depthStencil().set(clearDepth, 0);
+        return attachment;
+    }
+
+    // The following methods set the dynamic states of VK_EXT_extended_dynamic_state(2) (or Vulkan 1.3). The
+    // corresponding VK_DYNAMIC_STATE_* must be in the dynamic states of the bound pipeline.
+
+    public void setCullMode(int cullMode) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetCullModeEXT(commandBuffer, cullMode);
+        else vkCmdSetCullMode(commandBuffer, cullMode);
+    }
+
+    public void setFrontFace(int frontFace) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetFrontFaceEXT(commandBuffer, frontFace);
+        else vkCmdSetFrontFace(commandBuffer, frontFace);
+    }
+
+    public void setPrimitiveTopology(int topology) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetPrimitiveTopologyEXT(commandBuffer, topology);
+        else vkCmdSetPrimitiveTopology(commandBuffer, topology);
+    }
+
+    public void setDepthTestEnable(boolean enable) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetDepthTestEnableEXT(commandBuffer, enable);
+        else vkCmdSetDepthTestEnable(commandBuffer, enable);
+    }
+
+    public void setDepthWriteEnable(boolean enable) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetDepthWriteEnableEXT(commandBuffer, enable);
+        else vkCmdSetDepthWriteEnable(commandBuffer, enable);
+    }
+
+    public void setDepthCompareOp(int compareOp) {
+        if (boiler.commands.usesExtendedDynamicStateExtension) vkCmdSetDepthCompareOpEXT(commandBuffer, compareOp);
+        else vkCmdSetDepthCompareOp(commandBuffer, compareOp);
+    }
+
+    public void setDepthBiasEnable(boolean enable) {
+        if (boiler.commands.usesExtendedDynamicState2Extension) vkCmdSetDepthBiasEnableEXT(commandBuffer, enable);
+        else vkCmdSetDepthBiasEnable(commandBuffer, enable);
+    }
+
+    public void setRasterizerDiscardEnable(boolean enable) {
+        if (boiler.commands.usesExtendedDynamicState2Extension) {
+            vkCmdSetRasterizerDiscardEnableEXT(commandBuffer, enable);
+        } else vkCmdSetRasterizerDiscardEnable(commandBuffer, enable);
+    }
+
+    public void setPrimitiveRestartEnable(boolean enable) {
+        if (boiler.commands.usesExtendedDynamicState2Extension) {
+            vkCmdSetPrimitiveRestartEnableEXT(commandBuffer, enable);
+        } else vkCmdSetPrimitiveRestartEnable(commandBuffer, enable);
+    }
+
+    // The following methods require VK_EXT_extended_dynamic_state3 and its corresponding features. They throw an
+    // IllegalStateException when the extension is not enabled.
+
+    private void checkExtendedDynamicState3(String method) {
+        if (!boiler.commands.hasExtendedDynamicState3) {
+            throw new IllegalStateException(method + " requires VK_EXT_extended_dynamic_state3, which is not enabled. " +
+                    "Use BoilerBuilder.extendedDynamicState() on a device that supports it.");
+        }
+    }
+
+    public void setPolygonMode(int polygonMode) {
+        checkExtendedDynamicState3("setPolygonMode");
+        vkCmdSetPolygonModeEXT(commandBuffer, polygonMode);
+    }
+
+    public void setColorBlendEnable(int firstAttachment, boolean... enable) {
+        checkExtendedDynamicState3("setColorBlendEnable");
+        var pEnable = stack.callocInt(enable.length);
+        for (int index = 0; index < enable.length; index++) pEnable.put(index, enable[index] ? VK_TRUE : VK_FALSE);
+        vkCmdSetColorBlendEnableEXT(commandBuffer, firstAttachment, pEnable);
+    }
+
+    /**
+     * Sets the color blend equation of the given attachments to standard alpha blending (the same equation as
+     * <i>GraphicsPipelineBuilder.simpleColorBlending</i>)
+     */
+    public void setSimpleColorBlendEquation(int firstAttachment, int attachmentCount) {
+        checkExtendedDynamicState3("setSimpleColorBlendEquation");
+        var equations = VkColorBlendEquationEXT.calloc(attachmentCount, stack);
+        for (int index = 0; index < attachmentCount; index++) {
+            var equation = equations.get(index);
+            equation.srcColorBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA);
+            equation.dstColorBlendFactor(VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+            equation.colorBlendOp(VK_BLEND_OP_ADD);
+            equation.srcAlphaBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA);
+            equation.dstAlphaBlendFactor(VK_BLEND_FACTOR_DST_ALPHA);
+            equation.alphaBlendOp(VK_BLEND_OP_MAX);
+        }
+        vkCmdSetColorBlendEquationEXT(commandBuffer, firstAttachment, equations);
+    }
+
+    public void setColorWriteMask(int firstAttachment, int... writeMasks) {
+        checkExtendedDynamicState3("setColorWriteMask");
+        vkCmdSetColorWriteMaskEXT(commandBuffer, firstAttachment, stack.ints(writeMasks));
+    }
+
+    /**
+     * Draws the <i>drawCount</i> tightly packed <i>VkDrawIndirectCommand</i>s at the start of <i>drawCommands</i>.
+     * When <i>drawCount</i> is larger than 1, the <i>multiDrawIndirect</i> feature must be enabled.
+     */
+    public void drawIndirect(VmaBuffer drawCommands, int drawCount) {
+        vkCmdDrawIndirect(commandBuffer, drawCommands.vkBuffer(), 0, drawCount, GpuCullBatch.DRAW_COMMAND_SIZE);
+    }
+
+    /**
+     * Draws the tightly packed <i>VkDrawIndirectCommand</i>s at the start of <i>drawCommands</i>, where the number of
+     * draws is read from the first <i>uint32_t</i> of <i>countBuffer</i> (capped at <i>maxDrawCount</i>). This
+     * requires the <i>drawIndirectCount</i> feature.
+     */
+    public void drawIndirectCount(VmaBuffer drawCommands, VmaBuffer countBuffer, int maxDrawCount) {
+        vkCmdDrawIndirectCount(
+                commandBuffer, drawCommands.vkBuffer(), 0, countBuffer.vkBuffer(), 0,
+                maxDrawCount, GpuCullBatch.DRAW_COMMAND_SIZE
+        );
+    }
+
+    /**
+     * Culls the first <i>numInstances</i> instances of <i>batch</i> against the planes of <i>frustum</i> on the
+     * GPU, and writes their draw commands. This must be recorded outside a render pass, and before
+     * <i>drawCulled</i>. The pipeline barriers for the draw commands and draw count are included.
+     */
+    public void cullOnGpu(GpuCullBatch batch, FrustumCuller frustum, int numInstances) {
+        if (numInstances < 0 || numInstances > batch.capacity) {
+            throw new IllegalArgumentException("numInstances " + numInstances + " exceeds capacity " + batch.capacity);
+        }
+        var culler = batch.culler;
+        var indirectRead = new ResourceUsage(VK_ACCESS_INDIRECT_COMMAND_READ_BIT, VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT);
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var computeWrite = new ResourceUsage(
+                VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT
+        );
+
+        // Earlier draws of this batch must be finished before its draw commands are overwritten
+        bufferBarrier(batch.drawCount.vkBuffer(), 0, 4, indirectRead, transferWrite);
+        vkCmdFillBuffer(commandBuffer, batch.drawCount.vkBuffer(), 0, 4, 0);
+        bufferBarrier(batch.drawCount.vkBuffer(), 0, 4, transferWrite, computeWrite);
+        bufferBarrier(batch.drawCommands.vkBuffer(), 0, batch.drawCommands.size(), indirectRead, computeWrite);
+
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, culler.pipeline);
+        vkCmdBindDescriptorSets(
+                commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, culler.pipelineLayout,
+                0, stack.longs(batch.descriptorSet), null
+        );
+
+        var pushConstants = stack.calloc(GpuCuller.PUSH_CONSTANT_SIZE);
+        pushConstants.asFloatBuffer().put(frustum.getPlanes());
+        pushConstants.putInt(96, numInstances);
+        pushConstants.putInt(100, culler.useDrawIndirectCount ? 1 : 0);
+        vkCmdPushConstants(commandBuffer, culler.pipelineLayout, VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstants);
+        if (numInstances > 0) vkCmdDispatch(commandBuffer, (numInstances + 63) / 64, 1, 1);
+
+        bufferBarrier(batch.drawCommands.vkBuffer(), 0, batch.drawCommands.size(), computeWrite, indirectRead);
+        bufferBarrier(batch.drawCount.vkBuffer(), 0, 4, computeWrite, indirectRead);
+    }
+
+    /**
+     * Draws the visible instances of <i>batch</i>, after <i>cullOnGpu</i> was recorded with the same
+     * <i>numInstances</i>. The graphics pipeline (and its state) must already be bound.
+     */
+    public void drawCulled(GpuCullBatch batch, int numInstances) {
+        var culler = batch.culler;
+        if (culler.useDrawIndirectCount) {
+            drawIndirectCount(batch.drawCommands, batch.drawCount, numInstances);
+        } else if (culler.useMultiDrawIndirect) {
+            drawIndirect(batch.drawCommands, numInstances);
+        } else {
+            for (int index = 0; index < numInstances; index++) {
+                vkCmdDrawIndirect(
+                        commandBuffer, batch.drawCommands.vkBuffer(), (long) index * GpuCullBatch.DRAW_COMMAND_SIZE,
+                        1, GpuCullBatch.DRAW_COMMAND_SIZE
+                );
+            }
+        }
+    }
+
+    /**
+     * Executes the given secondary command buffers, in order
+     */
+    public void executeCommands(VkCommandBuffer... secondaryCommandBuffers) {
+        var pCommandBuffers = stack.callocPointer(secondaryCommandBuffers.length);
+        for (var secondary : secondaryCommandBuffers) pCommandBuffers.put(secondary);
+        pCommandBuffers.flip();
+        vkCmdExecuteCommands(commandBuffer, pCommandBuffers);
+    }
+
     public void end(String context) {
         assertVkSuccess(vkEndCommandBuffer(commandBuffer), "EndCommandBuffer", context);
     }
@@ -0,0 +1,178 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceInfo;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceRenderingInfo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+/**
+ * Splits the commands of a render pass (or dynamic rendering instance) into multiple secondary command buffers that
+ * are recorded in parallel, and executes them in the primary command buffer using <i>vkCmdExecuteCommands</i>.
+ * <p>
+ * Each task is recorded on its own thread, with its own <i>CommandRecorder</i> and <i>MemoryStack</i>. The secondary
+ * command buffers are obtained from a <i>CommandBufferManager</i>, so every thread allocates from its own command
+ * pools. Note that secondary command buffers don't inherit any state (like bound pipelines, descriptor sets,
+ * viewports, and push constants) from the primary command buffer, so every task must set all state it needs.
+ */
+public class ParallelRecorder {
+
+    /**
+     * Creates the inheritance info for secondary command buffers that are executed in the given subpass
+     * @param framebuffer The framebuffer, or 0 if it is unknown (specifying it may improve performance)
+     */
+    public static VkCommandBufferInheritanceInfo renderPassInheritance(
+            MemoryStack stack, long renderPass, int subpass, long framebuffer
+    ) {
+        var inheritance = VkCommandBufferInheritanceInfo.calloc(stack);
+        inheritance.sType$Default();
+        inheritance.renderPass(renderPass);
+        inheritance.subpass(subpass);
+        inheritance.framebuffer(framebuffer);
+        return inheritance;
+    }
+
+    /**
+     * Creates the inheritance info for secondary command buffers that are executed inside dynamic rendering, which
+     * must have been begun with <i>VK_RENDERING_CONTENTS_SECONDARY_COMMAND_BUFFERS_BIT</i>.
+     * @param depthFormat The format of the depth attachment, or <i>VK_FORMAT_UNDEFINED</i>
+     * @param stencilFormat The format of the stencil attachment, or <i>VK_FORMAT_UNDEFINED</i>
+     */
+    public static VkCommandBufferInheritanceInfo dynamicRenderingInheritance(
+            MemoryStack stack, int viewMask, int samples, int depthFormat, int stencilFormat, int... colorFormats
+    ) {
+        var renderingInheritance = VkCommandBufferInheritanceRenderingInfo.calloc(stack);
+        renderingInheritance.sType$Default();
+        renderingInheritance.viewMask(viewMask);
+        renderingInheritance.pColorAttachmentFormats(stack.ints(colorFormats));
+        renderingInheritance.depthAttachmentFormat(depthFormat);
+        renderingInheritance.stencilAttachmentFormat(stencilFormat);
+        renderingInheritance.rasterizationSamples(samples);
+
+        var inheritance = VkCommandBufferInheritanceInfo.calloc(stack);
+        inheritance.sType$Default();
+        inheritance.pNext(renderingInheritance);
+        return inheritance;
+    }
+
+    private final BoilerInstance instance;
+    private final CommandBufferManager commandManager;
+    private final Executor executor;
+
+    /**
+     * Uses the common <i>ForkJoinPool</i> to record the secondary command buffers
+     */
+    public ParallelRecorder(BoilerInstance instance, CommandBufferManager commandManager) {
+        this(instance, commandManager, ForkJoinPool.commonPool());
+    }
+
+    public ParallelRecorder(BoilerInstance instance, CommandBufferManager commandManager, Executor executor) {
+        this.instance = instance;
+        this.commandManager = commandManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Records <i>numTasks</i> secondary command buffers in parallel, and executes them (in order of their task index)
+     * in <i>primary</i>, which must be inside the given subpass, which must have been begun with
+     * <i>VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS</i>.
+     */
+    public void recordRenderPass(
+            CommandRecorder primary, long renderPass, int subpass, long framebuffer,
+            int numTasks, SecondaryTask task, String context
+    ) {
+        record(primary, stack -> renderPassInheritance(stack, renderPass, subpass, framebuffer), numTasks, task, context);
+    }
+
+    /**
+     * Records <i>numTasks</i> secondary command buffers in parallel, and executes them (in order of their task index)
+     * in <i>primary</i>, which must be inside dynamic rendering that was begun with
+     * <i>VK_RENDERING_CONTENTS_SECONDARY_COMMAND_BUFFERS_BIT</i>. See <i>dynamicRenderingInheritance</i> for the
+     * meaning of the formats.
+     */
+    public void recordDynamicRendering(
+            CommandRecorder primary, int viewMask, int samples, int depthFormat, int stencilFormat, int[] colorFormats,
+            int numTasks, SecondaryTask task, String context
+    ) {
+        record(primary, stack -> dynamicRenderingInheritance(
+                stack, viewMask, samples, depthFormat, stencilFormat, colorFormats
+        ), numTasks, task, context);
+    }
+
+    private void record(
+            CommandRecorder primary, Function<MemoryStack, VkCommandBufferInheritanceInfo> inheritance,
+            int numTasks, SecondaryTask task, String context
+    ) {
+        var secondaries = recordInParallel(
+                executor, numTasks, taskIndex -> recordTask(inheritance, task, taskIndex, context)
+        );
+        primary.executeCommands(secondaries);
+    }
+
+    /**
+     * Calls <i>recordTask</i> for each task index: the first task is recorded on the current thread, and the other
+     * tasks on <i>executor</i>.
+     * @return The results of <i>recordTask</i>, ordered by task index
+     */
+    static VkCommandBuffer[] recordInParallel(Executor executor, int numTasks, IntFunction<VkCommandBuffer> recordTask) {
+        if (numTasks < 1) throw new IllegalArgumentException("numTasks must be positive, but is " + numTasks);
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<VkCommandBuffer>[] futures = new CompletableFuture[numTasks];
+        for (int taskIndex = 1; taskIndex < numTasks; taskIndex++) {
+            int currentIndex = taskIndex;
+            futures[taskIndex] = CompletableFuture.supplyAsync(() -> recordTask.apply(currentIndex), executor);
+        }
+
+        // The current thread records the first task, so it doesn't need to sit idle
+        var secondaries = new VkCommandBuffer[numTasks];
+        secondaries[0] = recordTask.apply(0);
+        for (int taskIndex = 1; taskIndex < numTasks; taskIndex++) {
+            try {
+                secondaries[taskIndex] = futures[taskIndex].join();
+            } catch (CompletionException failed) {
+                if (failed.getCause() instanceof RuntimeException cause) throw cause;
+                if (failed.getCause() instanceof Error cause) throw cause;
+                throw failed;
+            }
+        }
+        return secondaries;
+    }
+
+    private VkCommandBuffer recordTask(
+            Function<MemoryStack, VkCommandBufferInheritanceInfo> inheritance,
+            SecondaryTask task, int taskIndex, String context
+    ) {
+        var commandBuffer = commandManager.nextSecondary();
+        try (var stack = stackPush()) {
+            String taskContext = context + "-" + taskIndex;
+            var recorder = CommandRecorder.beginSecondary(
+                    commandBuffer, instance, stack, inheritance.apply(stack), taskContext
+            );
+            task.record(commandBuffer, recorder, stack, taskIndex);
+            recorder.end();
+        }
+        return commandBuffer;
+    }
+
+    @FunctionalInterface
+    public interface SecondaryTask {
+
+        /**
+         * Records the commands of the task with the given index into <i>commandBuffer</i>. This method is called
+         * concurrently for different task indices.
+         * @param recorder The recorder for <i>commandBuffer</i>, which must not be ended by this method
+         * @param stack The memory stack of the current thread
+         */
+        void record(VkCommandBuffer commandBuffer, CommandRecorder recorder, MemoryStack stack, int taskIndex);
+    }
+}
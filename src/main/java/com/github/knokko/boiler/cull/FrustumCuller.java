@@ -81,6 +81,22 @@ public class FrustumCuller {
                 && isOnForwardPlane(box, bottomFace) && isOnForwardPlane(box, topFace));
     }
 
+    /**
+     * @return The 6 planes of this frustum, as 24 floats: the x, y, and z of the normal vector of each plane,
+     * followed by its distance. This is the format that <i>GpuCuller</i> uploads to its compute shader.
+     */
+    public float[] getPlanes() {
+        var planes = new Plane[] { nearFace, farFace, leftFace, rightFace, bottomFace, topFace };
+        float[] result = new float[4 * planes.length];
+        for (int index = 0; index < planes.length; index++) {
+            result[4 * index] = planes[index].normal.x;
+            result[4 * index + 1] = planes[index].normal.y;
+            result[4 * index + 2] = planes[index].normal.z;
+            result[4 * index + 3] = planes[index].distance;
+        }
+        return result;
+    }
+
     public record AABB(
             float minX, float minY, float minZ,
             float maxX, float maxY, float maxZ
@@ -0,0 +1,90 @@
+package com.github.knokko.boiler.cull;
+
+import com.github.knokko.boiler.buffer.DeviceOnlyVmaBuffer;
+import com.github.knokko.boiler.buffer.MappedVmaBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * The instances (and their draw commands) that are culled by a <i>GpuCuller</i>. Create it using
+ * <i>GpuCuller.createBatch</i>, and fill it using <i>putInstance</i>. The instance buffer is host-visible, so the
+ * instances must not be changed while the GPU may be culling them: use 1 batch per frame in flight when the instances
+ * change every frame.
+ */
+public class GpuCullBatch {
+
+    /**
+     * The size of a <i>VkDrawIndirectCommand</i>, which is the stride of the draw commands buffer
+     */
+    public static final int DRAW_COMMAND_SIZE = 16;
+
+    public final GpuCuller culler;
+    public final int capacity;
+    /**
+     * The instances, in the format of <i>putInstance</i>
+     */
+    public final MappedVmaBuffer instances;
+    /**
+     * The <i>VkDrawIndirectCommand</i>s that are written by the culling shader
+     */
+    public final DeviceOnlyVmaBuffer drawCommands;
+    /**
+     * A single <i>uint32_t</i>: the number of visible instances after the last culling
+     */
+    public final MappedVmaBuffer drawCount;
+    public final long descriptorSet;
+
+    GpuCullBatch(
+            GpuCuller culler, int capacity, MappedVmaBuffer instances,
+            DeviceOnlyVmaBuffer drawCommands, MappedVmaBuffer drawCount, long descriptorSet
+    ) {
+        this.culler = culler;
+        this.capacity = capacity;
+        this.instances = instances;
+        this.drawCommands = drawCommands;
+        this.drawCount = drawCount;
+        this.descriptorSet = descriptorSet;
+    }
+
+    /**
+     * Stores the instance at the given index. When the instance is visible, it will be drawn using
+     * <i>vkCmdDraw(vertexCount, instanceCount, firstVertex, firstInstance)</i>. The vertex shader can use
+     * <i>gl_InstanceIndex</i> (which starts at <i>firstInstance</i>) to find the data of the instance.
+     * @param bounds The bounding box of the instance, in the same coordinate system as the <i>FrustumCuller</i>
+     */
+    public void putInstance(
+            int index, FrustumCuller.AABB bounds,
+            int vertexCount, int instanceCount, int firstVertex, int firstInstance
+    ) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside the capacity " + capacity);
+        }
+        long address = instances.hostAddress() + (long) index * GpuCuller.INSTANCE_SIZE;
+        memPutFloat(address, bounds.minX());
+        memPutFloat(address + 4, bounds.minY());
+        memPutFloat(address + 8, bounds.minZ());
+        memPutFloat(address + 16, bounds.maxX());
+        memPutFloat(address + 20, bounds.maxY());
+        memPutFloat(address + 24, bounds.maxZ());
+        memPutInt(address + 32, vertexCount);
+        memPutInt(address + 36, instanceCount);
+        memPutInt(address + 40, firstVertex);
+        memPutInt(address + 44, firstInstance);
+    }
+
+    /**
+     * @return The number of visible instances after the last culling. The culling must have finished, and the draw
+     * count buffer must have been made available to the host.
+     */
+    public int getDrawCount() {
+        return memGetInt(drawCount.hostAddress());
+    }
+
+    /**
+     * Destroys the buffers of this batch, and returns its descriptor set to the culler. The GPU must have finished
+     * culling and drawing this batch.
+     */
+    public void destroy() {
+        culler.destroyBatch(this);
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.knokko.boiler.cull;
+
+import com.github.knokko.boiler.buffer.VmaBuffer;
+import com.github.knokko.boiler.descriptors.GrowingDescriptorBank;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkPushConstantRange;
+import org.lwjgl.vulkan.VkWriteDescriptorSet;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Frustum culling on the GPU: a compute shader tests the AABB of each instance of a <i>GpuCullBatch</i> against the
+ * planes of a <i>FrustumCuller</i>, and writes a <i>VkDrawIndirectCommand</i> for each visible instance. Use
+ * <i>CommandRecorder.cullOnGpu</i> to record the culling, and <i>CommandRecorder.drawCulled</i> to draw the result.
+ * <p>
+ * When the <i>drawIndirectCount</i> feature is enabled, the draw commands of the visible instances are compacted,
+ * and drawn using <i>vkCmdDrawIndirectCount</i>. Otherwise, every instance keeps its own draw command (with an
+ * <i>instanceCount</i> of 0 when it is culled), and they are drawn using <i>vkCmdDrawIndirect</i>. In both cases,
+ * the number of visible instances is written to the draw count buffer of the batch.
+ */
+public class GpuCuller {
+
+    /**
+     * The size of each instance in the instance buffer of a <i>GpuCullBatch</i>, in bytes
+     */
+    public static final int INSTANCE_SIZE = 48;
+    /**
+     * The size of the push constants of the culling pipeline: 6 planes of 4 floats, followed by the number of
+     * instances and whether the draw commands should be compacted
+     */
+    public static final int PUSH_CONSTANT_SIZE = 104;
+
+    private final BoilerInstance instance;
+    private final GrowingDescriptorBank descriptorBank;
+
+    /**
+     * Whether the <i>drawIndirectCount</i> feature (of <i>VkPhysicalDeviceVulkan12Features</i>) is used
+     */
+    public final boolean useDrawIndirectCount;
+    /**
+     * Whether the <i>multiDrawIndirect</i> feature is used, when <i>drawIndirectCount</i> is not. When neither is
+     * used, each draw command requires its own <i>vkCmdDrawIndirect</i>.
+     */
+    public final boolean useMultiDrawIndirect;
+    public final long descriptorSetLayout, pipelineLayout, pipeline;
+
+    /**
+     * @param useDrawIndirectCount Whether the <i>drawIndirectCount</i> feature is enabled
+     * @param useMultiDrawIndirect Whether the <i>multiDrawIndirect</i> feature is enabled
+     */
+    public GpuCuller(
+            BoilerInstance instance, boolean useDrawIndirectCount, boolean useMultiDrawIndirect, String name
+    ) {
+        this.instance = instance;
+        this.useDrawIndirectCount = useDrawIndirectCount;
+        this.useMultiDrawIndirect = useMultiDrawIndirect;
+
+        try (var stack = stackPush()) {
+            var bindings = VkDescriptorSetLayoutBinding.calloc(3, stack);
+            for (int binding = 0; binding < 3; binding++) {
+                bindings.get(binding).binding(binding);
+                bindings.get(binding).descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+                bindings.get(binding).descriptorCount(1);
+                bindings.get(binding).stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+            }
+            this.descriptorSetLayout = instance.descriptors.createLayout(
+                    stack, bindings, name + "-DescriptorSetLayout"
+            );
+
+            var pushConstants = VkPushConstantRange.calloc(1, stack);
+            pushConstants.stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+            pushConstants.offset(0);
+            pushConstants.size(PUSH_CONSTANT_SIZE);
+
+            this.pipelineLayout = instance.pipelines.createLayout(
+                    stack, pushConstants, name + "-PipelineLayout", descriptorSetLayout
+            );
+            this.pipeline = instance.pipelines.createComputePipeline(
+                    stack, pipelineLayout, "com/github/knokko/boiler/cull/cull.comp.spv", name
+            );
+        }
+
+        this.descriptorBank = new GrowingDescriptorBank(instance, descriptorSetLayout, name, (stack, ciPool) -> {
+            var poolSizes = VkDescriptorPoolSize.calloc(1, stack);
+            poolSizes.type(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+            poolSizes.descriptorCount(3);
+            ciPool.pPoolSizes(poolSizes);
+        });
+    }
+
+    /**
+     * Creates a batch that can hold up to <i>capacity</i> instances
+     */
+    public GpuCullBatch createBatch(int capacity, String name) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, but is " + capacity);
+        var instances = instance.buffers.createMapped(
+                (long) capacity * INSTANCE_SIZE, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, name + "-Instances"
+        );
+        var drawCommands = instance.buffers.create(
+                (long) capacity * GpuCullBatch.DRAW_COMMAND_SIZE,
+                VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT |
+                        VK_BUFFER_USAGE_TRANSFER_SRC_BIT, name + "-DrawCommands"
+        );
+        var drawCount = instance.buffers.createMapped(
+                4, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT |
+                        VK_BUFFER_USAGE_TRANSFER_DST_BIT, name + "-DrawCount"
+        );
+
+        long descriptorSet = descriptorBank.borrowDescriptorSet();
+        try (var stack = stackPush()) {
+            var descriptorWrites = VkWriteDescriptorSet.calloc(3, stack);
+            var buffers = new VmaBuffer[] { instances, drawCommands, drawCount };
+            for (int binding = 0; binding < 3; binding++) {
+                var write = descriptorWrites.get(binding);
+                write.sType$Default();
+                write.dstSet(descriptorSet);
+                write.dstBinding(binding);
+                write.dstArrayElement(0);
+                write.descriptorCount(1);
+                write.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+                write.pBufferInfo(instance.descriptors.bufferInfo(stack, buffers[binding]));
+            }
+            vkUpdateDescriptorSets(instance.vkDevice(), descriptorWrites, null);
+            instance.debug.name(stack, descriptorSet, VK_OBJECT_TYPE_DESCRIPTOR_SET, name);
+        }
+
+        return new GpuCullBatch(this, capacity, instances, drawCommands, drawCount, descriptorSet);
+    }
+
+    void destroyBatch(GpuCullBatch batch) {
+        descriptorBank.returnDescriptorSet(batch.descriptorSet);
+        batch.instances.destroy(instance.vmaAllocator());
+        batch.drawCommands.destroy(instance.vmaAllocator());
+        batch.drawCount.destroy(instance.vmaAllocator());
+    }
+
+    /**
+     * Destroys the pipeline and descriptor pools of this culler. All its batches must have been destroyed already.
+     */
+    public void destroy() {
+        descriptorBank.destroy(true);
+        vkDestroyPipeline(instance.vkDevice(), pipeline, null);
+        vkDestroyPipelineLayout(instance.vkDevice(), pipelineLayout, null);
+        vkDestroyDescriptorSetLayout(instance.vkDevice(), descriptorSetLayout, null);
+    }
+}
@@ -7,6 +7,17 @@ import static org.lwjgl.vulkan.VK10.*;
 
 public class VulkanFailureException extends RuntimeException {
 
+    /**
+     * Variant of <i>assertVkSuccess</i> without varargs, so successful calls don't need to allocate an empty
+     * <i>allowedResults</i> array.
+     */
+    public static void assertVkSuccess(int result, String functionName, String context) {
+        if (result == VK_SUCCESS) return;
+
+        if (!functionName.startsWith("vk")) functionName = "vk" + functionName;
+        throw new VulkanFailureException(functionName, result, context);
+    }
+
     public static void assertVkSuccess(int result, String functionName, String context, int... allowedResults) {
         if (result == VK_SUCCESS) return;
         for (int allowed : allowedResults) {
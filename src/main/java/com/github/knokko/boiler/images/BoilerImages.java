@@ -1,14 +1,26 @@
 package com.github.knokko.boiler.images;
 
+import com.github.knokko.boiler.commands.CommandRecorder;
 import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.WaitSemaphore;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.util.vma.VmaAllocationCreateInfo;
 import org.lwjgl.vulkan.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVmaSuccess;
-import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_AUTO;
-import static org.lwjgl.util.vma.Vma.vmaCreateImage;
+import static java.lang.Math.max;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.util.vma.Vma.*;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class BoilerImages {
@@ -50,6 +62,20 @@ public class BoilerImages {
     public VmaImage create(
             MemoryStack stack, int width, int height, int format, int usage, int aspectMask,
             int samples, int mipLevels, int arrayLayers, boolean createView, String name
+    ) {
+        return create(
+                stack, width, height, format, usage, aspectMask,
+                samples, mipLevels, arrayLayers, createView, 0L, name
+        );
+    }
+
+    /**
+     * Creates an image in the given pool (see <i>BoilerMemoryPools</i>)
+     * @param vmaPool The <i>VmaPool</i>, or 0 to use the default pools
+     */
+    public VmaImage create(
+            MemoryStack stack, int width, int height, int format, int usage, int aspectMask,
+            int samples, int mipLevels, int arrayLayers, boolean createView, long vmaPool, String name
     ) {
         var ciImage = VkImageCreateInfo.calloc(stack);
         ciImage.sType$Default();
@@ -66,6 +92,7 @@ public class BoilerImages {
 
         var ciAllocation = VmaAllocationCreateInfo.calloc(stack);
         ciAllocation.usage(VMA_MEMORY_USAGE_AUTO);
+        ciAllocation.pool(vmaPool);
 
         var pImage = stack.callocLong(1);
         var pAllocation = stack.callocPointer(1);
@@ -80,6 +107,244 @@ public class BoilerImages {
         return new VmaImage(image, view, allocation, width, height);
     }
 
+    /**
+     * @return True if the device has a memory type with <i>VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT</i>, which is
+     * typically the case on tile-based (mobile and integrated) GPUs
+     */
+    public boolean supportsLazilyAllocatedMemory(MemoryStack stack) {
+        var memoryProperties = VkPhysicalDeviceMemoryProperties.calloc(stack);
+        vkGetPhysicalDeviceMemoryProperties(instance.vkPhysicalDevice(), memoryProperties);
+        for (int index = 0; index < memoryProperties.memoryTypeCount(); index++) {
+            if ((memoryProperties.memoryTypes(index).propertyFlags() & VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates an attachment whose contents only live during a render pass (e.g. a depth buffer or a multisampled color
+     * buffer that is resolved), so its load op must be <i>CLEAR</i> or <i>DONT_CARE</i>, and its store op must be
+     * <i>DONT_CARE</i>. The image gets <i>VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT</i>, and lazily-allocated memory
+     * when the device supports it, in which case tile-based GPUs may not need to back it with memory at all.
+     * @param usage The attachment usage, to which the transient usage is added
+     */
+    public VmaImage createTransientAttachment(
+            MemoryStack stack, int width, int height, int format, int usage, int aspectMask, int samples, String name
+    ) {
+        var ciImage = VkImageCreateInfo.calloc(stack);
+        ciImage.sType$Default();
+        ciImage.imageType(VK_IMAGE_TYPE_2D);
+        ciImage.format(format);
+        ciImage.extent().set(width, height, 1);
+        ciImage.mipLevels(1);
+        ciImage.arrayLayers(1);
+        ciImage.samples(samples);
+        ciImage.tiling(VK_IMAGE_TILING_OPTIMAL);
+        ciImage.usage(usage | VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT);
+        ciImage.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+        ciImage.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+
+        var ciAllocation = VmaAllocationCreateInfo.calloc(stack);
+        ciAllocation.usage(supportsLazilyAllocatedMemory(stack) ?
+                VMA_MEMORY_USAGE_GPU_LAZILY_ALLOCATED : VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE
+        );
+
+        var pImage = stack.callocLong(1);
+        var pAllocation = stack.callocPointer(1);
+        assertVmaSuccess(vmaCreateImage(
+                instance.vmaAllocator(), ciImage, ciAllocation, pImage, pAllocation, null
+        ), "CreateImage", name);
+        long image = pImage.get(0);
+        instance.debug.name(stack, image, VK_OBJECT_TYPE_IMAGE, name);
+
+        long view = createView(stack, image, format, aspectMask, 1, 1, name);
+        return new VmaImage(image, view, pAllocation.get(0), width, height);
+    }
+
+    /**
+     * @return The number of mip levels of a full mip chain for an image with the given size
+     */
+    public static int mipLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(max(1, max(width, height)));
+    }
+
+    /**
+     * @return True if images with the given format (and optimal tiling) can be the source and destination of
+     * linear blits, which is required by <i>CommandRecorder.generateMipmaps</i>
+     */
+    public boolean supportsLinearBlit(MemoryStack stack, int format) {
+        var formatProps = VkFormatProperties.calloc(stack);
+        vkGetPhysicalDeviceFormatProperties(instance.vkPhysicalDevice(), format, formatProps);
+        int required = VK_FORMAT_FEATURE_BLIT_SRC_BIT | VK_FORMAT_FEATURE_BLIT_DST_BIT |
+                VK_FORMAT_FEATURE_SAMPLED_IMAGE_FILTER_LINEAR_BIT;
+        return (formatProps.optimalTilingFeatures() & required) == required;
+    }
+
+    /**
+     * Creates a sampled 2D color texture, uploads <i>pixels</i> to its first mip level, and (optionally) generates
+     * the rest of its mip chain. This method submits to the first graphics queue, and waits until the upload is
+     * finished. Afterward, all mip levels are in <i>VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL</i>, and the image view
+     * covers all mip levels (see <i>mipLevelCount</i>).
+     * <p>
+     * The mip chain is generated using linear blits when the format supports them. Otherwise, a compute shader
+     * averages each 2x2 block of the previous level, which requires the <i>shaderStorageImageWriteWithoutFormat</i>
+     * feature, and a format that supports storage images.
+     * @param usage The usage of the texture: the required sampled, transfer, and storage usages are added
+     * @param pixels The tightly packed pixels of the first mip level
+     */
+    public VmaImage createTexture(
+            MemoryStack stack, int width, int height, int format, int usage,
+            ByteBuffer pixels, boolean generateMipmaps, String name
+    ) {
+        boolean useBlits = !generateMipmaps || supportsLinearBlit(stack, format);
+        return createTexture(stack, width, height, format, usage, pixels, generateMipmaps, useBlits, name);
+    }
+
+    VmaImage createTexture(
+            MemoryStack stack, int width, int height, int format, int usage,
+            ByteBuffer pixels, boolean generateMipmaps, boolean useBlits, String name
+    ) {
+        int mipLevels = generateMipmaps ? mipLevelCount(width, height) : 1;
+        usage |= VK_IMAGE_USAGE_SAMPLED_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT;
+        if (mipLevels > 1) usage |= useBlits ? VK_IMAGE_USAGE_TRANSFER_SRC_BIT : VK_IMAGE_USAGE_STORAGE_BIT;
+
+        var image = create(
+                stack, width, height, format, usage, VK_IMAGE_ASPECT_COLOR_BIT,
+                VK_SAMPLE_COUNT_1_BIT, mipLevels, 1, true, name
+        );
+        var stagingBuffer = instance.buffers.createMapped(
+                pixels.remaining(), VK_BUFFER_USAGE_TRANSFER_SRC_BIT, name + "-Staging"
+        );
+        memCopy(memAddress(pixels), stagingBuffer.hostAddress(), pixels.remaining());
+
+        long commandPool = instance.commands.createPool(
+                VK_COMMAND_POOL_CREATE_TRANSIENT_BIT, instance.queueFamilies().graphics().index(), name + "-Upload"
+        );
+        var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, name + "-Upload")[0];
+        long fence = instance.sync.createFences(false, 1, name + "-Upload")[0];
+        var recorder = CommandRecorder.begin(
+                commandBuffer, instance, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, name + "-Upload"
+        );
+
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var shaderRead = new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT);
+        recorder.transitionColorLayout(
+                image.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, null, transferWrite
+        );
+        recorder.copyBufferToImage(VK_IMAGE_ASPECT_COLOR_BIT, image.vkImage(), width, height, stagingBuffer.vkBuffer());
+
+        ComputeDownsampler downsampler = null;
+        if (useBlits || mipLevels == 1) {
+            recorder.generateMipmaps(
+                    image.vkImage(), width, height, mipLevels, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, shaderRead
+            );
+        } else {
+            downsampler = new ComputeDownsampler(instance, stack, format, mipLevels, name);
+            downsampler.record(commandBuffer, recorder, stack, image, mipLevels, shaderRead);
+        }
+        recorder.end();
+
+        instance.queueFamilies().graphics().queues().get(0).submit(
+                commandBuffer, name + "-Upload", new WaitSemaphore[0], fence
+        );
+        assertVkSuccess(vkWaitForFences(
+                instance.vkDevice(), stack.longs(fence), true, instance.defaultTimeout
+        ), "WaitForFences", name + "-Upload");
+
+        if (downsampler != null) downsampler.destroy();
+        vkDestroyFence(instance.vkDevice(), fence, null);
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        stagingBuffer.destroy(instance.vmaAllocator());
+        return image;
+    }
+
+    /**
+     * Memory-maps the given KTX2 or DDS file, and uploads all its mip levels to a new sampled texture (see
+     * <i>loadTexture(MemoryStack, TextureContainer, int, String)</i>). The file content is copied straight from the
+     * mapping to the staging buffer, without any intermediate heap copy.
+     */
+    public VmaImage loadTexture(MemoryStack stack, Path file, int usage, String name) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return loadTexture(stack, TextureContainer.parse(mapped), usage, name);
+        } catch (IOException failedToRead) {
+            throw new UncheckedIOException("Failed to read texture " + file, failedToRead);
+        }
+    }
+
+    /**
+     * Creates a sampled 2D texture with the format and mip levels of the given container, and uploads all mip levels
+     * with a single staging copy and a single <i>vkCmdCopyBufferToImage</i>. This method submits to the first
+     * graphics queue, and waits until the upload is finished. Afterward, all mip levels are in
+     * <i>VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL</i>.
+     * @param usage The usage of the texture: the sampled and transfer destination usages are added
+     */
+    public VmaImage loadTexture(MemoryStack stack, TextureContainer container, int usage, String name) {
+        var formatProps = VkFormatProperties.calloc(stack);
+        vkGetPhysicalDeviceFormatProperties(instance.vkPhysicalDevice(), container.format(), formatProps);
+        if ((formatProps.optimalTilingFeatures() & VK_FORMAT_FEATURE_SAMPLED_IMAGE_BIT) == 0) {
+            throw new IllegalArgumentException("Format " + container.format() + " of " + name + " can't be sampled");
+        }
+
+        int mipLevels = container.mipLevels();
+        var image = create(
+                stack, container.width(), container.height(), container.format(),
+                usage | VK_IMAGE_USAGE_SAMPLED_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+                VK_IMAGE_ASPECT_COLOR_BIT, VK_SAMPLE_COUNT_1_BIT, mipLevels, 1, true, name
+        );
+
+        long dataStart = container.getDataStart();
+        long dataSize = container.getDataSize();
+        var stagingBuffer = instance.buffers.createMapped(dataSize, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, name + "-Staging");
+        memCopy(memAddress(container.data()) + dataStart, stagingBuffer.hostAddress(), dataSize);
+
+        var regions = VkBufferImageCopy.calloc(mipLevels, stack);
+        for (int level = 0; level < mipLevels; level++) {
+            var region = regions.get(level);
+            region.bufferOffset(container.levelOffsets()[level] - dataStart);
+            subresourceLayers(stack, region.imageSubresource(), VK_IMAGE_ASPECT_COLOR_BIT);
+            region.imageSubresource().mipLevel(level);
+            region.imageExtent().set(max(1, container.width() >> level), max(1, container.height() >> level), 1);
+        }
+
+        long commandPool = instance.commands.createPool(
+                VK_COMMAND_POOL_CREATE_TRANSIENT_BIT, instance.queueFamilies().graphics().index(), name + "-Upload"
+        );
+        var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, name + "-Upload")[0];
+        long fence = instance.sync.createFences(false, 1, name + "-Upload")[0];
+        var recorder = CommandRecorder.begin(
+                commandBuffer, instance, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, name + "-Upload"
+        );
+
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var shaderRead = new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT);
+        recorder.transitionLayout(
+                image.vkImage(), 0, mipLevels, VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                null, transferWrite, VK_IMAGE_ASPECT_COLOR_BIT
+        );
+        vkCmdCopyBufferToImage(
+                commandBuffer, stagingBuffer.vkBuffer(), image.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, regions
+        );
+        recorder.transitionLayout(
+                image.vkImage(), 0, mipLevels, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, transferWrite, shaderRead, VK_IMAGE_ASPECT_COLOR_BIT
+        );
+        recorder.end();
+
+        instance.queueFamilies().graphics().queues().get(0).submit(
+                commandBuffer, name + "-Upload", new WaitSemaphore[0], fence
+        );
+        assertVkSuccess(vkWaitForFences(
+                instance.vkDevice(), stack.longs(fence), true, instance.defaultTimeout
+        ), "WaitForFences", name + "-Upload");
+
+        vkDestroyFence(instance.vkDevice(), fence, null);
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        stagingBuffer.destroy(instance.vmaAllocator());
+        return image;
+    }
+
     public long createSimpleView(MemoryStack stack, long image, int format, int aspectMask, String name) {
         return createView(stack, image, format, aspectMask, 1, 1, name);
     }
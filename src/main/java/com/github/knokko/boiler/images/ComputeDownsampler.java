@@ -0,0 +1,201 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.util.Set;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static java.lang.Math.max;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Generates mip levels using the downsample compute shaders, for formats that don't support linear blits. The
+ * pipeline, descriptors, and image views only live for 1 upload: <i>destroy</i> must be called after the recorded
+ * commands have finished.
+ */
+class ComputeDownsampler {
+
+    private static final Set<Integer> SINT_FORMATS = Set.of(
+            VK_FORMAT_R8_SINT, VK_FORMAT_R8G8_SINT, VK_FORMAT_R8G8B8A8_SINT,
+            VK_FORMAT_R16_SINT, VK_FORMAT_R16G16_SINT, VK_FORMAT_R16G16B16A16_SINT,
+            VK_FORMAT_R32_SINT, VK_FORMAT_R32G32_SINT, VK_FORMAT_R32G32B32A32_SINT
+    );
+    private static final Set<Integer> UINT_FORMATS = Set.of(
+            VK_FORMAT_R8_UINT, VK_FORMAT_R8G8_UINT, VK_FORMAT_R8G8B8A8_UINT,
+            VK_FORMAT_R16_UINT, VK_FORMAT_R16G16_UINT, VK_FORMAT_R16G16B16A16_UINT,
+            VK_FORMAT_R32_UINT, VK_FORMAT_R32G32_UINT, VK_FORMAT_R32G32B32A32_UINT,
+            VK_FORMAT_A2B10G10R10_UINT_PACK32
+    );
+
+    static String shaderPath(int format) {
+        String type = "float";
+        if (SINT_FORMATS.contains(format)) type = "int";
+        if (UINT_FORMATS.contains(format)) type = "uint";
+        return "com/github/knokko/boiler/images/downsample_" + type + ".comp.spv";
+    }
+
+    private final BoilerInstance instance;
+    private final int format;
+    private final String name;
+    private final long descriptorSetLayout, pipelineLayout, pipeline, descriptorPool, sampler;
+    private long[] levelViews = new long[0];
+
+    ComputeDownsampler(BoilerInstance instance, MemoryStack stack, int format, int mipLevels, String name) {
+        this.instance = instance;
+        this.format = format;
+        this.name = name;
+
+        var bindings = VkDescriptorSetLayoutBinding.calloc(2, stack);
+        bindings.get(0).binding(0);
+        bindings.get(0).descriptorType(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+        bindings.get(0).descriptorCount(1);
+        bindings.get(0).stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+        bindings.get(1).binding(1);
+        bindings.get(1).descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_IMAGE);
+        bindings.get(1).descriptorCount(1);
+        bindings.get(1).stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+        this.descriptorSetLayout = instance.descriptors.createLayout(stack, bindings, name + "-DownsampleLayout");
+        this.pipelineLayout = instance.pipelines.createLayout(
+                stack, null, name + "-DownsamplePipelineLayout", descriptorSetLayout
+        );
+        this.pipeline = instance.pipelines.createComputePipeline(
+                stack, pipelineLayout, shaderPath(format), name + "-Downsample"
+        );
+
+        var poolSizes = VkDescriptorPoolSize.calloc(2, stack);
+        poolSizes.get(0).type(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+        poolSizes.get(0).descriptorCount(mipLevels - 1);
+        poolSizes.get(1).type(VK_DESCRIPTOR_TYPE_STORAGE_IMAGE);
+        poolSizes.get(1).descriptorCount(mipLevels - 1);
+
+        var ciPool = VkDescriptorPoolCreateInfo.calloc(stack);
+        ciPool.sType$Default();
+        ciPool.maxSets(mipLevels - 1);
+        ciPool.pPoolSizes(poolSizes);
+
+        var pPool = stack.callocLong(1);
+        assertVkSuccess(vkCreateDescriptorPool(
+                instance.vkDevice(), ciPool, null, pPool
+        ), "CreateDescriptorPool", name + "-Downsample");
+        this.descriptorPool = pPool.get(0);
+
+        this.sampler = instance.images.createSampler(
+                stack, VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST,
+                VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE, 0f, 0f, true, name + "-Downsample"
+        );
+    }
+
+    /**
+     * Records the generation of mip levels 1 to <i>mipLevels - 1</i>. Mip level 0 must be in
+     * <i>VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL</i>, and all mip levels will be in
+     * <i>VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL</i> afterward.
+     */
+    void record(
+            VkCommandBuffer commandBuffer, CommandRecorder recorder, MemoryStack stack,
+            VmaImage image, int mipLevels, ResourceUsage finalUsage
+    ) {
+        levelViews = new long[mipLevels];
+        for (int level = 0; level < mipLevels; level++) {
+            var ciView = VkImageViewCreateInfo.calloc(stack);
+            ciView.sType$Default();
+            ciView.image(image.vkImage());
+            ciView.viewType(VK_IMAGE_VIEW_TYPE_2D);
+            ciView.format(format);
+            instance.images.subresourceRange(stack, ciView.subresourceRange(), VK_IMAGE_ASPECT_COLOR_BIT);
+            ciView.subresourceRange().baseMipLevel(level);
+
+            var pView = stack.callocLong(1);
+            assertVkSuccess(vkCreateImageView(
+                    instance.vkDevice(), ciView, null, pView
+            ), "CreateImageView", name + "-Level" + level);
+            levelViews[level] = pView.get(0);
+        }
+
+        long[] layouts = new long[mipLevels - 1];
+        for (int index = 0; index < layouts.length; index++) layouts[index] = descriptorSetLayout;
+        long[] descriptorSets = instance.descriptors.allocate(
+                stack, layouts.length, descriptorPool, name + "-Downsample", layouts
+        );
+
+        // All descriptor sets must be updated before they are bound
+        var descriptorWrites = VkWriteDescriptorSet.calloc(2 * descriptorSets.length, stack);
+        for (int level = 1; level < mipLevels; level++) {
+            var sourceInfo = VkDescriptorImageInfo.calloc(1, stack);
+            sourceInfo.sampler(sampler);
+            sourceInfo.imageView(levelViews[level - 1]);
+            sourceInfo.imageLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+
+            var destinationInfo = VkDescriptorImageInfo.calloc(1, stack);
+            destinationInfo.imageView(levelViews[level]);
+            destinationInfo.imageLayout(VK_IMAGE_LAYOUT_GENERAL);
+
+            var sourceWrite = descriptorWrites.get(2 * level - 2);
+            sourceWrite.sType$Default();
+            sourceWrite.dstSet(descriptorSets[level - 1]);
+            sourceWrite.dstBinding(0);
+            sourceWrite.descriptorCount(1);
+            sourceWrite.descriptorType(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+            sourceWrite.pImageInfo(sourceInfo);
+
+            var destinationWrite = descriptorWrites.get(2 * level - 1);
+            destinationWrite.sType$Default();
+            destinationWrite.dstSet(descriptorSets[level - 1]);
+            destinationWrite.dstBinding(1);
+            destinationWrite.descriptorCount(1);
+            destinationWrite.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_IMAGE);
+            destinationWrite.pImageInfo(destinationInfo);
+        }
+        vkUpdateDescriptorSets(instance.vkDevice(), descriptorWrites, null);
+
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var computeRead = new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT);
+        var computeWrite = new ResourceUsage(VK_ACCESS_SHADER_WRITE_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT);
+        int aspectMask = VK_IMAGE_ASPECT_COLOR_BIT;
+
+        recorder.transitionLayout(
+                image.vkImage(), 0, 1, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, transferWrite, computeRead, aspectMask
+        );
+        recorder.transitionLayout(
+                image.vkImage(), 1, mipLevels - 1, VK_IMAGE_LAYOUT_UNDEFINED,
+                VK_IMAGE_LAYOUT_GENERAL, null, computeWrite, aspectMask
+        );
+
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, pipeline);
+        for (int level = 1; level < mipLevels; level++) {
+            vkCmdBindDescriptorSets(
+                    commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, pipelineLayout,
+                    0, stack.longs(descriptorSets[level - 1]), null
+            );
+            int width = max(1, image.width() >> level);
+            int height = max(1, image.height() >> level);
+            vkCmdDispatch(commandBuffer, (width + 7) / 8, (height + 7) / 8, 1);
+
+            recorder.transitionLayout(
+                    image.vkImage(), level, 1, VK_IMAGE_LAYOUT_GENERAL,
+                    VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, computeWrite, computeRead, aspectMask
+            );
+        }
+
+        recorder.transitionLayout(
+                image.vkImage(), 0, mipLevels, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
+                VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, new ResourceUsage(
+                        VK_ACCESS_TRANSFER_WRITE_BIT | VK_ACCESS_SHADER_WRITE_BIT,
+                        VK_PIPELINE_STAGE_TRANSFER_BIT | VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT
+                ), finalUsage, aspectMask
+        );
+    }
+
+    void destroy() {
+        for (long view : levelViews) vkDestroyImageView(instance.vkDevice(), view, null);
+        vkDestroySampler(instance.vkDevice(), sampler, null);
+        vkDestroyDescriptorPool(instance.vkDevice(), descriptorPool, null);
+        vkDestroyPipeline(instance.vkDevice(), pipeline, null);
+        vkDestroyPipelineLayout(instance.vkDevice(), pipelineLayout, null);
+        vkDestroyDescriptorSetLayout(instance.vkDevice(), descriptorSetLayout, null);
+    }
+}
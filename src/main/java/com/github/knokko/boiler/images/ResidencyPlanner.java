@@ -0,0 +1,167 @@
+package com.github.knokko.boiler.images;
+
+import java.util.*;
+
+/**
+ * The bookkeeping of <i>TextureStreamer</i>: decides which mip levels of which textures should be resident, given
+ * the requested mip levels and a memory budget. This class doesn't touch the GPU, so it can be tested without Vulkan.
+ * <p>
+ * The resident mip levels of a texture are always a suffix of its mip chain: when the <i>resident level</i> is
+ * <i>r</i>, the levels <i>r</i> to <i>numLevels - 1</i> are resident. Loading more detail decreases <i>r</i>, and
+ * evicting increases it (the finest level is evicted first). Textures are evicted in least-recently-requested order,
+ * but textures that were requested during the current frame are never evicted.
+ */
+class ResidencyPlanner<K> {
+
+    record Change<K>(K key, int oldResidentLevel, int newResidentLevel) {}
+
+    private static class Entry {
+
+        final long[] levelSizes;
+        int residentLevel, requestedLevel;
+        long lastUseFrame = -1;
+
+        Entry(long[] levelSizes) {
+            this.levelSizes = levelSizes;
+            this.residentLevel = levelSizes.length;
+            this.requestedLevel = levelSizes.length;
+        }
+    }
+
+    private record Pending(Entry entry, int oldResidentLevel) {}
+
+    private final Map<K, Entry> entries = new HashMap<>();
+    // Access-order, so the least-recently requested textures come first. Only request() may call get() on this map,
+    // since every get() marks the texture as most recently used.
+    private final LinkedHashMap<K, Entry> recency = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentFrame;
+    private long residentBytes;
+
+    long hits, misses, evictions;
+
+    /**
+     * @param levelSizes The size of each mip level, in bytes, starting with the finest level
+     */
+    void add(K key, long[] levelSizes) {
+        if (levelSizes.length == 0) throw new IllegalArgumentException("A texture needs at least 1 mip level");
+        if (entries.containsKey(key)) throw new IllegalArgumentException("Duplicate key " + key);
+        var entry = new Entry(levelSizes.clone());
+        entries.put(key, entry);
+        recency.put(key, entry);
+    }
+
+    void remove(K key) {
+        var entry = entries.remove(key);
+        if (entry == null) throw new IllegalArgumentException("Unknown key " + key);
+        recency.remove(key);
+        residentBytes -= bytesBetween(entry, entry.residentLevel, entry.levelSizes.length);
+    }
+
+    /**
+     * Requests the given texture to be resident up to (and including) the given mip level. Requests are only
+     * remembered until the next <i>plan</i>, so they should be repeated every frame.
+     */
+    void request(K key, int mipLevel) {
+        var entry = recency.get(key);
+        if (entry == null) throw new IllegalArgumentException("Unknown key " + key);
+        mipLevel = Math.max(0, Math.min(mipLevel, entry.levelSizes.length - 1));
+        entry.lastUseFrame = currentFrame;
+        if (entry.residentLevel <= mipLevel) hits += 1;
+        else {
+            misses += 1;
+            entry.requestedLevel = Math.min(entry.requestedLevel, mipLevel);
+        }
+    }
+
+    /**
+     * Marks the mip levels before <i>residentLevel</i> of the given texture as no longer resident, without counting
+     * them as evictions. This is needed when the levels that <i>plan</i> made resident could not be loaded after all.
+     */
+    void markEvicted(K key, int residentLevel) {
+        var entry = entries.get(key);
+        if (entry == null) throw new IllegalArgumentException("Unknown key " + key);
+        if (residentLevel < entry.residentLevel || residentLevel > entry.levelSizes.length) {
+            throw new IllegalArgumentException(
+                    "Can't mark level " + residentLevel + " as resident level, since it is currently " +
+                            entry.residentLevel
+            );
+        }
+        residentBytes -= bytesBetween(entry, entry.residentLevel, residentLevel);
+        entry.residentLevel = residentLevel;
+    }
+
+    int getResidentLevel(K key) {
+        return entries.get(key).residentLevel;
+    }
+
+    int getNumLevels(K key) {
+        return entries.get(key).levelSizes.length;
+    }
+
+    long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Chooses the new resident levels of all textures such that their total size doesn't exceed <i>budget</i>, and
+     * starts a new frame.
+     * @return The textures whose resident level changed
+     */
+    List<Change<K>> plan(long budget) {
+        Map<K, Pending> oldLevels = new LinkedHashMap<>();
+
+        // The budget may have shrunk since the last frame
+        evict(budget, 0L, oldLevels);
+
+        // Serve the most recently requested textures first
+        List<Map.Entry<K, Entry>> candidates = new ArrayList<>(recency.entrySet());
+        Collections.reverse(candidates);
+        for (var candidate : candidates) {
+            var entry = candidate.getValue();
+            while (entry.requestedLevel < entry.residentLevel) {
+                long extra = entry.levelSizes[entry.residentLevel - 1];
+                if (residentBytes + extra > budget && !evict(budget, extra, oldLevels)) break;
+                oldLevels.putIfAbsent(candidate.getKey(), new Pending(entry, entry.residentLevel));
+                entry.residentLevel -= 1;
+                residentBytes += extra;
+            }
+            entry.requestedLevel = entry.levelSizes.length;
+        }
+
+        currentFrame += 1;
+
+        List<Change<K>> changes = new ArrayList<>(oldLevels.size());
+        oldLevels.forEach((key, pending) -> {
+            int newLevel = pending.entry.residentLevel;
+            if (newLevel != pending.oldResidentLevel) changes.add(new Change<>(key, pending.oldResidentLevel, newLevel));
+        });
+        return changes;
+    }
+
+    /**
+     * Evicts mip levels of textures that were not requested during this frame, until <i>extra</i> more bytes fit in
+     * the budget.
+     * @return True if enough levels could be evicted
+     */
+    private boolean evict(long budget, long extra, Map<K, Pending> oldLevels) {
+        for (var candidate : recency.entrySet()) {
+            if (residentBytes + extra <= budget) return true;
+            var entry = candidate.getValue();
+            if (entry.lastUseFrame == currentFrame) continue;
+
+            while (entry.residentLevel < entry.levelSizes.length && residentBytes + extra > budget) {
+                oldLevels.putIfAbsent(candidate.getKey(), new Pending(entry, entry.residentLevel));
+                residentBytes -= entry.levelSizes[entry.residentLevel];
+                entry.residentLevel += 1;
+                evictions += 1;
+            }
+        }
+        return residentBytes + extra <= budget;
+    }
+
+    private static long bytesBetween(Entry entry, int minLevel, int boundLevel) {
+        long bytes = 0;
+        for (int level = minLevel; level < boundLevel; level++) bytes += entry.levelSizes[level];
+        return bytes;
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.knokko.boiler.images;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.lang.Math.max;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * The parsed header of a KTX2 or DDS texture file. The pixel data is not copied: <i>data</i> is the (typically
+ * memory-mapped) file content, and the mip levels are the regions described by <i>levelOffsets</i> and
+ * <i>levelSizes</i>. Mip level 0 is the finest level. Only 2D textures with 1 array layer (and 1 face) are
+ * supported, and KTX2 supercompression is not supported.
+ * <p>
+ * The levels are stored such that they can be copied into a staging buffer with a single copy, starting at
+ * <i>getDataStart</i>: the offsets relative to <i>getDataStart</i> are valid buffer offsets for
+ * <i>vkCmdCopyBufferToImage</i>. See <i>BoilerImages.loadTexture</i>.
+ */
+public record TextureContainer(
+        int format, int width, int height, ByteBuffer data, long[] levelOffsets, long[] levelSizes
+) {
+
+    private static final byte[] KTX2_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int DDS_MAGIC = 0x20534444; // "DDS " in little endian
+    private static final int DDPF_ALPHA_PIXELS = 0x1;
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDPF_RGB = 0x40;
+    private static final int DDSCAPS2_CUBEMAP = 0x200;
+    private static final int DDSCAPS2_VOLUME = 0x200000;
+    private static final int DDS_DIMENSION_TEXTURE2D = 3;
+
+    public TextureContainer {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        if (levelOffsets.length != levelSizes.length) throw new IllegalArgumentException("Inconsistent level count");
+        for (int level = 0; level < levelOffsets.length; level++) {
+            if (levelOffsets[level] < 0 || levelSizes[level] <= 0 || levelOffsets[level] + levelSizes[level] > data.limit()) {
+                throw new IllegalArgumentException("Mip level " + level + " is out of bounds");
+            }
+        }
+    }
+
+    /**
+     * Parses a KTX2 or DDS file, depending on its magic bytes
+     */
+    public static TextureContainer parse(ByteBuffer data) {
+        if (isKtx2(data)) return parseKtx2(data);
+        if (data.remaining() >= 4 && data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(data.position()) == DDS_MAGIC) {
+            return parseDds(data);
+        }
+        throw new IllegalArgumentException("Data is neither a KTX2 file nor a DDS file");
+    }
+
+    private static boolean isKtx2(ByteBuffer data) {
+        if (data.remaining() < KTX2_IDENTIFIER.length) return false;
+        for (int index = 0; index < KTX2_IDENTIFIER.length; index++) {
+            if (data.get(data.position() + index) != KTX2_IDENTIFIER[index]) return false;
+        }
+        return true;
+    }
+
+    public static TextureContainer parseKtx2(ByteBuffer data) {
+        if (!isKtx2(data)) throw new IllegalArgumentException("Missing KTX2 identifier");
+        data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < 80) throw new IllegalArgumentException("KTX2 header is truncated");
+
+        int format = data.getInt(12);
+        int width = data.getInt(20);
+        int height = data.getInt(24);
+        int depth = data.getInt(28);
+        int layerCount = data.getInt(32);
+        int faceCount = data.getInt(36);
+        int levelCount = max(1, data.getInt(40));
+        int supercompressionScheme = data.getInt(44);
+
+        if (format == VK_FORMAT_UNDEFINED) throw new IllegalArgumentException("Basis Universal textures are not supported");
+        if (supercompressionScheme != 0) {
+            throw new IllegalArgumentException("Supercompression scheme " + supercompressionScheme + " is not supported");
+        }
+        if (height == 0 || depth != 0 || layerCount > 1 || faceCount != 1) {
+            throw new IllegalArgumentException("Only 2D textures with 1 layer and 1 face are supported");
+        }
+
+        if (data.limit() < 80 + 24L * levelCount) throw new IllegalArgumentException("KTX2 level index is truncated");
+        long[] levelOffsets = new long[levelCount];
+        long[] levelSizes = new long[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            levelOffsets[level] = data.getLong(80 + 24 * level);
+            levelSizes[level] = data.getLong(88 + 24 * level);
+        }
+
+        return new TextureContainer(format, width, height, data, levelOffsets, levelSizes);
+    }
+
+    public static TextureContainer parseDds(ByteBuffer data) {
+        data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < 128 || data.getInt(0) != DDS_MAGIC || data.getInt(4) != 124) {
+            throw new IllegalArgumentException("Missing or truncated DDS header");
+        }
+
+        int height = data.getInt(12);
+        int width = data.getInt(16);
+        int levelCount = max(1, data.getInt(28));
+        int pixelFormatFlags = data.getInt(80);
+        int fourCC = data.getInt(84);
+        int caps2 = data.getInt(112);
+        if ((caps2 & (DDSCAPS2_CUBEMAP | DDSCAPS2_VOLUME)) != 0) {
+            throw new IllegalArgumentException("Cubemaps and volume textures are not supported");
+        }
+
+        int dataStart = 128;
+        int format;
+        if ((pixelFormatFlags & DDPF_FOURCC) != 0 && fourCC == fourCC("DX10")) {
+            if (data.limit() < 148) throw new IllegalArgumentException("DX10 header is truncated");
+            if (data.getInt(132) != DDS_DIMENSION_TEXTURE2D || data.getInt(140) > 1) {
+                throw new IllegalArgumentException("Only 2D textures with 1 array layer are supported");
+            }
+            format = dxgiFormat(data.getInt(128));
+            dataStart = 148;
+        } else if ((pixelFormatFlags & DDPF_FOURCC) != 0) {
+            format = fourCCFormat(fourCC);
+        } else if ((pixelFormatFlags & DDPF_RGB) != 0 && data.getInt(88) == 32) {
+            int redMask = data.getInt(92);
+            boolean hasAlpha = (pixelFormatFlags & DDPF_ALPHA_PIXELS) != 0;
+            if (redMask == 0xFF) format = hasAlpha ? VK_FORMAT_R8G8B8A8_UNORM : VK_FORMAT_UNDEFINED;
+            else if (redMask == 0xFF0000) format = hasAlpha ? VK_FORMAT_B8G8R8A8_UNORM : VK_FORMAT_UNDEFINED;
+            else format = VK_FORMAT_UNDEFINED;
+        } else format = VK_FORMAT_UNDEFINED;
+
+        if (format == VK_FORMAT_UNDEFINED) throw new IllegalArgumentException("Unsupported DDS pixel format");
+
+        // DDS stores the levels tightly packed, starting with the finest level
+        long[] levelOffsets = new long[levelCount];
+        long[] levelSizes = new long[levelCount];
+        long offset = dataStart;
+        for (int level = 0; level < levelCount; level++) {
+            levelOffsets[level] = offset;
+            levelSizes[level] = levelSize(format, max(1, width >> level), max(1, height >> level));
+            offset += levelSizes[level];
+        }
+
+        return new TextureContainer(format, width, height, data, levelOffsets, levelSizes);
+    }
+
+    private static int fourCC(String code) {
+        return code.charAt(0) | (code.charAt(1) << 8) | (code.charAt(2) << 16) | (code.charAt(3) << 24);
+    }
+
+    private static int fourCCFormat(int fourCC) {
+        if (fourCC == fourCC("DXT1")) return VK_FORMAT_BC1_RGBA_UNORM_BLOCK;
+        if (fourCC == fourCC("DXT3")) return VK_FORMAT_BC2_UNORM_BLOCK;
+        if (fourCC == fourCC("DXT5")) return VK_FORMAT_BC3_UNORM_BLOCK;
+        if (fourCC == fourCC("ATI1") || fourCC == fourCC("BC4U")) return VK_FORMAT_BC4_UNORM_BLOCK;
+        if (fourCC == fourCC("BC4S")) return VK_FORMAT_BC4_SNORM_BLOCK;
+        if (fourCC == fourCC("ATI2") || fourCC == fourCC("BC5U")) return VK_FORMAT_BC5_UNORM_BLOCK;
+        if (fourCC == fourCC("BC5S")) return VK_FORMAT_BC5_SNORM_BLOCK;
+        return VK_FORMAT_UNDEFINED;
+    }
+
+    private static int dxgiFormat(int dxgiFormat) {
+        return switch (dxgiFormat) {
+            case 28 -> VK_FORMAT_R8G8B8A8_UNORM;
+            case 29 -> VK_FORMAT_R8G8B8A8_SRGB;
+            case 71 -> VK_FORMAT_BC1_RGBA_UNORM_BLOCK;
+            case 72 -> VK_FORMAT_BC1_RGBA_SRGB_BLOCK;
+            case 74 -> VK_FORMAT_BC2_UNORM_BLOCK;
+            case 75 -> VK_FORMAT_BC2_SRGB_BLOCK;
+            case 77 -> VK_FORMAT_BC3_UNORM_BLOCK;
+            case 78 -> VK_FORMAT_BC3_SRGB_BLOCK;
+            case 80 -> VK_FORMAT_BC4_UNORM_BLOCK;
+            case 81 -> VK_FORMAT_BC4_SNORM_BLOCK;
+            case 83 -> VK_FORMAT_BC5_UNORM_BLOCK;
+            case 84 -> VK_FORMAT_BC5_SNORM_BLOCK;
+            case 87 -> VK_FORMAT_B8G8R8A8_UNORM;
+            case 91 -> VK_FORMAT_B8G8R8A8_SRGB;
+            case 95 -> VK_FORMAT_BC6H_UFLOAT_BLOCK;
+            case 96 -> VK_FORMAT_BC6H_SFLOAT_BLOCK;
+            case 98 -> VK_FORMAT_BC7_UNORM_BLOCK;
+            case 99 -> VK_FORMAT_BC7_SRGB_BLOCK;
+            default -> VK_FORMAT_UNDEFINED;
+        };
+    }
+
+    /**
+     * @return The size of a mip level with the given size, for the formats that DDS files can have
+     */
+    static long levelSize(int format, int width, int height) {
+        int blockSize = switch (format) {
+            case VK_FORMAT_BC1_RGBA_UNORM_BLOCK, VK_FORMAT_BC1_RGBA_SRGB_BLOCK,
+                    VK_FORMAT_BC4_UNORM_BLOCK, VK_FORMAT_BC4_SNORM_BLOCK -> 8;
+            case VK_FORMAT_R8G8B8A8_UNORM, VK_FORMAT_R8G8B8A8_SRGB,
+                    VK_FORMAT_B8G8R8A8_UNORM, VK_FORMAT_B8G8R8A8_SRGB -> 0;
+            default -> 16;
+        };
+        if (blockSize == 0) return 4L * width * height;
+        return (long) ((width + 3) / 4) * ((height + 3) / 4) * blockSize;
+    }
+
+    public int mipLevels() {
+        return levelOffsets.length;
+    }
+
+    /**
+     * @return The smallest offset of any mip level into <i>data</i>
+     */
+    public long getDataStart() {
+        long start = Long.MAX_VALUE;
+        for (long offset : levelOffsets) start = Math.min(start, offset);
+        return start;
+    }
+
+    /**
+     * @return The number of bytes between <i>getDataStart</i> and the end of the last mip level
+     */
+    public long getDataSize() {
+        long end = 0;
+        for (int level = 0; level < levelOffsets.length; level++) end = max(end, levelOffsets[level] + levelSizes[level]);
+        return end - getDataStart();
+    }
+}
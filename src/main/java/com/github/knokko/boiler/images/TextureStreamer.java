@@ -0,0 +1,481 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.buffer.MappedVmaBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.VmaBudget;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static java.lang.Math.max;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.util.vma.Vma.vmaGetHeapBudgets;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Keeps the mip levels of many textures resident on demand, within a memory budget. Applications register textures
+ * with a <i>MipLoader</i>, request the mip level they need each frame (e.g. based on the distance to the camera), and
+ * call <i>update</i> once per frame. The streamer then loads missing mip levels, and evicts mip levels of the least
+ * recently requested textures when the budget would be exceeded (see <i>ResidencyPlanner</i>).
+ * <p>
+ * Uploads are asynchronous: the loaders are run on the given executor, and write directly into staging buffers.
+ * Once loaded, the copies are submitted to the first graphics queue, and the new image replaces the old image during
+ * the first <i>update</i> after the copies have finished. Since images can't be resized, every change of the resident
+ * mip levels creates a new image with exactly those levels (so mip level 0 of <i>getImage</i> is mip level
+ * <i>getResidentLevel</i> of the texture). The replaced images are destroyed once the frames that may still use them
+ * have finished.
+ * <p>
+ * Only uncompressed formats are supported. This class is not thread-safe.
+ */
+public class TextureStreamer<K> {
+
+    @FunctionalInterface
+    public interface MipLoader {
+
+        /**
+         * Writes the tightly packed pixels of the given mip level to <i>destination</i>, whose size is exactly the
+         * size of the mip level. This is called on the executor of the streamer.
+         */
+        void load(int mipLevel, ByteBuffer destination);
+    }
+
+    private final BoilerInstance instance;
+    private final long budget;
+    private final Executor executor;
+    private final String name;
+    private final long commandPool;
+
+    private final ResidencyPlanner<K> planner = new ResidencyPlanner<>();
+    private final Map<K, Texture> textures = new HashMap<>();
+    private final List<Upload> loadingUploads = new ArrayList<>();
+    private final List<Submission> submissions = new ArrayList<>();
+    private final List<RetiredImage> retiredImages = new ArrayList<>();
+    private TimelineInstant lastFrameFinished;
+
+    /**
+     * @param budget The maximum total size of the resident mip levels, in bytes. When it is 0, the budget follows
+     *               the VMA budget of the largest device-local heap, such that 10% of that budget stays free.
+     */
+    public TextureStreamer(BoilerInstance instance, long budget, Executor executor, String name) {
+        this.instance = instance;
+        this.budget = budget;
+        this.executor = executor;
+        this.name = name;
+        this.commandPool = instance.commands.createPool(
+                VK_COMMAND_POOL_CREATE_TRANSIENT_BIT | VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT,
+                instance.queueFamilies().graphics().index(), name
+        );
+    }
+
+    public void register(K key, int width, int height, int format, int bytesPerPixel, MipLoader loader) {
+        int numLevels = BoilerImages.mipLevelCount(width, height);
+        long[] levelSizes = new long[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            levelSizes[level] = (long) max(1, width >> level) * max(1, height >> level) * bytesPerPixel;
+        }
+        planner.add(key, levelSizes);
+        textures.put(key, new Texture(key, width, height, format, levelSizes, loader));
+    }
+
+    /**
+     * Stops streaming the given texture. Its image will be destroyed once the current frame has finished.
+     */
+    public void unregister(K key) {
+        var texture = textures.remove(key);
+        if (texture == null) throw new IllegalArgumentException("Unknown key " + key);
+        planner.remove(key);
+        if (texture.pending != null) texture.pending.cancelled = true;
+        retire(texture.image);
+    }
+
+    /**
+     * Requests the given texture to be resident up to (and including) <i>mipLevel</i>. This should be called every
+     * frame for every texture that is needed, since the least recently requested textures are evicted first.
+     */
+    public void request(K key, int mipLevel) {
+        planner.request(key, mipLevel);
+    }
+
+    /**
+     * @return The current image of the given texture, or null if none of its mip levels is resident yet. The image
+     * is in <i>VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL</i>, and its view covers all its mip levels.
+     */
+    public VmaImage getImage(K key) {
+        return textures.get(key).image;
+    }
+
+    /**
+     * @return The mip level of the texture that corresponds to mip level 0 of <i>getImage</i>
+     */
+    public int getResidentLevel(K key) {
+        return textures.get(key).imageLevel;
+    }
+
+    /**
+     * @return The number of requests that were already satisfied by the resident mip levels
+     */
+    public long getHits() {
+        return planner.hits;
+    }
+
+    /**
+     * @return The number of requests that needed more mip levels than were resident
+     */
+    public long getMisses() {
+        return planner.misses;
+    }
+
+    /**
+     * @return The number of mip levels that have been evicted
+     */
+    public long getEvictions() {
+        return planner.evictions;
+    }
+
+    /**
+     * @return The total size of the mip levels that are resident (or being uploaded), in bytes
+     */
+    public long getResidentBytes() {
+        return planner.getResidentBytes();
+    }
+
+    /**
+     * @return The number of uploads that have not finished yet
+     */
+    public int getNumPendingUploads() {
+        int result = loadingUploads.size();
+        for (var submission : submissions) result += submission.uploads.size();
+        return result;
+    }
+
+    /**
+     * Finishes completed uploads, plans the residency based on the requests since the previous update, starts
+     * loading the missing mip levels, and submits the copies of loaded mip levels.
+     * @param frameFinished The timeline instant that is signalled once the frame that is recorded after this update
+     *                      has finished. Images that are replaced during the next update will be destroyed once this
+     *                      instant has been reached.
+     */
+    public void update(TimelineInstant frameFinished) {
+        try (var stack = stackPush()) {
+            finishSubmissions(stack);
+            destroyRetiredImages(stack);
+
+            for (var change : planner.plan(currentBudget(stack))) {
+                var texture = textures.get(change.key());
+                if (texture.pending != null) texture.pending.cancelled = true;
+                texture.pending = null;
+
+                if (change.newResidentLevel() == texture.levelSizes.length) {
+                    retire(texture.image);
+                    texture.image = null;
+                    texture.imageLevel = texture.levelSizes.length;
+                } else startUpload(stack, texture, change.newResidentLevel());
+            }
+
+            lastFrameFinished = frameFinished;
+            submitLoadedUploads(stack);
+        }
+    }
+
+    private long currentBudget(MemoryStack stack) {
+        if (budget != 0) return budget;
+
+        var memoryProperties = VkPhysicalDeviceMemoryProperties.calloc(stack);
+        vkGetPhysicalDeviceMemoryProperties(instance.vkPhysicalDevice(), memoryProperties);
+        int heapIndex = 0;
+        for (int index = 0; index < memoryProperties.memoryHeapCount(); index++) {
+            var heap = memoryProperties.memoryHeaps(index);
+            if ((heap.flags() & VK_MEMORY_HEAP_DEVICE_LOCAL_BIT) != 0 &&
+                    heap.size() > memoryProperties.memoryHeaps(heapIndex).size()) heapIndex = index;
+        }
+
+        var budgets = VmaBudget.calloc(VK_MAX_MEMORY_HEAPS, stack);
+        vmaGetHeapBudgets(instance.vmaAllocator(), budgets);
+        var heapBudget = budgets.get(heapIndex);
+        long available = heapBudget.budget() - heapBudget.usage() - heapBudget.budget() / 10;
+        return max(0L, planner.getResidentBytes() + available);
+    }
+
+    private void startUpload(MemoryStack stack, Texture texture, int firstLevel) {
+        int numLevels = texture.levelSizes.length - firstLevel;
+        var image = instance.images.create(
+                stack, max(1, texture.width >> firstLevel), max(1, texture.height >> firstLevel), texture.format,
+                VK_IMAGE_USAGE_SAMPLED_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT, VK_IMAGE_ASPECT_COLOR_BIT,
+                VK_SAMPLE_COUNT_1_BIT, numLevels, 1, true, name + "-" + texture.key
+        );
+
+        long stagingSize = 0;
+        for (int level = firstLevel; level < texture.levelSizes.length; level++) stagingSize += texture.levelSizes[level];
+        var stagingBuffer = instance.buffers.createMapped(
+                stagingSize, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, name + "-Staging-" + texture.key
+        );
+
+        var loader = texture.loader;
+        long[] levelSizes = texture.levelSizes;
+        var loaded = CompletableFuture.runAsync(() -> {
+            long offset = 0;
+            for (int level = firstLevel; level < levelSizes.length; level++) {
+                int size = (int) levelSizes[level];
+                loader.load(level, memByteBuffer(stagingBuffer.hostAddress() + offset, size));
+                offset += size;
+            }
+        }, executor);
+
+        var upload = new Upload(texture, firstLevel, image, stagingBuffer, loaded);
+        texture.pending = upload;
+        loadingUploads.add(upload);
+    }
+
+    /**
+     * Submits the copies of all uploads that have been loaded. When a <i>MipLoader</i> threw an exception, the other
+     * loaded uploads are still submitted, the residency of the failed texture is rolled back, and the (first)
+     * exception is rethrown afterwards.
+     */
+    private void submitLoadedUploads(MemoryStack stack) {
+        List<Upload> readyUploads = new ArrayList<>();
+        Throwable failure = null;
+        var iterator = loadingUploads.iterator();
+        while (iterator.hasNext()) {
+            var upload = iterator.next();
+            if (!upload.loaded.isDone()) continue;
+            iterator.remove();
+
+            try {
+                upload.loaded.join();
+            } catch (CompletionException failed) {
+                upload.destroy(instance);
+                if (!upload.cancelled) rollBack(upload);
+
+                var cause = failed.getCause() != null ? failed.getCause() : failed;
+                if (failure == null) failure = cause;
+                else failure.addSuppressed(cause);
+                continue;
+            }
+
+            if (upload.cancelled) upload.destroy(instance);
+            else readyUploads.add(upload);
+        }
+        if (!readyUploads.isEmpty()) submitUploads(stack, readyUploads);
+
+        if (failure instanceof RuntimeException runtimeFailure) throw runtimeFailure;
+        if (failure instanceof Error error) throw error;
+        if (failure != null) throw new CompletionException(failure);
+    }
+
+    /**
+     * Makes the planner consistent with the image of the texture again, after its upload failed. When the failed
+     * upload would have replaced the image with a smaller one, the image is evicted completely, since the planner
+     * only reserved the size of the smaller image.
+     */
+    private void rollBack(Upload upload) {
+        var texture = upload.texture;
+        texture.pending = null;
+        if (texture.imageLevel < upload.firstLevel) {
+            retire(texture.image);
+            texture.image = null;
+            texture.imageLevel = texture.levelSizes.length;
+        }
+        planner.markEvicted(texture.key, texture.imageLevel);
+    }
+
+    private void submitUploads(MemoryStack stack, List<Upload> readyUploads) {
+
+        var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, name + "-Upload")[0];
+        var recorder = CommandRecorder.begin(
+                commandBuffer, instance, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, name + "-Upload"
+        );
+        var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        var shaderRead = new ResourceUsage(VK_ACCESS_SHADER_READ_BIT, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT);
+
+        for (var upload : readyUploads) {
+            int numLevels = upload.texture.levelSizes.length - upload.firstLevel;
+            recorder.transitionLayout(
+                    upload.image.vkImage(), 0, numLevels, VK_IMAGE_LAYOUT_UNDEFINED,
+                    VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, null, transferWrite, VK_IMAGE_ASPECT_COLOR_BIT
+            );
+
+            var regions = VkBufferImageCopy.calloc(numLevels, stack);
+            long offset = 0;
+            for (int index = 0; index < numLevels; index++) {
+                int width = max(1, upload.image.width() >> index);
+                int height = max(1, upload.image.height() >> index);
+                var region = regions.get(index);
+                region.bufferOffset(offset);
+                instance.images.subresourceLayers(stack, region.imageSubresource(), VK_IMAGE_ASPECT_COLOR_BIT);
+                region.imageSubresource().mipLevel(index);
+                region.imageExtent().set(width, height, 1);
+                offset += upload.texture.levelSizes[upload.firstLevel + index];
+            }
+            vkCmdCopyBufferToImage(
+                    commandBuffer, upload.stagingBuffer.vkBuffer(), upload.image.vkImage(),
+                    VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, regions
+            );
+
+            recorder.transitionLayout(
+                    upload.image.vkImage(), 0, numLevels, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                    VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, transferWrite, shaderRead, VK_IMAGE_ASPECT_COLOR_BIT
+            );
+        }
+        recorder.end();
+
+        long fence = instance.sync.fenceBank.borrowFence();
+        instance.queueFamilies().graphics().queues().get(0).submit(
+                commandBuffer, name + "-Upload", new WaitSemaphore[0], fence
+        );
+        submissions.add(new Submission(commandBuffer, fence, readyUploads));
+    }
+
+    private void finishSubmissions(MemoryStack stack) {
+        var iterator = submissions.iterator();
+        while (iterator.hasNext()) {
+            var submission = iterator.next();
+            if (vkGetFenceStatus(instance.vkDevice(), submission.fence) != VK_SUCCESS) continue;
+            iterator.remove();
+
+            for (var upload : submission.uploads) {
+                upload.stagingBuffer.destroy(instance.vmaAllocator());
+                if (upload.cancelled) {
+                    destroyImage(upload.image);
+                    continue;
+                }
+
+                var texture = upload.texture;
+                retire(texture.image);
+                texture.image = upload.image;
+                texture.imageLevel = upload.firstLevel;
+                texture.pending = null;
+            }
+            instance.sync.fenceBank.returnFence(submission.fence, true);
+            vkFreeCommandBuffers(instance.vkDevice(), commandPool, stack.pointers(submission.commandBuffer));
+        }
+    }
+
+    private void retire(VmaImage image) {
+        if (image != null) retiredImages.add(new RetiredImage(image, lastFrameFinished));
+    }
+
+    private void destroyRetiredImages(MemoryStack stack) {
+        var iterator = retiredImages.iterator();
+        while (iterator.hasNext()) {
+            var retired = iterator.next();
+            var lastUse = retired.lastUse;
+            if (lastUse == null || instance.sync.getTimelineSemaphoreValue(
+                    stack, lastUse.timelineSemaphore(), name
+            ) >= lastUse.value()) {
+                destroyImage(retired.image);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void destroyImage(VmaImage image) {
+        vkDestroyImageView(instance.vkDevice(), image.vkImageView(), null);
+        vmaDestroyImage(instance.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+    }
+
+    /**
+     * Waits for all pending uploads, and destroys all images. The GPU must have finished all frames that used any
+     * of the images.
+     */
+    public void destroy() {
+        try (var stack = stackPush()) {
+            for (var submission : submissions) {
+                assertVkSuccess(vkWaitForFences(
+                        instance.vkDevice(), stack.longs(submission.fence), true, instance.defaultTimeout
+                ), "WaitForFences", name);
+            }
+            finishSubmissions(stack);
+        }
+        for (var upload : loadingUploads) {
+            try {
+                upload.loaded.join();
+            } catch (CompletionException ignored) {
+                // The upload is discarded anyway
+            }
+            upload.destroy(instance);
+        }
+        loadingUploads.clear();
+
+        for (var retired : retiredImages) destroyImage(retired.image);
+        retiredImages.clear();
+        for (var texture : textures.values()) {
+            if (texture.image != null) destroyImage(texture.image);
+        }
+        textures.clear();
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+    }
+
+    private class Texture {
+
+        final K key;
+        final int width, height, format;
+        final long[] levelSizes;
+        final MipLoader loader;
+
+        VmaImage image;
+        int imageLevel;
+        Upload pending;
+
+        Texture(K key, int width, int height, int format, long[] levelSizes, MipLoader loader) {
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.levelSizes = levelSizes;
+            this.loader = loader;
+            this.imageLevel = levelSizes.length;
+        }
+    }
+
+    private class Upload {
+
+        final Texture texture;
+        final int firstLevel;
+        final VmaImage image;
+        final MappedVmaBuffer stagingBuffer;
+        final CompletableFuture<Void> loaded;
+        boolean cancelled;
+
+        Upload(Texture texture, int firstLevel, VmaImage image, MappedVmaBuffer stagingBuffer, CompletableFuture<Void> loaded) {
+            this.texture = texture;
+            this.firstLevel = firstLevel;
+            this.image = image;
+            this.stagingBuffer = stagingBuffer;
+            this.loaded = loaded;
+        }
+
+        void destroy(BoilerInstance instance) {
+            stagingBuffer.destroy(instance.vmaAllocator());
+            destroyImage(image);
+        }
+    }
+
+    private class Submission {
+
+        final VkCommandBuffer commandBuffer;
+        final long fence;
+        final List<Upload> uploads;
+
+        Submission(VkCommandBuffer commandBuffer, long fence, List<Upload> uploads) {
+            this.commandBuffer = commandBuffer;
+            this.fence = fence;
+            this.uploads = uploads;
+        }
+    }
+
+    private record RetiredImage(VmaImage image, TimelineInstant lastUse) {}
+}
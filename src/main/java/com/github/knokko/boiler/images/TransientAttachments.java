@@ -0,0 +1,142 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.VmaAllocationInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.util.vma.Vma.vmaGetAllocationInfo;
+import static org.lwjgl.vulkan.VK10.vkDestroyImageView;
+
+/**
+ * Hands out transient attachments (see <i>BoilerImages.createTransientAttachment</i>), typically for the depth or
+ * multisampled color buffers of swapchain images. When <i>shareAcrossFrames</i> is true, all requests with the same
+ * size, format, usage, and sample count get the <b>same</b> image, so there is only 1 depth buffer for all frames in
+ * flight, rather than 1 per swapchain image.
+ * <p>
+ * Sharing is only allowed when the frames can't use the attachment concurrently: all frames must be submitted to the
+ * same queue, and the render pass (or barrier) that starts using the attachment must wait for the attachment writes of
+ * the previous frame. For depth buffers, that means a dependency from <i>LATE_FRAGMENT_TESTS</i> with access
+ * <i>DEPTH_STENCIL_ATTACHMENT_WRITE</i>; for color buffers, from <i>COLOR_ATTACHMENT_OUTPUT</i> with access
+ * <i>COLOR_ATTACHMENT_WRITE</i>.
+ * <p>
+ * Images are reference-counted: each <i>acquire</i> must be paired with a <i>release</i>, and an image is destroyed
+ * when its last reference is released (e.g. in a pre-destruction callback of <i>SwapchainResourceManager</i>).
+ */
+public class TransientAttachments {
+
+    private final BoilerInstance instance;
+    private final boolean shareAcrossFrames;
+    private final String name;
+
+    private final Map<Key, Shared> sharedImages = new HashMap<>();
+    private final Map<Long, Shared> imagesByHandle = new HashMap<>();
+    private long requestedBytes, allocatedBytes;
+
+    public TransientAttachments(BoilerInstance instance, boolean shareAcrossFrames, String name) {
+        this.instance = instance;
+        this.shareAcrossFrames = shareAcrossFrames;
+        this.name = name;
+    }
+
+    /**
+     * Returns a transient attachment with the given properties, which is shared with earlier requests with the same
+     * properties when <i>shareAcrossFrames</i> is true. It must be released using <i>release</i>.
+     */
+    public VmaImage acquire(
+            MemoryStack stack, int width, int height, int format, int usage, int aspectMask, int samples
+    ) {
+        var key = new Key(width, height, format, usage, aspectMask, samples);
+        var shared = shareAcrossFrames ? sharedImages.get(key) : null;
+        if (shared == null) {
+            var image = instance.images.createTransientAttachment(
+                    stack, width, height, format, usage, aspectMask, samples, name + "-" + imagesByHandle.size()
+            );
+            var allocationInfo = VmaAllocationInfo.calloc(stack);
+            vmaGetAllocationInfo(instance.vmaAllocator(), image.vmaAllocation(), allocationInfo);
+
+            shared = new Shared(key, image, allocationInfo.size());
+            allocatedBytes += shared.size;
+            imagesByHandle.put(image.vkImage(), shared);
+            if (shareAcrossFrames) sharedImages.put(key, shared);
+        }
+
+        shared.references += 1;
+        requestedBytes += shared.size;
+        return shared.image;
+    }
+
+    /**
+     * Releases a reference to an image that was returned by <i>acquire</i>. When this was the last reference, the
+     * image is destroyed, so the GPU must have finished using it.
+     */
+    public void release(VmaImage image) {
+        var shared = imagesByHandle.get(image.vkImage());
+        if (shared == null) throw new IllegalArgumentException("Image was not acquired from " + name);
+
+        shared.references -= 1;
+        requestedBytes -= shared.size;
+        if (shared.references == 0) {
+            imagesByHandle.remove(image.vkImage());
+            if (sharedImages.get(shared.key) == shared) sharedImages.remove(shared.key);
+            allocatedBytes -= shared.size;
+            vkDestroyImageView(instance.vkDevice(), image.vkImageView(), null);
+            vmaDestroyImage(instance.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+        }
+    }
+
+    /**
+     * @return The total size of the attachments that are currently acquired, as if none of them were shared
+     */
+    public long getRequestedBytes() {
+        return requestedBytes;
+    }
+
+    /**
+     * @return The total size of the attachments that are currently allocated. Note that lazily-allocated memory may
+     * not be backed by physical memory at all.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return The number of bytes that are saved by sharing attachments across frames
+     */
+    public long getSavedBytes() {
+        return requestedBytes - allocatedBytes;
+    }
+
+    /**
+     * Destroys all images that haven't been released yet. The GPU must have finished using them.
+     */
+    public void destroy() {
+        for (var shared : imagesByHandle.values()) {
+            vkDestroyImageView(instance.vkDevice(), shared.image.vkImageView(), null);
+            vmaDestroyImage(instance.vmaAllocator(), shared.image.vkImage(), shared.image.vmaAllocation());
+        }
+        imagesByHandle.clear();
+        sharedImages.clear();
+        requestedBytes = 0;
+        allocatedBytes = 0;
+    }
+
+    private record Key(int width, int height, int format, int usage, int aspectMask, int samples) {}
+
+    private static class Shared {
+
+        final Key key;
+        final VmaImage image;
+        final long size;
+        int references;
+
+        Shared(Key key, VmaImage image, long size) {
+            this.key = key;
+            this.image = image;
+            this.size = size;
+        }
+    }
+}
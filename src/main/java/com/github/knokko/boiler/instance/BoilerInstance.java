@@ -5,6 +5,7 @@ import com.github.knokko.boiler.commands.BoilerCommands;
 import com.github.knokko.boiler.debug.BoilerDebug;
 import com.github.knokko.boiler.descriptors.BoilerDescriptors;
 import com.github.knokko.boiler.images.BoilerImages;
+import com.github.knokko.boiler.memory.BoilerMemoryPools;
 import com.github.knokko.boiler.pipelines.BoilerPipelines;
 import com.github.knokko.boiler.queue.QueueFamilies;
 import com.github.knokko.boiler.surface.WindowSurface;
@@ -46,6 +47,7 @@ public class BoilerInstance {
 
     public final BoilerBuffers buffers;
     public final BoilerImages images;
+    public final BoilerMemoryPools memoryPools;
     public final BoilerDescriptors descriptors;
     public final BoilerPipelines pipelines;
     public final BoilerCommands commands;
@@ -78,6 +80,25 @@ public class BoilerInstance {
             VkInstance vkInstance, VkPhysicalDevice vkPhysicalDevice, VkDevice vkDevice,
             Set<String> instanceExtensions, Set<String> deviceExtensions,
             QueueFamilies queueFamilies, long vmaAllocator, long validationErrorThrower
+    ) {
+        this(glfwWindows, windowSurfaces, swapchainSettingsArr,
+             hasSwapchainMaintenance, false, xr, defaultTimeout,
+             vkInstance, vkPhysicalDevice, vkDevice,
+             instanceExtensions, deviceExtensions,
+             queueFamilies, vmaAllocator, validationErrorThrower);
+    }
+
+    /**
+     * @param hasPresentWait Whether the <i>presentId</i> and <i>presentWait</i> features of VK_KHR_present_id and
+     *                       VK_KHR_present_wait are enabled. This allows the low-latency mode of the swapchains to
+     *                       wait until frames are actually presented.
+     */
+    public BoilerInstance(
+            long[] glfwWindows, WindowSurface[] windowSurfaces, SwapchainSettings[] swapchainSettingsArr,
+            boolean hasSwapchainMaintenance, boolean hasPresentWait, XrBoiler xr, long defaultTimeout,
+            VkInstance vkInstance, VkPhysicalDevice vkPhysicalDevice, VkDevice vkDevice,
+            Set<String> instanceExtensions, Set<String> deviceExtensions,
+            QueueFamilies queueFamilies, long vmaAllocator, long validationErrorThrower
     ) {
         this.glfwWindows = glfwWindows;
         this.windowSurfaces = windowSurfaces;
@@ -100,13 +121,14 @@ public class BoilerInstance {
 
         this.buffers = new BoilerBuffers(this);
         this.images = new BoilerImages(this);
+        this.memoryPools = new BoilerMemoryPools(this);
         this.descriptors = new BoilerDescriptors(this);
         this.pipelines = new BoilerPipelines(this);
         this.commands = new BoilerCommands(this);
         this.sync = new BoilerSync(this);
         this.swapchainsArr = new BoilerSwapchains[swapchainSettingsArr.length];
         for (int i = 0; i < swapchainSettingsArr.length; i++) {
-            swapchainsArr[i] = swapchainSettingsArr[i] != null ? new BoilerSwapchains(this, hasSwapchainMaintenance, i) : null;
+            swapchainsArr[i] = swapchainSettingsArr[i] != null ? new BoilerSwapchains(this, hasSwapchainMaintenance, hasPresentWait, i) : null;
         }
         if (swapchainsArr.length > 0) {
             swapchains = swapchainsArr[0];
@@ -193,6 +215,10 @@ public class BoilerInstance {
      *     <li>The swapchain (if applicable)</li>
      *     <li>The unused fences in the fence bank</li>
      *     <li>The unused semaphores in the semaphore bank</li>
+     *     <li>The pipeline cache (after saving it, if applicable)</li>
+     *     <li>The pipelines of the pipeline deduplicator</li>
+     *     <li>The cached shader modules</li>
+     *     <li>The remaining memory pools</li>
      *     <li>The VMA allocator</li>
      *     <li>The VkDevice</li>
      *     <li>The window surface (if applicable)</li>
@@ -214,6 +240,10 @@ public class BoilerInstance {
         }
         sync.fenceBank.destroy();
         sync.semaphoreBank.destroy();
+        pipelines.deduplicator.destroy();
+        pipelines.destroyPipelineCache();
+        pipelines.shaderModules.destroy();
+        memoryPools.destroyAll();
         vmaDestroyAllocator(vmaAllocator);
         vkDestroyDevice(vkDevice, null);
         if (windowSurfaces != null) {
@@ -0,0 +1,149 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.util.vma.VmaPoolCreateInfo;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVmaSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Named custom <i>VmaPool</i>s. Allocating resources with a similar lifetime from the same pool keeps them apart
+ * from the other resources, which reduces fragmentation. For instance, transient per-frame resources can be
+ * allocated from a pool that uses the linear algorithm, while long-lived resources use the default pools.
+ * <p>
+ * The returned pool handles can be passed to the pool overloads of <i>BoilerBuffers</i> and <i>BoilerImages</i>.
+ * All remaining pools are destroyed during <i>BoilerInstance.destroyInitialObjects()</i>, but all resources in a
+ * pool must be destroyed before its pool is destroyed.
+ */
+public class BoilerMemoryPools {
+
+    private final BoilerInstance instance;
+    private final Map<String, Long> pools = new HashMap<>();
+
+    public BoilerMemoryPools(BoilerInstance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Creates a pool for buffers with the given usage
+     * @param hostVisible Whether the buffers in this pool must be mappable
+     * @param linear Whether the pool should use <i>VMA_POOL_CREATE_LINEAR_ALGORITHM_BIT</i>, which is suitable for
+     *               free-at-once, stack, and ring buffer allocation patterns
+     * @param blockSize The size of each <i>VkDeviceMemory</i> block, or 0 to let VMA choose
+     * @param maxBlockCount The maximum number of blocks, or 0 for no limit. Linear pools that are used as ring buffer
+     *                      must have exactly 1 block.
+     */
+    public long createBufferPool(
+            String name, int bufferUsage, boolean hostVisible, boolean linear, long blockSize, long maxBlockCount
+    ) {
+        try (var stack = stackPush()) {
+            var ciBuffer = VkBufferCreateInfo.calloc(stack);
+            ciBuffer.sType$Default();
+            ciBuffer.size(1024);
+            ciBuffer.usage(bufferUsage);
+            ciBuffer.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+
+            var ciAllocation = allocationInfo(stack, hostVisible);
+            var pMemoryTypeIndex = stack.callocInt(1);
+            assertVmaSuccess(vmaFindMemoryTypeIndexForBufferInfo(
+                    instance.vmaAllocator(), ciBuffer, ciAllocation, pMemoryTypeIndex
+            ), "FindMemoryTypeIndexForBufferInfo", name);
+
+            return createPool(stack, name, pMemoryTypeIndex.get(0), linear, blockSize, maxBlockCount);
+        }
+    }
+
+    /**
+     * Creates a pool for 2D images with optimal tiling, and the given format and usage. See
+     * <i>createBufferPool</i> for the other parameters.
+     */
+    public long createImagePool(
+            String name, int format, int imageUsage, boolean linear, long blockSize, long maxBlockCount
+    ) {
+        try (var stack = stackPush()) {
+            var ciImage = VkImageCreateInfo.calloc(stack);
+            ciImage.sType$Default();
+            ciImage.imageType(VK_IMAGE_TYPE_2D);
+            ciImage.format(format);
+            ciImage.extent().set(16, 16, 1);
+            ciImage.mipLevels(1);
+            ciImage.arrayLayers(1);
+            ciImage.samples(VK_SAMPLE_COUNT_1_BIT);
+            ciImage.tiling(VK_IMAGE_TILING_OPTIMAL);
+            ciImage.usage(imageUsage);
+            ciImage.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+            ciImage.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+
+            var ciAllocation = allocationInfo(stack, false);
+            var pMemoryTypeIndex = stack.callocInt(1);
+            assertVmaSuccess(vmaFindMemoryTypeIndexForImageInfo(
+                    instance.vmaAllocator(), ciImage, ciAllocation, pMemoryTypeIndex
+            ), "FindMemoryTypeIndexForImageInfo", name);
+
+            return createPool(stack, name, pMemoryTypeIndex.get(0), linear, blockSize, maxBlockCount);
+        }
+    }
+
+    private VmaAllocationCreateInfo allocationInfo(MemoryStack stack, boolean hostVisible) {
+        var ciAllocation = VmaAllocationCreateInfo.calloc(stack);
+        ciAllocation.usage(VMA_MEMORY_USAGE_AUTO);
+        if (hostVisible) {
+            ciAllocation.flags(VMA_ALLOCATION_CREATE_HOST_ACCESS_RANDOM_BIT | VMA_ALLOCATION_CREATE_MAPPED_BIT);
+        }
+        return ciAllocation;
+    }
+
+    private synchronized long createPool(
+            MemoryStack stack, String name, int memoryTypeIndex, boolean linear, long blockSize, long maxBlockCount
+    ) {
+        if (pools.containsKey(name)) throw new IllegalArgumentException("A pool named " + name + " already exists");
+
+        var ciPool = VmaPoolCreateInfo.calloc(stack);
+        ciPool.memoryTypeIndex(memoryTypeIndex);
+        ciPool.flags(linear ? VMA_POOL_CREATE_LINEAR_ALGORITHM_BIT : 0);
+        ciPool.blockSize(blockSize);
+        ciPool.maxBlockCount(maxBlockCount);
+
+        var pPool = stack.callocPointer(1);
+        assertVmaSuccess(vmaCreatePool(instance.vmaAllocator(), ciPool, pPool), "CreatePool", name);
+        long pool = pPool.get(0);
+        vmaSetPoolName(instance.vmaAllocator(), pool, name);
+        pools.put(name, pool);
+        return pool;
+    }
+
+    /**
+     * @return The pool with the given name
+     * @throws IllegalArgumentException If there is no such pool
+     */
+    public synchronized long get(String name) {
+        var pool = pools.get(name);
+        if (pool == null) throw new IllegalArgumentException("There is no pool named " + name);
+        return pool;
+    }
+
+    /**
+     * Destroys the pool with the given name. All resources in the pool must have been destroyed already.
+     */
+    public synchronized void destroy(String name) {
+        vmaDestroyPool(instance.vmaAllocator(), get(name));
+        pools.remove(name);
+    }
+
+    /**
+     * Destroys all remaining pools. This is called by <i>BoilerInstance.destroyInitialObjects()</i>.
+     */
+    public synchronized void destroyAll() {
+        for (long pool : pools.values()) vmaDestroyPool(instance.vmaAllocator(), pool);
+        pools.clear();
+    }
+}
@@ -5,18 +5,93 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryUtil.memAlloc;
 import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class BoilerPipelines {
 
     private final BoilerInstance instance;
+    /**
+     * The shader modules that are used by <i>createComputePipeline(s)</i>. Applications can use this for their
+     * graphics pipelines as well.
+     */
+    public final ShaderModuleCache shaderModules;
+    /**
+     * Shares identical graphics pipelines between subsystems
+     */
+    public final GraphicsPipelineDeduplicator deduplicator;
+    /**
+     * Whether VK_EXT_graphics_pipeline_library is enabled, see <i>GraphicsPipelineLibraries</i>
+     */
+    public final boolean hasGraphicsPipelineLibrary;
+
+    private Path pipelineCacheFile;
+    private byte[] pipelineCacheContent;
+    private PersistentPipelineCache pipelineCache;
 
     public BoilerPipelines(BoilerInstance instance) {
         this.instance = instance;
+        this.shaderModules = new ShaderModuleCache(instance);
+        this.deduplicator = new GraphicsPipelineDeduplicator(instance);
+        this.hasGraphicsPipelineLibrary = instance.deviceExtensions.contains(
+                VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME
+        );
+    }
+
+    /**
+     * Sets the file from which the pipeline cache will be loaded, and to which it will be saved. This must be called
+     * before the pipeline cache is created, which happens lazily when the first pipeline is created (or when
+     * <i>pipelineCache()</i> is called). <i>BoilerBuilder.pipelineCache(file)</i> calls this method.
+     */
+    public synchronized void setPipelineCacheFile(Path file) {
+        if (pipelineCache != null) throw new IllegalStateException("The pipeline cache has already been created");
+        this.pipelineCacheFile = file;
+        this.pipelineCacheContent = null;
+    }
+
+    /**
+     * Like <i>setPipelineCacheFile(file)</i>, but uses <i>fileContent</i> (which should have been read from
+     * <i>file</i> already, or null if it doesn't exist) as initial data, rather than reading the file again.
+     */
+    public synchronized void setPipelineCacheFile(Path file, byte[] fileContent) {
+        setPipelineCacheFile(file);
+        this.pipelineCacheContent = fileContent;
+    }
+
+    /**
+     * @return The pipeline cache that is used by default for all pipelines created by this instance. When no pipeline
+     * cache file was set, the cache is only kept in memory.
+     */
+    public synchronized PersistentPipelineCache pipelineCache() {
+        if (pipelineCache == null) {
+            if (pipelineCacheContent != null) {
+                pipelineCache = new PersistentPipelineCache(
+                        instance, pipelineCacheFile, pipelineCacheContent, "BoilerPipelineCache"
+                );
+                pipelineCacheContent = null;
+            } else {
+                pipelineCache = new PersistentPipelineCache(instance, pipelineCacheFile, "BoilerPipelineCache");
+            }
+        }
+        return pipelineCache;
+    }
+
+    /**
+     * Saves (if applicable) and destroys the pipeline cache. This is called by <i>destroyInitialObjects()</i>.
+     */
+    public synchronized void destroyPipelineCache() {
+        if (pipelineCache != null) {
+            pipelineCache.destroy();
+            pipelineCache = null;
+        }
     }
 
     public long createLayout(
@@ -53,10 +128,19 @@ public class BoilerPipelines {
         var inputBuffer = memAlloc(inputArray.length);
         inputBuffer.put(0, inputArray);
 
+        long module = createShaderModule(stack, inputBuffer, name);
+        memFree(inputBuffer);
+        return module;
+    }
+
+    /**
+     * Creates a shader module from the given SPIR-V code, which must be a direct buffer
+     */
+    public long createShaderModule(MemoryStack stack, ByteBuffer code, String name) {
         var ciModule = VkShaderModuleCreateInfo.calloc(stack);
         ciModule.sType$Default();
         ciModule.flags(0);
-        ciModule.pCode(inputBuffer);
+        ciModule.pCode(code);
 
         var pModule = stack.callocLong(1);
         assertVkSuccess(vkCreateShaderModule(
@@ -65,36 +149,101 @@ public class BoilerPipelines {
         long module = pModule.get(0);
 
         instance.debug.name(stack, module, VK_OBJECT_TYPE_SHADER_MODULE, name);
-        memFree(inputBuffer);
         return module;
     }
 
     public long createComputePipeline(
             MemoryStack stack, long pipelineLayout, String shaderPath, String name
     ) {
-        long shaderModule = instance.pipelines.createShaderModule(stack, shaderPath, name + "-ShaderModule");
-
-        var ciShaderStage = VkPipelineShaderStageCreateInfo.calloc(stack);
-        ciShaderStage.sType$Default();
-        ciShaderStage.flags(0);
-        ciShaderStage.stage(VK_SHADER_STAGE_COMPUTE_BIT);
-        ciShaderStage.module(shaderModule);
-        ciShaderStage.pName(stack.UTF8("main"));
-
-        var ciPipelines = VkComputePipelineCreateInfo.calloc(1, stack);
-        var ciPipeline = ciPipelines.get(0);
-        ciPipeline.sType$Default();
-        ciPipeline.stage(ciShaderStage);
-        ciPipeline.layout(pipelineLayout);
-
-        var pPipelines = stack.callocLong(1);
-        assertVkSuccess(vkCreateComputePipelines(
-                instance.vkDevice(), VK_NULL_HANDLE, ciPipelines, null, pPipelines
-        ), "CreateComputePipelines", name);
-        long pipeline = pPipelines.get(0);
-
-        instance.debug.name(stack, pipeline, VK_OBJECT_TYPE_PIPELINE, name);
-        vkDestroyShaderModule(instance.vkDevice(), shaderModule, null);
-        return pipeline;
+        return createComputePipeline(stack, pipelineCache().vkPipelineCache, pipelineLayout, shaderPath, name);
+    }
+
+    public long createComputePipeline(
+            MemoryStack stack, long pipelineCache, long pipelineLayout, String shaderPath, String name
+    ) {
+        return createComputePipelines(
+                stack, pipelineCache, new long[] { pipelineLayout }, new String[] { shaderPath }, new String[] { name }
+        )[0];
+    }
+
+    /**
+     * Creates multiple compute pipelines using a single <i>vkCreateComputePipelines</i> call, which allows the driver
+     * to share work between them.
+     * @param names The debug names of the pipelines
+     */
+    public long[] createComputePipelines(
+            MemoryStack stack, long pipelineCache, long[] pipelineLayouts, String[] shaderPaths, String[] names
+    ) {
+        if (pipelineLayouts.length != shaderPaths.length || pipelineLayouts.length != names.length) {
+            throw new IllegalArgumentException("The lengths of pipelineLayouts, shaderPaths, and names must be equal");
+        }
+        if (names.length == 0) return new long[0];
+        long[] modules = new long[shaderPaths.length];
+        try {
+            var ciPipelines = VkComputePipelineCreateInfo.calloc(shaderPaths.length, stack);
+            for (int index = 0; index < shaderPaths.length; index++) {
+                modules[index] = shaderModules.acquire(shaderPaths[index], names[index] + "-ShaderModule");
+
+                var ciPipeline = ciPipelines.get(index);
+                ciPipeline.sType$Default();
+                ciPipeline.stage().sType$Default();
+                ciPipeline.stage().flags(0);
+                ciPipeline.stage().stage(VK_SHADER_STAGE_COMPUTE_BIT);
+                ciPipeline.stage().module(modules[index]);
+                ciPipeline.stage().pName(stack.UTF8("main"));
+                ciPipeline.layout(pipelineLayouts[index]);
+            }
+
+            var pPipelines = stack.callocLong(shaderPaths.length);
+            assertVkSuccess(vkCreateComputePipelines(
+                    instance.vkDevice(), pipelineCache, ciPipelines, null, pPipelines
+            ), "CreateComputePipelines", names[0]);
+
+            long[] pipelines = new long[shaderPaths.length];
+            for (int index = 0; index < pipelines.length; index++) {
+                pipelines[index] = pPipelines.get(index);
+                instance.debug.name(stack, pipelines[index], VK_OBJECT_TYPE_PIPELINE, names[index]);
+            }
+            return pipelines;
+        } finally {
+            // Release the modules even when the pipeline creation failed
+            for (long module : modules) {
+                if (module != VK_NULL_HANDLE) shaderModules.release(module);
+            }
+        }
+    }
+
+    /**
+     * Creates multiple graphics pipelines using a single <i>vkCreateGraphicsPipelines</i> call, which allows the
+     * driver to share work between them. Each pipeline is configured by its own <i>configurer</i>, which gets a
+     * <i>GraphicsPipelineBuilder</i> that uses <i>stack</i>. Note that the <i>pipelineCache</i> field of these
+     * builders is ignored.
+     * @param names The debug names of the pipelines
+     */
+    public long[] createGraphicsPipelines(
+            MemoryStack stack, long pipelineCache, List<Consumer<GraphicsPipelineBuilder>> configurers, String[] names
+    ) {
+        if (configurers.size() != names.length) {
+            throw new IllegalArgumentException("The lengths of configurers and names must be equal");
+        }
+        if (names.length == 0) return new long[0];
+        var ciPipelines = VkGraphicsPipelineCreateInfo.calloc(configurers.size(), stack);
+        for (int index = 0; index < configurers.size(); index++) {
+            var ciPipeline = ciPipelines.get(index);
+            ciPipeline.sType$Default();
+            configurers.get(index).accept(new GraphicsPipelineBuilder(ciPipeline, instance, stack));
+        }
+
+        var pPipelines = stack.callocLong(configurers.size());
+        assertVkSuccess(vkCreateGraphicsPipelines(
+                instance.vkDevice(), pipelineCache, ciPipelines, null, pPipelines
+        ), "CreateGraphicsPipelines", names[0]);
+
+        long[] pipelines = new long[configurers.size()];
+        for (int index = 0; index < pipelines.length; index++) {
+            pipelines[index] = pPipelines.get(index);
+            instance.debug.name(stack, pipelines[index], VK_OBJECT_TYPE_PIPELINE, names[index]);
+        }
+        return pipelines;
     }
 }
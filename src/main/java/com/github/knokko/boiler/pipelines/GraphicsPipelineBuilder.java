@@ -4,7 +4,11 @@ import com.github.knokko.boiler.instance.BoilerInstance;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryUtil.memCopy;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class GraphicsPipelineBuilder {
@@ -13,19 +17,22 @@ public class GraphicsPipelineBuilder {
     private final BoilerInstance boiler;
     private final MemoryStack stack;
 
-    public long pipelineCache = VK_NULL_HANDLE;
+    /**
+     * The pipeline cache that will be used by <i>build</i>. This is the pipeline cache of <i>boiler.pipelines</i> by
+     * default.
+     */
+    public long pipelineCache;
 
     public GraphicsPipelineBuilder(VkGraphicsPipelineCreateInfo ciPipeline, BoilerInstance boiler, MemoryStack stack) {
         this.ciPipeline = ciPipeline;
         this.boiler = boiler;
         this.stack = stack;
+        this.pipelineCache = boiler.pipelines.pipelineCache().vkPipelineCache;
     }
 
     public GraphicsPipelineBuilder(BoilerInstance boiler, MemoryStack stack) {
-        this.ciPipeline = VkGraphicsPipelineCreateInfo.calloc(stack);
+        this(VkGraphicsPipelineCreateInfo.calloc(stack), boiler, stack);
         this.ciPipeline.sType$Default();
-        this.boiler = boiler;
-        this.stack = stack;
     }
 
     public void shaderStages(ShaderInfo... shaders) {
@@ -86,6 +93,26 @@ public class GraphicsPipelineBuilder {
         ciPipeline.pViewportState(ciViewport);
     }
 
+    /**
+     * Makes this pipeline use dynamic rendering (VK_KHR_dynamic_rendering or Vulkan 1.3) rather than a render pass.
+     * This sets the render pass to <i>VK_NULL_HANDLE</i>.
+     * @param depthFormat The format of the depth attachment, or <i>VK_FORMAT_UNDEFINED</i>
+     * @param stencilFormat The format of the stencil attachment, or <i>VK_FORMAT_UNDEFINED</i>
+     */
+    public void dynamicRendering(int viewMask, int depthFormat, int stencilFormat, int... colorFormats) {
+        var ciRendering = VkPipelineRenderingCreateInfo.calloc(stack);
+        ciRendering.sType$Default();
+        ciRendering.viewMask(viewMask);
+        ciRendering.colorAttachmentCount(colorFormats.length);
+        ciRendering.pColorAttachmentFormats(stack.ints(colorFormats));
+        ciRendering.depthAttachmentFormat(depthFormat);
+        ciRendering.stencilAttachmentFormat(stencilFormat);
+
+        ciPipeline.pNext(ciRendering);
+        ciPipeline.renderPass(VK_NULL_HANDLE);
+        ciPipeline.subpass(0);
+    }
+
     public void simpleRasterization(int cullMode) {
         var ciRaster = VkPipelineRasterizationStateCreateInfo.calloc(stack);
         ciRaster.sType$Default();
@@ -200,4 +227,54 @@ public class GraphicsPipelineBuilder {
         boiler.debug.name(stack, pipeline, VK_OBJECT_TYPE_PIPELINE, name);
         return pipeline;
     }
+
+    /**
+     * Creates the pipeline described by this builder (the <i>base</i> pipeline), together with a variant for each
+     * <i>delta</i>, using a single <i>vkCreateGraphicsPipelines</i> call. Each variant starts as a copy of the base
+     * create info, after which its delta is applied to a new <i>GraphicsPipelineBuilder</i> that wraps the copy (on
+     * the same <i>MemoryStack</i>). The base is created with <i>VK_PIPELINE_CREATE_ALLOW_DERIVATIVES_BIT</i> and
+     * the variants are created as its derivatives, which allows the driver to reuse compilation work.
+     * <p>
+     * Since the copies are shallow, deltas must replace nested state (for instance by calling
+     * <i>simpleRasterization</i> or <i>shaderStages</i> with different specialization data) rather than modifying
+     * the nested structs of the base in-place. The <i>pipelineCache</i> field of the delta builders is ignored.
+     * @param variantNames The debug names of the variants
+     * @return The base pipeline at index 0, followed by the variants in the same order as <i>deltas</i>
+     */
+    public long[] buildVariants(
+            String baseName, List<Consumer<GraphicsPipelineBuilder>> deltas, String... variantNames
+    ) {
+        if (deltas.size() != variantNames.length) {
+            throw new IllegalArgumentException("The lengths of deltas and variantNames must be equal");
+        }
+        int numPipelines = 1 + deltas.size();
+        var ciPipelines = VkGraphicsPipelineCreateInfo.calloc(numPipelines, stack);
+        memCopy(ciPipeline.address(), ciPipelines.address(), VkGraphicsPipelineCreateInfo.SIZEOF);
+        var ciBase = ciPipelines.get(0);
+        ciBase.flags(ciBase.flags() | VK_PIPELINE_CREATE_ALLOW_DERIVATIVES_BIT);
+
+        for (int index = 1; index < numPipelines; index++) {
+            var ciVariant = ciPipelines.get(index);
+            memCopy(ciPipeline.address(), ciVariant.address(), VkGraphicsPipelineCreateInfo.SIZEOF);
+            deltas.get(index - 1).accept(new GraphicsPipelineBuilder(ciVariant, boiler, stack));
+            ciVariant.flags(
+                    (ciVariant.flags() | VK_PIPELINE_CREATE_DERIVATIVE_BIT) & ~VK_PIPELINE_CREATE_ALLOW_DERIVATIVES_BIT
+            );
+            ciVariant.basePipelineHandle(VK_NULL_HANDLE);
+            ciVariant.basePipelineIndex(0);
+        }
+
+        var pPipelines = stack.callocLong(numPipelines);
+        assertVkSuccess(vkCreateGraphicsPipelines(
+                boiler.vkDevice(), pipelineCache, ciPipelines, null, pPipelines
+        ), "CreateGraphicsPipelines", baseName);
+
+        long[] pipelines = new long[numPipelines];
+        for (int index = 0; index < numPipelines; index++) {
+            pipelines[index] = pPipelines.get(index);
+            String name = index == 0 ? baseName : variantNames[index - 1];
+            boiler.debug.name(stack, pipelines[index], VK_OBJECT_TYPE_PIPELINE, name);
+        }
+        return pipelines;
+    }
 }
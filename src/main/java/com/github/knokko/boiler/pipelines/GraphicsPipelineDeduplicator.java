@@ -0,0 +1,128 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.lwjgl.vulkan.VK10.vkDestroyPipeline;
+
+/**
+ * Ensures that identical graphics pipelines are only created once: <i>acquire</i> computes the
+ * <i>GraphicsPipelineKey</i> of the builder, and returns the existing pipeline when a pipeline with the same key was
+ * acquired before (and hasn't been released by all its users). Pipelines are reference counted, and destroyed when
+ * the last user releases them.
+ * <p>
+ * Shader modules that were acquired from <i>instance.pipelines.shaderModules</i> are compared by the hash of their
+ * code, so it is fine to release and evict them right after acquiring the pipelines. Other shader modules are compared
+ * by handle, so they must not be destroyed while a pipeline that uses them is still acquired: the driver could
+ * reuse their handle for a module with different code.
+ * <p>
+ * When multiple threads acquire the same pipeline concurrently, it will be created only once, and the other threads
+ * will wait for it. All methods are thread-safe.
+ */
+public class GraphicsPipelineDeduplicator {
+
+    private final BoilerInstance instance;
+    private final Map<GraphicsPipelineKey, Entry> keyEntries = new HashMap<>();
+    private final Map<Long, Entry> pipelineEntries = new HashMap<>();
+
+    public GraphicsPipelineDeduplicator(BoilerInstance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Returns the pipeline that is described by <i>builder</i>, and creates it using <i>builder.build(name)</i> when
+     * no such pipeline exists yet. When the key of the builder can't be computed (see <i>GraphicsPipelineKey.of</i>),
+     * a new pipeline will always be created (but it still needs to be released).
+     */
+    public long acquire(GraphicsPipelineBuilder builder, String name) {
+        var key = GraphicsPipelineKey.of(builder.ciPipeline, instance.pipelines.shaderModules::getHash);
+
+        Entry entry;
+        boolean shouldCreate = false;
+        synchronized (this) {
+            entry = key != null ? keyEntries.get(key) : null;
+            if (entry == null) {
+                entry = new Entry(key);
+                if (key != null) keyEntries.put(key, entry);
+                shouldCreate = true;
+            }
+            entry.references += 1;
+        }
+
+        if (shouldCreate) {
+            try {
+                long pipeline = builder.build(name);
+                synchronized (this) {
+                    pipelineEntries.put(pipeline, entry);
+                }
+                entry.pipeline.complete(pipeline);
+            } catch (RuntimeException failed) {
+                synchronized (this) {
+                    if (key != null) keyEntries.remove(key);
+                }
+                entry.pipeline.completeExceptionally(failed);
+                throw failed;
+            }
+        }
+
+        try {
+            return entry.pipeline.join();
+        } catch (CompletionException failed) {
+            synchronized (this) {
+                entry.references -= 1;
+            }
+            throw failed;
+        }
+    }
+
+    /**
+     * Releases a pipeline that was acquired earlier, and destroys it if it has no other users. The caller must
+     * ensure that no pending command buffers use the pipeline when it is destroyed.
+     * @return true if the pipeline was destroyed
+     */
+    public boolean release(long pipeline) {
+        synchronized (this) {
+            var entry = pipelineEntries.get(pipeline);
+            if (entry == null) throw new IllegalArgumentException("Pipeline " + pipeline + " is not acquired");
+            entry.references -= 1;
+            if (entry.references > 0) return false;
+
+            pipelineEntries.remove(pipeline);
+            if (entry.key != null) keyEntries.remove(entry.key);
+        }
+        vkDestroyPipeline(instance.vkDevice(), pipeline, null);
+        return true;
+    }
+
+    /**
+     * @return The number of distinct pipelines that are currently acquired
+     */
+    public synchronized int size() {
+        return pipelineEntries.size();
+    }
+
+    /**
+     * Destroys all pipelines, regardless of whether they are still acquired. This is called by
+     * <i>BoilerInstance.destroyInitialObjects()</i>.
+     */
+    public synchronized void destroy() {
+        for (long pipeline : pipelineEntries.keySet()) vkDestroyPipeline(instance.vkDevice(), pipeline, null);
+        pipelineEntries.clear();
+        keyEntries.clear();
+    }
+
+    private static class Entry {
+
+        final GraphicsPipelineKey key;
+        final CompletableFuture<Long> pipeline = new CompletableFuture<>();
+        int references;
+
+        Entry(GraphicsPipelineKey key) {
+            this.key = key;
+        }
+    }
+}
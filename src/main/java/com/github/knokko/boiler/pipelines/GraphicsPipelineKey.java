@@ -0,0 +1,299 @@
+package com.github.knokko.boiler.pipelines;
+
+import org.lwjgl.vulkan.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+import static org.lwjgl.system.MemoryUtil.memGetAddress;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+import static org.lwjgl.vulkan.VK13.VK_STRUCTURE_TYPE_PIPELINE_RENDERING_CREATE_INFO;
+
+/**
+ * A canonical serialization of the complete state of a <i>VkGraphicsPipelineCreateInfo</i>: every (nested) field that
+ * affects the resulting pipeline is written to a byte array, and pointers are followed rather than compared. Two
+ * create infos that describe the same pipeline therefore have equal keys, even when their structs live at different
+ * addresses.
+ * <p>
+ * Shader modules are identified by the hash of their code when it is known (see <i>ShaderModuleCache.getHash</i>),
+ * and by their handle otherwise. Since the driver may reuse the handle of a destroyed module for a module with
+ * different code, modules without known hash must outlive all pipelines whose keys are compared.
+ */
+public final class GraphicsPipelineKey {
+
+    /**
+     * @return The key of <i>ciPipeline</i>, or null if it can't be computed because <i>ciPipeline</i> has an extension
+     * struct in one of its <i>pNext</i> chains that is not supported (only <i>VkPipelineRenderingCreateInfo</i> is
+     * currently supported)
+     */
+    public static GraphicsPipelineKey of(VkGraphicsPipelineCreateInfo ciPipeline) {
+        return of(ciPipeline, module -> null);
+    }
+
+    /**
+     * Like <i>of(ciPipeline)</i>, but identifies the shader modules by the hash of their code rather than by their
+     * handle, whenever <i>shaderHashes</i> knows it
+     * @param shaderHashes Returns the hash of the code of the given shader module, or null if it is unknown
+     */
+    public static GraphicsPipelineKey of(VkGraphicsPipelineCreateInfo ciPipeline, LongFunction<String> shaderHashes) {
+        var byteOutput = new ByteArrayOutputStream(512);
+        var output = new DataOutputStream(byteOutput);
+        try {
+            if (!write(output, ciPipeline, shaderHashes)) return null;
+            output.flush();
+        } catch (IOException shouldNotHappen) {
+            throw new RuntimeException(shouldNotHappen);
+        }
+        return new GraphicsPipelineKey(byteOutput.toByteArray());
+    }
+
+    private static boolean write(
+            DataOutputStream output, VkGraphicsPipelineCreateInfo ci, LongFunction<String> shaderHashes
+    ) throws IOException {
+        long next = ci.pNext();
+        while (next != 0L) {
+            int sType = memGetInt(next + VkBaseInStructure.STYPE);
+            if (sType != VK_STRUCTURE_TYPE_PIPELINE_RENDERING_CREATE_INFO) return false;
+            var ciRendering = VkPipelineRenderingCreateInfo.create(next);
+            output.writeInt(sType);
+            output.writeInt(ciRendering.viewMask());
+            output.writeInt(ciRendering.colorAttachmentCount());
+            var colorFormats = ciRendering.pColorAttachmentFormats();
+            for (int index = 0; colorFormats != null && index < colorFormats.limit(); index++) {
+                output.writeInt(colorFormats.get(index));
+            }
+            output.writeInt(ciRendering.depthAttachmentFormat());
+            output.writeInt(ciRendering.stencilAttachmentFormat());
+            next = memGetAddress(next + VkBaseInStructure.PNEXT);
+        }
+        output.writeInt(0);
+
+        output.writeInt(ci.flags());
+        output.writeInt(ci.stageCount());
+        var stages = ci.pStages();
+        for (int index = 0; stages != null && index < stages.limit(); index++) {
+            var stage = stages.get(index);
+            if (stage.pNext() != 0L) return false;
+            output.writeInt(stage.flags());
+            output.writeInt(stage.stage());
+            String shaderHash = shaderHashes.apply(stage.module());
+            output.writeBoolean(shaderHash != null);
+            if (shaderHash != null) output.writeUTF(shaderHash);
+            else output.writeLong(stage.module());
+            output.writeUTF(stage.pNameString());
+            writeSpecialization(output, stage.pSpecializationInfo());
+        }
+
+        var vertexInput = ci.pVertexInputState();
+        output.writeBoolean(vertexInput != null);
+        if (vertexInput != null) {
+            if (vertexInput.pNext() != 0L) return false;
+            output.writeInt(vertexInput.flags());
+            var bindings = vertexInput.pVertexBindingDescriptions();
+            output.writeInt(bindings != null ? bindings.limit() : 0);
+            for (int index = 0; bindings != null && index < bindings.limit(); index++) {
+                var binding = bindings.get(index);
+                output.writeInt(binding.binding());
+                output.writeInt(binding.stride());
+                output.writeInt(binding.inputRate());
+            }
+            var attributes = vertexInput.pVertexAttributeDescriptions();
+            output.writeInt(attributes != null ? attributes.limit() : 0);
+            for (int index = 0; attributes != null && index < attributes.limit(); index++) {
+                var attribute = attributes.get(index);
+                output.writeInt(attribute.location());
+                output.writeInt(attribute.binding());
+                output.writeInt(attribute.format());
+                output.writeInt(attribute.offset());
+            }
+        }
+
+        var inputAssembly = ci.pInputAssemblyState();
+        output.writeBoolean(inputAssembly != null);
+        if (inputAssembly != null) {
+            if (inputAssembly.pNext() != 0L) return false;
+            output.writeInt(inputAssembly.flags());
+            output.writeInt(inputAssembly.topology());
+            output.writeBoolean(inputAssembly.primitiveRestartEnable());
+        }
+
+        var tessellation = ci.pTessellationState();
+        output.writeBoolean(tessellation != null);
+        if (tessellation != null) {
+            if (tessellation.pNext() != 0L) return false;
+            output.writeInt(tessellation.flags());
+            output.writeInt(tessellation.patchControlPoints());
+        }
+
+        var viewport = ci.pViewportState();
+        output.writeBoolean(viewport != null);
+        if (viewport != null) {
+            if (viewport.pNext() != 0L) return false;
+            output.writeInt(viewport.flags());
+            output.writeInt(viewport.viewportCount());
+            var viewports = viewport.pViewports();
+            output.writeBoolean(viewports != null);
+            for (int index = 0; viewports != null && index < viewports.limit(); index++) {
+                var currentViewport = viewports.get(index);
+                output.writeFloat(currentViewport.x());
+                output.writeFloat(currentViewport.y());
+                output.writeFloat(currentViewport.width());
+                output.writeFloat(currentViewport.height());
+                output.writeFloat(currentViewport.minDepth());
+                output.writeFloat(currentViewport.maxDepth());
+            }
+            output.writeInt(viewport.scissorCount());
+            var scissors = viewport.pScissors();
+            output.writeBoolean(scissors != null);
+            for (int index = 0; scissors != null && index < scissors.limit(); index++) {
+                var scissor = scissors.get(index);
+                output.writeInt(scissor.offset().x());
+                output.writeInt(scissor.offset().y());
+                output.writeInt(scissor.extent().width());
+                output.writeInt(scissor.extent().height());
+            }
+        }
+
+        var raster = ci.pRasterizationState();
+        output.writeBoolean(raster != null);
+        if (raster != null) {
+            if (raster.pNext() != 0L) return false;
+            output.writeInt(raster.flags());
+            output.writeBoolean(raster.depthClampEnable());
+            output.writeBoolean(raster.rasterizerDiscardEnable());
+            output.writeInt(raster.polygonMode());
+            output.writeInt(raster.cullMode());
+            output.writeInt(raster.frontFace());
+            output.writeBoolean(raster.depthBiasEnable());
+            output.writeFloat(raster.depthBiasConstantFactor());
+            output.writeFloat(raster.depthBiasClamp());
+            output.writeFloat(raster.depthBiasSlopeFactor());
+            output.writeFloat(raster.lineWidth());
+        }
+
+        var multisample = ci.pMultisampleState();
+        output.writeBoolean(multisample != null);
+        if (multisample != null) {
+            if (multisample.pNext() != 0L) return false;
+            output.writeInt(multisample.flags());
+            output.writeInt(multisample.rasterizationSamples());
+            output.writeBoolean(multisample.sampleShadingEnable());
+            output.writeFloat(multisample.minSampleShading());
+            var sampleMask = multisample.pSampleMask((multisample.rasterizationSamples() + 31) / 32);
+            output.writeBoolean(sampleMask != null);
+            for (int index = 0; sampleMask != null && index < sampleMask.limit(); index++) {
+                output.writeInt(sampleMask.get(index));
+            }
+            output.writeBoolean(multisample.alphaToCoverageEnable());
+            output.writeBoolean(multisample.alphaToOneEnable());
+        }
+
+        var depthStencil = ci.pDepthStencilState();
+        output.writeBoolean(depthStencil != null);
+        if (depthStencil != null) {
+            if (depthStencil.pNext() != 0L) return false;
+            output.writeInt(depthStencil.flags());
+            output.writeBoolean(depthStencil.depthTestEnable());
+            output.writeBoolean(depthStencil.depthWriteEnable());
+            output.writeInt(depthStencil.depthCompareOp());
+            output.writeBoolean(depthStencil.depthBoundsTestEnable());
+            output.writeBoolean(depthStencil.stencilTestEnable());
+            writeStencilOpState(output, depthStencil.front());
+            writeStencilOpState(output, depthStencil.back());
+            output.writeFloat(depthStencil.minDepthBounds());
+            output.writeFloat(depthStencil.maxDepthBounds());
+        }
+
+        var colorBlend = ci.pColorBlendState();
+        output.writeBoolean(colorBlend != null);
+        if (colorBlend != null) {
+            if (colorBlend.pNext() != 0L) return false;
+            output.writeInt(colorBlend.flags());
+            output.writeBoolean(colorBlend.logicOpEnable());
+            output.writeInt(colorBlend.logicOp());
+            output.writeInt(colorBlend.attachmentCount());
+            var attachments = colorBlend.pAttachments();
+            for (int index = 0; attachments != null && index < attachments.limit(); index++) {
+                var attachment = attachments.get(index);
+                output.writeBoolean(attachment.blendEnable());
+                output.writeInt(attachment.srcColorBlendFactor());
+                output.writeInt(attachment.dstColorBlendFactor());
+                output.writeInt(attachment.colorBlendOp());
+                output.writeInt(attachment.srcAlphaBlendFactor());
+                output.writeInt(attachment.dstAlphaBlendFactor());
+                output.writeInt(attachment.alphaBlendOp());
+                output.writeInt(attachment.colorWriteMask());
+            }
+            for (int index = 0; index < 4; index++) output.writeFloat(colorBlend.blendConstants(index));
+        }
+
+        var dynamic = ci.pDynamicState();
+        output.writeBoolean(dynamic != null);
+        if (dynamic != null) {
+            if (dynamic.pNext() != 0L) return false;
+            output.writeInt(dynamic.flags());
+            var dynamicStates = dynamic.pDynamicStates();
+            output.writeInt(dynamicStates != null ? dynamicStates.limit() : 0);
+            for (int index = 0; dynamicStates != null && index < dynamicStates.limit(); index++) {
+                output.writeInt(dynamicStates.get(index));
+            }
+        }
+
+        output.writeLong(ci.layout());
+        output.writeLong(ci.renderPass());
+        output.writeInt(ci.subpass());
+        output.writeLong(ci.basePipelineHandle());
+        output.writeInt(ci.basePipelineIndex());
+        return true;
+    }
+
+    private static void writeSpecialization(
+            DataOutputStream output, VkSpecializationInfo specialization
+    ) throws IOException {
+        output.writeBoolean(specialization != null);
+        if (specialization == null) return;
+
+        var entries = specialization.pMapEntries();
+        output.writeInt(entries != null ? entries.limit() : 0);
+        for (int index = 0; entries != null && index < entries.limit(); index++) {
+            var entry = entries.get(index);
+            output.writeInt(entry.constantID());
+            output.writeInt(entry.offset());
+            output.writeLong(entry.size());
+        }
+        var data = specialization.pData();
+        output.writeInt(data != null ? data.limit() : 0);
+        for (int index = 0; data != null && index < data.limit(); index++) output.writeByte(data.get(index));
+    }
+
+    private static void writeStencilOpState(DataOutputStream output, VkStencilOpState state) throws IOException {
+        output.writeInt(state.failOp());
+        output.writeInt(state.passOp());
+        output.writeInt(state.depthFailOp());
+        output.writeInt(state.compareOp());
+        output.writeInt(state.compareMask());
+        output.writeInt(state.writeMask());
+        output.writeInt(state.reference());
+    }
+
+    private final byte[] content;
+    private final int hashCode;
+
+    private GraphicsPipelineKey(byte[] content) {
+        this.content = content;
+        this.hashCode = Arrays.hashCode(content);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof GraphicsPipelineKey otherKey && Arrays.equals(this.content, otherKey.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkGraphicsPipelineCreateInfo;
+import org.lwjgl.vulkan.VkGraphicsPipelineLibraryCreateInfoEXT;
+import org.lwjgl.vulkan.VkPipelineLibraryCreateInfoKHR;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.*;
+import static org.lwjgl.vulkan.KHRPipelineLibrary.VK_PIPELINE_CREATE_LIBRARY_BIT_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Support for VK_EXT_graphics_pipeline_library: the 4 parts of a graphics pipeline (vertex input interface,
+ * pre-rasterization shaders, fragment shader, and fragment output interface) can be compiled separately as
+ * <i>libraries</i>, and quickly linked together when a pipeline is needed. While the fast-linked pipeline is being
+ * used, an optimized pipeline (with link-time optimization) is compiled in the background, and swapped in when it is
+ * ready. See <i>LinkedPipeline</i>.
+ * <p>
+ * The extension is only enabled when <i>BoilerBuilder.graphicsPipelineLibrary()</i> was called and the physical device
+ * supports it. Use <i>BoilerPipelines.hasGraphicsPipelineLibrary</i> to check whether it is available.
+ */
+public class GraphicsPipelineLibraries {
+
+    private final BoilerInstance instance;
+    private final Executor optimizer;
+
+    /**
+     * Uses the common <i>ForkJoinPool</i> to compile optimized pipelines
+     */
+    public GraphicsPipelineLibraries(BoilerInstance instance) {
+        this(instance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param optimizer The executor on which the optimized pipelines will be compiled
+     */
+    public GraphicsPipelineLibraries(BoilerInstance instance, Executor optimizer) {
+        if (!instance.pipelines.hasGraphicsPipelineLibrary) {
+            throw new UnsupportedOperationException("VK_EXT_graphics_pipeline_library is not enabled");
+        }
+        this.instance = instance;
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Creates a pipeline library for the given parts of a graphics pipeline.
+     * @param parts A bitwise combination of <i>VK_GRAPHICS_PIPELINE_LIBRARY_*_BIT_EXT</i>
+     * @param configurer Configures the state that is relevant for <i>parts</i>. Its <i>pipelineCache</i> field is
+     *                   ignored. When the library contains shaders, the pipeline layout must be set, and should be
+     *                   created with <i>VK_PIPELINE_LAYOUT_CREATE_INDEPENDENT_SETS_BIT_EXT</i> if the libraries
+     *                   use different layouts.
+     */
+    public long createLibrary(
+            MemoryStack stack, int parts, Consumer<GraphicsPipelineBuilder> configurer, String name
+    ) {
+        var builder = new GraphicsPipelineBuilder(instance, stack);
+        configurer.accept(builder);
+
+        var ciLibrary = VkGraphicsPipelineLibraryCreateInfoEXT.calloc(stack);
+        ciLibrary.sType$Default();
+        ciLibrary.flags(parts);
+
+        var ciPipeline = builder.ciPipeline;
+        ciPipeline.pNext(ciLibrary);
+        ciPipeline.flags(ciPipeline.flags() | VK_PIPELINE_CREATE_LIBRARY_BIT_KHR |
+                VK_PIPELINE_CREATE_RETAIN_LINK_TIME_OPTIMIZATION_INFO_BIT_EXT);
+
+        var pLibrary = stack.callocLong(1);
+        assertVkSuccess(vkCreateGraphicsPipelines(
+                instance.vkDevice(), instance.pipelines.pipelineCache().vkPipelineCache,
+                VkGraphicsPipelineCreateInfo.create(ciPipeline.address(), 1), null, pLibrary
+        ), "CreateGraphicsPipelines", name);
+        long library = pLibrary.get(0);
+        instance.debug.name(stack, library, VK_OBJECT_TYPE_PIPELINE, name);
+        return library;
+    }
+
+    /**
+     * Links the given libraries into a complete graphics pipeline.
+     * @param optimize True to perform link-time optimization (slow, but gives the fastest pipeline), false to link as
+     *                 fast as possible
+     * @param libraries The libraries, which must together contain all 4 parts of a graphics pipeline
+     */
+    public long link(MemoryStack stack, long pipelineLayout, boolean optimize, String name, long... libraries) {
+        var ciLibraries = VkPipelineLibraryCreateInfoKHR.calloc(stack);
+        ciLibraries.sType$Default();
+        ciLibraries.pLibraries(stack.longs(libraries));
+
+        var ciPipeline = VkGraphicsPipelineCreateInfo.calloc(1, stack);
+        ciPipeline.sType$Default();
+        ciPipeline.pNext(ciLibraries);
+        ciPipeline.flags(optimize ? VK_PIPELINE_CREATE_LINK_TIME_OPTIMIZATION_BIT_EXT : 0);
+        ciPipeline.layout(pipelineLayout);
+        ciPipeline.basePipelineIndex(-1);
+
+        var pPipeline = stack.callocLong(1);
+        assertVkSuccess(vkCreateGraphicsPipelines(
+                instance.vkDevice(), instance.pipelines.pipelineCache().vkPipelineCache, ciPipeline, null, pPipeline
+        ), "CreateGraphicsPipelines", name);
+        long pipeline = pPipeline.get(0);
+        instance.debug.name(stack, pipeline, VK_OBJECT_TYPE_PIPELINE, name);
+        return pipeline;
+    }
+
+    /**
+     * Fast-links the given libraries on the current thread, and starts compiling an optimized pipeline on the
+     * optimizer. The libraries must not be destroyed before <i>LinkedPipeline.optimized</i> is done.
+     */
+    public LinkedPipeline fastLink(long pipelineLayout, String name, long... libraries) {
+        long fastPipeline;
+        try (var stack = stackPush()) {
+            fastPipeline = link(stack, pipelineLayout, false, name + "-Fast", libraries);
+        }
+
+        var optimized = CompletableFuture.supplyAsync(() -> {
+            try (var stack = stackPush()) {
+                return link(stack, pipelineLayout, true, name + "-Optimized", libraries);
+            }
+        }, optimizer);
+        return new LinkedPipeline(instance, fastPipeline, optimized);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.lwjgl.vulkan.VK10.vkDestroyPipeline;
+
+/**
+ * A graphics pipeline that was fast-linked from pipeline libraries, and whose optimized version is being compiled
+ * in the background. Use <i>get()</i> whenever the pipeline is bound: it returns the optimized pipeline once that is
+ * ready, and the fast-linked pipeline before that.
+ * <p>
+ * The fast-linked pipeline is not destroyed when the optimized pipeline becomes available, since command buffers
+ * that are still pending may use it. Call <i>destroyFastPipeline()</i> once those are finished, or <i>destroy()</i>
+ * to destroy both pipelines.
+ */
+public class LinkedPipeline {
+
+    private final BoilerInstance instance;
+    private long fastPipeline;
+    public final CompletableFuture<Long> optimized;
+    private volatile long optimizedPipeline;
+
+    LinkedPipeline(BoilerInstance instance, long fastPipeline, CompletableFuture<Long> optimized) {
+        this.instance = instance;
+        this.fastPipeline = fastPipeline;
+        this.optimized = optimized;
+        optimized.thenAccept(pipeline -> optimizedPipeline = pipeline);
+    }
+
+    /**
+     * @return The optimized pipeline if it is ready, or the fast-linked pipeline otherwise
+     */
+    public long get() {
+        long pipeline = optimizedPipeline;
+        if (pipeline != 0L) return pipeline;
+        if (fastPipeline == 0L) throw new IllegalStateException("The fast pipeline has already been destroyed");
+        return fastPipeline;
+    }
+
+    public boolean isOptimized() {
+        return optimizedPipeline != 0L;
+    }
+
+    /**
+     * Destroys the fast-linked pipeline. This must only be called after the optimized pipeline is ready, and all
+     * command buffers that use the fast-linked pipeline have completed.
+     */
+    public synchronized void destroyFastPipeline() {
+        if (!isOptimized()) throw new IllegalStateException("The optimized pipeline is not ready yet");
+        if (fastPipeline != 0L) {
+            vkDestroyPipeline(instance.vkDevice(), fastPipeline, null);
+            fastPipeline = 0L;
+        }
+    }
+
+    /**
+     * Waits until the optimized pipeline is finished, and destroys both pipelines. This must only be called after all
+     * command buffers that use the pipelines have completed.
+     */
+    public synchronized void destroy() {
+        try {
+            vkDestroyPipeline(instance.vkDevice(), optimized.join(), null);
+        } finally {
+            if (fastPipeline != 0L) vkDestroyPipeline(instance.vkDevice(), fastPipeline, null);
+            fastPipeline = 0L;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A <i>VkPipelineCache</i> whose data is loaded from a file when it is created, and can be written back to that file
+ * using <i>save()</i> (which also happens during <i>destroy()</i>). The cache data is only loaded when its header
+ * matches the vendor ID, device ID, and pipeline cache UUID of the physical device, since drivers are not required
+ * to handle incompatible data gracefully.
+ * <p>
+ * The file is written atomically: the data is first written to a temporary file in the same directory, which is then
+ * moved to the destination. A crash during <i>save()</i> can therefore never leave a corrupted cache file behind.
+ */
+public class PersistentPipelineCache {
+
+    /**
+     * The size of <i>VkPipelineCacheHeaderVersionOne</i>
+     */
+    static final int HEADER_SIZE = 16 + VK_UUID_SIZE;
+
+    /**
+     * @return The content of the pipeline cache <i>file</i>, or null when <i>file</i> is null, doesn't exist, or can't
+     * be read. A missing or unreadable cache file should never prevent the application from starting.
+     */
+    public static byte[] readFile(Path file) {
+        if (file == null || !Files.isRegularFile(file)) return null;
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException failedToRead) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether <i>cacheData</i> starts with a valid <i>VkPipelineCacheHeaderVersionOne</i> that matches the given
+     * physical device properties. The position and limit of <i>cacheData</i> are not modified.
+     */
+    public static boolean isCompatible(ByteBuffer cacheData, int vendorID, int deviceID, ByteBuffer pipelineCacheUUID) {
+        if (cacheData.remaining() < HEADER_SIZE) return false;
+        // The header is little-endian by spec
+        var data = cacheData.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        int headerSize = data.getInt(0);
+        int headerVersion = data.getInt(4);
+        if (headerSize < HEADER_SIZE || headerSize > data.remaining()) return false;
+        if (headerVersion != VK_PIPELINE_CACHE_HEADER_VERSION_ONE) return false;
+        if (data.getInt(8) != vendorID || data.getInt(12) != deviceID) return false;
+
+        for (int index = 0; index < VK_UUID_SIZE; index++) {
+            if (data.get(16 + index) != pipelineCacheUUID.get(pipelineCacheUUID.position() + index)) return false;
+        }
+        return true;
+    }
+
+    private final BoilerInstance instance;
+    private final Path file;
+    private final String name;
+    public final long vkPipelineCache;
+    /**
+     * Whether compatible cache data was loaded from the file during construction
+     */
+    public final boolean loadedFromFile;
+
+    private ScheduledExecutorService periodicSaver;
+
+
+    /**
+     * Creates the pipeline cache, and loads the initial data from <i>file</i> (if it exists and is compatible)
+     * @param file The cache file, or null to create a pipeline cache that is only kept in memory
+     */
+    public PersistentPipelineCache(BoilerInstance instance, Path file, String name) {
+        this(instance, file, readFile(file), name);
+    }
+
+    /**
+     * Creates the pipeline cache using <i>fileContent</i> as initial data (if it is compatible), which should have
+     * been read from <i>file</i> already. This allows the file to be read while other initialization is in progress.
+     * @param fileContent The content of <i>file</i>, or null when it doesn't exist
+     */
+    public PersistentPipelineCache(BoilerInstance instance, Path file, byte[] fileContent, String name) {
+        this.instance = instance;
+        this.file = file;
+        this.name = name;
+
+        ByteBuffer initialData = null;
+        if (fileContent != null) {
+            initialData = memAlloc(fileContent.length);
+            initialData.put(0, fileContent);
+        }
+
+        try (var stack = stackPush()) {
+            if (initialData != null) {
+                var properties = VkPhysicalDeviceProperties.calloc(stack);
+                vkGetPhysicalDeviceProperties(instance.vkPhysicalDevice(), properties);
+                if (!isCompatible(
+                        initialData, properties.vendorID(), properties.deviceID(), properties.pipelineCacheUUID()
+                )) {
+                    memFree(initialData);
+                    initialData = null;
+                }
+            }
+            this.loadedFromFile = initialData != null;
+
+            var ciCache = VkPipelineCacheCreateInfo.calloc(stack);
+            ciCache.sType$Default();
+            ciCache.flags(0);
+            ciCache.pInitialData(initialData);
+
+            var pCache = stack.callocLong(1);
+            assertVkSuccess(vkCreatePipelineCache(
+                    instance.vkDevice(), ciCache, null, pCache
+            ), "CreatePipelineCache", name);
+            this.vkPipelineCache = pCache.get(0);
+
+            instance.debug.name(stack, vkPipelineCache, VK_OBJECT_TYPE_PIPELINE_CACHE, name);
+        } finally {
+            if (initialData != null) memFree(initialData);
+        }
+    }
+
+    /**
+     * Writes the current content of the pipeline cache to the file. This does nothing when this cache doesn't have a
+     * file. This method can be called while other threads are creating pipelines.
+     */
+    public synchronized void save() {
+        if (file == null) return;
+
+        ByteBuffer data;
+        try (var stack = stackPush()) {
+            var pSize = stack.callocPointer(1);
+            assertVkSuccess(vkGetPipelineCacheData(
+                    instance.vkDevice(), vkPipelineCache, pSize, null
+            ), "GetPipelineCacheData", name);
+
+            // The cache may have grown between both calls, in which case the driver returns VK_INCOMPLETE
+            data = memAlloc((int) pSize.get(0));
+            int result = vkGetPipelineCacheData(instance.vkDevice(), vkPipelineCache, pSize, data);
+            assertVkSuccess(result, "GetPipelineCacheData", name, VK_INCOMPLETE);
+            data.limit((int) pSize.get(0));
+        }
+
+        try {
+            byte[] content = new byte[data.remaining()];
+            data.get(0, content);
+
+            var directory = file.toAbsolutePath().getParent();
+            if (directory != null) Files.createDirectories(directory);
+            var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tempFile, content);
+                Files.move(tempFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException failedToWrite) {
+            throw new UncheckedIOException("Failed to save pipeline cache " + file, failedToWrite);
+        } finally {
+            memFree(data);
+        }
+    }
+
+    /**
+     * Starts saving the pipeline cache every <i>period</i> <i>unit</i>s on a background thread, until this cache is
+     * destroyed. This is useful for applications that may not be shut down gracefully.
+     */
+    public synchronized void savePeriodically(long period, TimeUnit unit) {
+        if (file == null) return;
+        if (periodicSaver != null) throw new IllegalStateException("Already saving periodically");
+        periodicSaver = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, name + "-PeriodicSaver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        periodicSaver.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (UncheckedIOException failedToSave) {
+                System.err.println(failedToSave.getMessage() + ": " + failedToSave.getCause().getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops periodic saving (if applicable), saves the cache to its file (if it has a file), and destroys the
+     * <i>VkPipelineCache</i>
+     */
+    public void destroy() {
+        ScheduledExecutorService saver;
+        synchronized (this) {
+            saver = periodicSaver;
+        }
+        if (saver != null) {
+            // A save that is already running must finish before the VkPipelineCache is destroyed
+            saver.shutdown();
+            try {
+                if (!saver.awaitTermination(1, TimeUnit.MINUTES)) {
+                    throw new IllegalStateException("Saving the pipeline cache took too long");
+                }
+            } catch (InterruptedException interrupted) {
+                throw new RuntimeException(interrupted);
+            }
+        }
+        try {
+            save();
+        } catch (UncheckedIOException failedToSave) {
+            System.err.println(failedToSave.getMessage() + ": " + failedToSave.getCause().getMessage());
+        }
+        vkDestroyPipelineCache(instance.vkDevice(), vkPipelineCache, null);
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Compiles pipelines concurrently on a pool of worker threads. Each worker thread has its own <i>VkPipelineCache</i>,
+ * so the workers never contend on the same cache. The per-thread caches are merged into the pipeline cache of
+ * <i>instance.pipelines</i> by <i>destroy()</i>, so the results end up in the persistent pipeline cache.
+ * <p>
+ * The merge happens only after all workers are finished, because <i>vkMergePipelineCaches</i> requires the
+ * destination cache to be externally synchronized, whereas <i>vkCreate*Pipelines</i> calls that use the shared cache
+ * (e.g. <i>GraphicsPipelineBuilder.build</i>) don't take any lock.
+ * <p>
+ * All methods return futures that are completed with the pipeline handle(s) once they have been created, or
+ * completed exceptionally when the creation failed. The caller is responsible for destroying the pipelines.
+ */
+public class PipelineCompiler {
+
+    private final BoilerInstance instance;
+    private final String name;
+    private final ExecutorService executor;
+    private final ThreadLocal<Long> threadCache;
+    private final List<Long> threadCaches = new ArrayList<>();
+
+    /**
+     * Creates a compiler with 1 worker thread per available processor (minus 1 for the calling thread)
+     */
+    public PipelineCompiler(BoilerInstance instance, String name) {
+        this(instance, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), name);
+    }
+
+    public PipelineCompiler(BoilerInstance instance, int numThreads, String name) {
+        if (numThreads < 1) throw new IllegalArgumentException("numThreads must be positive, but got " + numThreads);
+        this.instance = instance;
+        this.name = name;
+
+        var threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(numThreads, task -> {
+            var thread = new Thread(task, "PipelineCompiler-" + name + "-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.threadCache = ThreadLocal.withInitial(this::createThreadCache);
+    }
+
+    private Long createThreadCache() {
+        try (var stack = stackPush()) {
+            var ciCache = VkPipelineCacheCreateInfo.calloc(stack);
+            ciCache.sType$Default();
+            ciCache.flags(0);
+
+            var pCache = stack.callocLong(1);
+            assertVkSuccess(vkCreatePipelineCache(
+                    instance.vkDevice(), ciCache, null, pCache
+            ), "CreatePipelineCache", name);
+            long cache = pCache.get(0);
+            instance.debug.name(stack, cache, VK_OBJECT_TYPE_PIPELINE_CACHE, name + "-" + Thread.currentThread().getName());
+
+            synchronized (threadCaches) {
+                threadCaches.add(cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Compiles a graphics pipeline on a worker thread. The <i>configurer</i> will be called on the worker thread, and
+     * gets a <i>GraphicsPipelineBuilder</i> that uses the <i>MemoryStack</i> of the worker thread. The
+     * <i>pipelineCache</i> field of the builder will be ignored.
+     */
+    public CompletableFuture<Long> compileGraphics(Consumer<GraphicsPipelineBuilder> configurer, String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var stack = stackPush()) {
+                var builder = new GraphicsPipelineBuilder(instance, stack);
+                configurer.accept(builder);
+                builder.pipelineCache = threadCache.get();
+                return builder.build(name);
+            }
+        }, executor);
+    }
+
+    /**
+     * Compiles multiple graphics pipelines on a single worker thread, using a single <i>vkCreateGraphicsPipelines</i>
+     * call. See <i>BoilerPipelines.createGraphicsPipelines</i>.
+     */
+    public CompletableFuture<long[]> compileGraphicsBatch(
+            List<Consumer<GraphicsPipelineBuilder>> configurers, String[] names
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var stack = stackPush()) {
+                return instance.pipelines.createGraphicsPipelines(stack, threadCache.get(), configurers, names);
+            }
+        }, executor);
+    }
+
+    /**
+     * Compiles a compute pipeline on a worker thread. See <i>BoilerPipelines.createComputePipeline</i>.
+     */
+    public CompletableFuture<Long> compileCompute(long pipelineLayout, String shaderPath, String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var stack = stackPush()) {
+                return instance.pipelines.createComputePipeline(
+                        stack, threadCache.get(), pipelineLayout, shaderPath, name
+                );
+            }
+        }, executor);
+    }
+
+    /**
+     * Compiles multiple compute pipelines on a single worker thread, using a single <i>vkCreateComputePipelines</i>
+     * call. See <i>BoilerPipelines.createComputePipelines</i>.
+     */
+    public CompletableFuture<long[]> compileComputeBatch(long[] pipelineLayouts, String[] shaderPaths, String[] names) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var stack = stackPush()) {
+                return instance.pipelines.createComputePipelines(
+                        stack, threadCache.get(), pipelineLayouts, shaderPaths, names
+                );
+            }
+        }, executor);
+    }
+
+    private void mergeCaches() {
+        if (threadCaches.isEmpty()) return;
+
+        try (var stack = stackPush()) {
+            var pSrcCaches = stack.mallocLong(threadCaches.size());
+            for (int index = 0; index < threadCaches.size(); index++) pSrcCaches.put(index, threadCaches.get(index));
+
+            assertVkSuccess(vkMergePipelineCaches(
+                    instance.vkDevice(), instance.pipelines.pipelineCache().vkPipelineCache, pSrcCaches
+            ), "MergePipelineCaches", name);
+        }
+    }
+
+    /**
+     * Waits until all pending compilations are finished, merges the per-thread caches into the pipeline cache of
+     * <i>instance.pipelines</i>, and destroys the per-thread caches and worker threads. No other thread may use the
+     * pipeline cache of <i>instance.pipelines</i> while this method is running.
+     */
+    public void destroy() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Pipeline compilation took too long");
+            }
+        } catch (InterruptedException interrupted) {
+            throw new RuntimeException(interrupted);
+        }
+
+        synchronized (threadCaches) {
+            mergeCaches();
+            for (long cache : threadCaches) vkDestroyPipelineCache(instance.vkDevice(), cache, null);
+            threadCaches.clear();
+        }
+    }
+}
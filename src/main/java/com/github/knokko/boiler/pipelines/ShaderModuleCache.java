@@ -0,0 +1,195 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.vulkan.VK10.vkDestroyShaderModule;
+
+/**
+ * A cache of <i>VkShaderModule</i>s that is keyed by the SHA-256 hash of their SPIR-V code, so that pipelines that
+ * use the same shader (possibly loaded from different paths) share the same module. Classpath resources are only
+ * read once (as long as their module stays in the cache), and files are memory-mapped instead of copied.
+ * <p>
+ * Every <i>acquire</i> must eventually be followed by a <i>release</i> of the returned module. Modules that are no
+ * longer acquired stay in the cache until <i>evictUnused()</i> or <i>destroy()</i> is called, so they can be reused
+ * by pipelines that are created later. Since pipelines don't need their shader modules after creation, it is
+ * typically safe to release the modules right after creating the pipelines.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class ShaderModuleCache {
+
+    /**
+     * @return The lowercase hexadecimal SHA-256 hash of the remaining bytes of <i>code</i>. The position of
+     * <i>code</i> is not modified.
+     */
+    public static String hash(ByteBuffer code) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(code.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException shouldNotHappen) {
+            throw new RuntimeException(shouldNotHappen);
+        }
+    }
+
+    private final BoilerInstance instance;
+    private final Map<String, Entry> hashEntries = new HashMap<>();
+    private final Map<String, Entry> resourceEntries = new HashMap<>();
+    private final Map<Long, Entry> moduleEntries = new HashMap<>();
+
+    public ShaderModuleCache(BoilerInstance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Acquires the shader module for the given classpath resource. The resource is only read when no module for
+     * <i>resourcePath</i> is cached yet.
+     */
+    public synchronized long acquire(String resourcePath, String name) {
+        var entry = resourceEntries.get(resourcePath);
+        if (entry != null) {
+            entry.references += 1;
+            return entry.module;
+        }
+
+        var input = ShaderModuleCache.class.getClassLoader().getResourceAsStream(resourcePath);
+        if (input == null) throw new IllegalArgumentException("Can't find resource: " + resourcePath);
+        byte[] inputArray;
+        try {
+            inputArray = input.readAllBytes();
+            input.close();
+        } catch (IOException shouldNotHappen) {
+            throw new RuntimeException(shouldNotHappen);
+        }
+
+        var code = memAlloc(inputArray.length);
+        try {
+            code.put(0, inputArray);
+            entry = acquireEntry(code, name);
+        } finally {
+            memFree(code);
+        }
+        entry.resourcePaths.add(resourcePath);
+        resourceEntries.put(resourcePath, entry);
+        return entry.module;
+    }
+
+    /**
+     * Acquires the shader module for the given SPIR-V file. The file is memory-mapped, and the mapped memory is passed
+     * directly to <i>vkCreateShaderModule</i> (if no module with the same code is cached yet).
+     */
+    public long acquire(Path file, String name) {
+        try (var channel = FileChannel.open(file, READ)) {
+            return acquire(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), name);
+        } catch (IOException failedToRead) {
+            throw new UncheckedIOException("Failed to read shader " + file, failedToRead);
+        }
+    }
+
+    /**
+     * Acquires the shader module for the given SPIR-V code, which must be a direct buffer.
+     */
+    public synchronized long acquire(ByteBuffer code, String name) {
+        return acquireEntry(code, name).module;
+    }
+
+    private Entry acquireEntry(ByteBuffer code, String name) {
+        String hash = hash(code);
+        var entry = hashEntries.get(hash);
+        if (entry == null) {
+            long module;
+            try (var stack = stackPush()) {
+                module = instance.pipelines.createShaderModule(stack, code, name);
+            }
+            entry = new Entry(module, hash);
+            hashEntries.put(hash, entry);
+            moduleEntries.put(module, entry);
+        }
+        entry.references += 1;
+        return entry;
+    }
+
+    /**
+     * Releases a module that was acquired earlier. The module will stay cached until it is evicted.
+     */
+    public synchronized void release(long module) {
+        var entry = moduleEntries.get(module);
+        if (entry == null || entry.references == 0) {
+            throw new IllegalArgumentException("Shader module " + module + " is not acquired");
+        }
+        entry.references -= 1;
+    }
+
+    /**
+     * @return The SHA-256 hash (see <i>hash</i>) of the code of the given module, or null if the module is not in this
+     * cache (e.g. because it has been evicted, or because it was created without this cache)
+     */
+    public synchronized String getHash(long module) {
+        var entry = moduleEntries.get(module);
+        return entry != null ? entry.hash : null;
+    }
+
+    /**
+     * Destroys all cached modules that are not acquired
+     * @return The number of destroyed modules
+     */
+    public synchronized int evictUnused() {
+        int count = 0;
+        var iterator = hashEntries.values().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.references == 0) {
+                iterator.remove();
+                moduleEntries.remove(entry.module);
+                for (String resourcePath : entry.resourcePaths) resourceEntries.remove(resourcePath);
+                vkDestroyShaderModule(instance.vkDevice(), entry.module, null);
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of cached modules (including the modules that are acquired)
+     */
+    public synchronized int size() {
+        return hashEntries.size();
+    }
+
+    /**
+     * Destroys all cached modules, regardless of whether they are still acquired. This is called by
+     * <i>BoilerInstance.destroyInitialObjects()</i>.
+     */
+    public synchronized void destroy() {
+        for (var entry : hashEntries.values()) vkDestroyShaderModule(instance.vkDevice(), entry.module, null);
+        hashEntries.clear();
+        resourceEntries.clear();
+        moduleEntries.clear();
+    }
+
+    private static class Entry {
+
+        final long module;
+        final String hash;
+        final List<String> resourcePaths = new ArrayList<>(1);
+        int references;
+
+        Entry(long module, String hash) {
+            this.module = module;
+            this.hash = hash;
+        }
+    }
+}
@@ -3,19 +3,29 @@ package com.github.knokko.boiler.queue;
 import com.github.knokko.boiler.sync.TimelineInstant;
 import com.github.knokko.boiler.sync.WaitSemaphore;
 import com.github.knokko.boiler.sync.WaitTimelineSemaphore;
+import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
-import static org.lwjgl.vulkan.VK10.vkQueueSubmit;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_STRUCTURE_TYPE_TIMELINE_SEMAPHORE_SUBMIT_INFO;
 
+/**
+ * The <i>submit</i> methods of this class fill the <i>VkSubmitInfo</i> directly on the stack, without allocating struct
+ * wrappers, so they don't create garbage in the render loop (except for the arrays that are passed to them).
+ * The command buffer may be null, to submit a batch that only waits on and/or signals semaphores (and the fence).
+ */
 public record BoilerQueue(VkQueue vkQueue) {
 
+    private static final WaitTimelineSemaphore[] NO_TIMELINE_WAITS = new WaitTimelineSemaphore[0];
+
     public void submit(
             VkCommandBuffer commandBuffer, String context,
             WaitSemaphore[] waitSemaphores, long fence, long... vkSignalSemaphores
     ) {
-        submit(commandBuffer, context, waitSemaphores, fence, vkSignalSemaphores, new WaitTimelineSemaphore[0]);
+        submit(commandBuffer, context, waitSemaphores, fence, vkSignalSemaphores, NO_TIMELINE_WAITS);
     }
 
     public synchronized void submit(
@@ -24,67 +34,120 @@ public record BoilerQueue(VkQueue vkQueue) {
             WaitTimelineSemaphore[] timelineWaits, TimelineInstant... timelineSignals
     ) {
         try (var stack = stackPush()) {
-
-            var submission = VkSubmitInfo.calloc(stack);
-            submission.sType$Default();
-
             int numWaitSemaphores = waitSemaphores.length + timelineWaits.length;
-            if (numWaitSemaphores > 0) {
-                submission.waitSemaphoreCount(numWaitSemaphores);
-                var pWaitSemaphores = stack.callocLong(numWaitSemaphores);
-                var pWaitDstStageMasks = stack.callocInt(numWaitSemaphores);
-                for (int index = 0; index < waitSemaphores.length; index++) {
-                    var semaphore = waitSemaphores[index];
-                    pWaitSemaphores.put(timelineWaits.length + index, semaphore.vkSemaphore());
-                    pWaitDstStageMasks.put(timelineWaits.length + index, semaphore.stageMask());
-                }
-                for (int index = 0; index < timelineWaits.length; index++) {
-                    var semaphore = timelineWaits[index];
-                    pWaitSemaphores.put(index, semaphore.vkSemaphore());
-                    pWaitDstStageMasks.put(index, semaphore.dstStageMask());
-                }
-                submission.pWaitSemaphores(pWaitSemaphores);
-                submission.pWaitDstStageMask(pWaitDstStageMasks);
+            long pWaitSemaphores = stack.nmalloc(8, 8 * numWaitSemaphores);
+            long pWaitDstStageMasks = stack.nmalloc(4, 4 * numWaitSemaphores);
+            long pWaitValues = stack.ncalloc(8, numWaitSemaphores, 8);
+            for (int index = 0; index < timelineWaits.length; index++) {
+                var semaphore = timelineWaits[index];
+                memPutLong(pWaitSemaphores + 8L * index, semaphore.vkSemaphore());
+                memPutInt(pWaitDstStageMasks + 4L * index, semaphore.dstStageMask());
+                memPutLong(pWaitValues + 8L * index, semaphore.value());
+            }
+            for (int index = 0; index < waitSemaphores.length; index++) {
+                var semaphore = waitSemaphores[index];
+                int offset = timelineWaits.length + index;
+                memPutLong(pWaitSemaphores + 8L * offset, semaphore.vkSemaphore());
+                memPutInt(pWaitDstStageMasks + 4L * offset, semaphore.stageMask());
             }
-
-            submission.pCommandBuffers(stack.pointers(commandBuffer.address()));
 
             int numSignalSemaphores = vkSignalSemaphores.length + timelineSignals.length;
-            if (numSignalSemaphores > 0) {
-                var pSignalSemaphores = stack.callocLong(numSignalSemaphores);
-                for (int index = 0; index < vkSignalSemaphores.length; index++) {
-                    pSignalSemaphores.put(timelineSignals.length + index, vkSignalSemaphores[index]);
-                }
-                for (int index = 0; index < timelineSignals.length; index++) {
-                    pSignalSemaphores.put(index, timelineSignals[index].timelineSemaphore());
-                }
-                submission.pSignalSemaphores(pSignalSemaphores);
+            long pSignalSemaphores = stack.nmalloc(8, 8 * numSignalSemaphores);
+            long pSignalValues = stack.ncalloc(8, numSignalSemaphores, 8);
+            for (int index = 0; index < timelineSignals.length; index++) {
+                memPutLong(pSignalSemaphores + 8L * index, timelineSignals[index].timelineSemaphore());
+                memPutLong(pSignalValues + 8L * index, timelineSignals[index].value());
+            }
+            for (int index = 0; index < vkSignalSemaphores.length; index++) {
+                memPutLong(pSignalSemaphores + 8L * (timelineSignals.length + index), vkSignalSemaphores[index]);
+            }
+
+            boolean usesTimeline = timelineWaits.length > 0 || timelineSignals.length > 0;
+            nsubmit(
+                    stack, commandBuffer, context, fence, numWaitSemaphores, pWaitSemaphores, pWaitDstStageMasks,
+                    usesTimeline ? pWaitValues : 0L, numSignalSemaphores, pSignalSemaphores,
+                    usesTimeline ? pSignalValues : 0L
+            );
+        }
+    }
+
+    /**
+     * A variant of <i>submit</i> that takes plain arrays (and counts), so that the caller can reuse the same arrays
+     * for every frame. Together with the allocation-free implementation, this means that this method doesn't cause
+     * any Java allocations at all.
+     * @param waitValues The values to wait for, or null when none of the wait semaphores is a timeline semaphore.
+     *                   The values of binary semaphores are ignored.
+     * @param signalValues The values to signal, or null when none of the signal semaphores is a timeline semaphore.
+     *                     The values of binary semaphores are ignored.
+     */
+    public synchronized void submit(
+            VkCommandBuffer commandBuffer, String context, long fence,
+            int waitCount, long[] waitSemaphores, int[] waitDstStageMasks, long[] waitValues,
+            int signalCount, long[] signalSemaphores, long[] signalValues
+    ) {
+        try (var stack = stackPush()) {
+            long pWaitSemaphores = stack.nmalloc(8, 8 * waitCount);
+            long pWaitDstStageMasks = stack.nmalloc(4, 4 * waitCount);
+            long pWaitValues = waitValues != null ? stack.nmalloc(8, 8 * waitCount) : 0L;
+            for (int index = 0; index < waitCount; index++) {
+                memPutLong(pWaitSemaphores + 8L * index, waitSemaphores[index]);
+                memPutInt(pWaitDstStageMasks + 4L * index, waitDstStageMasks[index]);
+                if (waitValues != null) memPutLong(pWaitValues + 8L * index, waitValues[index]);
             }
 
-            if (timelineWaits.length > 0 || timelineSignals.length > 0) {
-                var timeline = VkTimelineSemaphoreSubmitInfo.calloc(stack);
-                timeline.sType$Default();
-                timeline.waitSemaphoreValueCount(numWaitSemaphores);
-                if (numWaitSemaphores > 0) {
-                    var pValues = stack.callocLong(numWaitSemaphores);
-                    for (int index = 0; index < timelineWaits.length; index++) {
-                        pValues.put(index, timelineWaits[index].value());
-                    }
-                    timeline.pWaitSemaphoreValues(pValues);
-                }
-                timeline.signalSemaphoreValueCount(numSignalSemaphores);
-                if (numSignalSemaphores > 0) {
-                    var pValues = stack.callocLong(numSignalSemaphores);
-                    for (int index = 0; index < timelineSignals.length; index++) {
-                        pValues.put(index, timelineSignals[index].value());
-                    }
-                    timeline.pSignalSemaphoreValues(pValues);
-                }
-
-                submission.pNext(timeline);
+            long pSignalSemaphores = stack.nmalloc(8, 8 * signalCount);
+            long pSignalValues = signalValues != null ? stack.nmalloc(8, 8 * signalCount) : 0L;
+            for (int index = 0; index < signalCount; index++) {
+                memPutLong(pSignalSemaphores + 8L * index, signalSemaphores[index]);
+                if (signalValues != null) memPutLong(pSignalValues + 8L * index, signalValues[index]);
             }
 
-            assertVkSuccess(vkQueueSubmit(vkQueue, submission, fence), "QueueSubmit", context);
+            if (pWaitValues != 0L && pSignalValues == 0L) pSignalValues = stack.ncalloc(8, signalCount, 8);
+            if (pSignalValues != 0L && pWaitValues == 0L) pWaitValues = stack.ncalloc(8, waitCount, 8);
+
+            nsubmit(
+                    stack, commandBuffer, context, fence, waitCount, pWaitSemaphores, pWaitDstStageMasks,
+                    pWaitValues, signalCount, pSignalSemaphores, pSignalValues
+            );
+        }
+    }
+
+    private void nsubmit(
+            MemoryStack stack, VkCommandBuffer commandBuffer, String context, long fence,
+            int waitCount, long pWaitSemaphores, long pWaitDstStageMasks, long pWaitValues,
+            int signalCount, long pSignalSemaphores, long pSignalValues
+    ) {
+        long submission = stack.ncalloc(VkSubmitInfo.ALIGNOF, 1, VkSubmitInfo.SIZEOF);
+        VkSubmitInfo.nsType(submission, VK_STRUCTURE_TYPE_SUBMIT_INFO);
+        VkSubmitInfo.nwaitSemaphoreCount(submission, waitCount);
+        if (waitCount > 0) {
+            memPutAddress(submission + VkSubmitInfo.PWAITSEMAPHORES, pWaitSemaphores);
+            memPutAddress(submission + VkSubmitInfo.PWAITDSTSTAGEMASK, pWaitDstStageMasks);
+        }
+        if (commandBuffer != null) {
+            VkSubmitInfo.ncommandBufferCount(submission, 1);
+            memPutAddress(submission + VkSubmitInfo.PCOMMANDBUFFERS, stack.npointer(commandBuffer.address()));
         }
+        VkSubmitInfo.nsignalSemaphoreCount(submission, signalCount);
+        if (signalCount > 0) memPutAddress(submission + VkSubmitInfo.PSIGNALSEMAPHORES, pSignalSemaphores);
+
+        if (pWaitValues != 0L || pSignalValues != 0L) {
+            long timeline = stack.ncalloc(
+                    VkTimelineSemaphoreSubmitInfo.ALIGNOF, 1, VkTimelineSemaphoreSubmitInfo.SIZEOF
+            );
+            VkTimelineSemaphoreSubmitInfo.nsType(timeline, VK_STRUCTURE_TYPE_TIMELINE_SEMAPHORE_SUBMIT_INFO);
+            VkTimelineSemaphoreSubmitInfo.nwaitSemaphoreValueCount(timeline, waitCount);
+            if (waitCount > 0) {
+                memPutAddress(timeline + VkTimelineSemaphoreSubmitInfo.PWAITSEMAPHOREVALUES, pWaitValues);
+            }
+            VkTimelineSemaphoreSubmitInfo.nsignalSemaphoreValueCount(timeline, signalCount);
+            if (signalCount > 0) {
+                memPutAddress(timeline + VkTimelineSemaphoreSubmitInfo.PSIGNALSEMAPHOREVALUES, pSignalValues);
+            }
+
+            VkSubmitInfo.npNext(submission, timeline);
+        }
+
+        assertVkSuccess(nvkQueueSubmit(vkQueue, 1, submission, fence), "QueueSubmit", context);
     }
 }
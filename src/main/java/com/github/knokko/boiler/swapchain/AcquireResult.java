@@ -4,6 +4,10 @@ import com.github.knokko.boiler.sync.FatFence;
 
 import java.util.function.Consumer;
 
+/**
+ * The result of <i>BoilerSwapchains.acquireNextImage</i>. To avoid allocations in the render loop, the same
+ * <i>AcquireResult</i> instance may be returned again when the same swapchain image is acquired later.
+ */
 public record AcquireResult(
         long vkSwapchain,
         long vkImage,
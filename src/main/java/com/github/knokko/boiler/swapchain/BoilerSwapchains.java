@@ -3,20 +3,23 @@ package com.github.knokko.boiler.swapchain;
 import com.github.knokko.boiler.instance.BoilerInstance;
 import com.github.knokko.boiler.sync.FatFence;
 import com.github.knokko.boiler.sync.TimelineInstant;
-import org.lwjgl.vulkan.VkPresentInfoKHR;
-import org.lwjgl.vulkan.VkSwapchainCreateInfoKHR;
-import org.lwjgl.vulkan.VkSwapchainPresentFenceInfoEXT;
+import org.lwjgl.vulkan.*;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Objects;
+import java.util.List;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static java.lang.Math.max;
 import static org.lwjgl.glfw.GLFW.glfwGetFramebufferSize;
+import static org.lwjgl.glfw.GLFW.nglfwGetFramebufferSize;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.EXTSwapchainMaintenance1.VK_STRUCTURE_TYPE_SWAPCHAIN_PRESENT_FENCE_INFO_EXT;
+import static org.lwjgl.vulkan.GOOGLEDisplayTiming.*;
+import static org.lwjgl.vulkan.KHRPresentId.VK_STRUCTURE_TYPE_PRESENT_ID_KHR;
+import static org.lwjgl.vulkan.KHRPresentWait.vkWaitForPresentKHR;
 import static org.lwjgl.vulkan.KHRSurface.VK_PRESENT_MODE_MAILBOX_KHR;
 import static org.lwjgl.vulkan.KHRSurface.vkGetPhysicalDeviceSurfaceCapabilitiesKHR;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
@@ -28,20 +31,91 @@ public class BoilerSwapchains {
     final boolean hasSwapchainMaintenance;
     private final int windowIndex;
 
-    private final Collection<Swapchain> oldSwapchains = new ArrayList<>();
+    private final List<Swapchain> oldSwapchains = new ArrayList<>();
     private Swapchain currentSwapchain;
     private long currentSwapchainID;
     private boolean isOutOfDate;
 
+    private SwapchainMetrics metrics;
+    private final boolean hasDisplayTiming;
+    private final boolean hasPresentWait;
+    private long nextPresentID = 1;
+
+    private int lowLatencyFrames;
+    private long firstWaitablePresentID;
+    private DrawingCondition[] recentFrames;
+
     @Deprecated
     public BoilerSwapchains(BoilerInstance instance, boolean hasSwapchainMaintenance) {
         this(instance, hasSwapchainMaintenance, 0);
     }
 
     public BoilerSwapchains(BoilerInstance instance, boolean hasSwapchainMaintenance, int windowIndex) {
+        this(instance, hasSwapchainMaintenance, false, windowIndex);
+    }
+
+    public BoilerSwapchains(
+            BoilerInstance instance, boolean hasSwapchainMaintenance, boolean hasPresentWait, int windowIndex
+    ) {
         this.instance = instance;
         this.hasSwapchainMaintenance = hasSwapchainMaintenance;
+        this.hasPresentWait = hasPresentWait;
         this.windowIndex = windowIndex;
+        this.hasDisplayTiming = instance.deviceExtensions.contains(VK_GOOGLE_DISPLAY_TIMING_EXTENSION_NAME);
+    }
+
+    /**
+     * Sets the metrics that will receive timing information about acquiring and presenting swapchain images, or
+     * <i>null</i> to stop collecting metrics (the default). When VK_GOOGLE_display_timing is enabled, the metrics
+     * will also receive the past presentation timings.
+     */
+    public void setMetrics(SwapchainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enables or disables the low-latency mode. When enabled, <i>acquireNextImage</i> will block until frame
+     * <i>N - maxQueuedFrames</i> has been presented, before it acquires the image for frame <i>N</i>. This prevents
+     * frames from queueing up (which is what causes most input latency with FIFO, or with MAILBOX at 3 images), at the
+     * cost of some throughput.
+     * <p>
+     * When VK_KHR_present_wait is enabled, this will wait until the presentation engine has actually presented
+     * frame <i>N - maxQueuedFrames</i>. Otherwise, it will wait until the rendering of that frame has finished, using
+     * the fence or timeline instant that was passed to <i>presentImage</i>.
+     * @param maxQueuedFrames The maximum number of frames that can be queued, or 0 to disable the low-latency mode
+     */
+    public void setLowLatencyMode(int maxQueuedFrames) {
+        if (maxQueuedFrames < 0) throw new IllegalArgumentException("maxQueuedFrames must be non-negative");
+        if (maxQueuedFrames > 0 && (recentFrames == null || recentFrames.length < maxQueuedFrames + 1)) {
+            recentFrames = new DrawingCondition[maxQueuedFrames + 1];
+            for (int index = 0; index < recentFrames.length; index++) recentFrames[index] = new DrawingCondition();
+        }
+        if (recentFrames != null) {
+            for (var frame : recentFrames) frame.clear();
+        }
+        this.lowLatencyFrames = maxQueuedFrames;
+        this.firstWaitablePresentID = nextPresentID;
+    }
+
+    private void limitLatency() {
+        long targetPresentID = nextPresentID - lowLatencyFrames;
+        if (targetPresentID < firstWaitablePresentID || targetPresentID < 1) return;
+
+        long startTime = metrics != null ? System.nanoTime() : 0L;
+        if (hasPresentWait) {
+            int result = vkWaitForPresentKHR(
+                    instance.vkDevice(), currentSwapchain.vkSwapchain, targetPresentID, instance.defaultTimeout
+            );
+            // When the swapchain is out of date, the next acquire will recreate it
+            if (result != VK_ERROR_OUT_OF_DATE_KHR) {
+                assertVkSuccess(result, "WaitForPresentKHR", "LowLatencyMode", VK_TIMEOUT, VK_SUBOPTIMAL_KHR);
+            }
+        } else {
+            try (var stack = stackPush()) {
+                recentFrames[(int) (targetPresentID % recentFrames.length)].await(instance, stack);
+            }
+        }
+        if (metrics != null) metrics.lowLatencyWait(System.nanoTime() - startTime);
     }
 
     private void recreateSwapchain(int presentMode) {
@@ -50,6 +124,8 @@ public class BoilerSwapchains {
             oldSwapchains.add(currentSwapchain);
             currentSwapchain = newSwapchain;
             isOutOfDate = false;
+            firstWaitablePresentID = nextPresentID;
+            if (metrics != null) metrics.swapchainRecreated();
         } else isOutOfDate = true;
     }
 
@@ -69,28 +145,48 @@ public class BoilerSwapchains {
         presentImage(acquired, drawingFence, null);
     }
 
+    /**
+     * Presents the acquired image after the given timeline semaphore reaches <i>drawingFinishedValue</i>. This is
+     * equivalent to passing a <i>TimelineInstant</i>, but doesn't require the caller to allocate one every frame.
+     */
+    public void presentImage(AcquireResult acquired, long timelineSemaphore, long drawingFinishedValue) {
+        presentImage(acquired, timelineSemaphore, drawingFinishedValue, null);
+    }
+
+    public void presentImage(
+            AcquireResult acquired, long timelineSemaphore, long drawingFinishedValue,
+            Consumer<VkPresentInfoKHR> beforePresentCallback
+    ) {
+        present(acquired, null, VK_NULL_HANDLE, timelineSemaphore, drawingFinishedValue, null, beforePresentCallback);
+    }
+
     public void presentImage(AcquireResult acquired, long drawingFence, Consumer<VkPresentInfoKHR> beforePresentCallback) {
-        presentImage(acquired, new FatFence(drawingFence, false), beforePresentCallback);
+        present(acquired, null, drawingFence, VK_NULL_HANDLE, 0L, null, beforePresentCallback);
     }
 
     public void presentImage(AcquireResult acquired, TimelineInstant drawingFinished, Consumer<VkPresentInfoKHR> beforePresentCallback) {
-        presentImage(acquired, () -> {
-            try (var stack = stackPush()) {
-                return instance.sync.getTimelineSemaphoreValue(
-                        stack, drawingFinished.timelineSemaphore(), "TestDrawingFinished"
-                ) >= drawingFinished.value();
-            }
-        }, beforePresentCallback);
+        present(
+                acquired, null, VK_NULL_HANDLE, drawingFinished.timelineSemaphore(), drawingFinished.value(),
+                null, beforePresentCallback
+        );
     }
 
     public void presentImage(AcquireResult acquired, FatFence drawingFence, Consumer<VkPresentInfoKHR> beforePresentCallback) {
-        presentImage(acquired, () -> drawingFence.isSignaled(instance), beforePresentCallback);
+        present(acquired, drawingFence, VK_NULL_HANDLE, VK_NULL_HANDLE, 0L, null, beforePresentCallback);
     }
 
     public void presentImage(
             AcquireResult acquired,
             BooleanSupplier didDrawingFinish,
             Consumer<VkPresentInfoKHR> beforePresentCallback
+    ) {
+        present(acquired, null, VK_NULL_HANDLE, VK_NULL_HANDLE, 0L, didDrawingFinish, beforePresentCallback);
+    }
+
+    private void present(
+            AcquireResult acquired, FatFence drawingFatFence, long drawingFence,
+            long drawingTimeline, long drawingTimelineValue, BooleanSupplier didDrawingFinish,
+            Consumer<VkPresentInfoKHR> beforePresentCallback
     ) {
         if (isOutOfDate) return;
         if (acquired.windowIndex() != windowIndex) {
@@ -99,26 +195,60 @@ public class BoilerSwapchains {
         try (var stack = stackPush()) {
             var acquiredSwapchain = (Swapchain) acquired.swapchain();
 
-            var presentInfo = VkPresentInfoKHR.calloc(stack);
-            presentInfo.sType$Default();
-            presentInfo.pWaitSemaphores(stack.longs(acquired.presentSemaphore()));
-            presentInfo.swapchainCount(1);
-            presentInfo.pSwapchains(stack.longs(acquired.vkSwapchain()));
-            presentInfo.pImageIndices(stack.ints(acquired.imageIndex()));
-            presentInfo.pResults(stack.callocInt(1));
+            // Fill the VkPresentInfoKHR directly, to avoid allocating struct wrappers every frame
+            long presentInfo = stack.ncalloc(VkPresentInfoKHR.ALIGNOF, 1, VkPresentInfoKHR.SIZEOF);
+            long pResult = stack.nint(VK_SUCCESS);
+            VkPresentInfoKHR.nsType(presentInfo, VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+            VkPresentInfoKHR.nwaitSemaphoreCount(presentInfo, 1);
+            memPutAddress(presentInfo + VkPresentInfoKHR.PWAITSEMAPHORES, stack.nlong(acquired.presentSemaphore()));
+            VkPresentInfoKHR.nswapchainCount(presentInfo, 1);
+            memPutAddress(presentInfo + VkPresentInfoKHR.PSWAPCHAINS, stack.nlong(acquired.vkSwapchain()));
+            memPutAddress(presentInfo + VkPresentInfoKHR.PIMAGEINDICES, stack.nint(acquired.imageIndex()));
+            memPutAddress(presentInfo + VkPresentInfoKHR.PRESULTS, pResult);
+
             if (hasSwapchainMaintenance) {
                 acquired.presentFence().waitAndReset(instance, stack);
-                acquiredSwapchain.images[acquired.imageIndex()].didDrawingFinish = didDrawingFinish;
 
-                var fiPresent = VkSwapchainPresentFenceInfoEXT.calloc(stack);
-                fiPresent.sType$Default();
-                fiPresent.pFences(stack.longs(acquired.presentFence().vkFence));
+                long fiPresent = stack.ncalloc(
+                        VkSwapchainPresentFenceInfoEXT.ALIGNOF, 1, VkSwapchainPresentFenceInfoEXT.SIZEOF
+                );
+                VkSwapchainPresentFenceInfoEXT.nsType(fiPresent, VK_STRUCTURE_TYPE_SWAPCHAIN_PRESENT_FENCE_INFO_EXT);
+                VkSwapchainPresentFenceInfoEXT.nswapchainCount(fiPresent, 1);
+                memPutAddress(
+                        fiPresent + VkSwapchainPresentFenceInfoEXT.PFENCES,
+                        stack.nlong(acquired.presentFence().vkFence)
+                );
+
+                VkPresentInfoKHR.npNext(presentInfo, fiPresent);
+            }
+            long presentID = nextPresentID++;
+            if (lowLatencyFrames > 0 && hasPresentWait) {
+                long idInfo = stack.ncalloc(VkPresentIdKHR.ALIGNOF, 1, VkPresentIdKHR.SIZEOF);
+                VkPresentIdKHR.nsType(idInfo, VK_STRUCTURE_TYPE_PRESENT_ID_KHR);
+                VkPresentIdKHR.npNext(idInfo, memGetAddress(presentInfo + VkPresentInfoKHR.PNEXT));
+                VkPresentIdKHR.nswapchainCount(idInfo, 1);
+                memPutAddress(idInfo + VkPresentIdKHR.PPRESENTIDS, stack.nlong(presentID));
+
+                VkPresentInfoKHR.npNext(presentInfo, idInfo);
+            }
+            if (metrics != null && hasDisplayTiming) {
+                long pTime = stack.ncalloc(VkPresentTimeGOOGLE.ALIGNOF, 1, VkPresentTimeGOOGLE.SIZEOF);
+                VkPresentTimeGOOGLE.npresentID(pTime, (int) presentID);
 
-                presentInfo.pNext(fiPresent);
+                long timesInfo = stack.ncalloc(VkPresentTimesInfoGOOGLE.ALIGNOF, 1, VkPresentTimesInfoGOOGLE.SIZEOF);
+                VkPresentTimesInfoGOOGLE.nsType(timesInfo, VK_STRUCTURE_TYPE_PRESENT_TIMES_INFO_GOOGLE);
+                VkPresentTimesInfoGOOGLE.npNext(timesInfo, memGetAddress(presentInfo + VkPresentInfoKHR.PNEXT));
+                VkPresentTimesInfoGOOGLE.nswapchainCount(timesInfo, 1);
+                memPutAddress(timesInfo + VkPresentTimesInfoGOOGLE.PTIMES, pTime);
+
+                VkPresentInfoKHR.npNext(presentInfo, timesInfo);
             }
-            if (beforePresentCallback != null) beforePresentCallback.accept(presentInfo);
+            var drawingFinished = acquiredSwapchain.images[acquired.imageIndex()].drawingFinished;
+            drawingFinished.set(drawingFatFence, drawingFence, drawingTimeline, drawingTimelineValue, didDrawingFinish);
+            if (lowLatencyFrames > 0) recentFrames[(int) (presentID % recentFrames.length)].set(drawingFinished);
+            if (beforePresentCallback != null) beforePresentCallback.accept(VkPresentInfoKHR.create(presentInfo));
 
-            int presentResult = vkQueuePresentKHR(
+            int presentResult = nvkQueuePresentKHR(
                     instance.queueFamilies().present().queues().get(0).vkQueue(), presentInfo
             );
             if (presentResult == VK_ERROR_OUT_OF_DATE_KHR || presentResult == VK_SUBOPTIMAL_KHR) {
@@ -126,19 +256,56 @@ public class BoilerSwapchains {
                 return;
             }
             assertVkSuccess(presentResult, "QueuePresentKHR", null);
-            assertVkSuccess(Objects.requireNonNull(presentInfo.pResults()).get(0), "QueuePresentKHR", null);
+            assertVkSuccess(memGetInt(pResult), "QueuePresentKHR", null);
+
+            if (metrics != null) {
+                metrics.imagePresented(System.nanoTime());
+                if (hasDisplayTiming) reportPastPresentationTimings(acquired.vkSwapchain());
+            }
+        }
+    }
+
+    private void reportPastPresentationTimings(long vkSwapchain) {
+        // Use raw stack memory and the static accessors, since struct wrappers would allocate every frame
+        try (var stack = stackPush()) {
+            int capacity = 8;
+            long pCount = stack.nint(0);
+            long pTimings = stack.ncalloc(
+                    VkPastPresentationTimingGOOGLE.ALIGNOF, capacity, VkPastPresentationTimingGOOGLE.SIZEOF
+            );
+
+            // The driver forgets the timings that it returned, so VK_INCOMPLETE means that there are more timings
+            int result = VK_INCOMPLETE;
+            while (result == VK_INCOMPLETE) {
+                memPutInt(pCount, capacity);
+                result = nvkGetPastPresentationTimingGOOGLE(instance.vkDevice(), vkSwapchain, pCount, pTimings);
+                assertVkSuccess(result, "GetPastPresentationTimingGOOGLE", "Timings", VK_INCOMPLETE);
+
+                int count = memGetInt(pCount);
+                for (int index = 0; index < count; index++) {
+                    long timing = pTimings + (long) index * VkPastPresentationTimingGOOGLE.SIZEOF;
+                    metrics.pastPresentationTiming(
+                            VkPastPresentationTimingGOOGLE.npresentID(timing),
+                            VkPastPresentationTimingGOOGLE.ndesiredPresentTime(timing),
+                            VkPastPresentationTimingGOOGLE.nactualPresentTime(timing),
+                            VkPastPresentationTimingGOOGLE.nearliestPresentTime(timing),
+                            VkPastPresentationTimingGOOGLE.npresentMargin(timing)
+                    );
+                }
+                if (count == 0) break;
+            }
         }
     }
 
     public AcquireResult acquireNextImage(int presentMode) {
-        //noinspection resource
-        if (currentSwapchain != null && instance.windowSurface(windowIndex).capabilities().currentExtent().width() == -1) {
+        // Read currentExtent.width directly, since capabilities().currentExtent() would allocate a wrapper
+        long capabilities = instance.windowSurface(windowIndex).capabilities().address();
+        if (currentSwapchain != null && memGetInt(capabilities + VkSurfaceCapabilitiesKHR.CURRENTEXTENT + VkExtent2D.WIDTH) == -1) {
             try (var stack = stackPush()) {
-                var pWidth = stack.callocInt(1);
-                var pHeight = stack.callocInt(1);
-                glfwGetFramebufferSize(instance.glfwWindow(windowIndex), pWidth, pHeight);
-                int width = pWidth.get(0);
-                int height = pHeight.get(0);
+                long pSize = stack.ncalloc(4, 2, 4);
+                nglfwGetFramebufferSize(instance.glfwWindow(windowIndex), pSize, pSize + 4);
+                int width = memGetInt(pSize);
+                int height = memGetInt(pSize + 4);
                 if (width != currentSwapchain.width || height != currentSwapchain.height) isOutOfDate = true;
             }
         }
@@ -157,48 +324,66 @@ public class BoilerSwapchains {
             recreateSwapchain(presentMode);
         }
 
-        var swapchainImage = currentSwapchain.acquire();
+        if (lowLatencyFrames > 0) limitLatency();
+
+        var swapchainImage = currentSwapchain.acquire(metrics);
         if (swapchainImage == null) {
             recreateSwapchain(presentMode);
             return acquireNextImage(presentMode);
         }
 
-        // Prevent the number of swapchains from escalating when the window is being resized quickly
-        if (oldSwapchains.size() > 10) {
-            assertVkSuccess(vkDeviceWaitIdle(instance.vkDevice()), "DeviceWaitIdle", "SwapchainGarbage");
-            destroyOldSwapchains();
+        retireOldSwapchains();
+
+        int resultIndex = swapchainImage.index * currentSwapchain.images.length + swapchainImage.acquireSlot;
+        var result = currentSwapchain.acquireResults[resultIndex];
+        if (result == null) {
+            result = new AcquireResult(
+                    currentSwapchain.vkSwapchain,
+                    swapchainImage.vkImage,
+                    swapchainImage.index,
+                    currentSwapchain.images.length,
+                    swapchainImage.acquireSemaphore,
+                    swapchainImage.presentSemaphore,
+                    swapchainImage.presentFence,
+                    currentSwapchain.width,
+                    currentSwapchain.height,
+                    currentSwapchain,
+                    currentSwapchainID,
+                    currentSwapchain.addDestructionCallback,
+                    windowIndex
+            );
+            currentSwapchain.acquireResults[resultIndex] = result;
         }
+        return result;
+    }
 
-        if (hasSwapchainMaintenance) {
-            oldSwapchains.removeIf(oldSwapchain -> {
-                for (var presentFence : oldSwapchain.presentFences) {
-                    if (!presentFence.isSignaled(instance)) return false;
-                }
-                for (var image : oldSwapchain.images) {
-                    if (image.didDrawingFinish != null && !image.didDrawingFinish.getAsBoolean()) return false;
+    /**
+     * Destroys the old swapchains that can be retired, without blocking. Only when the number of old swapchains
+     * escalates (e.g. while the window is being resized quickly), this will block until the oldest one can be retired,
+     * which is much cheaper than waiting until the whole device is idle.
+     */
+    private void retireOldSwapchains() {
+        int numDestroyed = 0;
+        while (oldSwapchains.size() > 10) {
+            var oldestSwapchain = oldSwapchains.remove(0);
+            oldestSwapchain.awaitRetirement(hasSwapchainMaintenance);
+            oldestSwapchain.destroy(hasSwapchainMaintenance);
+            numDestroyed += 1;
+        }
+
+        // Without swapchain maintenance, we can't know when the presentation engine is done with the old swapchain
+        // images, so we use the heuristic that it is done when the current swapchain has been in use for a while.
+        if (hasSwapchainMaintenance || currentSwapchain.canDestroyOldSwapchains) {
+            // Iterate backwards by index to avoid allocating an iterator or a lambda in the common case
+            for (int index = oldSwapchains.size() - 1; index >= 0; index--) {
+                if (oldSwapchains.get(index).canBeRetired(hasSwapchainMaintenance)) {
+                    oldSwapchains.remove(index).destroy(hasSwapchainMaintenance);
+                    numDestroyed += 1;
                 }
-                oldSwapchain.destroy(true);
-                return true;
-            });
-        } else {
-            if (currentSwapchain.canDestroyOldSwapchains) destroyOldSwapchains();
+            }
         }
 
-        return new AcquireResult(
-                currentSwapchain.vkSwapchain,
-                swapchainImage.vkImage,
-                swapchainImage.index,
-                currentSwapchain.images.length,
-                swapchainImage.acquireSemaphore,
-                swapchainImage.presentSemaphore,
-                swapchainImage.presentFence,
-                currentSwapchain.width,
-                currentSwapchain.height,
-                currentSwapchain,
-                currentSwapchainID,
-                currentSwapchain.destructionCallbacks::add,
-                windowIndex
-        );
+        if (metrics != null && numDestroyed > 0) metrics.oldSwapchainsDestroyed(numDestroyed);
     }
 
     private Swapchain create(long oldSwapchain, int presentMode) {
@@ -259,18 +444,19 @@ public class BoilerSwapchains {
         }
     }
 
-    private void destroyOldSwapchains() {
-        for (var oldSwapchain : oldSwapchains) {
-            oldSwapchain.destroy(hasSwapchainMaintenance);
-        }
-        oldSwapchains.clear();
-    }
-
     public void destroy() {
         if (currentSwapchain != null) {
+            // This is the only place where waiting until the device is idle is acceptable: the application is
+            // shutting down, and the fences of the application may already have been destroyed.
             assertVkSuccess(vkDeviceWaitIdle(instance.vkDevice()), "DeviceWaitIdle", "SwapchainDestruction");
-            destroyOldSwapchains();
-            currentSwapchain.destroy(hasSwapchainMaintenance);
+            oldSwapchains.add(currentSwapchain);
+            try (var stack = stackPush()) {
+                for (var swapchain : oldSwapchains) {
+                    swapchain.awaitAcquireFences(stack);
+                    swapchain.destroy(hasSwapchainMaintenance);
+                }
+            }
+            oldSwapchains.clear();
             currentSwapchain = null;
         }
     }
@@ -0,0 +1,86 @@
+package com.github.knokko.boiler.swapchain;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.FatFence;
+import org.lwjgl.system.MemoryStack;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * The condition that indicates whether the rendering to a swapchain image has finished. At most 1 of the fields is
+ * used at the same time. They are stored separately to avoid allocating lambdas every frame.
+ */
+class DrawingCondition {
+
+    private FatFence fatFence;
+    private long fence = VK_NULL_HANDLE;
+    private long timeline = VK_NULL_HANDLE;
+    private long timelineValue;
+    private BooleanSupplier finished;
+
+    void set(FatFence fatFence, long fence, long timeline, long timelineValue, BooleanSupplier finished) {
+        this.fatFence = fatFence;
+        this.fence = fence;
+        this.timeline = timeline;
+        this.timelineValue = timelineValue;
+        this.finished = finished;
+    }
+
+    void set(DrawingCondition other) {
+        set(other.fatFence, other.fence, other.timeline, other.timelineValue, other.finished);
+    }
+
+    void clear() {
+        set(null, VK_NULL_HANDLE, VK_NULL_HANDLE, 0L, null);
+    }
+
+    boolean isDone(BoilerInstance instance) {
+        if (fatFence != null) return fatFence.isSignaled(instance);
+        if (fence != VK_NULL_HANDLE) return vkGetFenceStatus(instance.vkDevice(), fence) == VK_SUCCESS;
+        if (timeline != VK_NULL_HANDLE) {
+            try (var stack = stackPush()) {
+                return instance.sync.getTimelineSemaphoreValue(
+                        stack, timeline, "TestDrawingFinished"
+                ) >= timelineValue;
+            }
+        }
+        if (finished != null) return finished.getAsBoolean();
+        return true;
+    }
+
+    void await(BoilerInstance instance, MemoryStack stack) {
+        if (fatFence != null) fatFence.wait(instance, stack);
+        if (fence != VK_NULL_HANDLE) {
+            assertVkSuccess(nvkWaitForFences(
+                    instance.vkDevice(), 1, stack.nlong(fence), VK_TRUE, instance.defaultTimeout
+            ), "WaitForFences", "AwaitDrawingFinished");
+        }
+        if (timeline != VK_NULL_HANDLE) {
+            instance.sync.awaitTimelineSemaphore(stack, timeline, timelineValue, "AwaitDrawingFinished");
+        }
+        if (finished != null) awaitSupplier(finished, instance.defaultTimeout);
+    }
+
+    /**
+     * Waits until <i>finished</i> returns true, or throws an <i>IllegalStateException</i> when that takes longer than
+     * <i>timeout</i> nanoseconds. This spins briefly, and parks the thread between checks after that, so it doesn't
+     * keep a core busy when the condition takes long.
+     */
+    static void awaitSupplier(BooleanSupplier finished, long timeout) {
+        long startTime = System.nanoTime();
+        int attempts = 0;
+        while (!finished.getAsBoolean()) {
+            if (System.nanoTime() - startTime > timeout) {
+                throw new IllegalStateException("Drawing didn't finish within " + timeout + " nanoseconds");
+            }
+            attempts += 1;
+            if (attempts < 100) Thread.onSpinWait();
+            else LockSupport.parkNanos(50_000L);
+        }
+    }
+}
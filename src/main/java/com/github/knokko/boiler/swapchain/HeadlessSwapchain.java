@@ -0,0 +1,316 @@
+package com.github.knokko.boiler.swapchain;
+
+import com.github.knokko.boiler.buffer.ReadbackService;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.images.VmaImage;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.FatFence;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import com.github.knokko.boiler.sync.WaitTimelineSemaphore;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * An offscreen replacement for <i>BoilerSwapchains</i>, for machines without a window system (e.g. CI or render
+ * farms). It follows the same contract: <i>acquireNextImage</i> returns an <i>AcquireResult</i> whose
+ * <i>acquireSemaphore</i> must be awaited before rendering to the image, and the rendering submission must signal its
+ * <i>presentSemaphore</i> before <i>presentImage</i> is called. The images are a ring of <i>VmaImage</i>s, so
+ * renderers that use <i>SwapchainResourceManager</i> work unchanged.
+ * <p>
+ * The only difference is the final layout: since there is no presentation engine, the rendering must leave the image
+ * in <i>VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL</i> rather than <i>VK_IMAGE_LAYOUT_PRESENT_SRC_KHR</i>.
+ * <p>
+ * When capturing is enabled, every presented image is copied to a <i>ReadbackService</i>, and passed to a
+ * <i>FrameSink</i> once the copy has finished, without stalling the render loop. Capturing requires the
+ * <i>timelineSemaphore</i> feature.
+ */
+public class HeadlessSwapchain {
+
+    /**
+     * Receives the pixels of captured frames. This is called on the thread of the <i>GpuCompletionService</i> of the
+     * <i>ReadbackService</i>, and <i>pixels</i> is only valid during the call.
+     */
+    @FunctionalInterface
+    public interface FrameSink {
+
+        void accept(long frameNumber, int width, int height, ByteBuffer pixels);
+    }
+
+    /**
+     * @return A sink that stores each frame as a PNG file named <i>frameNumber.png</i> in <i>directory</i>. The
+     * image format must have 4 bytes per pixel, in RGBA (or BGRA when <i>bgra</i> is true) order.
+     */
+    public static FrameSink pngFiles(Path directory, boolean bgra) {
+        return (frameNumber, width, height, pixels) -> {
+            var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int index = 4 * (x + y * width);
+                    int red = pixels.get(index) & 0xFF;
+                    int green = pixels.get(index + 1) & 0xFF;
+                    int blue = pixels.get(index + 2) & 0xFF;
+                    int alpha = pixels.get(index + 3) & 0xFF;
+                    if (bgra) {
+                        int temp = red;
+                        red = blue;
+                        blue = temp;
+                    }
+                    image.setRGB(x, y, (alpha << 24) | (red << 16) | (green << 8) | blue);
+                }
+            }
+
+            var file = directory.resolve(frameNumber + ".png");
+            try {
+                ImageIO.write(image, "PNG", file.toFile());
+            } catch (IOException failedToWrite) {
+                throw new UncheckedIOException("Failed to write frame " + file, failedToWrite);
+            }
+        };
+    }
+
+    private final BoilerInstance instance;
+    private final int format, imageUsage, numImages;
+    private final String name, acquireContext, presentContext;
+
+    // Reused for every acquire and present submission, so that they don't allocate (unless capturing is enabled)
+    private final long[] submitSemaphore = new long[1];
+    private final int[] presentWaitStage = { VK_PIPELINE_STAGE_TRANSFER_BIT };
+
+    private final long[] acquireSemaphores, presentSemaphores;
+    private final FatFence[] presentFences;
+    private final long commandPool;
+    private final VkCommandBuffer[] captureCommandBuffers;
+
+    private int width, height;
+    private VmaImage[] images;
+    private AcquireResult[] acquireResults;
+    private long swapchainID;
+    private final Collection<Runnable> destructionCallbacks = new ArrayList<>();
+    private final Consumer<Runnable> addDestructionCallback = destructionCallbacks::add;
+    private int nextImageIndex;
+
+    private ReadbackService captureReadback;
+    private FrameSink captureSink;
+    private int captureBytesPerPixel;
+    private long captureTimeline = VK_NULL_HANDLE;
+    private long frameNumber;
+
+    /**
+     * @param imageUsage The usage of the images (typically <i>VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT</i>).
+     *                   <i>VK_IMAGE_USAGE_TRANSFER_SRC_BIT</i> is always added.
+     * @param numImages The number of images in the ring, which is the maximum number of frames in flight
+     */
+    public HeadlessSwapchain(
+            BoilerInstance instance, int width, int height, int format, int imageUsage, int numImages, String name
+    ) {
+        this.instance = instance;
+        this.format = format;
+        this.imageUsage = imageUsage | VK_IMAGE_USAGE_TRANSFER_SRC_BIT;
+        this.numImages = numImages;
+        this.name = name;
+        this.acquireContext = name + "-Acquire";
+        this.presentContext = name + "-Present";
+
+        this.acquireSemaphores = instance.sync.semaphoreBank.borrowSemaphores(numImages);
+        this.presentSemaphores = instance.sync.semaphoreBank.borrowSemaphores(numImages);
+        this.presentFences = instance.sync.fenceBank.borrowSignaledFences(numImages);
+        this.commandPool = instance.commands.createPool(
+                VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT, instance.queueFamilies().graphics().index(),
+                name + "-Capture"
+        );
+        this.captureCommandBuffers = instance.commands.createPrimaryBuffers(commandPool, numImages, name + "-Capture");
+        createImages(width, height);
+    }
+
+    private void createImages(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.images = new VmaImage[numImages];
+        this.acquireResults = new AcquireResult[numImages];
+        this.swapchainID += 1;
+        try (var stack = stackPush()) {
+            for (int index = 0; index < numImages; index++) {
+                images[index] = instance.images.createSimple(
+                        stack, width, height, format, imageUsage, VK_IMAGE_ASPECT_COLOR_BIT, name + "-Image" + index
+                );
+            }
+        }
+    }
+
+    private void awaitPresentFences() {
+        try (var stack = stackPush()) {
+            for (var fence : presentFences) fence.wait(instance, stack);
+        }
+    }
+
+    private void destroyImages() {
+        awaitPresentFences();
+        for (var callback : destructionCallbacks) callback.run();
+        destructionCallbacks.clear();
+        for (var image : images) {
+            vkDestroyImageView(instance.vkDevice(), image.vkImageView(), null);
+            vmaDestroyImage(instance.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+        }
+    }
+
+    /**
+     * Recreates the images with the given size. This waits until all presented images have been captured, and runs
+     * the pre-destruction callbacks of the old images. All acquired images must have been presented.
+     */
+    public void resize(int width, int height) {
+        destroyImages();
+        createImages(width, height);
+    }
+
+    /**
+     * Copies every presented image to <i>readback</i>, and passes it to <i>sink</i> once the copy has finished.
+     * @param bytesPerPixel The size of a pixel of the image format
+     */
+    public void enableCapture(ReadbackService readback, int bytesPerPixel, FrameSink sink) {
+        if (captureTimeline == VK_NULL_HANDLE) {
+            captureTimeline = instance.sync.createTimelineSemaphore(0, name + "-Capture");
+        }
+        this.captureReadback = readback;
+        this.captureBytesPerPixel = bytesPerPixel;
+        this.captureSink = sink;
+    }
+
+    public void disableCapture() {
+        this.captureReadback = null;
+        this.captureSink = null;
+    }
+
+    /**
+     * @return The image with the given index, whose view covers the whole image
+     */
+    public VmaImage getImage(int imageIndex) {
+        return images[imageIndex];
+    }
+
+    /**
+     * @return The number of frames that have been presented
+     */
+    public long getNumPresentedFrames() {
+        return frameNumber;
+    }
+
+    /**
+     * Acquires the next image of the ring. This only blocks when the previous presentation of that image hasn't been
+     * completed yet (which includes the capture copy, when capturing is enabled). When capturing is disabled,
+     * acquiring and presenting images doesn't allocate any Java objects.
+     */
+    public AcquireResult acquireNextImage() {
+        int imageIndex = nextImageIndex;
+        nextImageIndex = (nextImageIndex + 1) % numImages;
+
+        try (var stack = stackPush()) {
+            presentFences[imageIndex].waitAndReset(instance, stack);
+        }
+
+        // Signal the acquire semaphore like vkAcquireNextImageKHR would
+        submitSemaphore[0] = acquireSemaphores[imageIndex];
+        instance.queueFamilies().graphics().queues().get(0).submit(
+                null, acquireContext, VK_NULL_HANDLE, 0, submitSemaphore, presentWaitStage, null,
+                1, submitSemaphore, null
+        );
+
+        var result = acquireResults[imageIndex];
+        if (result == null) {
+            result = new AcquireResult(
+                    VK_NULL_HANDLE,
+                    images[imageIndex].vkImage(),
+                    imageIndex,
+                    numImages,
+                    acquireSemaphores[imageIndex],
+                    presentSemaphores[imageIndex],
+                    presentFences[imageIndex],
+                    width,
+                    height,
+                    this,
+                    swapchainID,
+                    addDestructionCallback,
+                    -1
+            );
+            acquireResults[imageIndex] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Presents the acquired image: its <i>presentSemaphore</i> is consumed, and the image is captured when capturing
+     * is enabled. The image must be in <i>VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL</i> when the rendering finishes.
+     */
+    public void presentImage(AcquireResult acquired) {
+        if (acquired.swapchain() != this) {
+            throw new IllegalArgumentException("The image was not acquired from this headless swapchain");
+        }
+        int imageIndex = acquired.imageIndex();
+        long currentFrame = frameNumber++;
+        var queue = instance.queueFamilies().graphics().queues().get(0);
+
+        var readback = captureReadback;
+        var sink = captureSink;
+        if (readback == null) {
+            submitSemaphore[0] = acquired.presentSemaphore();
+            queue.submit(
+                    null, presentContext, presentFences[imageIndex].vkFence, 1, submitSemaphore, presentWaitStage,
+                    null, 0, submitSemaphore, null
+            );
+            return;
+        }
+
+        var waitPresent = new WaitSemaphore[] {
+                new WaitSemaphore(acquired.presentSemaphore(), VK_PIPELINE_STAGE_TRANSFER_BIT)
+        };
+
+        var commandBuffer = captureCommandBuffers[imageIndex];
+        var captured = new TimelineInstant(captureTimeline, currentFrame + 1);
+        int capturedWidth = acquired.width();
+        int capturedHeight = acquired.height();
+        try (var stack = stackPush()) {
+            assertVkSuccess(vkResetCommandBuffer(commandBuffer, 0), "ResetCommandBuffer", name + "-Capture");
+            var recorder = CommandRecorder.begin(
+                    commandBuffer, instance, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, name + "-Capture"
+            );
+            readback.readImage(
+                    recorder, acquired.vkImage(), VK_IMAGE_ASPECT_COLOR_BIT, capturedWidth, capturedHeight,
+                    captureBytesPerPixel, captured,
+                    pixels -> sink.accept(currentFrame, capturedWidth, capturedHeight, pixels)
+            );
+            recorder.end();
+        }
+        queue.submit(
+                commandBuffer, name + "-Capture", waitPresent, presentFences[imageIndex].vkFence,
+                new long[0], new WaitTimelineSemaphore[0], captured
+        );
+    }
+
+    /**
+     * Waits until all presented images have been captured, and destroys the images, semaphores, and fences. All
+     * acquired images must have been presented. The <i>ReadbackService</i> that is used for capturing is <b>not</b>
+     * destroyed.
+     */
+    public void destroy() {
+        destroyImages();
+        instance.sync.semaphoreBank.returnSemaphores(acquireSemaphores);
+        instance.sync.semaphoreBank.returnSemaphores(presentSemaphores);
+        instance.sync.fenceBank.returnFences(true, presentFences);
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        if (captureTimeline != VK_NULL_HANDLE) vkDestroySemaphore(instance.vkDevice(), captureTimeline, null);
+    }
+}
@@ -2,12 +2,15 @@ package com.github.knokko.boiler.swapchain;
 
 import com.github.knokko.boiler.instance.BoilerInstance;
 import com.github.knokko.boiler.sync.FatFence;
+import org.lwjgl.system.MemoryStack;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.Consumer;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.VK10.*;
 
@@ -20,6 +23,12 @@ class Swapchain {
     final long[] acquireSemaphores, presentSemaphores;
     final FatFence[] acquireFences, presentFences;
     final Collection<Runnable> destructionCallbacks = new ArrayList<>();
+    final Consumer<Runnable> addDestructionCallback = destructionCallbacks::add;
+    /**
+     * The <i>AcquireResult</i>s are cached per (image index, acquire slot) pair, so that acquiring an image doesn't
+     * need to allocate a new one every frame.
+     */
+    final AcquireResult[] acquireResults;
     final int windowIndex;
 
     private int acquireIndex;
@@ -48,6 +57,7 @@ class Swapchain {
             ), "GetSwapchainImagesKHR", "images");
 
             this.images = new SwapchainImage[numImages];
+            this.acquireResults = new AcquireResult[numImages * numImages];
             this.acquireSemaphores = instance.sync.semaphoreBank.borrowSemaphores(numImages);
             this.acquireFences = instance.sync.fenceBank.borrowSignaledFences(numImages);
             this.presentSemaphores = instance.sync.semaphoreBank.borrowSemaphores(numImages);
@@ -64,25 +74,28 @@ class Swapchain {
         }
     }
 
-    SwapchainImage acquire() {
+    SwapchainImage acquire(SwapchainMetrics metrics) {
         long acquireSemaphore = acquireSemaphores[acquireIndex];
         FatFence acquireFence = acquireFences[acquireIndex];
         long presentSemaphore = presentSemaphores[acquireIndex];
         FatFence presentFence = presentFences[acquireIndex];
 
         try (var stack = stackPush()) {
+            long startTime = metrics != null ? System.nanoTime() : 0L;
             acquireFence.waitAndReset(instance, stack);
+            if (metrics != null) metrics.acquireFenceWait(System.nanoTime() - startTime);
             if (acquireCounter > 2L * acquireFences.length) canDestroyOldSwapchains = true;
 
-            var pImageIndex = stack.callocInt(1);
-            int acquireResult = vkAcquireNextImageKHR(
+            long pImageIndex = stack.nint(0);
+            int acquireResult = nvkAcquireNextImageKHR(
                     instance.vkDevice(), vkSwapchain, instance.defaultTimeout,
                     acquireSemaphore, acquireFence.vkFence, pImageIndex
             );
 
             if (acquireResult == VK_SUCCESS || acquireResult == VK_SUBOPTIMAL_KHR) {
-                int imageIndex = pImageIndex.get(0);
+                int imageIndex = memGetInt(pImageIndex);
                 var image = images[imageIndex];
+                image.acquireSlot = acquireIndex;
                 image.acquireSemaphore = acquireSemaphore;
                 image.acquireFence = acquireFence;
                 image.presentSemaphore = presentSemaphore;
@@ -102,12 +115,55 @@ class Swapchain {
         }
     }
 
-    void destroy(boolean hasSwapchainMaintenance) {
+    /**
+     * Checks, without blocking, whether this (old) swapchain can be destroyed: all its acquire fences (and present
+     * fences, when swapchain maintenance is enabled) must be signaled, and the rendering to all its images must have
+     * finished.
+     */
+    boolean canBeRetired(boolean hasSwapchainMaintenance) {
+        for (int index = 0; index < acquireFences.length; index++) {
+            if (index != outOfDateIndex && !acquireFences[index].isSignaled(instance)) return false;
+        }
+        if (hasSwapchainMaintenance) {
+            for (var presentFence : presentFences) {
+                if (!presentFence.isSignaled(instance)) return false;
+            }
+        }
+        for (var image : images) {
+            if (!image.drawingFinished.isDone(instance)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until <i>canBeRetired</i> would return true. This only waits on the fences and drawing conditions of
+     * this swapchain, so it doesn't need to wait until the whole device is idle.
+     */
+    void awaitRetirement(boolean hasSwapchainMaintenance) {
         try (var stack = stackPush()) {
-            for (int index = 0; index < acquireFences.length; index++) {
-                if (index != outOfDateIndex) acquireFences[index].wait(instance, stack);
+            awaitAcquireFences(stack);
+            if (hasSwapchainMaintenance) {
+                for (var presentFence : presentFences) presentFence.wait(instance, stack);
             }
+            for (var image : images) image.drawingFinished.await(instance, stack);
         }
+    }
+
+    /**
+     * The presentation engine signals the acquire fences, so even <i>vkDeviceWaitIdle</i> doesn't guarantee that
+     * they are signaled.
+     */
+    void awaitAcquireFences(MemoryStack stack) {
+        for (int index = 0; index < acquireFences.length; index++) {
+            if (index != outOfDateIndex) acquireFences[index].wait(instance, stack);
+        }
+    }
+
+    /**
+     * Destroys this swapchain. This method doesn't wait on anything, so the caller must ensure that
+     * <i>canBeRetired</i> returns true (possibly by calling <i>awaitRetirement</i>).
+     */
+    void destroy(boolean hasSwapchainMaintenance) {
         for (var callback : destructionCallbacks) callback.run();
         instance.sync.fenceBank.returnFences(true, acquireFences);
         if (hasSwapchainMaintenance) instance.sync.fenceBank.returnFences(true, presentFences);
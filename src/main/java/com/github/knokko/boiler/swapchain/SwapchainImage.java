@@ -2,8 +2,6 @@ package com.github.knokko.boiler.swapchain;
 
 import com.github.knokko.boiler.sync.FatFence;
 
-import java.util.function.BooleanSupplier;
-
 class SwapchainImage {
 
     final long vkImage;
@@ -11,7 +9,9 @@ class SwapchainImage {
 
     long acquireSemaphore, presentSemaphore;
     FatFence acquireFence, presentFence;
-    BooleanSupplier didDrawingFinish;
+    int acquireSlot;
+
+    final DrawingCondition drawingFinished = new DrawingCondition();
 
     SwapchainImage(long vkImage, int index) {
         this.vkImage = vkImage;
@@ -0,0 +1,48 @@
+package com.github.knokko.boiler.swapchain;
+
+/**
+ * Receives timing information from <i>BoilerSwapchains</i>, see <i>BoilerSwapchains.setMetrics</i>. All methods are
+ * called on the thread that acquires and presents the swapchain images, so implementations should be cheap. All
+ * methods have an empty default implementation, so implementations only need to override what they are interested
+ * in. See <i>SwapchainStatistics</i> for a ready-to-use implementation.
+ */
+public interface SwapchainMetrics {
+
+    /**
+     * Called after every acquire, with the time that the acquire fence wait blocked the current thread
+     */
+    default void acquireFenceWait(long nanoseconds) {}
+
+    /**
+     * Called after every wait of the low-latency mode (see <i>BoilerSwapchains.setLowLatencyMode</i>), with the time
+     * that the current thread was blocked
+     */
+    default void lowLatencyWait(long nanoseconds) {}
+
+    /**
+     * Called whenever the swapchain is recreated (e.g. because the window was resized)
+     */
+    default void swapchainRecreated() {}
+
+    /**
+     * Called whenever old swapchains are destroyed
+     * @param amount The number of old swapchains that were destroyed
+     */
+    default void oldSwapchainsDestroyed(int amount) {}
+
+    /**
+     * Called after every successful <i>vkQueuePresentKHR</i>
+     * @param nanoTime The <i>System.nanoTime()</i> right after presenting
+     */
+    default void imagePresented(long nanoTime) {}
+
+    /**
+     * Called when the presentation engine reports the timing of a past present, which is only possible when
+     * VK_GOOGLE_display_timing is enabled. All times are in nanoseconds, in the clock domain of the presentation
+     * engine.
+     */
+    default void pastPresentationTiming(
+            int presentID, long desiredPresentTime, long actualPresentTime,
+            long earliestPresentTime, long presentMargin
+    ) {}
+}
@@ -0,0 +1,100 @@
+package com.github.knokko.boiler.swapchain;
+
+import com.github.knokko.boiler.util.LatencyHistogram;
+
+/**
+ * A <i>SwapchainMetrics</i> implementation that collects all reported timings in <i>LatencyHistogram</i>s, so that
+ * percentiles can be reported. All durations are in nanoseconds.
+ */
+public class SwapchainStatistics implements SwapchainMetrics {
+
+    public final LatencyHistogram acquireFenceWaits = new LatencyHistogram();
+    public final LatencyHistogram lowLatencyWaits = new LatencyHistogram();
+    /**
+     * The time between consecutive <i>vkQueuePresentKHR</i> calls, measured on the host
+     */
+    public final LatencyHistogram presentIntervals = new LatencyHistogram();
+    /**
+     * The time between the actual presentation times of consecutive images, as reported by VK_GOOGLE_display_timing
+     */
+    public final LatencyHistogram displayIntervals = new LatencyHistogram();
+    /**
+     * The present margins reported by VK_GOOGLE_display_timing: how early the image was ready
+     */
+    public final LatencyHistogram presentMargins = new LatencyHistogram();
+
+    private volatile long swapchainRecreations, oldSwapchainDestructions;
+    private long lastPresentTime = -1, lastActualPresentTime = -1;
+
+    @Override
+    public void acquireFenceWait(long nanoseconds) {
+        acquireFenceWaits.record(nanoseconds);
+    }
+
+    @Override
+    public void lowLatencyWait(long nanoseconds) {
+        lowLatencyWaits.record(nanoseconds);
+    }
+
+    @Override
+    public synchronized void swapchainRecreated() {
+        swapchainRecreations += 1;
+    }
+
+    @Override
+    public synchronized void oldSwapchainsDestroyed(int amount) {
+        oldSwapchainDestructions += amount;
+    }
+
+    @Override
+    public synchronized void imagePresented(long nanoTime) {
+        if (lastPresentTime != -1) presentIntervals.record(nanoTime - lastPresentTime);
+        lastPresentTime = nanoTime;
+    }
+
+    @Override
+    public synchronized void pastPresentationTiming(
+            int presentID, long desiredPresentTime, long actualPresentTime,
+            long earliestPresentTime, long presentMargin
+    ) {
+        if (lastActualPresentTime != -1) displayIntervals.record(actualPresentTime - lastActualPresentTime);
+        lastActualPresentTime = actualPresentTime;
+        presentMargins.record(presentMargin);
+    }
+
+    public long getSwapchainRecreations() {
+        return swapchainRecreations;
+    }
+
+    public long getOldSwapchainDestructions() {
+        return oldSwapchainDestructions;
+    }
+
+    public synchronized void reset() {
+        acquireFenceWaits.reset();
+        lowLatencyWaits.reset();
+        presentIntervals.reset();
+        displayIntervals.reset();
+        presentMargins.reset();
+        swapchainRecreations = 0;
+        oldSwapchainDestructions = 0;
+        lastPresentTime = -1;
+        lastActualPresentTime = -1;
+    }
+
+    @Override
+    public String toString() {
+        String result = "SwapchainStatistics(recreations=" + swapchainRecreations +
+                ", old swapchain destructions=" + oldSwapchainDestructions + ")" +
+                "\n  acquire fence waits: " + acquireFenceWaits.summary(1e6, "ms") +
+                "\n  present intervals: " + presentIntervals.summary(1e6, "ms");
+        if (lowLatencyWaits.getCount() > 0) {
+            result += "\n  low-latency waits: " + lowLatencyWaits.summary(1e6, "ms");
+        }
+        if (displayIntervals.getCount() > 0) {
+            result += "\n  display intervals: " + displayIntervals.summary(1e6, "ms") +
+                    "\n  present margins: " + presentMargins.summary(1e6, "ms");
+        }
+        return result;
+    }
+}
@@ -6,6 +6,8 @@ import org.lwjgl.vulkan.*;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memGetLong;
+import static org.lwjgl.system.MemoryUtil.memPutAddress;
 import static org.lwjgl.vulkan.KHRTimelineSemaphore.*;
 import static org.lwjgl.vulkan.VK10.*;
 import static org.lwjgl.vulkan.VK12.*;
@@ -87,36 +89,68 @@ public class BoilerSync {
     }
 
     public void awaitTimelineSemaphore(MemoryStack stack, long semaphore, long value, String context) {
-        var wiSemaphore = VkSemaphoreWaitInfo.calloc(stack);
-        wiSemaphore.sType$Default();
-        wiSemaphore.flags(0);
-        wiSemaphore.semaphoreCount(1);
-        wiSemaphore.pSemaphores(stack.longs(semaphore));
-        wiSemaphore.pValues(stack.longs(value));
+        // Fill the VkSemaphoreWaitInfo directly, to avoid allocating struct wrappers in the render loop
+        long wiSemaphore = stack.ncalloc(VkSemaphoreWaitInfo.ALIGNOF, 1, VkSemaphoreWaitInfo.SIZEOF);
+        VkSemaphoreWaitInfo.nsType(wiSemaphore, VK_STRUCTURE_TYPE_SEMAPHORE_WAIT_INFO);
+        VkSemaphoreWaitInfo.nflags(wiSemaphore, 0);
+        VkSemaphoreWaitInfo.nsemaphoreCount(wiSemaphore, 1);
+        memPutAddress(wiSemaphore + VkSemaphoreWaitInfo.PSEMAPHORES, stack.nlong(semaphore));
+        memPutAddress(wiSemaphore + VkSemaphoreWaitInfo.PVALUES, stack.nlong(value));
 
         if (usesTimelineSemaphoreExtension) {
-            assertVkSuccess(vkWaitSemaphoresKHR(
+            assertVkSuccess(nvkWaitSemaphoresKHR(
                     instance.vkDevice(), wiSemaphore, instance.defaultTimeout
             ), "WaitSemaphoresKHR", context);
         } else {
-            assertVkSuccess(vkWaitSemaphores(
+            assertVkSuccess(nvkWaitSemaphores(
                     instance.vkDevice(), wiSemaphore, instance.defaultTimeout
             ), "WaitSemaphores", context);
         }
     }
 
+    /**
+     * Waits until <i>at least one</i> of the given timeline semaphores reaches its corresponding value, or until the
+     * timeout expires.
+     * @return true if at least 1 of the semaphores reached its value, false if the timeout expired
+     */
+    public boolean awaitAnyTimelineSemaphore(
+            MemoryStack stack, long[] semaphores, long[] values, int count, long timeout, String context
+    ) {
+        var pSemaphores = stack.callocLong(count);
+        var pValues = stack.callocLong(count);
+        pSemaphores.put(0, semaphores, 0, count);
+        pValues.put(0, values, 0, count);
+
+        var wiSemaphore = VkSemaphoreWaitInfo.calloc(stack);
+        wiSemaphore.sType$Default();
+        wiSemaphore.flags(VK_SEMAPHORE_WAIT_ANY_BIT);
+        wiSemaphore.semaphoreCount(count);
+        wiSemaphore.pSemaphores(pSemaphores);
+        wiSemaphore.pValues(pValues);
+
+        int result;
+        if (usesTimelineSemaphoreExtension) {
+            result = vkWaitSemaphoresKHR(instance.vkDevice(), wiSemaphore, timeout);
+            assertVkSuccess(result, "WaitSemaphoresKHR", context, VK_TIMEOUT);
+        } else {
+            result = vkWaitSemaphores(instance.vkDevice(), wiSemaphore, timeout);
+            assertVkSuccess(result, "WaitSemaphores", context, VK_TIMEOUT);
+        }
+        return result == VK_SUCCESS;
+    }
+
     public long getTimelineSemaphoreValue(MemoryStack stack, long semaphore, String context) {
-        var pValue = stack.callocLong(1);
+        long pValue = stack.nlong(0L);
         if (usesTimelineSemaphoreExtension) {
-            assertVkSuccess(vkGetSemaphoreCounterValueKHR(
+            assertVkSuccess(nvkGetSemaphoreCounterValueKHR(
                     instance.vkDevice(), semaphore, pValue
             ), "GetSemaphoreCounterValueKHR", context);
         } else {
-            assertVkSuccess(vkGetSemaphoreCounterValue(
+            assertVkSuccess(nvkGetSemaphoreCounterValue(
                     instance.vkDevice(), semaphore, pValue
             ), "GetSemaphoreCounterValue", context);
         }
-        return pValue.get(0);
+        return memGetLong(pValue);
     }
 
     public void setTimelineSemaphoreValue(MemoryStack stack, long semaphore, long newValue, String context) {
@@ -141,11 +175,12 @@ public class BoilerSync {
     }
 
     public void waitAndReset(MemoryStack stack, long fence, long timeout) {
-        assertVkSuccess(vkWaitForFences(
-                instance.vkDevice(), stack.longs(fence), true, timeout
+        long pFence = stack.nlong(fence);
+        assertVkSuccess(nvkWaitForFences(
+                instance.vkDevice(), 1, pFence, VK_TRUE, timeout
         ), "WaitForFences", "SwapchainAcquire");
-        assertVkSuccess(vkResetFences(
-                instance.vkDevice(), stack.longs(fence)
+        assertVkSuccess(nvkResetFences(
+                instance.vkDevice(), 1, pFence
         ), "ResetFences", "SwapchainAcquire");
     }
 }
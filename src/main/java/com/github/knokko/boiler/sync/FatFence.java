@@ -11,7 +11,9 @@ import static org.lwjgl.vulkan.VK10.*;
  * sometimes convenient.<br>
  *
  * To signal from the host, simply set <i>hostSignaled</i> to true. All methods of this class (<i>reset</i>,
- * <i>wait</i>, etc...) will look at <i>hostSignaled</i>.
+ * <i>wait</i>, etc...) will look at <i>hostSignaled</i>.<br>
+ *
+ * None of the methods of this class allocate Java objects, so they can safely be used in the render loop.
  */
 public class FatFence {
 
@@ -24,8 +26,8 @@ public class FatFence {
     }
 
     public void reset(BoilerInstance instance, MemoryStack stack) {
-        assertVkSuccess(vkResetFences(
-                instance.vkDevice(), stack.longs(vkFence)
+        assertVkSuccess(nvkResetFences(
+                instance.vkDevice(), 1, stack.nlong(vkFence)
         ), "ResetFences", "FatFence");
         this.hostSignaled = false;
     }
@@ -36,8 +38,8 @@ public class FatFence {
 
     public void wait(BoilerInstance instance, MemoryStack stack, long timeout) {
         if (!hostSignaled) {
-            assertVkSuccess(vkWaitForFences(
-                    instance.vkDevice(), stack.longs(vkFence), true, timeout
+            assertVkSuccess(nvkWaitForFences(
+                    instance.vkDevice(), 1, stack.nlong(vkFence), VK_TRUE, timeout
             ), "WaitForFences", "FatFence");
         }
     }
@@ -2,88 +2,161 @@ package com.github.knokko.boiler.sync;
 
 import com.github.knokko.boiler.instance.BoilerInstance;
 
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Arrays;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memPutLong;
 import static org.lwjgl.vulkan.VK10.*;
 
+/**
+ * Every <i>VkFence</i> of this bank is stored together with its <i>FatFence</i> wrapper, in plain arrays rather than
+ * (boxing) collections. Once the bank has grown large enough, borrowing and returning fences doesn't allocate any Java
+ * objects. Returning a fence needs a linear search through the borrowed fences, which is cheap because applications
+ * only borrow a small number of fences at the same time.
+ */
 public class FenceBank {
 
     private final BoilerInstance instance;
-    private final ConcurrentSkipListSet<Long> unusedFences = new ConcurrentSkipListSet<>();
-    private final ConcurrentSkipListSet<Long> borrowedFences = new ConcurrentSkipListSet<>();
+    private FatFence[] unusedFences = new FatFence[8];
+    private int numUnusedFences;
+    private FatFence[] borrowedFences = new FatFence[8];
+    private int numBorrowedFences;
 
     FenceBank(BoilerInstance instance) {
         this.instance = instance;
     }
 
-    public long borrowFence() {
-        Long fence = unusedFences.pollFirst();
-        if (fence == null) {
-            fence = instance.sync.createFences(false, 1, "Borrowed")[0];
+    private FatFence borrowFatFence() {
+        FatFence fence;
+        if (numUnusedFences > 0) {
+            numUnusedFences -= 1;
+            fence = unusedFences[numUnusedFences];
+            unusedFences[numUnusedFences] = null;
+        } else {
+            fence = new FatFence(instance.sync.createFences(false, 1, "Borrowed")[0], false);
         }
-        borrowedFences.add(fence);
+
+        if (numBorrowedFences == borrowedFences.length) {
+            borrowedFences = Arrays.copyOf(borrowedFences, 2 * borrowedFences.length);
+        }
+        borrowedFences[numBorrowedFences++] = fence;
         return fence;
     }
 
-    public FatFence borrowSignaledFence() {
-        return new FatFence(borrowFence(), true);
+    private boolean isBorrowed(long vkFence) {
+        for (int index = 0; index < numBorrowedFences; index++) {
+            if (borrowedFences[index].vkFence == vkFence) return true;
+        }
+        return false;
+    }
+
+    private FatFence removeBorrowedFence(long vkFence) {
+        // Search backwards, since fences are usually returned shortly after being borrowed
+        for (int index = numBorrowedFences - 1; index >= 0; index--) {
+            var fence = borrowedFences[index];
+            if (fence.vkFence == vkFence) {
+                numBorrowedFences -= 1;
+                borrowedFences[index] = borrowedFences[numBorrowedFences];
+                borrowedFences[numBorrowedFences] = null;
+                return fence;
+            }
+        }
+        throw new IllegalArgumentException("This fence wasn't borrowed");
+    }
+
+    private void addUnusedFence(FatFence fence) {
+        if (numUnusedFences == unusedFences.length) {
+            unusedFences = Arrays.copyOf(unusedFences, 2 * unusedFences.length);
+        }
+        unusedFences[numUnusedFences++] = fence;
+    }
+
+    public synchronized long borrowFence() {
+        return borrowFatFence().vkFence;
+    }
+
+    /**
+     * Borrows a fence, and wraps it in a <i>FatFence</i> that starts host-signaled. The <i>FatFence</i> wrappers are
+     * pooled: when the same <i>VkFence</i> is borrowed again, the same <i>FatFence</i> instance will be returned. So
+     * you must not use a <i>FatFence</i> after returning it.
+     */
+    public synchronized FatFence borrowSignaledFence() {
+        var fence = borrowFatFence();
+        fence.hostSignaled = true;
+        return fence;
     }
 
-    public long[] borrowFences(int amount) {
+    public synchronized long[] borrowFences(int amount) {
         long[] fences = new long[amount];
         for (int index = 0; index < amount; index++) fences[index] = this.borrowFence();
         return fences;
     }
 
-    public FatFence[] borrowSignaledFences(int amount) {
+    public synchronized FatFence[] borrowSignaledFences(int amount) {
         FatFence[] fences = new FatFence[amount];
         for (int index = 0; index < amount; index++) fences[index] = this.borrowSignaledFence();
         return fences;
     }
 
-    public void returnFence(long fence, boolean mightNeedReset) {
-        if (!borrowedFences.remove(fence)) {
-            throw new IllegalArgumentException("This fence wasn't borrowed");
-        }
+    public synchronized void returnFence(long fence, boolean mightNeedReset) {
+        var fatFence = removeBorrowedFence(fence);
         if (mightNeedReset) {
-            assertVkSuccess(vkResetFences(instance.vkDevice(), fence), "ResetFences", "Bank return");
+            try (var stack = stackPush()) {
+                assertVkSuccess(nvkResetFences(
+                        instance.vkDevice(), 1, stack.nlong(fence)
+                ), "ResetFences", "Bank return");
+            }
         }
-        unusedFences.add(fence);
+        addUnusedFence(fatFence);
     }
 
-    public void returnFences(boolean mightNeedReset, long... fences) {
+    public synchronized void returnFences(boolean mightNeedReset, long... fences) {
         for (long fence : fences) {
-            if (!borrowedFences.remove(fence)) {
-                throw new IllegalArgumentException("This fence wasn't borrowed");
+            if (!isBorrowed(fence)) throw new IllegalArgumentException("This fence wasn't borrowed");
+        }
+
+        if (mightNeedReset && fences.length > 0) {
+            try (var stack = stackPush()) {
+                long pFences = stack.nmalloc(8, 8 * fences.length);
+                for (int index = 0; index < fences.length; index++) memPutLong(pFences + 8L * index, fences[index]);
+                resetFences(fences.length, pFences);
             }
         }
 
-        if (mightNeedReset) {
+        for (long fence : fences) addUnusedFence(removeBorrowedFence(fence));
+    }
+
+    public synchronized void returnFences(boolean mightNeedReset, FatFence... fences) {
+        for (var fence : fences) {
+            if (!isBorrowed(fence.vkFence)) throw new IllegalArgumentException("This fence wasn't borrowed");
+        }
+
+        if (mightNeedReset && fences.length > 0) {
             try (var stack = stackPush()) {
-                assertVkSuccess(vkResetFences(
-                        instance.vkDevice(), stack.longs(fences)
-                ), "ResetFences", "Bank bulk return");
+                long pFences = stack.nmalloc(8, 8 * fences.length);
+                for (int index = 0; index < fences.length; index++) {
+                    memPutLong(pFences + 8L * index, fences[index].vkFence);
+                }
+                resetFences(fences.length, pFences);
             }
         }
 
-        for (long fence : fences) unusedFences.add(fence);
+        for (var fence : fences) addUnusedFence(removeBorrowedFence(fence.vkFence));
     }
 
-    public void returnFences(boolean mightNeedReset, FatFence... fences) {
-        long[] rawFences = new long[fences.length];
-        for (int index = 0; index < fences.length; index++) rawFences[index] = fences[index].vkFence;
-        returnFences(mightNeedReset, rawFences);
+    private void resetFences(int count, long pFences) {
+        assertVkSuccess(nvkResetFences(instance.vkDevice(), count, pFences), "ResetFences", "Bank bulk return");
     }
 
-    public void destroy() {
-        if (!borrowedFences.isEmpty()) {
+    public synchronized void destroy() {
+        if (numBorrowedFences > 0) {
             throw new IllegalStateException("Not all borrowed fences have been returned");
         }
-        for (long fence : unusedFences) {
-            vkDestroyFence(instance.vkDevice(), fence, null);
+        for (int index = 0; index < numUnusedFences; index++) {
+            vkDestroyFence(instance.vkDevice(), unusedFences[index].vkFence, null);
+            unusedFences[index] = null;
         }
-        unusedFences.clear();
+        numUnusedFences = 0;
     }
 }
@@ -0,0 +1,252 @@
+package com.github.knokko.boiler.sync;
+
+import com.github.knokko.boiler.instance.BoilerInstance;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.vkDestroySemaphore;
+
+/**
+ * Runs callbacks (or completes futures) when timeline semaphores reach given values. A background thread waits on
+ * all tracked timeline semaphores at once (using <i>VK_SEMAPHORE_WAIT_ANY_BIT</i>), so render threads never need to
+ * poll or block on the GPU.
+ * <p>
+ * Unless an <i>Executor</i> is passed to the constructor, the callbacks will be run on the background thread, so they
+ * should be short. The timeline semaphores must not be destroyed while they are still tracked by this service.
+ * <p>
+ * When waiting fails (e.g. because the device is lost), the service stops: all pending futures are completed
+ * exceptionally, pending callbacks will never be run, and the failure is passed to the uncaught exception handler of
+ * the background thread.
+ * <p>
+ * This requires the <i>timelineSemaphore</i> feature (Vulkan 1.2 or VK_KHR_timeline_semaphore).
+ */
+public class GpuCompletionService {
+
+    private final BoilerInstance instance;
+    private final String name;
+    private final Executor executor;
+    private final Thread thread;
+
+    /**
+     * An internal timeline semaphore that is signalled from the host whenever the background thread needs to
+     * reconsider the set of semaphores that it is waiting on.
+     */
+    private final long wakeSemaphore;
+    private long wakeValue;
+
+    private final Map<Long, PriorityQueue<Entry>> tracked = new HashMap<>();
+    private final Map<Long, Long> waitingValues = new HashMap<>();
+    private boolean isWaiting;
+    private boolean stopped, destroyed;
+    private Throwable failure;
+
+    private long[] waitSemaphores = new long[8];
+    private long[] waitValues = new long[8];
+
+    public GpuCompletionService(BoilerInstance instance, String name) {
+        this(instance, name, null);
+    }
+
+    public GpuCompletionService(BoilerInstance instance, String name, Executor executor) {
+        this.instance = instance;
+        this.name = name;
+        this.executor = executor;
+        this.wakeSemaphore = instance.sync.createTimelineSemaphore(0, name + "Wake");
+        this.thread = new Thread(this::run, "GpuCompletionService-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Schedules <i>callback</i> to be run as soon as the timeline semaphore of <i>instant</i> has reached the value of
+     * <i>instant</i>. If it has already reached that value, the callback will be run soon.
+     */
+    public void onCompletion(TimelineInstant instant, Runnable callback) {
+        track(new Entry(instant.value(), callback, null), instant.timelineSemaphore());
+    }
+
+    /**
+     * Returns a future that will be completed as soon as the timeline semaphore of <i>instant</i> has reached the
+     * value of <i>instant</i>. The future will be cancelled if this service is destroyed before that happens.
+     */
+    public CompletableFuture<Void> whenReached(TimelineInstant instant) {
+        var future = new CompletableFuture<Void>();
+        track(new Entry(instant.value(), null, future), instant.timelineSemaphore());
+        return future;
+    }
+
+    /**
+     * @return The number of callbacks and futures that are still waiting for their timeline value
+     */
+    public synchronized int countPending() {
+        int count = 0;
+        for (var entries : tracked.values()) count += entries.size();
+        return count;
+    }
+
+    private synchronized void track(Entry entry, long semaphore) {
+        if (failure != null) throw new IllegalStateException("This service stopped because waiting failed", failure);
+        if (stopped) throw new IllegalStateException("This service has already been destroyed");
+        tracked.computeIfAbsent(semaphore, key -> new PriorityQueue<>()).add(entry);
+
+        // Only wake the background thread when it isn't already waiting for an earlier (or the same) value
+        if (isWaiting) {
+            Long waitingValue = waitingValues.get(semaphore);
+            if (waitingValue == null || entry.value < waitingValue) wake();
+        }
+    }
+
+    private void wake() {
+        wakeValue += 1;
+        try (var stack = stackPush()) {
+            instance.sync.setTimelineSemaphoreValue(stack, wakeSemaphore, wakeValue, name + "Wake");
+        }
+    }
+
+    private int prepareWait() {
+        int count = 1 + tracked.size();
+        if (waitSemaphores.length < count) {
+            waitSemaphores = new long[2 * count];
+            waitValues = new long[2 * count];
+        }
+
+        waitSemaphores[0] = wakeSemaphore;
+        waitValues[0] = wakeValue + 1;
+
+        waitingValues.clear();
+        int index = 1;
+        for (var trackedEntries : tracked.entrySet()) {
+            long minValue = trackedEntries.getValue().element().value;
+            waitSemaphores[index] = trackedEntries.getKey();
+            waitValues[index] = minValue;
+            waitingValues.put(trackedEntries.getKey(), minValue);
+            index += 1;
+        }
+        isWaiting = true;
+        return count;
+    }
+
+    private void collectReadyEntries(List<Entry> ready) {
+        try (var stack = stackPush()) {
+            var iterator = tracked.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var trackedEntries = iterator.next();
+                long currentValue = instance.sync.getTimelineSemaphoreValue(stack, trackedEntries.getKey(), name);
+
+                var entries = trackedEntries.getValue();
+                while (!entries.isEmpty() && entries.element().value <= currentValue) ready.add(entries.remove());
+                if (entries.isEmpty()) iterator.remove();
+            }
+        }
+    }
+
+    private void run() {
+        List<Entry> ready = new ArrayList<>();
+        while (true) {
+            int count;
+            long[] semaphores, values;
+            synchronized (this) {
+                if (stopped) return;
+                count = prepareWait();
+                semaphores = waitSemaphores;
+                values = waitValues;
+            }
+
+            try {
+                try (var stack = stackPush()) {
+                    instance.sync.awaitAnyTimelineSemaphore(
+                            stack, semaphores, values, count, instance.defaultTimeout, name
+                    );
+                }
+
+                synchronized (this) {
+                    isWaiting = false;
+                    if (stopped) return;
+                    collectReadyEntries(ready);
+                }
+            } catch (Throwable waitFailure) {
+                fail(waitFailure);
+                throw waitFailure;
+            }
+
+            for (var entry : ready) {
+                if (entry.future != null) entry.future.complete(null);
+                else if (executor != null) executor.execute(entry.callback);
+                else runCallback(entry.callback);
+            }
+            ready.clear();
+        }
+    }
+
+    /**
+     * Stops this service, and completes all pending futures exceptionally with <i>failure</i>
+     */
+    void fail(Throwable failure) {
+        List<Entry> pending = new ArrayList<>();
+        synchronized (this) {
+            if (stopped) return;
+            stopped = true;
+            isWaiting = false;
+            this.failure = failure;
+            for (var entries : tracked.values()) pending.addAll(entries);
+            tracked.clear();
+        }
+
+        for (var entry : pending) {
+            if (entry.future != null) entry.future.completeExceptionally(failure);
+        }
+    }
+
+    private void runCallback(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Throwable failure) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+        }
+    }
+
+    /**
+     * Stops the background thread and destroys the internal semaphore. Pending futures will be cancelled, and pending
+     * callbacks will never be run.
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (destroyed) return;
+            destroyed = true;
+            stopped = true;
+            if (thread.isAlive()) {
+                try {
+                    wake();
+                } catch (RuntimeException wakeFailure) {
+                    // After a failed wait (e.g. a lost device), signalling the wake semaphore may fail as well
+                    if (failure == null) throw wakeFailure;
+                }
+            }
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (var entries : tracked.values()) {
+            for (var entry : entries) {
+                if (entry.future != null) entry.future.cancel(false);
+            }
+        }
+        tracked.clear();
+        vkDestroySemaphore(instance.vkDevice(), wakeSemaphore, null);
+    }
+
+    private record Entry(long value, Runnable callback, CompletableFuture<Void> future) implements Comparable<Entry> {
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(this.value, other.value);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.knokko.boiler.util;
+
+import java.util.Arrays;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A compact histogram for non-negative <i>long</i> values (typically durations in nanoseconds), inspired by
+ * HdrHistogram. Values are stored in log-linear buckets: every power of 2 is split into <i>2^(precisionBits - 1)</i>
+ * sub-buckets, so the relative error of reported percentiles is at most <i>2^(1 - precisionBits)</i>.
+ * <p>
+ * Recording a value doesn't allocate any memory, so this can be used in the render loop. All methods are synchronized,
+ * so the histogram can be read from another thread.
+ */
+public class LatencyHistogram {
+
+    private final int precisionBits;
+    private final int halfSubBucketCount;
+    private final long[] counts;
+
+    private long totalCount;
+    private long sum;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = Long.MIN_VALUE;
+
+    public LatencyHistogram() {
+        this(7);
+    }
+
+    public LatencyHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 16, but got " + precisionBits);
+        }
+        this.precisionBits = precisionBits;
+        this.halfSubBucketCount = 1 << (precisionBits - 1);
+        this.counts = new long[(64 - precisionBits + 1) * halfSubBucketCount];
+    }
+
+    private int countsIndex(long value) {
+        long subBucketCount = 2L * halfSubBucketCount;
+        if (value < subBucketCount) return (int) value;
+
+        int bucketIndex = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        int subIndex = (int) (value >>> bucketIndex);
+        return (bucketIndex + 1) * halfSubBucketCount + subIndex - halfSubBucketCount;
+    }
+
+    /**
+     * @return The largest value that would be stored at the given index
+     */
+    private long highestEquivalentValue(int index) {
+        if (index < 2 * halfSubBucketCount) return index;
+
+        int bucketIndex = index / halfSubBucketCount - 1;
+        long subIndex = index % halfSubBucketCount + halfSubBucketCount;
+        return ((subIndex + 1) << bucketIndex) - 1;
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as 0.
+     */
+    public synchronized void record(long value) {
+        value = max(0L, value);
+        counts[countsIndex(value)] += 1;
+        totalCount += 1;
+        sum += value;
+        minValue = min(minValue, value);
+        maxValue = max(maxValue, value);
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return The smallest recorded value, or 0 if no values were recorded
+     */
+    public synchronized long getMin() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    /**
+     * @return The largest recorded value, or 0 if no values were recorded
+     */
+    public synchronized long getMax() {
+        return totalCount == 0 ? 0 : maxValue;
+    }
+
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0.0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100 (both inclusive)
+     * @return The (approximate) value such that <i>percentile</i>% of the recorded values are at most that value, or 0
+     * if no values were recorded
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100, but got " + percentile);
+        }
+        if (totalCount == 0) return 0;
+
+        long targetCount = max(1L, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int index = 0; index < counts.length; index++) {
+            cumulativeCount += counts[index];
+            if (cumulativeCount >= targetCount) return max(minValue, min(maxValue, highestEquivalentValue(index)));
+        }
+        return maxValue;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0L);
+        totalCount = 0;
+        sum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return A summary of the recorded values, where all values are divided by <i>unitDivisor</i> (for instance
+     * 1_000_000 to convert nanoseconds to milliseconds)
+     */
+    public synchronized String summary(double unitDivisor, String unitName) {
+        return String.format(
+                "count=%d mean=%.3f%s p50=%.3f%s p90=%.3f%s p99=%.3f%s p99.9=%.3f%s max=%.3f%s",
+                totalCount, getMean() / unitDivisor, unitName,
+                getValueAtPercentile(50) / unitDivisor, unitName,
+                getValueAtPercentile(90) / unitDivisor, unitName,
+                getValueAtPercentile(99) / unitDivisor, unitName,
+                getValueAtPercentile(99.9) / unitDivisor, unitName,
+                getMax() / unitDivisor, unitName
+        );
+    }
+}
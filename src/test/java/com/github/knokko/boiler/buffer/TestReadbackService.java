@@ -0,0 +1,210 @@
+package com.github.knokko.boiler.buffer;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.sync.*;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkClearColorValue;
+import org.lwjgl.vulkan.VkFormatProperties;
+import org.lwjgl.vulkan.VkImageSubresourceRange;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.VK_FORMAT_FEATURE_TRANSFER_DST_BIT;
+import static org.lwjgl.vulkan.VK11.VK_FORMAT_FEATURE_TRANSFER_SRC_BIT;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestReadbackService {
+
+    @Test
+    public void testReadBuffers() throws Exception {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestReadbackService", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        var completions = new GpuCompletionService(boiler, "Completions");
+        var readback = new ReadbackService(boiler, completions, 64, 1, "Readback");
+        var sourceBuffer = boiler.buffers.create(
+                100, VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_TRANSFER_SRC_BIT, "Source"
+        );
+        long timeline = boiler.sync.createTimelineSemaphore(0, "Timeline");
+        long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "Readback");
+        var commandBuffers = boiler.commands.createPrimaryBuffers(commandPool, 2, "Readback");
+
+        CompletableFuture<ByteBuffer> firstRead, secondRead;
+        var callbackValue = new CompletableFuture<Integer>();
+        try (var stack = stackPush()) {
+            var recorder = CommandRecorder.begin(commandBuffers[0], boiler, stack, "Readback1");
+            vkCmdFillBuffer(commandBuffers[0], sourceBuffer.vkBuffer(), 0, 100, 0x01020304);
+            recorder.bufferBarrier(
+                    sourceBuffer.vkBuffer(), 0, 100,
+                    new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT),
+                    new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
+            );
+            firstRead = readback.readBuffer(recorder, sourceBuffer.vkBuffer(), 4, 40, new TimelineInstant(timeline, 1));
+            recorder.end();
+
+            // The first host buffer is still busy, so the pool needs to grow
+            var recorder2 = CommandRecorder.begin(commandBuffers[1], boiler, stack, "Readback2");
+            secondRead = readback.readBuffer(recorder2, sourceBuffer.vkBuffer(), 0, 40, new TimelineInstant(timeline, 2));
+            readback.readBuffer(
+                    recorder2, sourceBuffer.vkBuffer(), 8, 4, new TimelineInstant(timeline, 2),
+                    bytes -> callbackValue.complete(bytes.getInt(0))
+            );
+            recorder2.end();
+            assertEquals(2, readback.getNumBuffers());
+
+            var queue = boiler.queueFamilies().graphics().queues().get(0);
+            queue.submit(
+                    commandBuffers[0], "Readback1", new WaitSemaphore[0], VK_NULL_HANDLE, new long[0],
+                    new WaitTimelineSemaphore[0], new TimelineInstant(timeline, 1)
+            );
+            queue.submit(
+                    commandBuffers[1], "Readback2", new WaitSemaphore[0], VK_NULL_HANDLE, new long[0],
+                    new WaitTimelineSemaphore[0], new TimelineInstant(timeline, 2)
+            );
+        }
+
+        var firstBytes = firstRead.get(1, TimeUnit.SECONDS);
+        assertEquals(40, firstBytes.remaining());
+        for (int index = 0; index < 10; index++) assertEquals(0x01020304, firstBytes.getInt(4 * index));
+        assertEquals(0x01020304, secondRead.get(1, TimeUnit.SECONDS).getInt(36));
+        assertEquals(0x01020304, callbackValue.get(1, TimeUnit.SECONDS));
+
+        // A read that is never submitted should be cancelled
+        try (var stack = stackPush()) {
+            vkResetCommandPool(boiler.vkDevice(), commandPool, 0);
+            var recorder = CommandRecorder.begin(commandBuffers[0], boiler, stack, "Unsubmitted");
+            var neverRead = readback.readBuffer(
+                    recorder, sourceBuffer.vkBuffer(), 0, 4, new TimelineInstant(timeline, 100)
+            );
+            recorder.end();
+
+            completions.destroy();
+            readback.destroy();
+            assertTrue(neverRead.isCancelled());
+        }
+
+        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+        sourceBuffer.destroy(boiler.vmaAllocator());
+        boiler.destroyInitialObjects();
+    }
+
+    @Test
+    public void testImageAlignment() {
+        assertEquals(4, ReadbackService.imageAlignment(1));
+        assertEquals(4, ReadbackService.imageAlignment(2));
+        assertEquals(12, ReadbackService.imageAlignment(3));
+        assertEquals(4, ReadbackService.imageAlignment(4));
+        assertEquals(12, ReadbackService.imageAlignment(6));
+        assertEquals(8, ReadbackService.imageAlignment(8));
+        assertEquals(12, ReadbackService.imageAlignment(12));
+        assertEquals(16, ReadbackService.imageAlignment(16));
+        assertThrows(IllegalArgumentException.class, () -> ReadbackService.imageAlignment(0));
+    }
+
+    @Test
+    public void testReadImageWith12ByteTexels() throws Exception {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestReadbackService", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        int format = VK_FORMAT_R32G32B32_SFLOAT;
+        int requiredFeatures = VK_FORMAT_FEATURE_TRANSFER_SRC_BIT | VK_FORMAT_FEATURE_TRANSFER_DST_BIT;
+        boolean supported;
+        try (var stack = stackPush()) {
+            var formatProperties = VkFormatProperties.calloc(stack);
+            vkGetPhysicalDeviceFormatProperties(boiler.vkPhysicalDevice(), format, formatProperties);
+            supported = (formatProperties.optimalTilingFeatures() & requiredFeatures) == requiredFeatures;
+        }
+        if (!supported) boiler.destroyInitialObjects();
+        assumeTrue(supported, "VK_FORMAT_R32G32B32_SFLOAT can't be used for transfers");
+
+        var completions = new GpuCompletionService(boiler, "Completions");
+        var readback = new ReadbackService(boiler, completions, 200, 1, "Readback");
+        var sourceBuffer = boiler.buffers.create(
+                20, VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_TRANSFER_SRC_BIT, "Source"
+        );
+        long timeline = boiler.sync.createTimelineSemaphore(0, "Timeline");
+        long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "Readback");
+        var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "Readback")[0];
+
+        CompletableFuture<ByteBuffer> imageRead;
+        try (var stack = stackPush()) {
+            var image = boiler.images.create(
+                    stack, 2, 2, format, VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT,
+                    VK_IMAGE_ASPECT_COLOR_BIT, VK_SAMPLE_COUNT_1_BIT, 1, 1, false, "Image"
+            );
+
+            var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "Readback");
+            recorder.transitionColorLayout(
+                    image.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                    null, new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
+            );
+            var clearColor = VkClearColorValue.calloc(stack);
+            clearColor.float32(0, 1.5f);
+            clearColor.float32(1, 2.5f);
+            clearColor.float32(2, 3.5f);
+            var clearRange = VkImageSubresourceRange.calloc(stack);
+            boiler.images.subresourceRange(stack, clearRange, VK_IMAGE_ASPECT_COLOR_BIT);
+            vkCmdClearColorImage(
+                    commandBuffer, image.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, clearColor, clearRange
+            );
+            recorder.transitionColorLayout(
+                    image.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                    new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT),
+                    new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
+            );
+
+            // Without texel-size alignment, the image would be copied to offset 16, which is not a multiple of 12
+            readback.readBuffer(
+                    recorder, sourceBuffer.vkBuffer(), 0, 5, new TimelineInstant(timeline, 1), bytes -> {}
+            );
+            imageRead = readback.readImage(
+                    recorder, image.vkImage(), VK_IMAGE_ASPECT_COLOR_BIT, 2, 2, 12, new TimelineInstant(timeline, 1)
+            );
+            recorder.end();
+
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "Readback", new WaitSemaphore[0], VK_NULL_HANDLE, new long[0],
+                    new WaitTimelineSemaphore[0], new TimelineInstant(timeline, 1)
+            );
+
+            var pixels = imageRead.get(1, TimeUnit.SECONDS);
+            assertEquals(48, pixels.remaining());
+            for (int pixel = 0; pixel < 4; pixel++) {
+                assertEquals(1.5f, pixels.getFloat(12 * pixel));
+                assertEquals(2.5f, pixels.getFloat(12 * pixel + 4));
+                assertEquals(3.5f, pixels.getFloat(12 * pixel + 8));
+            }
+
+            completions.destroy();
+            readback.destroy();
+            vmaDestroyImage(boiler.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+        }
+
+        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+        sourceBuffer.destroy(boiler.vmaAllocator());
+        boiler.destroyInitialObjects();
+    }
+}
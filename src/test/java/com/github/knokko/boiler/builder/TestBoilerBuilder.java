@@ -10,13 +10,18 @@ import java.util.HashSet;
 import java.util.Objects;
 
 import static com.github.knokko.boiler.util.CollectionHelper.createSet;
+import static com.github.knokko.boiler.util.CollectionHelper.decodeStringSet;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.memUTF8;
 import static org.lwjgl.vulkan.EXTDebugUtils.VK_EXT_DEBUG_UTILS_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_GRAPHICS_PIPELINE_LIBRARY_FEATURES_EXT;
 import static org.lwjgl.vulkan.EXTValidationFeatures.*;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRGetSurfaceCapabilities2.VK_KHR_GET_SURFACE_CAPABILITIES_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRPortabilityEnumeration.VK_INSTANCE_CREATE_ENUMERATE_PORTABILITY_BIT_KHR;
+import static org.lwjgl.vulkan.KHRPipelineLibrary.VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRPortabilityEnumeration.VK_KHR_PORTABILITY_ENUMERATION_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSurface.VK_KHR_SURFACE_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.VK_API_VERSION_1_0;
@@ -267,6 +272,49 @@ public class TestBoilerBuilder {
         );
     }
 
+    @Test
+    public void testGraphicsPipelineLibraryIsOptIn() {
+        var boiler = new BoilerBuilder(VK_API_VERSION_1_0, "TestNoPipelineLibrary", 1).build();
+        assertFalse(boiler.pipelines.hasGraphicsPipelineLibrary);
+        assertFalse(boiler.deviceExtensions.contains(VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME));
+        assertFalse(boiler.deviceExtensions.contains(VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME));
+        boiler.destroyInitialObjects();
+    }
+
+    @Test
+    public void testGraphicsPipelineLibrary() {
+        boolean[] pHasFeature = { false };
+        var boiler = new BoilerBuilder(VK_API_VERSION_1_0, "TestPipelineLibrary", 1)
+                .graphicsPipelineLibrary()
+                .vkInstanceCreator((ciInstance, stack) -> {
+                    // The feature can only be queried with VK_KHR_get_physical_device_properties2 on Vulkan 1.0
+                    var extensions = decodeStringSet(ciInstance.ppEnabledExtensionNames());
+                    assertTrue(extensions.contains(VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME));
+                    return BoilerBuilder.DEFAULT_VK_INSTANCE_CREATOR.vkCreateInstance(ciInstance, stack);
+                })
+                .vkDeviceCreator((ciDevice, instanceExtensions, physicalDevice, stack) -> {
+                    long next = ciDevice.pNext();
+                    while (next != 0L) {
+                        var libraryFeatures = VkPhysicalDeviceGraphicsPipelineLibraryFeaturesEXT.create(next);
+                        if (libraryFeatures.sType() == VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_GRAPHICS_PIPELINE_LIBRARY_FEATURES_EXT) {
+                            pHasFeature[0] = libraryFeatures.graphicsPipelineLibrary();
+                        }
+                        next = libraryFeatures.pNext();
+                    }
+                    return BoilerBuilder.DEFAULT_VK_DEVICE_CREATOR.vkCreateDevice(
+                            ciDevice, instanceExtensions, physicalDevice, stack
+                    );
+                })
+                .build();
+
+        // The extensions must only be enabled when the feature is supported
+        boolean hasExtension = boiler.deviceExtensions.contains(VK_EXT_GRAPHICS_PIPELINE_LIBRARY_EXTENSION_NAME);
+        assertEquals(pHasFeature[0], hasExtension);
+        assertEquals(hasExtension, boiler.pipelines.hasGraphicsPipelineLibrary);
+        assertEquals(hasExtension, boiler.deviceExtensions.contains(VK_KHR_PIPELINE_LIBRARY_EXTENSION_NAME));
+        boiler.destroyInitialObjects();
+    }
+
     @Test
     public void testExtraDeviceRequirements() {
         assertThrows(NoVkPhysicalDeviceException.class, () ->
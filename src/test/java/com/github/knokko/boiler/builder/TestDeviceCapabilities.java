@@ -0,0 +1,165 @@
+package com.github.knokko.boiler.builder;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestDeviceCapabilities {
+
+    private static byte[] bytes(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int index = 0; index < size; index++) bytes[index] = (byte) (seed + index);
+        return bytes;
+    }
+
+    private static DeviceCapabilities.Device device(int deviceID) {
+        return new DeviceCapabilities.Device(
+                new DeviceCapabilities.Key(0x10DE, deviceID, 12345, "00112233445566778899aabbccddeeff"),
+                Set.of("VK_KHR_swapchain", "VK_KHR_timeline_semaphore"),
+                bytes(VkPhysicalDeviceFeatures.SIZEOF, 1), bytes(VkPhysicalDeviceVulkan11Features.SIZEOF, 2),
+                bytes(VkPhysicalDeviceVulkan12Features.SIZEOF, 3), null,
+                bytes(2 * VkQueueFamilyProperties.SIZEOF, 4)
+        );
+    }
+
+    private static DeviceCapabilities writeAndRead(DeviceCapabilities capabilities) throws IOException {
+        var byteOutput = new ByteArrayOutputStream();
+        capabilities.write(new DataOutputStream(byteOutput));
+        return DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(byteOutput.toByteArray())));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        var capabilities = new DeviceCapabilities(VK_API_VERSION_1_2);
+        capabilities.put(device(1));
+        capabilities.put(device(2));
+
+        var loaded = writeAndRead(capabilities);
+        assertNotNull(loaded);
+        assertEquals(VK_API_VERSION_1_2, loaded.apiVersion);
+        assertEquals(2, loaded.devices().size());
+
+        var original = device(2);
+        var restored = loaded.devices().stream().filter(
+                device -> device.key().equals(original.key())
+        ).findFirst().orElseThrow();
+        assertEquals(original.extensions(), restored.extensions());
+        assertArrayEquals(original.features10(), restored.features10());
+        assertArrayEquals(original.features11(), restored.features11());
+        assertArrayEquals(original.features12(), restored.features12());
+        assertNull(restored.features13());
+        assertArrayEquals(original.queueFamilies(), restored.queueFamilies());
+    }
+
+    @Test
+    public void testRestoreStructs() {
+        var device = device(1);
+        try (var stack = stackPush()) {
+            var features = device.features(stack);
+            assertEquals(device.features10()[0] != 0, features.features10().robustBufferAccess());
+            assertEquals(0L, features.features11().pNext());
+            assertEquals(0L, features.features12().pNext());
+            assertNull(features.features13());
+            assertEquals(2, device.queueFamilies(stack).capacity());
+        }
+    }
+
+    @Test
+    public void testRejectInvalidSnapshots() throws IOException {
+        assertNull(DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(new byte[] {
+                1, 2, 3, 4, 0, 0, 0, 1
+        }))));
+
+        // A feature struct with the wrong size indicates a snapshot from a different platform
+        var capabilities = new DeviceCapabilities(VK_API_VERSION_1_0);
+        var original = device(1);
+        capabilities.put(new DeviceCapabilities.Device(
+                original.key(), original.extensions(), bytes(3, 1), null, null, null, original.queueFamilies()
+        ));
+        assertNull(writeAndRead(capabilities));
+    }
+
+    @Test
+    public void testRejectCorruptedSnapshots() throws IOException {
+        var capabilities = new DeviceCapabilities(VK_API_VERSION_1_2);
+        capabilities.put(device(1));
+        var byteOutput = new ByteArrayOutputStream();
+        capabilities.write(new DataOutputStream(byteOutput));
+        byte[] valid = byteOutput.toByteArray();
+
+        // Truncated snapshots
+        for (int length : new int[] { 0, 6, 14, valid.length / 2, valid.length - 1 }) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(valid, 0, truncated, 0, length);
+            assertNull(DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(truncated))));
+        }
+
+        // Negative and huge device counts
+        for (int numDevices : new int[] { -5, Integer.MAX_VALUE }) {
+            byte[] corrupted = valid.clone();
+            ByteBuffer.wrap(corrupted).putInt(12, numDevices);
+            assertNull(DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(corrupted))));
+        }
+
+        // The first extension count follows the key (3 ints and a UTF string of 32 characters)
+        int extensionCountOffset = 16 + 12 + 2 + 32;
+        for (int numExtensions : new int[] { -1, Integer.MAX_VALUE }) {
+            byte[] corrupted = valid.clone();
+            ByteBuffer.wrap(corrupted).putInt(extensionCountOffset, numExtensions);
+            assertNull(DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(corrupted))));
+        }
+
+        // Negative and huge byte lengths of the features10 struct
+        int featuresLengthOffset = extensionCountOffset + 4;
+        for (var extension : device(1).extensions()) featuresLengthOffset += 2 + extension.length();
+        assertEquals(VkPhysicalDeviceFeatures.SIZEOF, ByteBuffer.wrap(valid).getInt(featuresLengthOffset));
+        for (int length : new int[] { -2, Integer.MAX_VALUE }) {
+            byte[] corrupted = valid.clone();
+            ByteBuffer.wrap(corrupted).putInt(featuresLengthOffset, length);
+            assertNull(DeviceCapabilities.read(new DataInputStream(new ByteArrayInputStream(corrupted))));
+        }
+    }
+
+    @Test
+    public void testLoadCorruptedFile() throws IOException {
+        var file = Files.createTempFile("device-capabilities", ".bin");
+        // A valid header, followed by a negative device count
+        var content = ByteBuffer.allocate(16);
+        content.putInt(0x564B4243).putInt(1).putInt(VK_API_VERSION_1_2).putInt(-16);
+        Files.write(file, content.array());
+
+        var loaded = DeviceCapabilities.load(file, VK_API_VERSION_1_2);
+        assertEquals(VK_API_VERSION_1_2, loaded.apiVersion);
+        assertEquals(0, loaded.devices().size());
+        Files.delete(file);
+    }
+
+    @Test
+    public void testSaveToUnwritableFile() throws IOException {
+        // The parent of the cache file is a regular file, so the cache can't be written, not even by root
+        var blocker = Files.createTempFile("device-capabilities-blocker", ".bin");
+        var file = blocker.resolve("capabilities.bin");
+
+        var capabilities = new DeviceCapabilities(VK_API_VERSION_1_2);
+        capabilities.put(device(1));
+        assertFalse(capabilities.saveIfChanged(file));
+        assertFalse(Files.exists(file));
+
+        // A failure to save the cache must not prevent the instance from being created
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestUnwritableDeviceCapabilities", 1
+        ).deviceCapabilityCache(file).build();
+        instance.destroyInitialObjects();
+
+        Files.delete(blocker);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.knokko.boiler.builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.VK_API_VERSION_1_0;
+
+public class TestStartupReport {
+
+    @Test
+    public void testTimerOrdersPhasesByStartTime() throws InterruptedException {
+        var timer = new StartupTimer();
+        long firstBegin = timer.begin();
+        Thread.sleep(2);
+        long secondBegin = timer.begin();
+        timer.end("Second", secondBegin);
+        timer.end("First", firstBegin);
+
+        var report = timer.finish();
+        assertEquals(2, report.phases().size());
+        assertEquals("First", report.phases().get(0).name());
+        assertEquals("Second", report.phases().get(1).name());
+        assertTrue(report.phase("First").durationNanos() >= report.phase("Second").durationNanos());
+        assertEquals(Thread.currentThread().getName(), report.phase("First").threadName());
+        assertTrue(report.totalNanos() >= report.phase("First").durationNanos());
+        assertNull(report.phase("Third"));
+        assertTrue(report.toString().contains("Second"));
+    }
+
+    @Test
+    public void testBuildReportsPhases() throws IOException {
+        var cacheFile = Files.createTempFile("pipeline-cache", ".bin");
+        Files.delete(cacheFile);
+
+        var reports = new ArrayList<StartupReport>();
+        var boiler = new BoilerBuilder(VK_API_VERSION_1_0, "TestStartupReport", 1)
+                .pipelineCache(cacheFile)
+                .startupReport(reports::add)
+                .build();
+
+        assertEquals(1, reports.size());
+        var report = reports.get(0);
+        for (String phaseName : new String[] {
+                "Read pipeline cache file", "Instance creation", "Surface creation and physical device selection",
+                "Device creation", "VMA allocator creation", "BoilerInstance construction", "Pipeline cache creation"
+        }) {
+            var phase = report.phase(phaseName);
+            assertNotNull(phase, phaseName);
+            assertTrue(phase.startNanos() >= 0, phaseName);
+            assertTrue(phase.startNanos() + phase.durationNanos() <= report.totalNanos(), phaseName);
+        }
+
+        // The instance is created on a background thread, while the device is created on the calling thread
+        assertEquals("BoilerBuilder-Startup", report.phase("Instance creation").threadName());
+        assertEquals(Thread.currentThread().getName(), report.phase("Device creation").threadName());
+        assertTrue(
+                report.phase("Device creation").startNanos() >= report.phase("Instance creation").startNanos() +
+                        report.phase("Instance creation").durationNanos()
+        );
+
+        for (int index = 1; index < report.phases().size(); index++) {
+            assertTrue(report.phases().get(index - 1).startNanos() <= report.phases().get(index).startNanos());
+        }
+
+        boiler.destroyInitialObjects();
+        Files.deleteIfExists(cacheFile);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import com.github.knokko.boiler.sync.WaitTimelineSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestCommandBufferManager {
+
+    @Test
+    public void testRecycling() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestCommandBufferManager", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        int numFramesInFlight = 2;
+        var manager = new CommandBufferManager(
+                boiler, boiler.queueFamilies().graphics().index(), numFramesInFlight, "TestManager"
+        );
+        assertThrows(IllegalStateException.class, manager::nextPrimary);
+
+        long timeline = boiler.sync.createTimelineSemaphore(numFramesInFlight - 1, "TestTimeline");
+        var firstBuffers = new VkCommandBuffer[numFramesInFlight];
+        for (long frame = 0; frame < 10; frame++) {
+            var finished = new TimelineInstant(timeline, frame + numFramesInFlight);
+            manager.beginFrame(frame, finished);
+
+            var commandBuffer = manager.nextPrimary();
+            var otherBuffer = manager.nextPrimary();
+            assertNotSame(commandBuffer, otherBuffer);
+
+            // Command buffers must be recycled when their frame slot is reused
+            int slot = (int) (frame % numFramesInFlight);
+            if (firstBuffers[slot] == null) firstBuffers[slot] = commandBuffer;
+            else assertSame(firstBuffers[slot], commandBuffer);
+
+            // Other threads must get their own command buffers
+            var workerBuffer = CompletableFuture.supplyAsync(manager::nextSecondary).join();
+            assertNotSame(commandBuffer, workerBuffer);
+
+            try (var stack = stackPush()) {
+                boiler.commands.begin(commandBuffer, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, "Test");
+                assertEquals(VK_SUCCESS, vkEndCommandBuffer(commandBuffer));
+            }
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "Test", new WaitSemaphore[0], VK_NULL_HANDLE,
+                    new long[0], new WaitTimelineSemaphore[0], finished
+            );
+        }
+
+        assertTrue(manager.getNumThreads() >= 2);
+        assertThrows(IllegalArgumentException.class, () -> manager.beginFrame(5, null));
+
+        assertEquals(VK_SUCCESS, vkDeviceWaitIdle(boiler.vkDevice()));
+        manager.destroy();
+        vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+        boiler.destroyInitialObjects();
+    }
+}
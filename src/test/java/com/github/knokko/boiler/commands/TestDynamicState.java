@@ -0,0 +1,238 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.buffer.MappedVmaBuffer;
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.images.VmaImage;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.pipelines.GraphicsPipelineBuilder;
+import com.github.knokko.boiler.pipelines.ShaderInfo;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.EXTExtendedDynamicState3.VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK13.*;
+
+public class TestDynamicState {
+
+    private static final int SIZE = 4;
+    private static final int COLOR_FORMAT = VK_FORMAT_R8G8B8A8_UNORM;
+    private static final int DEPTH_FORMAT = VK_FORMAT_D16_UNORM;
+
+    // Red with alpha 1, in little-endian RGBA8
+    private static final int RED = 0xFF0000FF;
+
+    private static long createPipeline(BoilerInstance boiler, long pipelineLayout, long vertexModule, long fragmentModule) {
+        try (var stack = stackPush()) {
+            var vertexBindings = VkVertexInputBindingDescription.calloc(1, stack);
+            vertexBindings.binding(0);
+            vertexBindings.stride(4 * (2 + 3));
+            vertexBindings.inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
+
+            var vertexAttributes = VkVertexInputAttributeDescription.calloc(2, stack);
+            vertexAttributes.get(0).set(0, 0, VK_FORMAT_R32G32_SFLOAT, 0);
+            vertexAttributes.get(1).set(1, 0, VK_FORMAT_R32G32B32_SFLOAT, 4 * 2);
+
+            var ciVertexInput = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+            ciVertexInput.sType$Default();
+            ciVertexInput.pVertexBindingDescriptions(vertexBindings);
+            ciVertexInput.pVertexAttributeDescriptions(vertexAttributes);
+
+            var builder = new GraphicsPipelineBuilder(boiler, stack);
+            builder.shaderStages(
+                    new ShaderInfo(VK_SHADER_STAGE_VERTEX_BIT, vertexModule, null),
+                    new ShaderInfo(VK_SHADER_STAGE_FRAGMENT_BIT, fragmentModule, null)
+            );
+            builder.ciPipeline.pVertexInputState(ciVertexInput);
+            builder.simpleInputAssembly();
+            builder.dynamicViewports(1);
+            // The cull mode and depth state of the pipeline are overwritten by the dynamic state
+            builder.simpleRasterization(VK_CULL_MODE_FRONT_AND_BACK);
+            builder.noMultisampling();
+            builder.simpleDepthStencil(VK_COMPARE_OP_NEVER);
+            builder.noColorBlending(1);
+            builder.dynamicStates(
+                    VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR, VK_DYNAMIC_STATE_CULL_MODE,
+                    VK_DYNAMIC_STATE_DEPTH_TEST_ENABLE, VK_DYNAMIC_STATE_DEPTH_WRITE_ENABLE,
+                    VK_DYNAMIC_STATE_DEPTH_COMPARE_OP
+            );
+            builder.dynamicRendering(0, DEPTH_FORMAT, VK_FORMAT_UNDEFINED, COLOR_FORMAT);
+            builder.ciPipeline.layout(pipelineLayout);
+            return builder.build("DynamicStatePipeline");
+        }
+    }
+
+    /**
+     * Draws a red triangle that covers the whole image, after clearing the depth image to 0, and returns the RGBA8
+     * pixel in the center of the image
+     */
+    private static int render(
+            BoilerInstance boiler, long pipeline, VmaImage colorImage, VmaImage depthImage,
+            MappedVmaBuffer vertexBuffer, MappedVmaBuffer readBuffer,
+            int cullMode, boolean depthTest, int depthCompareOp
+    ) {
+        long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "DynamicState");
+        var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "DynamicState")[0];
+        long fence = boiler.sync.fenceBank.borrowFence();
+
+        try (var stack = stackPush()) {
+            var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "DynamicState");
+
+            var colorUsage = new ResourceUsage(
+                    VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT, VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT
+            );
+            var depthUsage = new ResourceUsage(
+                    VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT,
+                    VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT | VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT
+            );
+            recorder.transitionColorLayout(
+                    colorImage.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL,
+                    null, colorUsage
+            );
+            recorder.transitionDepthLayout(
+                    depthImage.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL,
+                    null, depthUsage
+            );
+
+            var colorAttachments = recorder.simpleColorRenderingAttachments(
+                    VK_ATTACHMENT_LOAD_OP_CLEAR, VK_ATTACHMENT_STORE_OP_STORE,
+                    new float[] { 0f, 0f, 0f, 0f }, colorImage.vkImageView()
+            );
+            var depthAttachment = recorder.simpleDepthRenderingAttachment(
+                    depthImage.vkImageView(), VK_ATTACHMENT_LOAD_OP_CLEAR, VK_ATTACHMENT_STORE_OP_DONT_CARE, 0f
+            );
+            recorder.beginSimpleDynamicRendering(SIZE, SIZE, colorAttachments, depthAttachment, null);
+            recorder.dynamicViewportAndScissor(SIZE, SIZE);
+            vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline);
+            recorder.setCullMode(cullMode);
+            recorder.setDepthTestEnable(depthTest);
+            recorder.setDepthWriteEnable(false);
+            recorder.setDepthCompareOp(depthCompareOp);
+            vkCmdBindVertexBuffers(commandBuffer, 0, stack.longs(vertexBuffer.vkBuffer()), stack.longs(0));
+            vkCmdDraw(commandBuffer, 3, 1, 0, 0);
+            recorder.endDynamicRendering();
+
+            recorder.transitionColorLayout(
+                    colorImage.vkImage(), VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL,
+                    VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, colorUsage,
+                    new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
+            );
+            recorder.copyImageToBuffer(
+                    VK_IMAGE_ASPECT_COLOR_BIT, colorImage.vkImage(), SIZE, SIZE, readBuffer.vkBuffer()
+            );
+            recorder.end();
+
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "DynamicState", new WaitSemaphore[0], fence
+            );
+            boiler.sync.waitAndReset(stack, fence);
+        }
+
+        boiler.sync.fenceBank.returnFence(fence, false);
+        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        return memGetInt(readBuffer.hostAddress() + 4L * (SIZE / 2 + SIZE * (SIZE / 2)));
+    }
+
+    @Test
+    public void testDynamicCullModeAndDepthState() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_3, "TestDynamicState", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .dynamicRendering()
+                .extendedDynamicState()
+                .build();
+
+        long pipelineLayout;
+        long vertexModule;
+        long fragmentModule;
+        VmaImage colorImage;
+        VmaImage depthImage;
+        try (var stack = stackPush()) {
+            pipelineLayout = boiler.pipelines.createLayout(stack, null, "DynamicStateLayout");
+            vertexModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.vert.spv", "DynamicStateVertices"
+            );
+            fragmentModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.frag.spv", "DynamicStateFragments"
+            );
+            colorImage = boiler.images.createSimple(
+                    stack, SIZE, SIZE, COLOR_FORMAT,
+                    VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT, VK_IMAGE_ASPECT_COLOR_BIT,
+                    "DynamicStateColor"
+            );
+            depthImage = boiler.images.createSimple(
+                    stack, SIZE, SIZE, DEPTH_FORMAT, VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT,
+                    VK_IMAGE_ASPECT_DEPTH_BIT, "DynamicStateDepth"
+            );
+        }
+        long pipeline = createPipeline(boiler, pipelineLayout, vertexModule, fragmentModule);
+
+        var readBuffer = boiler.buffers.createMapped(
+                4L * SIZE * SIZE, VK_BUFFER_USAGE_TRANSFER_DST_BIT, "DynamicStateRead"
+        );
+        var vertexBuffer = boiler.buffers.createMapped(
+                3 * 4 * (2 + 3), VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, "DynamicStateVertices"
+        );
+        float[] vertices = {
+                -1f, -1f, 1f, 0f, 0f,
+                3f, -1f, 1f, 0f, 0f,
+                -1f, 3f, 1f, 0f, 0f
+        };
+        for (int index = 0; index < vertices.length; index++) {
+            memPutFloat(vertexBuffer.hostAddress() + 4L * index, vertices[index]);
+        }
+
+        // The triangle has depth 0, and the depth image is cleared to 0
+        assertEquals(RED, render(
+                boiler, pipeline, colorImage, depthImage, vertexBuffer, readBuffer,
+                VK_CULL_MODE_NONE, false, VK_COMPARE_OP_NEVER
+        ));
+        assertEquals(0, render(
+                boiler, pipeline, colorImage, depthImage, vertexBuffer, readBuffer,
+                VK_CULL_MODE_FRONT_AND_BACK, false, VK_COMPARE_OP_ALWAYS
+        ));
+        assertEquals(0, render(
+                boiler, pipeline, colorImage, depthImage, vertexBuffer, readBuffer,
+                VK_CULL_MODE_NONE, true, VK_COMPARE_OP_LESS
+        ));
+        assertEquals(RED, render(
+                boiler, pipeline, colorImage, depthImage, vertexBuffer, readBuffer,
+                VK_CULL_MODE_NONE, true, VK_COMPARE_OP_LESS_OR_EQUAL
+        ));
+
+        // The VK_EXT_extended_dynamic_state3 methods must refuse to record when the extension is not enabled
+        if (!boiler.deviceExtensions.contains(VK_EXT_EXTENDED_DYNAMIC_STATE_3_EXTENSION_NAME)) {
+            long commandPool = boiler.commands.createPool(
+                    0, boiler.queueFamilies().graphics().index(), "DynamicState3"
+            );
+            var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "DynamicState3")[0];
+            try (var stack = stackPush()) {
+                var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "DynamicState3");
+                assertThrows(IllegalStateException.class, () -> recorder.setPolygonMode(VK_POLYGON_MODE_LINE));
+                assertThrows(IllegalStateException.class, () -> recorder.setSimpleColorBlendEquation(0, 1));
+                recorder.end();
+            }
+            vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        }
+
+        vertexBuffer.destroy(boiler.vmaAllocator());
+        readBuffer.destroy(boiler.vmaAllocator());
+        vkDestroyPipeline(boiler.vkDevice(), pipeline, null);
+        vkDestroyImageView(boiler.vkDevice(), colorImage.vkImageView(), null);
+        vmaDestroyImage(boiler.vmaAllocator(), colorImage.vkImage(), colorImage.vmaAllocation());
+        vkDestroyImageView(boiler.vkDevice(), depthImage.vkImageView(), null);
+        vmaDestroyImage(boiler.vmaAllocator(), depthImage.vkImage(), depthImage.vmaAllocation());
+        vkDestroyShaderModule(boiler.vkDevice(), vertexModule, null);
+        vkDestroyShaderModule(boiler.vkDevice(), fragmentModule, null);
+        vkDestroyPipelineLayout(boiler.vkDevice(), pipelineLayout, null);
+        boiler.destroyInitialObjects();
+    }
+}
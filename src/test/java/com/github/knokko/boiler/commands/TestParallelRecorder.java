@@ -0,0 +1,155 @@
+package com.github.knokko.boiler.commands;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import com.github.knokko.boiler.sync.WaitTimelineSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestParallelRecorder {
+
+    @Test
+    public void testClearInSecondaryCommandBuffers() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestParallelRecorder", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        int numTasks = 4;
+        int width = 4 * numTasks;
+        int height = 2;
+        int format = VK_FORMAT_R8G8B8A8_UNORM;
+
+        try (var stack = stackPush()) {
+            var image = boiler.images.createSimple(
+                    stack, width, height, format,
+                    VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT,
+                    VK_IMAGE_ASPECT_COLOR_BIT, "TargetImage"
+            );
+            var destinationBuffer = boiler.buffers.createMapped(
+                    4L * width * height, VK_BUFFER_USAGE_TRANSFER_DST_BIT, "DestinationBuffer"
+            );
+
+            var attachments = VkAttachmentDescription.calloc(1, stack);
+            attachments.format(format);
+            attachments.samples(VK_SAMPLE_COUNT_1_BIT);
+            attachments.loadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            attachments.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
+            attachments.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            attachments.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            attachments.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            attachments.finalLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+
+            var colorReference = VkAttachmentReference.calloc(1, stack);
+            colorReference.attachment(0);
+            colorReference.layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+
+            var subpass = VkSubpassDescription.calloc(1, stack);
+            subpass.pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS);
+            subpass.colorAttachmentCount(1);
+            subpass.pColorAttachments(colorReference);
+
+            // Ensure that the copy after the render pass sees the cleared pixels
+            var dependencies = VkSubpassDependency.calloc(1, stack);
+            dependencies.srcSubpass(0);
+            dependencies.dstSubpass(VK_SUBPASS_EXTERNAL);
+            dependencies.srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+            dependencies.srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+            dependencies.dstStageMask(VK_PIPELINE_STAGE_TRANSFER_BIT);
+            dependencies.dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT);
+
+            var ciRenderPass = VkRenderPassCreateInfo.calloc(stack);
+            ciRenderPass.sType$Default();
+            ciRenderPass.pAttachments(attachments);
+            ciRenderPass.pSubpasses(subpass);
+            ciRenderPass.pDependencies(dependencies);
+
+            var pRenderPass = stack.callocLong(1);
+            assertVkSuccess(vkCreateRenderPass(
+                    boiler.vkDevice(), ciRenderPass, null, pRenderPass
+            ), "CreateRenderPass", "TestParallelRecorder");
+            long renderPass = pRenderPass.get(0);
+            long framebuffer = boiler.images.createFramebuffer(
+                    stack, renderPass, width, height, "TestFramebuffer", image.vkImageView()
+            );
+
+            var commandManager = new CommandBufferManager(
+                    boiler, boiler.queueFamilies().graphics().index(), 1, "TestCommands"
+            );
+            var parallelRecorder = new ParallelRecorder(boiler, commandManager);
+            long timeline = boiler.sync.createTimelineSemaphore(0, "TestTimeline");
+            var finished = new TimelineInstant(timeline, 1);
+            commandManager.beginFrame(0, finished);
+
+            var commandBuffer = commandManager.nextPrimary();
+            var recorder = CommandRecorder.begin(
+                    commandBuffer, boiler, stack, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT, "Primary"
+            );
+
+            var biRenderPass = VkRenderPassBeginInfo.calloc(stack);
+            biRenderPass.sType$Default();
+            biRenderPass.renderPass(renderPass);
+            biRenderPass.framebuffer(framebuffer);
+            biRenderPass.renderArea().extent().set(width, height);
+            vkCmdBeginRenderPass(commandBuffer, biRenderPass, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
+
+            parallelRecorder.recordRenderPass(
+                    recorder, renderPass, 0, framebuffer, numTasks, (secondary, secondaryRecorder, taskStack, taskIndex) -> {
+                var clearAttachments = VkClearAttachment.calloc(1, taskStack);
+                clearAttachments.aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+                clearAttachments.colorAttachment(0);
+                clearAttachments.clearValue().color().float32(0, taskIndex / 255f);
+
+                var clearRects = VkClearRect.calloc(1, taskStack);
+                clearRects.rect().offset().set(4 * taskIndex, 0);
+                clearRects.rect().extent().set(4, height);
+                clearRects.baseArrayLayer(0);
+                clearRects.layerCount(1);
+
+                vkCmdClearAttachments(secondary, clearAttachments, clearRects);
+            }, "ClearTask");
+
+            vkCmdEndRenderPass(commandBuffer);
+            recorder.copyImageToBuffer(
+                    VK_IMAGE_ASPECT_COLOR_BIT, image.vkImage(), width, height, destinationBuffer.vkBuffer()
+            );
+            recorder.end();
+
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "Parallel", new WaitSemaphore[0], VK_NULL_HANDLE,
+                    new long[0], new WaitTimelineSemaphore[0], finished
+            );
+            boiler.sync.awaitTimelineSemaphore(stack, timeline, 1, "Parallel");
+
+            var hostBuffer = memByteBuffer(destinationBuffer.hostAddress(), 4 * width * height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(x / 4, hostBuffer.get(4 * (x + y * width)));
+                }
+            }
+
+            commandManager.destroy();
+            vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+            vkDestroyFramebuffer(boiler.vkDevice(), framebuffer, null);
+            vkDestroyRenderPass(boiler.vkDevice(), renderPass, null);
+            vkDestroyImageView(boiler.vkDevice(), image.vkImageView(), null);
+            vmaDestroyImage(boiler.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+            destinationBuffer.destroy(boiler.vmaAllocator());
+        }
+
+        boiler.destroyInitialObjects();
+    }
+}
@@ -3,7 +3,10 @@ package com.github.knokko.boiler.cull;
 import org.joml.Vector3f;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static com.github.knokko.boiler.cull.FrustumCuller.isOnForwardPlane;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -163,4 +166,33 @@ public class TestFrustumCuller {
             assertTrue(frustum.shouldCullAABB(new FrustumCuller.AABB(95f, -20f, 35f, 105f, -10f, 45f)));
         }
     }
+
+    @Test
+    public void testPlanesMatchShouldCull() {
+        var frustum = new FrustumCuller(new Vector3f(), 30f, 10f, 1.5f, 45f, 0.1f, 500f);
+        float[] planes = frustum.getPlanes();
+        assertEquals(24, planes.length);
+
+        // This is the same test as the one in cull.comp
+        var random = new Random(1234);
+        for (int counter = 0; counter < 1000; counter++) {
+            float minX = 200f * random.nextFloat() - 100f;
+            float minY = 200f * random.nextFloat() - 100f;
+            float minZ = 200f * random.nextFloat() - 100f;
+            var box = new FrustumCuller.AABB(
+                    minX, minY, minZ, minX + 10f * random.nextFloat(),
+                    minY + 10f * random.nextFloat(), minZ + 10f * random.nextFloat()
+            );
+
+            boolean visible = true;
+            for (int plane = 0; plane < 6; plane++) {
+                float nx = planes[4 * plane], ny = planes[4 * plane + 1], nz = planes[4 * plane + 2];
+                float radius = box.halfWidth() * Math.abs(nx) + box.halfHeight() * Math.abs(ny) +
+                        box.halfDepth() * Math.abs(nz);
+                float distance = nx * box.centerX() + ny * box.centerY() + nz * box.centerZ() - planes[4 * plane + 3];
+                if (distance < -radius) visible = false;
+            }
+            assertEquals(!frustum.shouldCullAABB(box), visible);
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package com.github.knokko.boiler.cull;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestGpuCuller {
+
+    @Test
+    public void testCullCount() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestGpuCuller", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::drawIndirectCount)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.drawIndirectCount(true))
+                .build();
+
+        // Looking down the negative Z-axis
+        var frustum = new FrustumCuller(new Vector3f(), 0f, 0f, 1f, 60f, 0.1f, 100f);
+        var visibleBox = new FrustumCuller.AABB(-1f, -1f, -11f, 1f, 1f, -9f);
+        var behindBox = new FrustumCuller.AABB(-1f, -1f, 9f, 1f, 1f, 11f);
+        var leftBox = new FrustumCuller.AABB(-91f, -1f, -11f, -89f, 1f, -9f);
+
+        for (boolean useDrawIndirectCount : new boolean[] { true, false }) {
+            var culler = new GpuCuller(boiler, useDrawIndirectCount, false, "TestCuller");
+            int numInstances = 100;
+            var batch = culler.createBatch(128, "TestBatch");
+            for (int index = 0; index < numInstances; index++) {
+                var box = index % 4 == 0 ? visibleBox : index % 4 == 1 ? behindBox : index % 4 == 2 ? leftBox : visibleBox;
+                batch.putInstance(index, box, 6, 1, 0, index);
+            }
+            var commandsCopy = boiler.buffers.createMapped(
+                    batch.drawCommands.size(), VK_BUFFER_USAGE_TRANSFER_DST_BIT, "CommandsCopy"
+            );
+
+            try (var stack = stackPush()) {
+                long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "Cull");
+                var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "Cull")[0];
+                var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "Cull");
+
+                recorder.cullOnGpu(batch, frustum, numInstances);
+
+                var indirectRead = new ResourceUsage(
+                        VK_ACCESS_INDIRECT_COMMAND_READ_BIT, VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT
+                );
+                var transferRead = new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+                recorder.bufferBarrier(
+                        batch.drawCommands.vkBuffer(), 0, batch.drawCommands.size(), indirectRead, transferRead
+                );
+                recorder.copyBuffer(
+                        batch.drawCommands.size(), batch.drawCommands.vkBuffer(), 0, commandsCopy.vkBuffer(), 0
+                );
+                var hostRead = new ResourceUsage(VK_ACCESS_HOST_READ_BIT, VK_PIPELINE_STAGE_HOST_BIT);
+                recorder.bufferBarrier(batch.drawCount.vkBuffer(), 0, 4, indirectRead, hostRead);
+                recorder.bufferBarrier(
+                        commandsCopy.vkBuffer(), 0, commandsCopy.size(),
+                        new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT), hostRead
+                );
+                recorder.end();
+
+                long fence = boiler.sync.createFences(false, 1, "Cull")[0];
+                boiler.queueFamilies().graphics().queues().get(0).submit(
+                        commandBuffer, "Cull", new WaitSemaphore[0], fence
+                );
+                assertVkSuccess(vkWaitForFences(
+                        boiler.vkDevice(), stack.longs(fence), true, boiler.defaultTimeout
+                ), "WaitForFences", "Cull");
+
+                assertEquals(numInstances / 2, batch.getDrawCount());
+
+                if (useDrawIndirectCount) {
+                    // The visible draw commands are compacted, but their order is undefined
+                    int firstInstanceSum = 0;
+                    for (int index = 0; index < numInstances / 2; index++) {
+                        long address = commandsCopy.hostAddress() + 16L * index;
+                        assertEquals(6, memGetInt(address));
+                        assertEquals(1, memGetInt(address + 4));
+                        firstInstanceSum += memGetInt(address + 12);
+                    }
+                    int expectedSum = 0;
+                    for (int index = 0; index < numInstances; index++) {
+                        if (index % 4 == 0 || index % 4 == 3) expectedSum += index;
+                    }
+                    assertEquals(expectedSum, firstInstanceSum);
+                } else {
+                    for (int index = 0; index < numInstances; index++) {
+                        long address = commandsCopy.hostAddress() + 16L * index;
+                        int expectedInstanceCount = index % 4 == 0 || index % 4 == 3 ? 1 : 0;
+                        assertEquals(expectedInstanceCount, memGetInt(address + 4));
+                        assertEquals(index, memGetInt(address + 12));
+                    }
+                }
+
+                vkDestroyFence(boiler.vkDevice(), fence, null);
+                vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+            }
+
+            commandsCopy.destroy(boiler.vmaAllocator());
+            batch.destroy();
+            culler.destroy();
+        }
+
+        boiler.destroyInitialObjects();
+    }
+}
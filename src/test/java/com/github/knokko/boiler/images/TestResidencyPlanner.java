@@ -0,0 +1,190 @@
+package com.github.knokko.boiler.images;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestResidencyPlanner {
+
+    // 8x8, 4x4, 2x2, 1x1 with 1 byte per pixel
+    private static final long[] LEVELS = { 64, 16, 4, 1 };
+
+    @Test
+    public void testLoadCoarseToFineWithinBudget() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        assertEquals(4, planner.getResidentLevel("a"));
+        assertEquals(4, planner.getNumLevels("a"));
+
+        planner.request("a", 1);
+        var changes = planner.plan(1000);
+        assertEquals(List.of(new ResidencyPlanner.Change<>("a", 4, 1)), changes);
+        assertEquals(1, planner.getResidentLevel("a"));
+        assertEquals(21, planner.getResidentBytes());
+
+        // Only level 0 is missing, but it doesn't fit
+        planner.request("a", 0);
+        assertEquals(0, planner.plan(50).size());
+        assertEquals(1, planner.getResidentLevel("a"));
+
+        planner.request("a", 0);
+        planner.plan(85);
+        assertEquals(0, planner.getResidentLevel("a"));
+        assertEquals(85, planner.getResidentBytes());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedFirst() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        planner.add("b", LEVELS);
+        planner.add("c", LEVELS);
+
+        planner.request("a", 1);
+        planner.plan(100);
+        planner.request("b", 1);
+        planner.plan(100);
+        assertEquals(42, planner.getResidentBytes());
+
+        // c needs 21 bytes, so the finest level of a (the least recently used) must go
+        planner.request("c", 1);
+        var changes = planner.plan(50);
+        assertEquals(1, planner.getResidentLevel("c"));
+        assertEquals(1, planner.getResidentLevel("b"));
+        assertEquals(2, planner.getResidentLevel("a"));
+        assertEquals(47, planner.getResidentBytes());
+        assertEquals(1, planner.evictions);
+        assertTrue(changes.contains(new ResidencyPlanner.Change<>("a", 1, 2)));
+        assertTrue(changes.contains(new ResidencyPlanner.Change<>("c", 4, 1)));
+
+        // Using a makes b the least recently used texture
+        planner.request("a", 2);
+        planner.request("c", 1);
+        planner.plan(50);
+        planner.request("a", 1);
+        planner.plan(50);
+        assertEquals(1, planner.getResidentLevel("a"));
+        assertEquals(1, planner.getResidentLevel("c"));
+        assertTrue(planner.getResidentLevel("b") > 1);
+        assertTrue(planner.getResidentBytes() <= 50);
+    }
+
+    @Test
+    public void testEvictionAndQueriesDontChangeRecency() {
+        long[] levels = { 100, 10 };
+        var planner = new ResidencyPlanner<String>();
+        for (String key : new String[] { "a", "b", "c", "d" }) planner.add(key, levels);
+
+        planner.request("a", 0);
+        planner.plan(230);
+        planner.request("b", 0);
+        planner.plan(230);
+
+        // c evicts the finest level of a, which must keep a the least recently used texture
+        planner.request("c", 0);
+        planner.plan(230);
+        assertEquals(1, planner.getResidentLevel("a"));
+        assertEquals(0, planner.getResidentLevel("b"));
+        assertEquals(230, planner.getResidentBytes());
+
+        // Queries must not count as usage either
+        assertEquals(2, planner.getNumLevels("a"));
+        assertEquals(1, planner.getResidentLevel("a"));
+
+        // d needs 10 bytes, which should be taken from a rather than b
+        planner.request("d", 1);
+        var changes = planner.plan(230);
+        assertEquals(2, planner.getResidentLevel("a"));
+        assertEquals(0, planner.getResidentLevel("b"));
+        assertEquals(1, planner.getResidentLevel("d"));
+        assertEquals(230, planner.getResidentBytes());
+        assertTrue(changes.contains(new ResidencyPlanner.Change<>("a", 1, 2)));
+        assertTrue(changes.contains(new ResidencyPlanner.Change<>("d", 2, 1)));
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void testDontEvictTexturesUsedThisFrame() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        planner.add("b", LEVELS);
+
+        planner.request("a", 1);
+        planner.plan(30);
+        assertEquals(21, planner.getResidentBytes());
+
+        // Both are needed in this frame, so b must settle for a coarser level
+        planner.request("a", 1);
+        planner.request("b", 0);
+        planner.plan(30);
+        assertEquals(1, planner.getResidentLevel("a"));
+        assertEquals(2, planner.getResidentLevel("b"));
+        assertEquals(26, planner.getResidentBytes());
+        assertEquals(0, planner.evictions);
+    }
+
+    @Test
+    public void testShrinkingBudget() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        planner.request("a", 0);
+        planner.plan(100);
+        assertEquals(85, planner.getResidentBytes());
+
+        var changes = planner.plan(10);
+        assertEquals(List.of(new ResidencyPlanner.Change<>("a", 0, 2)), changes);
+        assertEquals(5, planner.getResidentBytes());
+        assertEquals(2, planner.evictions);
+
+        planner.remove("a");
+        assertEquals(0, planner.getResidentBytes());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        planner.request("a", 2);
+        assertEquals(1, planner.misses);
+        planner.plan(100);
+
+        planner.request("a", 2);
+        planner.request("a", 3);
+        planner.request("a", 10);
+        assertEquals(3, planner.hits);
+        planner.request("a", 0);
+        assertEquals(2, planner.misses);
+
+        assertThrows(IllegalArgumentException.class, () -> planner.add("a", LEVELS));
+        assertThrows(IllegalArgumentException.class, () -> planner.request("b", 0));
+    }
+
+    @Test
+    public void testMarkEvicted() {
+        var planner = new ResidencyPlanner<String>();
+        planner.add("a", LEVELS);
+        planner.request("a", 0);
+        planner.plan(1000);
+        assertEquals(85, planner.getResidentBytes());
+
+        // Pretend that loading levels 0 and 1 failed
+        planner.markEvicted("a", 2);
+        assertEquals(2, planner.getResidentLevel("a"));
+        assertEquals(5, planner.getResidentBytes());
+        assertEquals(0, planner.evictions);
+
+        // The next request must be a miss, and the levels should be planned again
+        planner.request("a", 0);
+        assertEquals(0, planner.hits);
+        assertEquals(2, planner.misses);
+        assertEquals(List.of(new ResidencyPlanner.Change<>("a", 2, 0)), planner.plan(1000));
+
+        planner.markEvicted("a", 4);
+        assertEquals(0, planner.getResidentBytes());
+        assertThrows(IllegalArgumentException.class, () -> planner.markEvicted("a", 3));
+        assertThrows(IllegalArgumentException.class, () -> planner.markEvicted("a", 5));
+        assertThrows(IllegalArgumentException.class, () -> planner.markEvicted("b", 4));
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestTextureContainer {
+
+    private static final byte[] KTX2_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+
+    /**
+     * Creates a KTX2 file with the given format, size, and level sizes. Like real KTX2 files, the smallest mip level
+     * is stored first. Each byte of level <i>l</i> is <i>l + 1</i>.
+     */
+    private static ByteBuffer createKtx2(int format, int width, int height, long... levelSizes) {
+        int levelCount = levelSizes.length;
+        int dataStart = 80 + 24 * levelCount;
+        long totalSize = dataStart;
+        for (long size : levelSizes) totalSize += size;
+
+        var buffer = ByteBuffer.allocate((int) totalSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(0, KTX2_IDENTIFIER);
+        buffer.putInt(12, format);
+        buffer.putInt(16, 1);
+        buffer.putInt(20, width);
+        buffer.putInt(24, height);
+        buffer.putInt(36, 1);
+        buffer.putInt(40, levelCount);
+
+        long offset = dataStart;
+        for (int level = levelCount - 1; level >= 0; level--) {
+            buffer.putLong(80 + 24 * level, offset);
+            buffer.putLong(88 + 24 * level, levelSizes[level]);
+            buffer.putLong(96 + 24 * level, levelSizes[level]);
+            for (long index = 0; index < levelSizes[level]; index++) buffer.put((int) (offset + index), (byte) (level + 1));
+            offset += levelSizes[level];
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer createDds(int width, int height, int levelCount, String fourCC, int dxgiFormat, int dataSize) {
+        boolean dx10 = fourCC.equals("DX10");
+        int headerSize = dx10 ? 148 : 128;
+        var buffer = ByteBuffer.allocate(headerSize + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(0, new byte[] { 'D', 'D', 'S', ' ' });
+        buffer.putInt(4, 124);
+        buffer.putInt(12, height);
+        buffer.putInt(16, width);
+        buffer.putInt(28, levelCount);
+        buffer.putInt(76, 32);
+        buffer.putInt(80, 0x4);
+        buffer.put(84, fourCC.getBytes());
+        if (dx10) {
+            buffer.putInt(128, dxgiFormat);
+            buffer.putInt(132, 3);
+            buffer.putInt(140, 1);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testParseKtx2() {
+        var file = createKtx2(VK_FORMAT_BC7_UNORM_BLOCK, 8, 8, 64, 16, 16, 16);
+        var container = TextureContainer.parse(file);
+        assertEquals(VK_FORMAT_BC7_UNORM_BLOCK, container.format());
+        assertEquals(8, container.width());
+        assertEquals(8, container.height());
+        assertEquals(4, container.mipLevels());
+        assertArrayEquals(new long[] { 64, 16, 16, 16 }, container.levelSizes());
+
+        // The smallest level comes first in the file
+        int dataStart = 80 + 24 * 4;
+        assertEquals(dataStart, container.getDataStart());
+        assertEquals(112, container.getDataSize());
+        assertEquals(dataStart + 48, container.levelOffsets()[0]);
+        assertEquals(dataStart, container.levelOffsets()[3]);
+        assertEquals(1, container.data().get((int) container.levelOffsets()[0]));
+        assertEquals(4, container.data().get((int) container.levelOffsets()[3]));
+    }
+
+    @Test
+    public void testParseKtx2Errors() {
+        var basis = createKtx2(VK_FORMAT_UNDEFINED, 4, 4, 16);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parseKtx2(basis));
+
+        var supercompressed = createKtx2(VK_FORMAT_BC7_UNORM_BLOCK, 4, 4, 16);
+        supercompressed.putInt(44, 2);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parseKtx2(supercompressed));
+
+        var cubemap = createKtx2(VK_FORMAT_BC7_UNORM_BLOCK, 4, 4, 16);
+        cubemap.putInt(36, 6);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parseKtx2(cubemap));
+
+        var outOfBounds = createKtx2(VK_FORMAT_BC7_UNORM_BLOCK, 4, 4, 16);
+        outOfBounds.putLong(88, 17);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parseKtx2(outOfBounds));
+
+        var truncated = createKtx2(VK_FORMAT_BC7_UNORM_BLOCK, 4, 4, 16).slice(0, 50);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parseKtx2(truncated));
+    }
+
+    @Test
+    public void testParseDdsFourCC() {
+        // BC1 uses 8 bytes per 4x4 block: 16x8 needs 8 blocks, 8x4 needs 2, 4x2 and 2x1 need 1
+        var file = createDds(16, 8, 4, "DXT1", 0, 8 * (8 + 2 + 1 + 1));
+        var container = TextureContainer.parse(file);
+        assertEquals(VK_FORMAT_BC1_RGBA_UNORM_BLOCK, container.format());
+        assertEquals(16, container.width());
+        assertEquals(8, container.height());
+        assertArrayEquals(new long[] { 64, 16, 8, 8 }, container.levelSizes());
+        assertArrayEquals(new long[] { 128, 192, 208, 216 }, container.levelOffsets());
+        assertEquals(128, container.getDataStart());
+        assertEquals(96, container.getDataSize());
+
+        assertEquals(VK_FORMAT_BC3_UNORM_BLOCK, TextureContainer.parse(createDds(4, 4, 1, "DXT5", 0, 16)).format());
+        assertEquals(VK_FORMAT_BC5_UNORM_BLOCK, TextureContainer.parse(createDds(4, 4, 1, "ATI2", 0, 16)).format());
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parse(createDds(4, 4, 1, "ABCD", 0, 16)));
+
+        // The data is too small for the level
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parse(createDds(8, 8, 1, "DXT1", 0, 16)));
+    }
+
+    @Test
+    public void testParseDdsDx10() {
+        var container = TextureContainer.parse(createDds(4, 4, 1, "DX10", 99, 16));
+        assertEquals(VK_FORMAT_BC7_SRGB_BLOCK, container.format());
+        assertEquals(148, container.getDataStart());
+
+        var rgba = TextureContainer.parse(createDds(2, 2, 2, "DX10", 28, 20));
+        assertEquals(VK_FORMAT_R8G8B8A8_UNORM, rgba.format());
+        assertArrayEquals(new long[] { 16, 4 }, rgba.levelSizes());
+
+        var array = createDds(4, 4, 1, "DX10", 98, 32);
+        array.putInt(140, 2);
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parse(array));
+    }
+
+    @Test
+    public void testParseUnknown() {
+        assertThrows(IllegalArgumentException.class, () -> TextureContainer.parse(ByteBuffer.allocate(200)));
+    }
+
+    @Test
+    public void testLoadKtx2File() throws IOException {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestTextureContainer", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .build();
+
+        var file = Files.createTempFile("test", ".ktx2");
+        var content = createKtx2(VK_FORMAT_R8G8B8A8_UNORM, 4, 2, 32, 8, 4);
+        Files.write(file, content.array());
+
+        try (var stack = stackPush()) {
+            var texture = boiler.images.loadTexture(stack, file, 0, "Ktx2Texture");
+            assertEquals(4, texture.width());
+            assertEquals(2, texture.height());
+
+            vkDestroyImageView(boiler.vkDevice(), texture.vkImageView(), null);
+            vmaDestroyImage(boiler.vmaAllocator(), texture.vkImage(), texture.vmaAllocation());
+        }
+
+        Files.delete(file);
+        boiler.destroyInitialObjects();
+    }
+}
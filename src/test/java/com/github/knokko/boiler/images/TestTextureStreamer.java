@@ -0,0 +1,138 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.sync.TimelineInstant;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestTextureStreamer {
+
+    @Test
+    public void testStreamWithinBudget() throws InterruptedException {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestTextureStreamer", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        var executor = Executors.newFixedThreadPool(2);
+        long timeline = boiler.sync.createTimelineSemaphore(0, "FrameTimeline");
+
+        // A 16x16 RGBA8 texture needs 1024 + 256 + 64 + 16 + 4 = 1364 bytes, so only 1 of them fits completely
+        var streamer = new TextureStreamer<Integer>(boiler, 2000, executor, "Streamer");
+        for (int key = 0; key < 3; key++) {
+            byte value = (byte) key;
+            streamer.register(key, 16, 16, VK_FORMAT_R8G8B8A8_UNORM, 4, (mipLevel, destination) -> {
+                while (destination.hasRemaining()) destination.put(value);
+            });
+        }
+
+        long frame = 0;
+        for (int key = 0; key < 3; key++) {
+            for (int counter = 0; counter < 100 && streamer.getResidentLevel(key) != 0; counter++) {
+                streamer.request(key, 0);
+                streamer.update(new TimelineInstant(timeline, frame + 1));
+                try (var stack = stackPush()) {
+                    boiler.sync.setTimelineSemaphoreValue(stack, timeline, frame + 1, "Frame");
+                }
+                frame += 1;
+                Thread.sleep(1);
+            }
+            assertEquals(0, streamer.getResidentLevel(key));
+            assertNotNull(streamer.getImage(key));
+            assertEquals(16, streamer.getImage(key).width());
+            assertTrue(streamer.getResidentBytes() <= 2000);
+        }
+
+        assertEquals(0, streamer.getResidentLevel(2));
+        assertNull(streamer.getImage(0));
+        assertTrue(streamer.getEvictions() > 0);
+        assertTrue(streamer.getMisses() > 0);
+
+        streamer.request(2, 1);
+        streamer.update(new TimelineInstant(timeline, frame + 1));
+        assertTrue(streamer.getHits() > 0);
+
+        streamer.unregister(1);
+        assertTrue(streamer.getResidentBytes() <= 1364);
+
+        try (var stack = stackPush()) {
+            boiler.sync.setTimelineSemaphoreValue(stack, timeline, frame + 1, "Frame");
+        }
+        streamer.destroy();
+        executor.shutdown();
+        vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+        boiler.destroyInitialObjects();
+    }
+
+    @Test
+    public void testThrowingLoader() throws InterruptedException {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestTextureStreamer", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        long timeline = boiler.sync.createTimelineSemaphore(0, "FrameTimeline");
+        // Run the loaders on the calling thread, so that both uploads are loaded during the same update
+        var streamer = new TextureStreamer<String>(boiler, 100_000, Runnable::run, "Streamer");
+        streamer.register("good", 16, 16, VK_FORMAT_R8G8B8A8_UNORM, 4, (mipLevel, destination) -> {
+            while (destination.hasRemaining()) destination.put((byte) 1);
+        });
+        var failure = new IllegalStateException("Can't load this texture");
+        streamer.register("bad", 16, 16, VK_FORMAT_R8G8B8A8_UNORM, 4, (mipLevel, destination) -> {
+            throw failure;
+        });
+
+        streamer.request("good", 0);
+        streamer.request("bad", 0);
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> streamer.update(
+                new TimelineInstant(timeline, 1)
+        )));
+
+        // The residency of the failed texture must be rolled back, but the other upload should still be submitted
+        assertEquals(5, streamer.getResidentLevel("bad"));
+        assertEquals(1364, streamer.getResidentBytes());
+        assertEquals(1, streamer.getNumPendingUploads());
+
+        long frame = 1;
+        for (int counter = 0; counter < 100 && streamer.getImage("good") == null; counter++) {
+            try (var stack = stackPush()) {
+                boiler.sync.setTimelineSemaphoreValue(stack, timeline, frame, "Frame");
+            }
+            streamer.update(new TimelineInstant(timeline, frame + 1));
+            frame += 1;
+            Thread.sleep(1);
+        }
+        assertEquals(0, streamer.getResidentLevel("good"));
+        assertNotNull(streamer.getImage("good"));
+        assertNull(streamer.getImage("bad"));
+
+        // Requesting the failed texture again is a miss, which will try to load it again
+        long hits = streamer.getHits();
+        streamer.request("bad", 0);
+        assertEquals(hits, streamer.getHits());
+        assertThrows(IllegalStateException.class, () -> streamer.update(new TimelineInstant(timeline, 100)));
+        assertEquals(0, streamer.getNumPendingUploads());
+
+        try (var stack = stackPush()) {
+            boiler.sync.setTimelineSemaphoreValue(stack, timeline, 100, "Frame");
+        }
+        streamer.destroy();
+        vkDestroySemaphore(boiler.vkDevice(), timeline, null);
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+import org.lwjgl.vulkan.VkPhysicalDeviceFeatures;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestTextures {
+
+    @Test
+    public void testMipLevelCount() {
+        assertEquals(1, BoilerImages.mipLevelCount(1, 1));
+        assertEquals(2, BoilerImages.mipLevelCount(2, 1));
+        assertEquals(3, BoilerImages.mipLevelCount(3, 4));
+        assertEquals(11, BoilerImages.mipLevelCount(1024, 1000));
+        assertEquals(11, BoilerImages.mipLevelCount(1201, 1201));
+        assertEquals(12, BoilerImages.mipLevelCount(2048, 3));
+    }
+
+    @Test
+    public void testDownsampleShaderPath() {
+        assertTrue(ComputeDownsampler.shaderPath(VK_FORMAT_R8G8B8A8_UNORM).endsWith("downsample_float.comp.spv"));
+        assertTrue(ComputeDownsampler.shaderPath(VK_FORMAT_R16_SINT).endsWith("downsample_int.comp.spv"));
+        assertTrue(ComputeDownsampler.shaderPath(VK_FORMAT_R32_UINT).endsWith("downsample_uint.comp.spv"));
+    }
+
+    private static int[] readLastMipLevel(BoilerInstance boiler, VmaImage image, int mipLevels, int pixelSize) {
+        try (var stack = stackPush()) {
+            var destination = boiler.buffers.createMapped(pixelSize, VK_BUFFER_USAGE_TRANSFER_DST_BIT, "Readback");
+            long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "Readback");
+            var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "Readback")[0];
+            boiler.commands.begin(commandBuffer, stack, "Readback");
+
+            var recorder = CommandRecorder.alreadyRecording(commandBuffer, boiler, stack);
+            recorder.transitionLayout(
+                    image.vkImage(), mipLevels - 1, 1, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
+                    VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, null, null, VK_IMAGE_ASPECT_COLOR_BIT
+            );
+            var region = VkBufferImageCopy.calloc(1, stack);
+            boiler.images.subresourceLayers(stack, region.imageSubresource(), VK_IMAGE_ASPECT_COLOR_BIT);
+            region.imageSubresource().mipLevel(mipLevels - 1);
+            region.imageExtent().set(1, 1, 1);
+            vkCmdCopyImageToBuffer(
+                    commandBuffer, image.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, destination.vkBuffer(), region
+            );
+            recorder.end("Readback");
+
+            long fence = boiler.sync.createFences(false, 1, "Readback")[0];
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "Readback", new WaitSemaphore[0], fence
+            );
+            assertVkSuccess(vkWaitForFences(
+                    boiler.vkDevice(), stack.longs(fence), true, boiler.defaultTimeout
+            ), "WaitForFences", "Readback");
+
+            int[] result = new int[pixelSize];
+            for (int index = 0; index < pixelSize; index++) {
+                result[index] = memGetByte(destination.hostAddress() + index);
+            }
+
+            vkDestroyFence(boiler.vkDevice(), fence, null);
+            vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+            destination.destroy(boiler.vmaAllocator());
+            return result;
+        }
+    }
+
+    @Test
+    public void testGenerateMipmaps() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestTextures", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures10(VkPhysicalDeviceFeatures::shaderStorageImageWriteWithoutFormat)
+                .featurePicker10((stack, supported, toEnable) -> toEnable.shaderStorageImageWriteWithoutFormat(true))
+                .build();
+
+        int width = 8;
+        int height = 4;
+        int mipLevels = BoilerImages.mipLevelCount(width, height);
+        assertEquals(4, mipLevels);
+
+        // The average of all pixels is (40, 40, 40, 40), so the last mip level should be (approximately) that
+        var pixels = memAlloc(4 * width * height);
+        for (int index = 0; index < width * height; index++) {
+            byte value = (byte) (index % 2 == 0 ? 20 : 60);
+            for (int channel = 0; channel < 4; channel++) pixels.put(4 * index + channel, value);
+        }
+
+        for (boolean useBlits : new boolean[] { true, false }) {
+            try (var stack = stackPush()) {
+                var texture = boiler.images.createTexture(
+                        stack, width, height, VK_FORMAT_R8G8B8A8_UNORM, 0, pixels, true, useBlits, "Texture"
+                );
+                int[] lastLevel = readLastMipLevel(boiler, texture, mipLevels, 4);
+                for (int value : lastLevel) assertTrue(Math.abs(value - 40) <= 1, "Unexpected value " + value);
+
+                vkDestroyImageView(boiler.vkDevice(), texture.vkImageView(), null);
+                vmaDestroyImage(boiler.vmaAllocator(), texture.vkImage(), texture.vmaAllocation());
+            }
+        }
+
+        // Integer formats don't support linear blits, so they need the compute fallback
+        var heights = memAlloc(2 * width * height);
+        for (int index = 0; index < width * height; index++) heights.putShort(2 * index, (short) (index % 2 == 0 ? -10 : 30));
+        try (var stack = stackPush()) {
+            var texture = boiler.images.createTexture(
+                    stack, width, height, VK_FORMAT_R16_SINT, 0, heights, true, "HeightTexture"
+            );
+            int[] lastLevel = readLastMipLevel(boiler, texture, mipLevels, 2);
+            assertEquals(10, (lastLevel[0] & 0xFF) | (lastLevel[1] << 8));
+
+            vkDestroyImageView(boiler.vkDevice(), texture.vkImageView(), null);
+            vmaDestroyImage(boiler.vmaAllocator(), texture.vkImage(), texture.vmaAllocation());
+        }
+
+        memFree(pixels);
+        memFree(heights);
+        boiler.destroyInitialObjects();
+    }
+}
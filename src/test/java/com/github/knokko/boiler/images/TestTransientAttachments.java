@@ -0,0 +1,69 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestTransientAttachments {
+
+    @Test
+    public void testShareAcrossFrames() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestTransientAttachments", 1
+        ).validation().forbidValidationErrors().build();
+
+        var shared = new TransientAttachments(boiler, true, "Shared");
+        var separate = new TransientAttachments(boiler, false, "Separate");
+        int usage = VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT;
+
+        try (var stack = stackPush()) {
+            int depthFormat = boiler.images.chooseDepthStencilFormat(
+                    stack, VK_FORMAT_D32_SFLOAT, VK_FORMAT_X8_D24_UNORM_PACK32, VK_FORMAT_D16_UNORM
+            );
+
+            var depth1 = shared.acquire(stack, 100, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            var depth2 = shared.acquire(stack, 100, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            var depth3 = shared.acquire(stack, 100, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            assertSame(depth1, depth2);
+            assertSame(depth1, depth3);
+            long size = shared.getAllocatedBytes();
+            assertTrue(size >= 100 * 50 * 2);
+            assertEquals(3 * size, shared.getRequestedBytes());
+            assertEquals(2 * size, shared.getSavedBytes());
+
+            // A different size needs a different image
+            var bigDepth = shared.acquire(stack, 200, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            assertNotSame(depth1, bigDepth);
+            shared.release(bigDepth);
+            assertEquals(size, shared.getAllocatedBytes());
+
+            shared.release(depth1);
+            shared.release(depth2);
+            assertEquals(size, shared.getAllocatedBytes());
+            assertEquals(size, shared.getRequestedBytes());
+            shared.release(depth3);
+            assertEquals(0, shared.getAllocatedBytes());
+            assertThrows(IllegalArgumentException.class, () -> shared.release(depth3));
+
+            var separate1 = separate.acquire(stack, 100, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            var separate2 = separate.acquire(stack, 100, 50, depthFormat, usage, VK_IMAGE_ASPECT_DEPTH_BIT, VK_SAMPLE_COUNT_1_BIT);
+            assertNotSame(separate1, separate2);
+            assertEquals(0, separate.getSavedBytes());
+            separate.release(separate1);
+
+            var color = shared.acquire(
+                    stack, 100, 50, VK_FORMAT_R8G8B8A8_UNORM, VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT,
+                    VK_IMAGE_ASPECT_COLOR_BIT, VK_SAMPLE_COUNT_4_BIT
+            );
+            assertNotEquals(0L, color.vkImageView());
+        }
+
+        // destroy() should clean up the images that haven't been released
+        shared.destroy();
+        separate.destroy();
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.util.vma.VmaStatistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.vmaGetPoolStatistics;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestMemoryPools {
+
+    @Test
+    public void testLinearBufferPool() {
+        long[] pPreferredBlockSize = { 0L };
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestLinearBufferPool", VK_MAKE_VERSION(1, 0, 0)
+        )
+                .validation().forbidValidationErrors()
+                .vmaPreferredLargeHeapBlockSize(64 * 1024 * 1024)
+                .beforeVmaAllocatorCreation((ciAllocator, deviceExtensions, physicalDevice, stack) ->
+                        pPreferredBlockSize[0] = ciAllocator.preferredLargeHeapBlockSize()
+                )
+                .build();
+        assertEquals(64 * 1024 * 1024, pPreferredBlockSize[0]);
+
+        long pool = boiler.memoryPools.createBufferPool(
+                "Transient", VK_BUFFER_USAGE_TRANSFER_SRC_BIT, true, true, 1024 * 1024, 1
+        );
+        assertEquals(pool, boiler.memoryPools.get("Transient"));
+        assertThrows(IllegalArgumentException.class, () -> boiler.memoryPools.createBufferPool(
+                "Transient", VK_BUFFER_USAGE_TRANSFER_SRC_BIT, true, true, 0, 0
+        ));
+
+        var buffer1 = boiler.buffers.createMapped(1000, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, pool, "Buffer1");
+        var buffer2 = boiler.buffers.createMapped(2000, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, pool, "Buffer2");
+        assertNotEquals(0L, buffer1.hostAddress());
+
+        try (var stack = stackPush()) {
+            var statistics = VmaStatistics.calloc(stack);
+            vmaGetPoolStatistics(boiler.vmaAllocator(), pool, statistics);
+            assertEquals(1, statistics.blockCount());
+            assertEquals(2, statistics.allocationCount());
+        }
+
+        buffer1.destroy(boiler.vmaAllocator());
+        buffer2.destroy(boiler.vmaAllocator());
+        boiler.memoryPools.destroy("Transient");
+        assertThrows(IllegalArgumentException.class, () -> boiler.memoryPools.get("Transient"));
+
+        // This pool should be destroyed by destroyInitialObjects
+        boiler.memoryPools.createImagePool(
+                "Images", VK_FORMAT_R8G8B8A8_UNORM, VK_IMAGE_USAGE_SAMPLED_BIT, false, 0, 0
+        );
+        boiler.destroyInitialObjects();
+    }
+}
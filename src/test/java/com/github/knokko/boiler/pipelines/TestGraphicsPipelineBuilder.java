@@ -0,0 +1,134 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestGraphicsPipelineBuilder {
+
+    @Test
+    public void testBuildVariants() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestGraphicsPipelineBuilder", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .build();
+
+        try (var stack = stackPush()) {
+            long pipelineLayout = boiler.pipelines.createLayout(stack, null, "VariantsLayout");
+
+            var attachments = VkAttachmentDescription.calloc(1, stack);
+            var colorAttachment = attachments.get(0);
+            colorAttachment.format(VK_FORMAT_R8G8B8A8_UNORM);
+            colorAttachment.samples(VK_SAMPLE_COUNT_1_BIT);
+            colorAttachment.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+            colorAttachment.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
+            colorAttachment.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            colorAttachment.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            colorAttachment.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            colorAttachment.finalLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+
+            var colorReference = VkAttachmentReference.calloc(1, stack);
+            colorReference.attachment(0);
+            colorReference.layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+
+            var subpass = VkSubpassDescription.calloc(1, stack);
+            subpass.pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS);
+            subpass.colorAttachmentCount(1);
+            subpass.pColorAttachments(colorReference);
+
+            var ciRenderPass = VkRenderPassCreateInfo.calloc(stack);
+            ciRenderPass.sType$Default();
+            ciRenderPass.pAttachments(attachments);
+            ciRenderPass.pSubpasses(subpass);
+
+            var pRenderPass = stack.callocLong(1);
+            assertVkSuccess(vkCreateRenderPass(
+                    boiler.vkDevice(), ciRenderPass, null, pRenderPass
+            ), "CreateRenderPass", "VariantsPass");
+            long renderPass = pRenderPass.get(0);
+
+            long vertexModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.vert.spv", "VariantsVertices"
+            );
+            long fragmentModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.frag.spv", "VariantsFragments"
+            );
+
+            var vertexBindings = VkVertexInputBindingDescription.calloc(1, stack);
+            vertexBindings.binding(0);
+            vertexBindings.stride(4 * (2 + 3));
+            vertexBindings.inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
+
+            var vertexAttributes = VkVertexInputAttributeDescription.calloc(2, stack);
+            vertexAttributes.get(0).set(0, 0, VK_FORMAT_R32G32_SFLOAT, 0);
+            vertexAttributes.get(1).set(1, 0, VK_FORMAT_R32G32B32_SFLOAT, 4 * 2);
+
+            var ciVertexInput = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+            ciVertexInput.sType$Default();
+            ciVertexInput.pVertexBindingDescriptions(vertexBindings);
+            ciVertexInput.pVertexAttributeDescriptions(vertexAttributes);
+
+            var builder = new GraphicsPipelineBuilder(boiler, stack);
+            builder.shaderStages(
+                    new ShaderInfo(VK_SHADER_STAGE_VERTEX_BIT, vertexModule, null),
+                    new ShaderInfo(VK_SHADER_STAGE_FRAGMENT_BIT, fragmentModule, null)
+            );
+            builder.ciPipeline.pVertexInputState(ciVertexInput);
+            builder.simpleInputAssembly();
+            builder.dynamicViewports(1);
+            builder.simpleRasterization(VK_CULL_MODE_NONE);
+            builder.noMultisampling();
+            builder.noDepthStencil();
+            builder.noColorBlending(1);
+            builder.dynamicStates(VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR);
+            builder.ciPipeline.renderPass(renderPass);
+            builder.ciPipeline.layout(pipelineLayout);
+
+            List<Consumer<GraphicsPipelineBuilder>> deltas = List.of(
+                    variant -> variant.simpleRasterization(VK_CULL_MODE_BACK_BIT),
+                    variant -> variant.simpleColorBlending(1),
+                    variant -> {
+                        variant.simpleRasterization(VK_CULL_MODE_FRONT_BIT);
+                        variant.simpleColorBlending(1);
+                    }
+            );
+            long[] pipelines = builder.buildVariants(
+                    "BasePipeline", deltas, "CullBackPipeline", "BlendPipeline", "CullFrontBlendPipeline"
+            );
+
+            assertEquals(4, pipelines.length);
+            var uniquePipelines = new HashSet<Long>();
+            for (long pipeline : pipelines) {
+                assertNotEquals(VK_NULL_HANDLE, pipeline);
+                uniquePipelines.add(pipeline);
+            }
+            assertEquals(4, uniquePipelines.size());
+
+            // The base create info must not be modified by the deltas
+            assertEquals(VK_CULL_MODE_NONE, builder.ciPipeline.pRasterizationState().cullMode());
+            assertEquals(0, builder.ciPipeline.flags() & VK_PIPELINE_CREATE_DERIVATIVE_BIT);
+
+            assertThrows(IllegalArgumentException.class, () -> builder.buildVariants("Invalid", deltas, "OnlyOne"));
+
+            // Destroying the pipelines in any order must be fine, even the base before its derivatives
+            for (long pipeline : pipelines) vkDestroyPipeline(boiler.vkDevice(), pipeline, null);
+            vkDestroyShaderModule(boiler.vkDevice(), vertexModule, null);
+            vkDestroyShaderModule(boiler.vkDevice(), fragmentModule, null);
+            vkDestroyRenderPass(boiler.vkDevice(), renderPass, null);
+            vkDestroyPipelineLayout(boiler.vkDevice(), pipelineLayout, null);
+        }
+
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestGraphicsPipelineDeduplicator {
+
+    private static final String VERTEX_SHADER = "com/github/knokko/boiler/pipelines/triangle.vert.spv";
+    private static final String FRAGMENT_SHADER = "com/github/knokko/boiler/pipelines/triangle.frag.spv";
+
+    private static long createRenderPass(BoilerInstance boiler, MemoryStack stack) {
+        var attachments = VkAttachmentDescription.calloc(1, stack);
+        var colorAttachment = attachments.get(0);
+        colorAttachment.format(VK_FORMAT_R8G8B8A8_UNORM);
+        colorAttachment.samples(VK_SAMPLE_COUNT_1_BIT);
+        colorAttachment.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+        colorAttachment.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
+        colorAttachment.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+        colorAttachment.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+        colorAttachment.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+        colorAttachment.finalLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+
+        var colorReference = VkAttachmentReference.calloc(1, stack);
+        colorReference.attachment(0);
+        colorReference.layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+
+        var subpass = VkSubpassDescription.calloc(1, stack);
+        subpass.pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS);
+        subpass.colorAttachmentCount(1);
+        subpass.pColorAttachments(colorReference);
+
+        var ciRenderPass = VkRenderPassCreateInfo.calloc(stack);
+        ciRenderPass.sType$Default();
+        ciRenderPass.pAttachments(attachments);
+        ciRenderPass.pSubpasses(subpass);
+
+        var pRenderPass = stack.callocLong(1);
+        assertVkSuccess(vkCreateRenderPass(
+                boiler.vkDevice(), ciRenderPass, null, pRenderPass
+        ), "CreateRenderPass", "DeduplicatorPass");
+        return pRenderPass.get(0);
+    }
+
+    /**
+     * Acquires the triangle pipeline with the given cull mode, and releases its shader modules right away
+     */
+    private static long acquire(
+            BoilerInstance boiler, long renderPass, long pipelineLayout, int cullMode, String name
+    ) {
+        var shaderModules = boiler.pipelines.shaderModules;
+        long vertexModule = shaderModules.acquire(VERTEX_SHADER, name + "-Vertices");
+        long fragmentModule = shaderModules.acquire(FRAGMENT_SHADER, name + "-Fragments");
+
+        try (var stack = stackPush()) {
+            var vertexBindings = VkVertexInputBindingDescription.calloc(1, stack);
+            vertexBindings.binding(0);
+            vertexBindings.stride(4 * (2 + 3));
+            vertexBindings.inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
+
+            var vertexAttributes = VkVertexInputAttributeDescription.calloc(2, stack);
+            vertexAttributes.get(0).set(0, 0, VK_FORMAT_R32G32_SFLOAT, 0);
+            vertexAttributes.get(1).set(1, 0, VK_FORMAT_R32G32B32_SFLOAT, 4 * 2);
+
+            var ciVertexInput = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+            ciVertexInput.sType$Default();
+            ciVertexInput.pVertexBindingDescriptions(vertexBindings);
+            ciVertexInput.pVertexAttributeDescriptions(vertexAttributes);
+
+            var builder = new GraphicsPipelineBuilder(boiler, stack);
+            builder.shaderStages(
+                    new ShaderInfo(VK_SHADER_STAGE_VERTEX_BIT, vertexModule, null),
+                    new ShaderInfo(VK_SHADER_STAGE_FRAGMENT_BIT, fragmentModule, null)
+            );
+            builder.ciPipeline.pVertexInputState(ciVertexInput);
+            builder.simpleInputAssembly();
+            builder.dynamicViewports(1);
+            builder.simpleRasterization(cullMode);
+            builder.noMultisampling();
+            builder.noDepthStencil();
+            builder.noColorBlending(1);
+            builder.dynamicStates(VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR);
+            builder.ciPipeline.renderPass(renderPass);
+            builder.ciPipeline.layout(pipelineLayout);
+
+            return boiler.pipelines.deduplicator.acquire(builder, name);
+        } finally {
+            shaderModules.release(vertexModule);
+            shaderModules.release(fragmentModule);
+        }
+    }
+
+    @Test
+    public void testAcquireAndRelease() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestGraphicsPipelineDeduplicator", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .build();
+
+        var deduplicator = boiler.pipelines.deduplicator;
+        long renderPass;
+        long pipelineLayout;
+        try (var stack = stackPush()) {
+            renderPass = createRenderPass(boiler, stack);
+            pipelineLayout = boiler.pipelines.createLayout(stack, null, "DeduplicatorLayout");
+        }
+
+        long noCull1 = acquire(boiler, renderPass, pipelineLayout, VK_CULL_MODE_NONE, "NoCull1");
+        long noCull2 = acquire(boiler, renderPass, pipelineLayout, VK_CULL_MODE_NONE, "NoCull2");
+        assertEquals(noCull1, noCull2);
+        assertEquals(1, deduplicator.size());
+
+        long cullBack = acquire(boiler, renderPass, pipelineLayout, VK_CULL_MODE_BACK_BIT, "CullBack");
+        assertNotEquals(noCull1, cullBack);
+        assertEquals(2, deduplicator.size());
+
+        // The shader modules are no longer needed, and may get the same handles when they are created again
+        assertEquals(2, boiler.pipelines.shaderModules.evictUnused());
+
+        // Since the pipelines are keyed by shader code, recreated modules must still find the existing pipeline
+        long noCull3 = acquire(boiler, renderPass, pipelineLayout, VK_CULL_MODE_NONE, "NoCull3");
+        assertEquals(noCull1, noCull3);
+        assertEquals(2, deduplicator.size());
+
+        assertFalse(deduplicator.release(noCull1));
+        assertFalse(deduplicator.release(noCull2));
+        assertTrue(deduplicator.release(noCull3));
+        assertEquals(1, deduplicator.size());
+        assertThrows(IllegalArgumentException.class, () -> deduplicator.release(noCull1));
+
+        // After the last release, acquiring the same state creates a new pipeline
+        long noCull4 = acquire(boiler, renderPass, pipelineLayout, VK_CULL_MODE_NONE, "NoCull4");
+        assertEquals(2, deduplicator.size());
+        assertTrue(deduplicator.release(noCull4));
+        assertTrue(deduplicator.release(cullBack));
+        assertEquals(0, deduplicator.size());
+
+        vkDestroyRenderPass(boiler.vkDevice(), renderPass, null);
+        vkDestroyPipelineLayout(boiler.vkDevice(), pipelineLayout, null);
+        boiler.destroyInitialObjects();
+    }
+}
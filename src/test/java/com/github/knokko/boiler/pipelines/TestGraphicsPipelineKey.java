@@ -0,0 +1,97 @@
+package com.github.knokko.boiler.pipelines;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestGraphicsPipelineKey {
+
+    private static VkGraphicsPipelineCreateInfo createInfo(MemoryStack stack, int cullMode, int specializationValue) {
+        var specializationEntries = VkSpecializationMapEntry.calloc(1, stack);
+        specializationEntries.constantID(0);
+        specializationEntries.offset(0);
+        specializationEntries.size(4);
+
+        var specialization = VkSpecializationInfo.calloc(stack);
+        specialization.pMapEntries(specializationEntries);
+        specialization.pData(stack.calloc(4).putInt(0, specializationValue));
+
+        var stages = VkPipelineShaderStageCreateInfo.calloc(1, stack);
+        stages.sType$Default();
+        stages.stage(VK_SHADER_STAGE_VERTEX_BIT);
+        stages.module(1234L);
+        stages.pName(stack.UTF8("main"));
+        stages.pSpecializationInfo(specialization);
+
+        var raster = VkPipelineRasterizationStateCreateInfo.calloc(stack);
+        raster.sType$Default();
+        raster.polygonMode(VK_POLYGON_MODE_FILL);
+        raster.cullMode(cullMode);
+        raster.lineWidth(1f);
+
+        var ciPipeline = VkGraphicsPipelineCreateInfo.calloc(stack);
+        ciPipeline.sType$Default();
+        ciPipeline.pStages(stages);
+        ciPipeline.pRasterizationState(raster);
+        ciPipeline.layout(5678L);
+        return ciPipeline;
+    }
+
+    @Test
+    public void testEqualState() {
+        try (var stack = stackPush()) {
+            var key1 = GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_BACK_BIT, 10));
+            var key2 = GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_BACK_BIT, 10));
+            assertNotNull(key1);
+            assertEquals(key1, key2);
+            assertEquals(key1.hashCode(), key2.hashCode());
+        }
+    }
+
+    @Test
+    public void testDifferentState() {
+        try (var stack = stackPush()) {
+            var key = GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_BACK_BIT, 10));
+            assertNotEquals(key, GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_NONE, 10)));
+            assertNotEquals(key, GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_BACK_BIT, 11)));
+
+            var ciPipeline = createInfo(stack, VK_CULL_MODE_BACK_BIT, 10);
+            ciPipeline.renderPass(1L);
+            assertNotEquals(key, GraphicsPipelineKey.of(ciPipeline));
+        }
+    }
+
+    @Test
+    public void testUnsupportedExtension() {
+        try (var stack = stackPush()) {
+            var ciPipeline = createInfo(stack, VK_CULL_MODE_BACK_BIT, 10);
+            var ciCompile = VkPipelineCompilerControlCreateInfoAMD.calloc(stack);
+            ciCompile.sType$Default();
+            ciPipeline.pNext(ciCompile.address());
+            assertNull(GraphicsPipelineKey.of(ciPipeline));
+        }
+    }
+
+    @Test
+    public void testShaderHashes() {
+        try (var stack = stackPush()) {
+            var ciPipeline = createInfo(stack, VK_CULL_MODE_BACK_BIT, 10);
+            var key = GraphicsPipelineKey.of(ciPipeline, module -> "hash1");
+            assertEquals(key, GraphicsPipelineKey.of(createInfo(stack, VK_CULL_MODE_BACK_BIT, 10), module -> "hash1"));
+
+            // When the driver reuses the handle of a destroyed module, the code hash must tell them apart
+            assertNotEquals(key, GraphicsPipelineKey.of(ciPipeline, module -> "hash2"));
+            assertNotEquals(key, GraphicsPipelineKey.of(ciPipeline));
+
+            // Different modules with the same code are interchangeable
+            var otherModule = createInfo(stack, VK_CULL_MODE_BACK_BIT, 10);
+            otherModule.pStages().module(4321L);
+            assertEquals(key, GraphicsPipelineKey.of(otherModule, module -> "hash1"));
+            assertNotEquals(GraphicsPipelineKey.of(ciPipeline), GraphicsPipelineKey.of(otherModule));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.buffer.MappedVmaBuffer;
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.images.VmaImage;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.vma.Vma.vmaDestroyImage;
+import static org.lwjgl.vulkan.EXTGraphicsPipelineLibrary.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestGraphicsPipelineLibraries {
+
+    private static final int SIZE = 4;
+
+    private static long createRenderPass(BoilerInstance boiler) {
+        try (var stack = stackPush()) {
+            var attachments = VkAttachmentDescription.calloc(1, stack);
+            var colorAttachment = attachments.get(0);
+            colorAttachment.format(VK_FORMAT_R8G8B8A8_UNORM);
+            colorAttachment.samples(VK_SAMPLE_COUNT_1_BIT);
+            colorAttachment.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+            colorAttachment.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
+            colorAttachment.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            colorAttachment.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            colorAttachment.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            colorAttachment.finalLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+
+            var colorReference = VkAttachmentReference.calloc(1, stack);
+            colorReference.attachment(0);
+            colorReference.layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+
+            var subpass = VkSubpassDescription.calloc(1, stack);
+            subpass.pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS);
+            subpass.colorAttachmentCount(1);
+            subpass.pColorAttachments(colorReference);
+
+            var dependencies = VkSubpassDependency.calloc(1, stack);
+            dependencies.srcSubpass(0);
+            dependencies.dstSubpass(VK_SUBPASS_EXTERNAL);
+            dependencies.srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+            dependencies.srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+            dependencies.dstStageMask(VK_PIPELINE_STAGE_TRANSFER_BIT);
+            dependencies.dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT);
+
+            var ciRenderPass = VkRenderPassCreateInfo.calloc(stack);
+            ciRenderPass.sType$Default();
+            ciRenderPass.pAttachments(attachments);
+            ciRenderPass.pSubpasses(subpass);
+            ciRenderPass.pDependencies(dependencies);
+
+            var pRenderPass = stack.callocLong(1);
+            assertVkSuccess(vkCreateRenderPass(
+                    boiler.vkDevice(), ciRenderPass, null, pRenderPass
+            ), "CreateRenderPass", "LibraryPass");
+            return pRenderPass.get(0);
+        }
+    }
+
+    /**
+     * Draws a red triangle that covers the whole image using <i>pipeline</i>, and returns the RGBA8 pixel in the
+     * center of the image
+     */
+    private static int render(
+            BoilerInstance boiler, long pipeline, long renderPass, long framebuffer, VmaImage image,
+            MappedVmaBuffer vertexBuffer, MappedVmaBuffer readBuffer
+    ) {
+        long commandPool = boiler.commands.createPool(0, boiler.queueFamilies().graphics().index(), "Library");
+        var commandBuffer = boiler.commands.createPrimaryBuffers(commandPool, 1, "Library")[0];
+        long fence = boiler.sync.fenceBank.borrowFence();
+
+        try (var stack = stackPush()) {
+            var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "Library");
+
+            var pClearValues = VkClearValue.calloc(1, stack);
+            pClearValues.color().float32(0, 0f);
+
+            var biRenderPass = VkRenderPassBeginInfo.calloc(stack);
+            biRenderPass.sType$Default();
+            biRenderPass.renderPass(renderPass);
+            biRenderPass.framebuffer(framebuffer);
+            biRenderPass.renderArea().extent().set(SIZE, SIZE);
+            biRenderPass.pClearValues(pClearValues);
+
+            vkCmdBeginRenderPass(commandBuffer, biRenderPass, VK_SUBPASS_CONTENTS_INLINE);
+            recorder.dynamicViewportAndScissor(SIZE, SIZE);
+            vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline);
+            vkCmdBindVertexBuffers(commandBuffer, 0, stack.longs(vertexBuffer.vkBuffer()), stack.longs(0));
+            vkCmdDraw(commandBuffer, 3, 1, 0, 0);
+            vkCmdEndRenderPass(commandBuffer);
+
+            recorder.copyImageToBuffer(VK_IMAGE_ASPECT_COLOR_BIT, image.vkImage(), SIZE, SIZE, readBuffer.vkBuffer());
+            recorder.end();
+
+            boiler.queueFamilies().graphics().queues().get(0).submit(
+                    commandBuffer, "Library", new WaitSemaphore[0], fence
+            );
+            boiler.sync.waitAndReset(stack, fence);
+        }
+
+        boiler.sync.fenceBank.returnFence(fence, false);
+        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        return memGetInt(readBuffer.hostAddress() + 4L * (SIZE / 2 + SIZE * (SIZE / 2)));
+    }
+
+    @Test
+    public void testLinkLibraries() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestGraphicsPipelineLibraries", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .graphicsPipelineLibrary()
+                .build();
+
+        if (!boiler.pipelines.hasGraphicsPipelineLibrary) {
+            assertThrows(UnsupportedOperationException.class, () -> new GraphicsPipelineLibraries(boiler));
+            boiler.destroyInitialObjects();
+        }
+        assumeTrue(boiler.pipelines.hasGraphicsPipelineLibrary, "VK_EXT_graphics_pipeline_library is not supported");
+
+        var libraries = new GraphicsPipelineLibraries(boiler);
+        long renderPass = createRenderPass(boiler);
+        long pipelineLayout;
+        long vertexModule;
+        long fragmentModule;
+        long[] parts = new long[4];
+        try (var stack = stackPush()) {
+            pipelineLayout = boiler.pipelines.createLayout(stack, null, "LibraryLayout");
+            vertexModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.vert.spv", "LibraryVertices"
+            );
+            fragmentModule = boiler.pipelines.createShaderModule(
+                    stack, "com/github/knokko/boiler/pipelines/triangle.frag.spv", "LibraryFragments"
+            );
+
+            parts[0] = libraries.createLibrary(stack, VK_GRAPHICS_PIPELINE_LIBRARY_VERTEX_INPUT_INTERFACE_BIT_EXT, builder -> {
+                var vertexBindings = VkVertexInputBindingDescription.calloc(1, stack);
+                vertexBindings.binding(0);
+                vertexBindings.stride(4 * (2 + 3));
+                vertexBindings.inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
+
+                var vertexAttributes = VkVertexInputAttributeDescription.calloc(2, stack);
+                vertexAttributes.get(0).set(0, 0, VK_FORMAT_R32G32_SFLOAT, 0);
+                vertexAttributes.get(1).set(1, 0, VK_FORMAT_R32G32B32_SFLOAT, 4 * 2);
+
+                var ciVertexInput = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+                ciVertexInput.sType$Default();
+                ciVertexInput.pVertexBindingDescriptions(vertexBindings);
+                ciVertexInput.pVertexAttributeDescriptions(vertexAttributes);
+
+                builder.ciPipeline.pVertexInputState(ciVertexInput);
+                builder.simpleInputAssembly();
+            }, "VertexInputLibrary");
+
+            parts[1] = libraries.createLibrary(stack, VK_GRAPHICS_PIPELINE_LIBRARY_PRE_RASTERIZATION_SHADERS_BIT_EXT, builder -> {
+                builder.shaderStages(new ShaderInfo(VK_SHADER_STAGE_VERTEX_BIT, vertexModule, null));
+                builder.dynamicViewports(1);
+                builder.simpleRasterization(VK_CULL_MODE_NONE);
+                builder.dynamicStates(VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR);
+                builder.ciPipeline.renderPass(renderPass);
+                builder.ciPipeline.layout(pipelineLayout);
+            }, "PreRasterizationLibrary");
+
+            parts[2] = libraries.createLibrary(stack, VK_GRAPHICS_PIPELINE_LIBRARY_FRAGMENT_SHADER_BIT_EXT, builder -> {
+                builder.shaderStages(new ShaderInfo(VK_SHADER_STAGE_FRAGMENT_BIT, fragmentModule, null));
+                builder.noMultisampling();
+                builder.noDepthStencil();
+                builder.ciPipeline.renderPass(renderPass);
+                builder.ciPipeline.layout(pipelineLayout);
+            }, "FragmentShaderLibrary");
+
+            parts[3] = libraries.createLibrary(stack, VK_GRAPHICS_PIPELINE_LIBRARY_FRAGMENT_OUTPUT_INTERFACE_BIT_EXT, builder -> {
+                builder.noMultisampling();
+                builder.noColorBlending(1);
+                builder.ciPipeline.renderPass(renderPass);
+            }, "FragmentOutputLibrary");
+        }
+        for (long part : parts) assertNotEquals(VK_NULL_HANDLE, part);
+
+        VmaImage image;
+        long framebuffer;
+        try (var stack = stackPush()) {
+            image = boiler.images.createSimple(
+                    stack, SIZE, SIZE, VK_FORMAT_R8G8B8A8_UNORM,
+                    VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT, VK_IMAGE_ASPECT_COLOR_BIT,
+                    "LibraryTarget"
+            );
+            framebuffer = boiler.images.createFramebuffer(
+                    stack, renderPass, SIZE, SIZE, "LibraryFramebuffer", image.vkImageView()
+            );
+        }
+        var readBuffer = boiler.buffers.createMapped(4L * SIZE * SIZE, VK_BUFFER_USAGE_TRANSFER_DST_BIT, "LibraryRead");
+        var vertexBuffer = boiler.buffers.createMapped(3 * 4 * (2 + 3), VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, "LibraryVertices");
+        float[] vertices = {
+                -1f, -1f, 1f, 0f, 0f,
+                3f, -1f, 1f, 0f, 0f,
+                -1f, 3f, 1f, 0f, 0f
+        };
+        for (int index = 0; index < vertices.length; index++) {
+            memPutFloat(vertexBuffer.hostAddress() + 4L * index, vertices[index]);
+        }
+
+        // Red with alpha 1, in little-endian RGBA8
+        int red = 0xFF0000FF;
+
+        var linked = libraries.fastLink(pipelineLayout, "LinkedTriangle", parts);
+        long fastPipeline = linked.get();
+        assertNotEquals(VK_NULL_HANDLE, fastPipeline);
+        assertEquals(red, render(boiler, fastPipeline, renderPass, framebuffer, image, vertexBuffer, readBuffer));
+
+        // Once the optimized pipeline is ready, get() must swap it in
+        long optimizedPipeline = linked.optimized.join();
+        // The swap happens in a completion callback, which may run slightly after join() returns
+        while (!linked.isOptimized()) Thread.onSpinWait();
+        assertEquals(optimizedPipeline, linked.get());
+        assertNotEquals(fastPipeline, optimizedPipeline);
+        assertEquals(red, render(boiler, linked.get(), renderPass, framebuffer, image, vertexBuffer, readBuffer));
+
+        linked.destroyFastPipeline();
+        assertEquals(optimizedPipeline, linked.get());
+        linked.destroy();
+
+        vertexBuffer.destroy(boiler.vmaAllocator());
+        readBuffer.destroy(boiler.vmaAllocator());
+        vkDestroyFramebuffer(boiler.vkDevice(), framebuffer, null);
+        vkDestroyImageView(boiler.vkDevice(), image.vkImageView(), null);
+        vmaDestroyImage(boiler.vmaAllocator(), image.vkImage(), image.vmaAllocation());
+        for (long part : parts) vkDestroyPipeline(boiler.vkDevice(), part, null);
+        vkDestroyShaderModule(boiler.vkDevice(), vertexModule, null);
+        vkDestroyShaderModule(boiler.vkDevice(), fragmentModule, null);
+        vkDestroyPipelineLayout(boiler.vkDevice(), pipelineLayout, null);
+        vkDestroyRenderPass(boiler.vkDevice(), renderPass, null);
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.knokko.boiler.pipelines;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.lwjgl.vulkan.VK10.VK_PIPELINE_CACHE_HEADER_VERSION_ONE;
+import static org.lwjgl.vulkan.VK10.VK_UUID_SIZE;
+
+public class TestPersistentPipelineCache {
+
+    private static ByteBuffer uuid(int seed) {
+        var uuid = ByteBuffer.allocate(VK_UUID_SIZE);
+        for (int index = 0; index < VK_UUID_SIZE; index++) uuid.put(index, (byte) (seed + index));
+        return uuid;
+    }
+
+    private static ByteBuffer cacheData(int headerSize, int headerVersion, int vendorID, int deviceID, ByteBuffer uuid) {
+        return cacheData(headerSize, headerVersion, vendorID, deviceID, uuid, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer cacheData(
+            int headerSize, int headerVersion, int vendorID, int deviceID, ByteBuffer uuid, ByteOrder order
+    ) {
+        var data = ByteBuffer.allocate(100).order(order);
+        data.putInt(headerSize).putInt(headerVersion).putInt(vendorID).putInt(deviceID);
+        for (int index = 0; index < VK_UUID_SIZE; index++) data.put(uuid.get(index));
+        data.put((byte) 12);
+        return data.flip();
+    }
+
+    @Test
+    public void testCompatibleHeader() {
+        var data = cacheData(32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(5));
+        assertTrue(PersistentPipelineCache.isCompatible(data, 0x10DE, 1234, uuid(5)));
+        // The position of the buffer must not be modified
+        assertTrue(PersistentPipelineCache.isCompatible(data, 0x10DE, 1234, uuid(5)));
+    }
+
+    @Test
+    public void testIncompatibleHeaders() {
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x1002, 1234, uuid(5)), 0x10DE, 1234, uuid(5)
+        ));
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1235, uuid(5)), 0x10DE, 1234, uuid(5)
+        ));
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(6)), 0x10DE, 1234, uuid(5)
+        ));
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(32, 2, 0x10DE, 1234, uuid(5)), 0x10DE, 1234, uuid(5)
+        ));
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(20, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(5)), 0x10DE, 1234, uuid(5)
+        ));
+        assertFalse(PersistentPipelineCache.isCompatible(
+                cacheData(1000, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(5)), 0x10DE, 1234, uuid(5)
+        ));
+        // The header is always little-endian, regardless of the native byte order
+        assertFalse(PersistentPipelineCache.isCompatible(cacheData(
+                32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(5), ByteOrder.BIG_ENDIAN
+        ), 0x10DE, 1234, uuid(5)));
+    }
+
+    @Test
+    public void testTruncatedData() {
+        var data = cacheData(32, VK_PIPELINE_CACHE_HEADER_VERSION_ONE, 0x10DE, 1234, uuid(5));
+        data.limit(20);
+        assertFalse(PersistentPipelineCache.isCompatible(data, 0x10DE, 1234, uuid(5)));
+        assertFalse(PersistentPipelineCache.isCompatible(ByteBuffer.allocate(0), 0x10DE, 1234, uuid(5)));
+    }
+}
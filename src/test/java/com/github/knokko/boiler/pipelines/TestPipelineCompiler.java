@@ -0,0 +1,72 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestPipelineCompiler {
+
+    @Test
+    public void testCompileComputePipelinesConcurrently() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestPipelineCompiler", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .build();
+
+        long descriptorSetLayout, pipelineLayout;
+        try (var stack = stackPush()) {
+            var bindings = VkDescriptorSetLayoutBinding.calloc(1, stack);
+            bindings.binding(0);
+            bindings.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+            bindings.descriptorCount(1);
+            bindings.stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+            descriptorSetLayout = boiler.descriptors.createLayout(stack, bindings, "CompilerDescriptorSetLayout");
+
+            var pushConstants = VkPushConstantRange.calloc(1, stack);
+            pushConstants.stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+            pushConstants.offset(0);
+            pushConstants.size(8);
+            pipelineLayout = boiler.pipelines.createLayout(
+                    stack, pushConstants, "CompilerPipelineLayout", descriptorSetLayout
+            );
+        }
+
+        String shaderPath = "com/github/knokko/boiler/compute/fill.comp.spv";
+        var compiler = new PipelineCompiler(boiler, 4, "TestCompiler");
+
+        var futures = new ArrayList<CompletableFuture<Long>>();
+        for (int counter = 0; counter < 20; counter++) {
+            futures.add(compiler.compileCompute(pipelineLayout, shaderPath, "Fill" + counter));
+        }
+        var batchFuture = compiler.compileComputeBatch(
+                new long[] { pipelineLayout, pipelineLayout, pipelineLayout },
+                new String[] { shaderPath, shaderPath, shaderPath },
+                new String[] { "BatchFill0", "BatchFill1", "BatchFill2" }
+        );
+
+        var pipelines = new ArrayList<Long>();
+        for (var future : futures) pipelines.add(future.join());
+        for (long pipeline : batchFuture.join()) pipelines.add(pipeline);
+        assertEquals(23, pipelines.size());
+        for (long pipeline : pipelines) assertNotEquals(VK_NULL_HANDLE, pipeline);
+
+        compiler.destroy();
+
+        for (long pipeline : pipelines) vkDestroyPipeline(boiler.vkDevice(), pipeline, null);
+        vkDestroyPipelineLayout(boiler.vkDevice(), pipelineLayout, null);
+        vkDestroyDescriptorSetLayout(boiler.vkDevice(), descriptorSetLayout, null);
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.knokko.boiler.pipelines;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.VK_MAKE_VERSION;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestShaderModuleCache {
+
+    @Test
+    public void testHash() {
+        var code = ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ShaderModuleCache.hash(code)
+        );
+        assertEquals(0, code.position());
+    }
+
+    @Test
+    public void testReuseAndEviction() {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestShaderModuleCache", VK_MAKE_VERSION(0, 1, 0)
+        )
+                .validation()
+                .forbidValidationErrors()
+                .build();
+
+        var cache = boiler.pipelines.shaderModules;
+        String shaderPath = "com/github/knokko/boiler/compute/fill.comp.spv";
+
+        long module1 = cache.acquire(shaderPath, "Fill1");
+        long module2 = cache.acquire(shaderPath, "Fill2");
+        assertEquals(module1, module2);
+        assertEquals(1, cache.size());
+        assertEquals(64, cache.getHash(module1).length());
+
+        cache.release(module1);
+        assertEquals(0, cache.evictUnused());
+        cache.release(module2);
+        assertThrows(IllegalArgumentException.class, () -> cache.release(module2));
+
+        // The module should stay cached until it is evicted
+        assertEquals(module1, cache.acquire(shaderPath, "Fill3"));
+        cache.release(module1);
+        assertEquals(1, cache.evictUnused());
+        assertEquals(0, cache.size());
+        assertNull(cache.getHash(module1));
+
+        cache.release(cache.acquire(shaderPath, "Fill4"));
+        assertEquals(1, cache.size());
+
+        boiler.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.knokko.boiler.swapchain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDrawingCondition {
+
+    @Test
+    public void testAwaitSupplier() {
+        int[] pCounter = { 0 };
+        DrawingCondition.awaitSupplier(() -> ++pCounter[0] >= 500, 1_000_000_000L);
+        assertEquals(500, pCounter[0]);
+    }
+
+    @Test
+    public void testAwaitSupplierTimeout() {
+        long startTime = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> DrawingCondition.awaitSupplier(() -> false, 20_000_000L));
+        assertTrue(System.nanoTime() - startTime >= 20_000_000L);
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.knokko.boiler.swapchain;
+
+import com.github.knokko.boiler.buffer.ReadbackService;
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.sync.GpuCompletionService;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import com.github.knokko.boiler.sync.WaitSemaphore;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkClearColorValue;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestHeadlessSwapchain {
+
+    @Test
+    public void testPngFiles() throws IOException {
+        var directory = Files.createTempDirectory("frames");
+        var pixels = ByteBuffer.wrap(new byte[] { 10, 20, 30, (byte) 255, 1, 2, 3, (byte) 128 });
+
+        HeadlessSwapchain.pngFiles(directory, false).accept(7, 2, 1, pixels);
+        var image = ImageIO.read(directory.resolve("7.png").toFile());
+        assertEquals(2, image.getWidth());
+        assertEquals(1, image.getHeight());
+        assertEquals(0xFF0A141E, image.getRGB(0, 0));
+        assertEquals(0x80010203, image.getRGB(1, 0));
+
+        HeadlessSwapchain.pngFiles(directory, true).accept(8, 2, 1, pixels);
+        assertEquals(0xFF1E140A, ImageIO.read(directory.resolve("8.png").toFile()).getRGB(0, 0));
+
+        Files.delete(directory.resolve("7.png"));
+        Files.delete(directory.resolve("8.png"));
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRenderAndCapture() throws InterruptedException {
+        var boiler = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestHeadlessSwapchain", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        int width = 4;
+        int height = 3;
+        var swapchain = new HeadlessSwapchain(
+                boiler, width, height, VK_FORMAT_R8G8B8A8_UNORM, VK_IMAGE_USAGE_TRANSFER_DST_BIT, 2, "Headless"
+        );
+        var completions = new GpuCompletionService(boiler, "Completions");
+        var readback = new ReadbackService(boiler, completions, 4L * width * height, 2, "Readback");
+        var capturedReds = new ConcurrentHashMap<Long, Integer>();
+        swapchain.enableCapture(readback, 4, (frameNumber, frameWidth, frameHeight, pixels) -> {
+            assertEquals(width, frameWidth);
+            assertEquals(height, frameHeight);
+            capturedReds.put(frameNumber, pixels.get(4 * (frameWidth * frameHeight - 1)) & 0xFF);
+        });
+
+        var resourceManager = new SwapchainResourceManager<>(acquired -> new int[1], resources -> {});
+        long commandPool = boiler.commands.createPool(
+                VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT, boiler.queueFamilies().graphics().index(), "Render"
+        );
+        var commandBuffers = boiler.commands.createPrimaryBuffers(commandPool, 2, "Render");
+        var renderFences = boiler.sync.fenceBank.borrowSignaledFences(2);
+
+        int numFrames = 6;
+        for (int frame = 0; frame < numFrames; frame++) {
+            var acquired = swapchain.acquireNextImage();
+            assertEquals(frame % 2, acquired.imageIndex());
+            assertEquals(width, acquired.width());
+            resourceManager.get(acquired)[0] += 1;
+
+            try (var stack = stackPush()) {
+                var fence = renderFences[acquired.imageIndex()];
+                fence.waitAndReset(boiler, stack);
+                var commandBuffer = commandBuffers[acquired.imageIndex()];
+                vkResetCommandBuffer(commandBuffer, 0);
+                var recorder = CommandRecorder.begin(commandBuffer, boiler, stack, "Render");
+
+                var transferWrite = new ResourceUsage(VK_ACCESS_TRANSFER_WRITE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT);
+                recorder.transitionColorLayout(
+                        acquired.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                        null, transferWrite
+                );
+                var clearColor = VkClearColorValue.calloc(stack);
+                clearColor.float32(0, frame / 10f);
+                vkCmdClearColorImage(
+                        commandBuffer, acquired.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, clearColor,
+                        boiler.images.subresourceRange(stack, null, VK_IMAGE_ASPECT_COLOR_BIT)
+                );
+                recorder.transitionColorLayout(
+                        acquired.vkImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                        transferWrite, new ResourceUsage(VK_ACCESS_TRANSFER_READ_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT)
+                );
+                recorder.end();
+
+                boiler.queueFamilies().graphics().queues().get(0).submit(
+                        commandBuffer, "Render", new WaitSemaphore[] {
+                                new WaitSemaphore(acquired.acquireSemaphore(), VK_PIPELINE_STAGE_TRANSFER_BIT)
+                        }, fence.vkFence, acquired.presentSemaphore()
+                );
+            }
+            swapchain.presentImage(acquired);
+        }
+        assertEquals(numFrames, swapchain.getNumPresentedFrames());
+
+        for (int counter = 0; counter < 100 && capturedReds.size() < numFrames; counter++) sleep(10);
+        for (long frame = 0; frame < numFrames; frame++) {
+            assertEquals(Math.round(255 * frame / 10f), capturedReds.get(frame), 1);
+        }
+
+        swapchain.resize(8, 8);
+        var resized = swapchain.acquireNextImage();
+        assertEquals(8, resized.width());
+        assertEquals(0, resized.imageIndex());
+        assertEquals(1, resourceManager.get(resized)[0]);
+
+        // Present the image without rendering, to consume its acquire semaphore
+        swapchain.disableCapture();
+        boiler.queueFamilies().graphics().queues().get(0).submit(
+                null, "Skip", new WaitSemaphore[] {
+                        new WaitSemaphore(resized.acquireSemaphore(), VK_PIPELINE_STAGE_TRANSFER_BIT)
+                }, VK_NULL_HANDLE, resized.presentSemaphore()
+        );
+        swapchain.presentImage(resized);
+
+        try (var stack = stackPush()) {
+            for (var fence : renderFences) fence.wait(boiler, stack);
+        }
+        swapchain.destroy();
+        completions.destroy();
+        readback.destroy();
+        boiler.sync.fenceBank.returnFences(false, renderFences);
+        vkDestroyCommandPool(boiler.vkDevice(), commandPool, null);
+        boiler.destroyInitialObjects();
+    }
+}
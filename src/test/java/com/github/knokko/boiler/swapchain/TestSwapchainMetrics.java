@@ -0,0 +1,154 @@
+package com.github.knokko.boiler.swapchain;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.builder.BoilerSwapchainBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.sync.FatFence;
+import com.github.knokko.boiler.sync.ResourceUsage;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkBaseInStructure;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memGetAddress;
+import static org.lwjgl.vulkan.GOOGLEDisplayTiming.VK_GOOGLE_DISPLAY_TIMING_EXTENSION_NAME;
+import static org.lwjgl.vulkan.GOOGLEDisplayTiming.VK_STRUCTURE_TYPE_PRESENT_TIMES_INFO_GOOGLE;
+import static org.lwjgl.vulkan.KHRPresentId.VK_STRUCTURE_TYPE_PRESENT_ID_KHR;
+import static org.lwjgl.vulkan.KHRSurface.VK_PRESENT_MODE_FIFO_KHR;
+import static org.lwjgl.vulkan.KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestSwapchainMetrics {
+
+    private record PresentResources(VkCommandBuffer commandBuffer, FatFence fence) {}
+
+    /**
+     * Whether some structure types were chained to the <i>VkPresentInfoKHR</i> of the last present
+     */
+    private static class PresentChain {
+
+        boolean hasPresentID, hasPresentTimes;
+        int numPresents;
+    }
+
+    private static void runFrames(
+            BoilerInstance instance, BoilerSwapchains swapchains, long commandPool, PresentChain chain, int amount
+    ) {
+        var resourceManager = new SwapchainResourceManager<>(acquired -> {
+            var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, "MetricsPresent")[0];
+            try (var stack = stackPush()) {
+                var recorder = CommandRecorder.begin(commandBuffer, instance, stack, "MetricsPresent");
+                recorder.transitionColorLayout(
+                        acquired.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_PRESENT_SRC_KHR,
+                        new ResourceUsage(0, VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT),
+                        new ResourceUsage(0, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT)
+                );
+                recorder.end();
+            }
+            return new PresentResources(commandBuffer, instance.sync.fenceBank.borrowSignaledFence());
+        }, resources -> instance.sync.fenceBank.returnFences(true, resources.fence()));
+
+        var queue = instance.queueFamilies().graphics().queues().get(0);
+        long[] waitSemaphores = new long[1];
+        int[] waitStages = { VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT };
+        long[] signalSemaphores = new long[1];
+
+        for (int frame = 0; frame < amount; frame++) {
+            glfwPollEvents();
+            AcquireResult acquired = swapchains.acquireNextImage(VK_PRESENT_MODE_FIFO_KHR);
+            if (acquired == null) continue;
+
+            var resources = resourceManager.get(acquired);
+            try (var stack = stackPush()) {
+                resources.fence().waitAndReset(instance, stack);
+            }
+            waitSemaphores[0] = acquired.acquireSemaphore();
+            signalSemaphores[0] = acquired.presentSemaphore();
+            queue.submit(
+                    resources.commandBuffer(), "MetricsPresent", resources.fence().vkFence,
+                    1, waitSemaphores, waitStages, null, 1, signalSemaphores, null
+            );
+            swapchains.presentImage(acquired, resources.fence(), presentInfo -> {
+                chain.hasPresentID = false;
+                chain.hasPresentTimes = false;
+                long next = presentInfo.pNext();
+                while (next != 0L) {
+                    int sType = VkBaseInStructure.nsType(next);
+                    if (sType == VK_STRUCTURE_TYPE_PRESENT_ID_KHR) chain.hasPresentID = true;
+                    if (sType == VK_STRUCTURE_TYPE_PRESENT_TIMES_INFO_GOOGLE) chain.hasPresentTimes = true;
+                    next = memGetAddress(next + VkBaseInStructure.PNEXT);
+                }
+                chain.numPresents += 1;
+            });
+        }
+    }
+
+    @Test
+    public void testMetricsAndLowLatencyMode() {
+        // This test needs a window system
+        assumeTrue(glfwInit());
+
+        int[] pWindowIndex = { -1 };
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestSwapchainMetrics", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .dontInitGLFW()
+                .window(
+                        0L, 200, 150, new BoilerSwapchainBuilder(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT),
+                        index -> pWindowIndex[0] = index
+                )
+                .build();
+        int windowIndex = pWindowIndex[0];
+        var swapchains = instance.swapchains(windowIndex);
+        boolean hasDisplayTiming = instance.deviceExtensions.contains(VK_GOOGLE_DISPLAY_TIMING_EXTENSION_NAME);
+        long commandPool = instance.commands.createPool(0, instance.queueFamilies().graphics().index(), "MetricsPresent");
+
+        // Use the default swapchains, which use VK_KHR_present_wait when the device supports it
+        var statistics = new SwapchainStatistics();
+        swapchains.setMetrics(statistics);
+        swapchains.setLowLatencyMode(1);
+        var chain = new PresentChain();
+        runFrames(instance, swapchains, commandPool, chain, 60);
+
+        assertTrue(chain.numPresents > 1);
+        assertTrue(statistics.presentIntervals.getCount() > 0);
+        assertTrue(statistics.acquireFenceWaits.getCount() > 0);
+        assertTrue(statistics.lowLatencyWaits.getCount() > 0);
+        assertEquals(hasDisplayTiming, chain.hasPresentTimes);
+        if (hasDisplayTiming) assertTrue(statistics.presentMargins.getCount() > 0);
+        swapchains.destroy();
+
+        // Without VK_KHR_present_wait, the low-latency mode must fall back to waiting until the frames are rendered,
+        // without chaining present IDs
+        var fallbackSwapchains = new BoilerSwapchains(instance, swapchains.hasSwapchainMaintenance, false, windowIndex);
+        var fallbackStatistics = new SwapchainStatistics();
+        fallbackSwapchains.setMetrics(fallbackStatistics);
+        fallbackSwapchains.setLowLatencyMode(1);
+        var fallbackChain = new PresentChain();
+        runFrames(instance, fallbackSwapchains, commandPool, fallbackChain, 30);
+
+        assertTrue(fallbackChain.numPresents > 1);
+        assertFalse(fallbackChain.hasPresentID);
+        assertTrue(fallbackStatistics.presentIntervals.getCount() > 0);
+        assertTrue(fallbackStatistics.lowLatencyWaits.getCount() > 0);
+
+        // Disabling the low-latency mode must stop the waits
+        fallbackSwapchains.setLowLatencyMode(0);
+        fallbackStatistics.reset();
+        runFrames(instance, fallbackSwapchains, commandPool, new PresentChain(), 10);
+        assertEquals(0, fallbackStatistics.lowLatencyWaits.getCount());
+        fallbackSwapchains.destroy();
+
+        assertVkSuccess(vkDeviceWaitIdle(instance.vkDevice()), "DeviceWaitIdle", "MetricsPresent");
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        instance.destroyInitialObjects();
+        glfwTerminate();
+    }
+}
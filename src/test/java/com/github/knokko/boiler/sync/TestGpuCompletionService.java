@@ -0,0 +1,113 @@
+package com.github.knokko.boiler.sync;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.vkDestroySemaphore;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestGpuCompletionService {
+
+    @Test
+    public void testCallbacksAndFutures() throws Exception {
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestGpuCompletionService", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        var completion = new GpuCompletionService(instance, "TestCompletion");
+        var semaphore1 = instance.sync.createTimelineSemaphore(0, "Test1");
+        var semaphore2 = instance.sync.createTimelineSemaphore(10, "Test2");
+
+        var callback1 = new CountDownLatch(1);
+        var callback2 = new CountDownLatch(1);
+        completion.onCompletion(new TimelineInstant(semaphore1, 2), callback1::countDown);
+        var future1 = completion.whenReached(new TimelineInstant(semaphore1, 5));
+        var future2 = completion.whenReached(new TimelineInstant(semaphore2, 11));
+        var lateFuture = completion.whenReached(new TimelineInstant(semaphore2, 100));
+
+        // semaphore2 already has value 10, so it should be completed soon
+        completion.onCompletion(new TimelineInstant(semaphore2, 3), callback2::countDown);
+        assertTrue(callback2.await(1, TimeUnit.SECONDS));
+
+        sleep(50);
+        assertEquals(1, callback1.getCount());
+        assertFalse(future1.isDone());
+        assertFalse(future2.isDone());
+
+        try (var stack = stackPush()) {
+            instance.sync.setTimelineSemaphoreValue(stack, semaphore1, 3, null);
+            assertTrue(callback1.await(1, TimeUnit.SECONDS));
+            sleep(50);
+            assertFalse(future1.isDone());
+
+            instance.sync.setTimelineSemaphoreValue(stack, semaphore2, 20, null);
+            future2.get(1, TimeUnit.SECONDS);
+
+            instance.sync.setTimelineSemaphoreValue(stack, semaphore1, 5, null);
+            future1.get(1, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, completion.countPending());
+        completion.destroy();
+        assertTrue(lateFuture.isCancelled());
+
+        vkDestroySemaphore(instance.vkDevice(), semaphore1, null);
+        vkDestroySemaphore(instance.vkDevice(), semaphore2, null);
+        instance.destroyInitialObjects();
+    }
+
+    @Test
+    public void testFailedWait() throws Exception {
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestGpuCompletionService", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        var completion = new GpuCompletionService(instance, "TestFailure");
+        var semaphore = instance.sync.createTimelineSemaphore(0, "TestFailure");
+
+        var callback = new CountDownLatch(1);
+        completion.onCompletion(new TimelineInstant(semaphore, 1), callback::countDown);
+        var future = completion.whenReached(new TimelineInstant(semaphore, 2));
+
+        // Simulates a wait that failed, for instance because the device was lost
+        var failure = new RuntimeException("Device lost");
+        completion.fail(failure);
+
+        var thrown = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertSame(failure, thrown.getCause());
+        assertEquals(0, completion.countPending());
+
+        var rejected = assertThrows(
+                IllegalStateException.class, () -> completion.whenReached(new TimelineInstant(semaphore, 3))
+        );
+        assertSame(failure, rejected.getCause());
+
+        // Callbacks must not be run after the service stopped
+        try (var stack = stackPush()) {
+            instance.sync.setTimelineSemaphoreValue(stack, semaphore, 5, null);
+        }
+        assertFalse(callback.await(50, TimeUnit.MILLISECONDS));
+
+        completion.destroy();
+        vkDestroySemaphore(instance.vkDevice(), semaphore, null);
+        instance.destroyInitialObjects();
+    }
+}
@@ -0,0 +1,266 @@
+package com.github.knokko.boiler.sync;
+
+import com.github.knokko.boiler.builder.BoilerBuilder;
+import com.github.knokko.boiler.builder.BoilerSwapchainBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.instance.BoilerInstance;
+import com.github.knokko.boiler.queue.BoilerQueue;
+import com.github.knokko.boiler.swapchain.AcquireResult;
+import com.github.knokko.boiler.swapchain.HeadlessSwapchain;
+import com.github.knokko.boiler.swapchain.SwapchainResourceManager;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkPhysicalDeviceVulkan12Features;
+
+import java.lang.management.ManagementFactory;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.KHRSurface.VK_PRESENT_MODE_FIFO_KHR;
+import static org.lwjgl.vulkan.KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+
+public class TestSteadyStateAllocations {
+
+    private static final long[] NO_SEMAPHORES = new long[0];
+    private static final int[] NO_STAGES = new int[0];
+
+    private void runFrames(
+            BoilerInstance instance, BoilerQueue queue, VkCommandBuffer commandBuffer, FatFence fence,
+            long[] signalSemaphores, long[] signalValues, long firstValue, int amount
+    ) {
+        for (long value = firstValue; value < firstValue + amount; value++) {
+            try (var stack = stackPush()) {
+                fence.waitAndReset(instance, stack);
+
+                signalValues[0] = value;
+                queue.submit(
+                        commandBuffer, "SteadyState", fence.vkFence,
+                        0, NO_SEMAPHORES, NO_STAGES, null,
+                        1, signalSemaphores, signalValues
+                );
+
+                instance.sync.awaitTimelineSemaphore(stack, signalSemaphores[0], value, "SteadyState");
+                if (instance.sync.getTimelineSemaphoreValue(stack, signalSemaphores[0], "SteadyState") < value) {
+                    throw new IllegalStateException("Timeline semaphore should have reached " + value);
+                }
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    @Test
+    public void testSubmitAndWaitDoNotAllocate() {
+        var threads = allocationCounter();
+
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_2, "TestSteadyStateAllocations", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .requiredFeatures12(VkPhysicalDeviceVulkan12Features::timelineSemaphore)
+                .featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
+                .build();
+
+        var fence = instance.sync.fenceBank.borrowSignaledFence();
+        var timeline = instance.sync.createTimelineSemaphore(0, "SteadyTimeline");
+        var commandPool = instance.commands.createPool(0, instance.queueFamilies().graphics().index(), "Steady");
+        var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, "Steady")[0];
+        try (var stack = stackPush()) {
+            CommandRecorder.begin(commandBuffer, instance, stack, "Steady").end();
+        }
+
+        var queue = instance.queueFamilies().graphics().queues().get(0);
+        long[] signalSemaphores = { timeline };
+        long[] signalValues = new long[1];
+
+        // Warm up, so the measurement isn't disturbed by class loading or lazy initialization
+        runFrames(instance, queue, commandBuffer, fence, signalSemaphores, signalValues, 1, 2000);
+
+        threads.getCurrentThreadAllocatedBytes();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        runFrames(instance, queue, commandBuffer, fence, signalSemaphores, signalValues, 2001, 1000);
+        long allocatedAfter = threads.getCurrentThreadAllocatedBytes();
+
+        assertEquals(0L, allocatedAfter - allocatedBefore);
+
+        try (var stack = stackPush()) {
+            fence.wait(instance, stack);
+        }
+        instance.sync.fenceBank.returnFences(true, fence);
+
+        // The FatFence wrapper should be reused when the same fence is borrowed again
+        assertSame(fence, instance.sync.fenceBank.borrowSignaledFence());
+        assertTrue(fence.hostSignaled);
+        instance.sync.fenceBank.returnFences(false, fence);
+
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        vkDestroySemaphore(instance.vkDevice(), timeline, null);
+        instance.destroyInitialObjects();
+    }
+
+    @Test
+    public void testBorrowAndReturnFencesDoNotAllocate() {
+        var threads = allocationCounter();
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestSteadyStateAllocations", 1
+        ).validation().forbidValidationErrors().build();
+
+        var bank = instance.sync.fenceBank;
+        FatFence[] fences = new FatFence[3];
+        Runnable borrowAndReturn = () -> {
+            for (int frame = 0; frame < 1000; frame++) {
+                for (int index = 0; index < fences.length; index++) fences[index] = bank.borrowSignaledFence();
+                long rawFence = bank.borrowFence();
+                bank.returnFence(rawFence, false);
+                bank.returnFences(true, fences);
+            }
+        };
+
+        // Warm up, so that the bank has created enough fences
+        borrowAndReturn.run();
+
+        threads.getCurrentThreadAllocatedBytes();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        borrowAndReturn.run();
+        long allocatedAfter = threads.getCurrentThreadAllocatedBytes();
+
+        assertEquals(0L, allocatedAfter - allocatedBefore);
+        assertThrows(IllegalArgumentException.class, () -> bank.returnFences(false, fences));
+
+        instance.destroyInitialObjects();
+    }
+
+    @Test
+    public void testHeadlessAcquireAndPresentDoNotAllocate() {
+        var threads = allocationCounter();
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestSteadyStateAllocations", 1
+        ).validation().forbidValidationErrors().build();
+
+        var swapchain = new HeadlessSwapchain(
+                instance, 4, 4, VK_FORMAT_R8G8B8A8_UNORM, VK_IMAGE_USAGE_TRANSFER_DST_BIT, 2, "SteadyHeadless"
+        );
+        var queue = instance.queueFamilies().graphics().queues().get(0);
+        long[] waitSemaphores = new long[1];
+        int[] waitStages = { VK_PIPELINE_STAGE_TRANSFER_BIT };
+        long[] signalSemaphores = new long[1];
+
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 1000; frame++) {
+                var acquired = swapchain.acquireNextImage();
+
+                // Skip the rendering, but still consume the acquire semaphore and signal the present semaphore
+                waitSemaphores[0] = acquired.acquireSemaphore();
+                signalSemaphores[0] = acquired.presentSemaphore();
+                queue.submit(
+                        null, "SteadyHeadless", VK_NULL_HANDLE, 1, waitSemaphores, waitStages, null,
+                        1, signalSemaphores, null
+                );
+                swapchain.presentImage(acquired);
+            }
+        };
+
+        frames.run();
+
+        threads.getCurrentThreadAllocatedBytes();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        frames.run();
+        long allocatedAfter = threads.getCurrentThreadAllocatedBytes();
+
+        assertEquals(0L, allocatedAfter - allocatedBefore);
+        assertEquals(2000, swapchain.getNumPresentedFrames());
+
+        swapchain.destroy();
+        instance.destroyInitialObjects();
+    }
+
+    private record PresentResources(VkCommandBuffer commandBuffer, FatFence fence) {}
+
+    @Test
+    public void testWindowAcquireAndPresentDoNotAllocate() {
+        var threads = allocationCounter();
+        // This test needs a window system
+        assumeTrue(glfwInit());
+
+        int[] pWindowIndex = { -1 };
+        var instance = new BoilerBuilder(
+                VK_API_VERSION_1_0, "TestSteadyStateAllocations", 1
+        )
+                .validation()
+                .forbidValidationErrors()
+                .dontInitGLFW()
+                .window(
+                        0L, 200, 150, new BoilerSwapchainBuilder(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT),
+                        index -> pWindowIndex[0] = index
+                )
+                .build();
+        int windowIndex = pWindowIndex[0];
+        var swapchains = instance.swapchains(windowIndex);
+
+        long commandPool = instance.commands.createPool(0, instance.queueFamilies().graphics().index(), "SteadyPresent");
+        var resourceManager = new SwapchainResourceManager<>(acquired -> {
+            var commandBuffer = instance.commands.createPrimaryBuffers(commandPool, 1, "SteadyPresent")[0];
+            try (var stack = stackPush()) {
+                var recorder = CommandRecorder.begin(commandBuffer, instance, stack, "SteadyPresent");
+                recorder.transitionColorLayout(
+                        acquired.vkImage(), VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_PRESENT_SRC_KHR,
+                        new ResourceUsage(0, VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT),
+                        new ResourceUsage(0, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT)
+                );
+                recorder.end();
+            }
+            return new PresentResources(commandBuffer, instance.sync.fenceBank.borrowSignaledFence());
+        }, resources -> instance.sync.fenceBank.returnFences(true, resources.fence()));
+
+        var queue = instance.queueFamilies().graphics().queues().get(0);
+        long[] waitSemaphores = new long[1];
+        int[] waitStages = { VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT };
+        long[] signalSemaphores = new long[1];
+
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 120; frame++) {
+                glfwPollEvents();
+                AcquireResult acquired = swapchains.acquireNextImage(VK_PRESENT_MODE_FIFO_KHR);
+                if (acquired == null) continue;
+
+                var resources = resourceManager.get(acquired);
+                try (var stack = stackPush()) {
+                    resources.fence().waitAndReset(instance, stack);
+                }
+                waitSemaphores[0] = acquired.acquireSemaphore();
+                signalSemaphores[0] = acquired.presentSemaphore();
+                queue.submit(
+                        resources.commandBuffer(), "SteadyPresent", resources.fence().vkFence,
+                        1, waitSemaphores, waitStages, null, 1, signalSemaphores, null
+                );
+                swapchains.presentImage(acquired, resources.fence());
+            }
+        };
+
+        // The first frames create the swapchain and its resources
+        frames.run();
+
+        threads.getCurrentThreadAllocatedBytes();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        frames.run();
+        long allocatedAfter = threads.getCurrentThreadAllocatedBytes();
+
+        assertEquals(0L, allocatedAfter - allocatedBefore);
+
+        assertVkSuccess(vkDeviceWaitIdle(instance.vkDevice()), "DeviceWaitIdle", "SteadyPresent");
+        vkDestroyCommandPool(instance.vkDevice(), commandPool, null);
+        instance.destroyInitialObjects();
+        glfwTerminate();
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.knokko.boiler.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testEmpty() {
+        var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        var histogram = new LatencyHistogram(7);
+        for (long value = 1; value <= 100; value++) histogram.record(value);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(90, histogram.getValueAtPercentile(90));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testLargeValuesAreApproximate() {
+        var histogram = new LatencyHistogram(7);
+        for (int counter = 0; counter < 1000; counter++) histogram.record(16_000_000L + counter * 1000L);
+        histogram.record(Long.MAX_VALUE);
+
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(Math.abs(median - 16_500_000L) < 16_500_000L / 60, "Median " + median + " is too inaccurate");
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(16_000_000L, histogram.getMin());
+    }
+
+    @Test
+    public void testNegativeValuesAndReset() {
+        var histogram = new LatencyHistogram(3);
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(1, histogram.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        histogram.record(1234);
+        assertEquals(1234, histogram.getValueAtPercentile(50));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(0));
+    }
+}